@@ -15,10 +15,14 @@
  */
 package com.android.tools.adtui.model;
 
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.ImmutableList;
 import gnu.trove.TLongArrayList;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.List;
+
 
 public abstract class BaseDataSeries<E> implements DataSeries<E> {
   @NotNull
@@ -52,12 +56,36 @@ public abstract class BaseDataSeries<E> implements DataSeries<E> {
     return getDataSubList(fromIndex, toIndex);
   }
 
+  /**
+   * Samples are only ever appended, so the snapshot reads the samples added so far, copying those in the requested range while
+   * holding the lock {@link #add} is called with.
+   */
+  @NotNull
+  @Override
+  public synchronized DataSeries<E> snapshot() {
+    int size = size();
+    return xRange -> copyDataForXRange(xRange, size);
+  }
+
+  @NotNull
+  private synchronized ImmutableList<SeriesData<E>> copyDataForXRange(@NotNull Range xRange, int size) {
+    List<SeriesData<E>> data = new ArrayList<>();
+    if (size > 0) {
+      int toIndex = getNearestXIndex((long)xRange.getMax(), size) + 1;
+      for (int i = getNearestXIndex((long)xRange.getMin(), size); i < toIndex; i++) {
+        data.add(new SeriesData<>(getX(i), getY(i)));
+      }
+    }
+    return ContainerUtil.immutableList(data);
+  }
+
   public ImmutableList<SeriesData<E>> getAllData() {
     return getDataSubList(0, size());
   }
 
   /**
    * Implementations need to store both the x, and y values. For a given index the X value should correspond to the Y value.
+   * They should synchronize on the series, so the samples can be read from a {@link #snapshot()} on another thread.
    */
   public abstract void add(long x, E y);
 
@@ -75,7 +103,14 @@ public abstract class BaseDataSeries<E> implements DataSeries<E> {
   public abstract E getY(int index);
 
   public int getNearestXIndex(long x) {
-    int index = mX.binarySearch(x);
+    return getNearestXIndex(x, size());
+  }
+
+  /**
+   * Like {@link #getNearestXIndex(long)}, but only searches the first size samples.
+   */
+  protected int getNearestXIndex(long x, int size) {
+    int index = mX.binarySearch(x, 0, size);
 
     if (index < 0) {
       // No exact match, returns position to the left of the insertion point.
@@ -86,6 +121,6 @@ public abstract class BaseDataSeries<E> implements DataSeries<E> {
       index = -index - 2;
     }
 
-    return Math.max(0, Math.min(index, size() - 1));
+    return Math.max(0, Math.min(index, size - 1));
   }
 }
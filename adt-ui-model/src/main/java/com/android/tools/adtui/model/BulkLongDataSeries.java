@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import com.intellij.util.containers.ImmutableList;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A long-valued {@link DataSeries} that can stream its samples for a range to a {@link LongSampleConsumer}, so callers that read
+ * the whole range every frame (e.g. charts) don't need a {@link SeriesData} object per sample.
+ */
+public interface BulkLongDataSeries extends DataSeries<Long> {
+
+  /**
+   * Passes the samples within the x range, in x order, to the consumer. Like {@link #getDataForXRange(Range)}, implementations may
+   * include samples just outside of the range so lines can be completed to the edges.
+   */
+  void readRange(@NotNull Range xRange, @NotNull LongSampleConsumer consumer);
+
+  /**
+   * Like {@link #readRange(Range, LongSampleConsumer)}, but implementations that keep a {@link MinMaxPyramid} may reduce the samples
+   * to the minimum and maximum of at least resolution buckets, e.g. one per pixel. By default, all samples are passed.
+   */
+  default void readRange(@NotNull Range xRange, int resolution, @NotNull LongSampleConsumer consumer) {
+    readRange(xRange, consumer);
+  }
+
+  @Override
+  default ImmutableList<SeriesData<Long>> getDataForXRange(@NotNull Range xRange) {
+    LongSeriesBuffer buffer = new LongSeriesBuffer();
+    readRange(xRange, buffer::add);
+    return buffer.getAllData();
+  }
+}
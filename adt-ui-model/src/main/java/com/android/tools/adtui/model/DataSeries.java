@@ -16,6 +16,7 @@
 package com.android.tools.adtui.model;
 
 import com.intellij.util.containers.ImmutableList;
+import org.jetbrains.annotations.NotNull;
 
 /**
  * An interface that provides data to all RangedSeries used by the UI.
@@ -23,4 +24,14 @@ import com.intellij.util.containers.ImmutableList;
 public interface DataSeries<E> {
 
   ImmutableList<SeriesData<E>> getDataForXRange(Range xRange);
+
+  /**
+   * Returns a series which keeps returning the samples this series has now, so that it can be read on another thread (e.g. by a chart
+   * building its geometry in the background) while this one keeps changing. Series which query their samples from a data store on
+   * every read can return themselves, which is the default.
+   */
+  @NotNull
+  default DataSeries<E> snapshot() {
+    return this;
+  }
 }
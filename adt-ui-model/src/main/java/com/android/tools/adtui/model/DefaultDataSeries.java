@@ -26,7 +26,7 @@ public class DefaultDataSeries<E> extends BaseDataSeries<E> {
   private final ArrayList<E> mY = new ArrayList<>();
 
   @Override
-  public void add(long x, E y) {
+  public synchronized void add(long x, E y) {
     mX.add(x);
     mY.add(y);
   }
@@ -18,13 +18,16 @@ package com.android.tools.adtui.model;
 import gnu.trove.TLongArrayList;
 import org.jetbrains.annotations.NotNull;
 
-public class LongDataSeries extends BaseDataSeries<Long> {
+public class LongDataSeries extends BaseDataSeries<Long> implements BulkLongDataSeries {
 
   @NotNull
   private final TLongArrayList mY = new TLongArrayList();
 
+  @NotNull
+  private final MinMaxPyramid myPyramid = new MinMaxPyramid(mX, mY);
+
   @Override
-  public void add(long x, Long y) {
+  public synchronized void add(long x, Long y) {
     mX.add(x);
     mY.add(y);
   }
@@ -33,4 +36,44 @@ public class LongDataSeries extends BaseDataSeries<Long> {
   public Long getY(int index) {
     return mY.get(index);
   }
+
+  @Override
+  public void readRange(@NotNull Range xRange, @NotNull LongSampleConsumer consumer) {
+    readRange(xRange, 0, consumer);
+  }
+
+  @Override
+  public synchronized void readRange(@NotNull Range xRange, int resolution, @NotNull LongSampleConsumer consumer) {
+    readRange(xRange, resolution, size(), consumer);
+  }
+
+  /**
+   * Like {@link BaseDataSeries#snapshot()}, but the snapshot keeps reading the samples reduced by the {@link MinMaxPyramid}.
+   */
+  @NotNull
+  @Override
+  public synchronized BulkLongDataSeries snapshot() {
+    int size = size();
+    return new BulkLongDataSeries() {
+      @Override
+      public void readRange(@NotNull Range xRange, @NotNull LongSampleConsumer consumer) {
+        readRange(xRange, 0, consumer);
+      }
+
+      @Override
+      public void readRange(@NotNull Range xRange, int resolution, @NotNull LongSampleConsumer consumer) {
+        LongDataSeries.this.readRange(xRange, resolution, size, consumer);
+      }
+    };
+  }
+
+  /**
+   * Reads the first size samples, while holding the lock {@link #add} is called with.
+   */
+  private synchronized void readRange(@NotNull Range xRange, int resolution, int size, @NotNull LongSampleConsumer consumer) {
+    if (size == 0) {
+      return;
+    }
+    myPyramid.read(getNearestXIndex((long)xRange.getMin(), size), getNearestXIndex((long)xRange.getMax(), size) + 1, resolution, consumer);
+  }
 }
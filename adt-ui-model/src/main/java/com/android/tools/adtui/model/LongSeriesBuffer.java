@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import com.intellij.util.containers.ImmutableList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Columnar storage for a long-valued series: x and y values are kept in parallel primitive arrays, which grow as needed.
+ *
+ * Range lookups binary search the x values, so they require samples to be added in x order.
+ */
+public class LongSeriesBuffer implements BulkLongDataSeries {
+  private static final int DEFAULT_INITIAL_CAPACITY = 64;
+
+  @NotNull private long[] myX = new long[DEFAULT_INITIAL_CAPACITY];
+  @NotNull private long[] myY = new long[DEFAULT_INITIAL_CAPACITY];
+
+  private int mySize;
+
+  public void add(long x, long y) {
+    if (mySize == myX.length) {
+      int capacity = mySize * 2;
+      myX = Arrays.copyOf(myX, capacity);
+      myY = Arrays.copyOf(myY, capacity);
+    }
+    myX[mySize] = x;
+    myY[mySize] = y;
+    mySize++;
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  public long getX(int index) {
+    return myX[index];
+  }
+
+  public long getY(int index) {
+    return myY[index];
+  }
+
+  public void clear() {
+    mySize = 0;
+  }
+
+  /**
+   * Returns the index of the sample at x, or of the closest sample to its left. Returns 0 if x is before the first sample.
+   */
+  public int getNearestXIndex(long x) {
+    int low = 0;
+    int high = mySize - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midX = getX(mid);
+      if (midX < x) {
+        low = mid + 1;
+      }
+      else if (midX > x) {
+        high = mid - 1;
+      }
+      else {
+        return mid;
+      }
+    }
+    return Math.max(0, Math.min(low - 1, mySize - 1));
+  }
+
+  /**
+   * Passes the samples in [fromIndex, toIndex) to the consumer.
+   */
+  public void read(int fromIndex, int toIndex, @NotNull LongSampleConsumer consumer) {
+    for (int i = fromIndex; i < toIndex; i++) {
+      consumer.accept(myX[i], myY[i]);
+    }
+  }
+
+  @Override
+  public void readRange(@NotNull Range xRange, @NotNull LongSampleConsumer consumer) {
+    if (mySize == 0) {
+      return;
+    }
+    read(getNearestXIndex((long)xRange.getMin()), getNearestXIndex((long)xRange.getMax()) + 1, consumer);
+  }
+
+  @Override
+  public ImmutableList<SeriesData<Long>> getDataForXRange(@NotNull Range xRange) {
+    if (mySize == 0) {
+      return getDataSubList(0, 0);
+    }
+    return getDataSubList(getNearestXIndex((long)xRange.getMin()), getNearestXIndex((long)xRange.getMax()) + 1);
+  }
+
+  @NotNull
+  public ImmutableList<SeriesData<Long>> getAllData() {
+    return getDataSubList(0, mySize);
+  }
+
+  @NotNull
+  private ImmutableList<SeriesData<Long>> getDataSubList(final int fromIndex, final int toIndex) {
+    return new ImmutableList<SeriesData<Long>>() {
+      @Override
+      public int size() {
+        return toIndex - fromIndex;
+      }
+
+      @Override
+      public SeriesData<Long> get(int index) {
+        assert index < size();
+        return new SeriesData<>(getX(index + fromIndex), getY(index + fromIndex));
+      }
+    };
+  }
+}
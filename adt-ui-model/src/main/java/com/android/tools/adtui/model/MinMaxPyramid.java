@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import gnu.trove.TLongArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A multi-resolution summary of a long-valued series, stored in a pair of append-only x/y lists. Level 1 keeps the minimum and the
+ * maximum sample of every {@link #BASE_BUCKET_SIZE} consecutive samples, and every further level merges {@link #FAN_OUT} buckets of
+ * the level below. Reads pick the coarsest level that still has a bucket per requested unit of resolution (e.g. per pixel), so
+ * their cost depends on the resolution rather than on the number of samples, while spikes are never dropped.
+ *
+ * The pyramid catches up with samples appended to the lists since the last read, so maintaining it costs amortized O(1) per sample.
+ * Samples must be appended in x order. Call {@link #reset()} when the lists are cleared. The pyramid has no lock of its own: reads
+ * update the summary from the lists, so the owner of the lists must hold one lock around appending to them and around reads, e.g.
+ * {@link LongDataSeries} synchronizes both on the series.
+ */
+public final class MinMaxPyramid {
+  static final int BASE_BUCKET_SIZE = 8;
+  private static final int FAN_OUT_BITS = 2;
+  static final int FAN_OUT = 1 << FAN_OUT_BITS;
+
+  /**
+   * Each bucket is stored as 4 consecutive values: min x, min y, max x, max y.
+   */
+  private static final int BUCKET_STRIDE = 4;
+
+  @NotNull private final TLongArrayList myX;
+  @NotNull private final TLongArrayList myY;
+
+  /**
+   * Buckets of level i + 1, i.e. each bucket covering BASE_BUCKET_SIZE * FAN_OUT^i samples.
+   */
+  @NotNull private final List<TLongArrayList> myLevels = new ArrayList<>();
+
+  /**
+   * Number of samples already summarized in the levels.
+   */
+  private int mySummarizedCount;
+
+  public MinMaxPyramid(@NotNull TLongArrayList x, @NotNull TLongArrayList y) {
+    myX = x;
+    myY = y;
+  }
+
+  public void reset() {
+    myLevels.clear();
+    mySummarizedCount = 0;
+  }
+
+  /**
+   * Passes the samples in [fromIndex, toIndex), reduced so that there are at least resolution buckets left, to the consumer in x order.
+   * Each bucket contributes its minimum and maximum sample. The samples are passed unreduced when there are fewer than
+   * {@link #BASE_BUCKET_SIZE} * resolution of them, or when resolution is not positive.
+   */
+  public void read(int fromIndex, int toIndex, int resolution, @NotNull LongSampleConsumer consumer) {
+    update();
+    int level = resolution <= 0 ? 0 : getLevel(toIndex - fromIndex, resolution);
+    int index = fromIndex;
+    while (index < toIndex) {
+      // Use the coarsest bucket, up to the chosen level, which starts at index and ends within the range.
+      int bucketLevel = 0;
+      for (int l = level; l > 0; l--) {
+        int size = getBucketSize(l);
+        if (index % size == 0 && index + size <= toIndex && (index + size) / size <= getBucketCount(l)) {
+          bucketLevel = l;
+          break;
+        }
+      }
+      if (bucketLevel == 0) {
+        consumer.accept(myX.get(index), myY.get(index));
+        index++;
+      }
+      else {
+        TLongArrayList buckets = myLevels.get(bucketLevel - 1);
+        int offset = index / getBucketSize(bucketLevel) * BUCKET_STRIDE;
+        long minX = buckets.get(offset);
+        long maxX = buckets.get(offset + 2);
+        if (minX <= maxX) {
+          consumer.accept(minX, buckets.get(offset + 1));
+          if (maxX != minX) {
+            consumer.accept(maxX, buckets.get(offset + 3));
+          }
+        }
+        else {
+          consumer.accept(maxX, buckets.get(offset + 3));
+          consumer.accept(minX, buckets.get(offset + 1));
+        }
+        index += getBucketSize(bucketLevel);
+      }
+    }
+  }
+
+  /**
+   * Returns the coarsest level which divides count samples into at least resolution buckets, or 0 for the raw samples.
+   */
+  private int getLevel(int count, int resolution) {
+    int level = 0;
+    while (level < myLevels.size() && count / getBucketSize(level + 1) >= resolution) {
+      level++;
+    }
+    return level;
+  }
+
+  private static int getBucketSize(int level) {
+    return BASE_BUCKET_SIZE << (FAN_OUT_BITS * (level - 1));
+  }
+
+  private int getBucketCount(int level) {
+    return level > myLevels.size() ? 0 : myLevels.get(level - 1).size() / BUCKET_STRIDE;
+  }
+
+  /**
+   * Summarizes the samples appended since the last update.
+   */
+  private void update() {
+    int size = Math.min(myX.size(), myY.size());
+    if (size < mySummarizedCount) {
+      // The lists were cleared and refilled without a reset.
+      reset();
+    }
+    int completeCount = size - size % BASE_BUCKET_SIZE;
+    for (int start = mySummarizedCount; start < completeCount; start += BASE_BUCKET_SIZE) {
+      int minIndex = start;
+      int maxIndex = start;
+      for (int i = start + 1; i < start + BASE_BUCKET_SIZE; i++) {
+        long y = myY.get(i);
+        if (y < myY.get(minIndex)) {
+          minIndex = i;
+        }
+        if (y >= myY.get(maxIndex)) {
+          maxIndex = i;
+        }
+      }
+      addBucket(1, myX.get(minIndex), myY.get(minIndex), myX.get(maxIndex), myY.get(maxIndex));
+    }
+    mySummarizedCount = Math.max(mySummarizedCount, completeCount);
+  }
+
+  private void addBucket(int level, long minX, long minY, long maxX, long maxY) {
+    if (myLevels.size() < level) {
+      myLevels.add(new TLongArrayList());
+    }
+    TLongArrayList buckets = myLevels.get(level - 1);
+    buckets.add(minX);
+    buckets.add(minY);
+    buckets.add(maxX);
+    buckets.add(maxY);
+
+    int count = buckets.size() / BUCKET_STRIDE;
+    if (count % FAN_OUT == 0) {
+      // Merge the last FAN_OUT buckets into the next level.
+      int first = (count - FAN_OUT) * BUCKET_STRIDE;
+      int minOffset = first;
+      int maxOffset = first;
+      for (int offset = first + BUCKET_STRIDE; offset < buckets.size(); offset += BUCKET_STRIDE) {
+        if (buckets.get(offset + 1) < buckets.get(minOffset + 1)) {
+          minOffset = offset;
+        }
+        if (buckets.get(offset + 3) >= buckets.get(maxOffset + 3)) {
+          maxOffset = offset;
+        }
+      }
+      addBucket(level + 1, buckets.get(minOffset), buckets.get(minOffset + 1), buckets.get(maxOffset + 2), buckets.get(maxOffset + 3));
+    }
+  }
+}
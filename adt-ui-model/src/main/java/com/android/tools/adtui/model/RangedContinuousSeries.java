@@ -16,6 +16,7 @@
 
 package com.android.tools.adtui.model;
 
+import com.intellij.util.containers.ImmutableList;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -45,4 +46,40 @@ public class RangedContinuousSeries extends RangedSeries<Long> {
   public String getLabel() {
     return mLabel;
   }
+
+  /**
+   * Passes the samples in the current x range to the consumer. If the underlying series is a {@link BulkLongDataSeries}, the samples
+   * are streamed without creating {@link SeriesData} objects.
+   */
+  public void forEachInRange(@NotNull LongSampleConsumer consumer) {
+    forEachInRange(0, consumer);
+  }
+
+  /**
+   * Like {@link #forEachInRange(LongSampleConsumer)}, but lets the series reduce its samples to at least resolution buckets.
+   *
+   * @see BulkLongDataSeries#readRange(Range, int, LongSampleConsumer)
+   */
+  public void forEachInRange(int resolution, @NotNull LongSampleConsumer consumer) {
+    forEachInRange(mSeries, mXRange, resolution, consumer);
+  }
+
+  /**
+   * Like {@link #forEachInRange(int, LongSampleConsumer)}, but for the given series and x range, e.g. snapshots of them taken by a
+   * chart which reads the series on a background thread.
+   */
+  public static void forEachInRange(@NotNull DataSeries<Long> series,
+                                    @NotNull Range xRange,
+                                    int resolution,
+                                    @NotNull LongSampleConsumer consumer) {
+    if (series instanceof BulkLongDataSeries) {
+      ((BulkLongDataSeries)series).readRange(xRange, resolution, consumer);
+      return;
+    }
+    ImmutableList<SeriesData<Long>> seriesList = series.getDataForXRange(xRange);
+    for (int i = 0; i < seriesList.size(); i++) {
+      SeriesData<Long> data = seriesList.get(i);
+      consumer.accept(data.x, data.value);
+    }
+  }
 }
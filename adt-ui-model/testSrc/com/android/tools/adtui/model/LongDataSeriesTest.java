@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class LongDataSeriesTest {
+
+  @Test
+  public void testSnapshotOnlyReadsSamplesAddedBeforeIt() {
+    LongDataSeries series = new LongDataSeries();
+    for (int i = 0; i < 100; i++) {
+      series.add(i, (long)i);
+    }
+    BulkLongDataSeries snapshot = series.snapshot();
+    for (int i = 100; i < 200; i++) {
+      series.add(i, (long)i);
+    }
+
+    long[] last = {-1};
+    int[] count = {0};
+    snapshot.readRange(new Range(0, 1000), (x, y) -> {
+      last[0] = x;
+      count[0]++;
+    });
+    assertEquals(100, count[0]);
+    assertEquals(99, last[0]);
+  }
+
+  @Test
+  public void testReadsWhileAdding() throws Exception {
+    LongDataSeries series = new LongDataSeries();
+    int sampleCount = 200000;
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread reader = new Thread(() -> {
+      try {
+        while (series.size() < sampleCount) {
+          long[] previous = {Long.MIN_VALUE};
+          series.snapshot().readRange(new Range(0, sampleCount), 100, (x, y) -> {
+            // The pyramid is updated under the same lock as the samples are added, so reads are consistent
+            assertTrue(x >= previous[0]);
+            assertEquals(x, y);
+            previous[0] = x;
+          });
+        }
+      }
+      catch (Throwable t) {
+        failure.set(t);
+      }
+    });
+    reader.start();
+    for (int i = 0; i < sampleCount; i++) {
+      series.add(i, (long)i);
+    }
+    reader.join();
+    assertNull(failure.get());
+  }
+}
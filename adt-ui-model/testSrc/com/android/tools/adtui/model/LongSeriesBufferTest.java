@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import gnu.trove.TLongArrayList;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LongSeriesBufferTest {
+
+  @Test
+  public void testGrowsAsNeeded() {
+    LongSeriesBuffer buffer = new LongSeriesBuffer();
+    for (int i = 0; i < 1000; i++) {
+      buffer.add(i, i * 2);
+    }
+    assertEquals(1000, buffer.size());
+    assertEquals(0, buffer.getX(0));
+    assertEquals(1998, buffer.getY(999));
+  }
+
+  @Test
+  public void testReadRangeIncludesLeftNeighbor() {
+    LongSeriesBuffer buffer = new LongSeriesBuffer();
+    for (int i = 0; i < 10; i++) {
+      buffer.add(i * 10, i);
+    }
+    TLongArrayList x = new TLongArrayList();
+    buffer.readRange(new Range(45, 65), (sampleX, sampleY) -> x.add(sampleX));
+    assertArrayEquals(new long[]{40, 50, 60}, x.toNativeArray());
+    assertEquals(3, buffer.getDataForXRange(new Range(45, 65)).size());
+  }
+
+  @Test
+  public void testNearestXIndexIsClamped() {
+    LongSeriesBuffer buffer = new LongSeriesBuffer();
+    buffer.add(10, 1);
+    buffer.add(20, 2);
+    assertEquals(0, buffer.getNearestXIndex(0));
+    assertEquals(0, buffer.getNearestXIndex(15));
+    assertEquals(1, buffer.getNearestXIndex(20));
+    assertEquals(1, buffer.getNearestXIndex(100));
+  }
+}
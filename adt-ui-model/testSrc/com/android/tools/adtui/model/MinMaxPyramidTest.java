@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import gnu.trove.TLongArrayList;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MinMaxPyramidTest {
+
+  @Test
+  public void testUnreducedReadPassesAllSamples() {
+    TLongArrayList x = new TLongArrayList();
+    TLongArrayList y = new TLongArrayList();
+    MinMaxPyramid pyramid = new MinMaxPyramid(x, y);
+    for (int i = 0; i < 100; i++) {
+      x.add(i);
+      y.add(i % 7);
+    }
+    TLongArrayList readX = new TLongArrayList();
+    pyramid.read(10, 20, 0, (sampleX, sampleY) -> readX.add(sampleX));
+    assertArrayEquals(new long[]{10, 11, 12, 13, 14, 15, 16, 17, 18, 19}, readX.toNativeArray());
+  }
+
+  @Test
+  public void testReducedReadKeepsSpikesInOrder() {
+    TLongArrayList x = new TLongArrayList();
+    TLongArrayList y = new TLongArrayList();
+    MinMaxPyramid pyramid = new MinMaxPyramid(x, y);
+    for (int i = 0; i < 10000; i++) {
+      x.add(i * 10);
+      y.add(i == 4321 ? 1000 : i == 8765 ? -1000 : i % 5);
+    }
+    TLongArrayList readX = new TLongArrayList();
+    TLongArrayList readY = new TLongArrayList();
+    pyramid.read(3, 9999, 100, (sampleX, sampleY) -> {
+      readX.add(sampleX);
+      readY.add(sampleY);
+    });
+
+    assertTrue(readX.size() >= 100);
+    assertTrue(readX.size() < 1000);
+    assertTrue(readY.contains(1000));
+    assertTrue(readY.contains(-1000));
+    assertEquals(30, readX.get(0));
+    for (int i = 1; i < readX.size(); i++) {
+      assertTrue(readX.get(i - 1) < readX.get(i));
+    }
+  }
+
+  @Test
+  public void testSamplesAppendedAfterReadAreSummarized() {
+    TLongArrayList x = new TLongArrayList();
+    TLongArrayList y = new TLongArrayList();
+    MinMaxPyramid pyramid = new MinMaxPyramid(x, y);
+    for (int i = 0; i < 1000; i++) {
+      x.add(i);
+      y.add(0);
+    }
+    pyramid.read(0, x.size(), 10, (sampleX, sampleY) -> {});
+
+    for (int i = 1000; i < 5000; i++) {
+      x.add(i);
+      y.add(i == 4500 ? 42 : 0);
+    }
+    TLongArrayList readY = new TLongArrayList();
+    TLongArrayList readX = new TLongArrayList();
+    pyramid.read(0, x.size(), 10, (sampleX, sampleY) -> {
+      readX.add(sampleX);
+      readY.add(sampleY);
+    });
+    assertTrue(readY.contains(42));
+    assertEquals(4500, readX.get(readY.indexOf(42)));
+    assertTrue(readX.size() < 200);
+  }
+
+  @Test
+  public void testResetAfterClear() {
+    TLongArrayList x = new TLongArrayList();
+    TLongArrayList y = new TLongArrayList();
+    MinMaxPyramid pyramid = new MinMaxPyramid(x, y);
+    for (int i = 0; i < 1000; i++) {
+      x.add(i);
+      y.add(100);
+    }
+    pyramid.read(0, x.size(), 10, (sampleX, sampleY) -> {});
+
+    x.clear();
+    y.clear();
+    pyramid.reset();
+    for (int i = 0; i < 1000; i++) {
+      x.add(i);
+      y.add(1);
+    }
+    TLongArrayList readY = new TLongArrayList();
+    pyramid.read(0, x.size(), 10, (sampleX, sampleY) -> readY.add(sampleY));
+    assertFalse(readY.contains(100));
+  }
+}
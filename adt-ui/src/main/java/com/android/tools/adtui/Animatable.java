@@ -39,6 +39,15 @@ public interface Animatable {
   default void postAnimate() {
   }
 
+  /**
+   * Whether the last {@link #animate(float)}/{@link #postAnimate()} cycle changed anything this {@link Animatable} displays or
+   * shares with other animatables (e.g. a range). The {@link Choreographer} only repaints the components that changed, and lowers
+   * its frame rate while nothing changes. Implementations that cannot tell should keep returning true.
+   */
+  default boolean isChanged() {
+    return true;
+  }
+
   /**
    * An auxiliary function to allow an {@link Animatable} to configure its interpolation speed when calling the
    * {@link Choreographer#lerp(float, float, float, float, float)} method.
@@ -47,6 +47,16 @@ public abstract class AnimatedComponent extends JComponent implements Animatable
 
   protected long mUpdateEndTime;
 
+  /**
+   * Time spent in {@link #postAnimate()} during the last frame, as measured by the {@link Choreographer}.
+   */
+  private long mPostAnimateTime;
+
+  /**
+   * Number of frames in which the {@link Choreographer} didn't repaint the component, because it reported no change.
+   */
+  private int mSkippedFrameCount;
+
   protected boolean mDrawDebugInfo;
 
   protected final FontMetrics mDefaultFontMetrics;
@@ -97,7 +107,9 @@ public abstract class AnimatedComponent extends JComponent implements Animatable
 
     addDebugInfo("Multi-draw Frame Count: %d", mMultiDrawNumFrames);
     addDebugInfo("Draw Count: %d", mDrawCount);
+    addDebugInfo("Skipped Frame Count: %d", mSkippedFrameCount);
     addDebugInfo("Update time: %.2fms", (mUpdateEndTime - mUpdateStartTime) / 1000000.f);
+    addDebugInfo("Post-animate time: %.2fms", mPostAnimateTime / 1000000.f);
     addDebugInfo("Render time: %.2fms", (System.nanoTime() - mLastRenderTime) / 1000000.f);
     addDebugInfo("FPS: %.2f", (1.0f / mFrameLength));
     g.setFont(AdtUiUtils.DEFAULT_FONT);
@@ -171,5 +183,14 @@ public abstract class AnimatedComponent extends JComponent implements Animatable
   @Override
   public void reset() {
     mMultiDrawNumFrames = 0;
+    mSkippedFrameCount = 0;
+  }
+
+  void setPostAnimateTime(long postAnimateTime) {
+    mPostAnimateTime = postAnimateTime;
+  }
+
+  void recordSkippedFrame() {
+    mSkippedFrameCount++;
   }
 }
@@ -34,6 +34,8 @@ public class AnimatedRange extends Range implements Animatable {
 
   private float myLerpThreshold;
 
+  private boolean myChanged;
+
   public AnimatedRange(double min, double max) {
     super(min, max);
     myTargetMin = min;
@@ -68,6 +70,7 @@ public class AnimatedRange extends Range implements Animatable {
 
   @Override
   public void animate(float frameLength) {
+    myChanged = myMin != myTargetMin || myMax != myTargetMax;
     if (myMin != myTargetMin) {
       myMin = Choreographer.lerp(myMin, myTargetMin, myLerpFraction, frameLength, myLerpThreshold);
     }
@@ -76,4 +79,9 @@ public class AnimatedRange extends Range implements Animatable {
       myMax = Choreographer.lerp(myMax, myTargetMax, myLerpFraction, frameLength, myLerpThreshold);
     }
   }
+
+  @Override
+  public boolean isChanged() {
+    return myChanged;
+  }
 }
\ No newline at end of file
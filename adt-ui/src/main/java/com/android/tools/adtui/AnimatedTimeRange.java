@@ -31,6 +31,8 @@ public class AnimatedTimeRange implements Animatable {
 
   private long mOffsetUs;
 
+  private boolean mChanged;
+
   public AnimatedTimeRange(Range range, long offsetUs) {
     mRange = range;
     mOffsetUs = offsetUs;
@@ -52,5 +54,11 @@ public class AnimatedTimeRange implements Animatable {
     if (mShift) {
       mRange.setMin(min + (now - max));
     }
+    mChanged = mRange.getMin() != min || mRange.getMax() != max;
+  }
+
+  @Override
+  public boolean isChanged() {
+    return mChanged;
   }
 }
@@ -132,6 +132,13 @@ public final class AxisComponent extends AnimatedComponent {
    */
   private String myMinLabel;
 
+  /**
+   * Length of the range used to format the labels in the last frame.
+   */
+  private double myLabelRange = Double.NaN;
+
+  private boolean myChanged = true;
+
   /**
    * There are cases when we display axis values relative to the Data.
    * For example, when we use axis to display time information by setting {@code myOffset}
@@ -331,6 +338,9 @@ public final class AxisComponent extends AnimatedComponent {
 
   @Override
   public void postAnimate() {
+    double previousMin = myCurrentMinValueRelative;
+    double previousMax = myCurrentMaxValueRelative;
+    double previousLabelRange = myLabelRange;
     myMarkerLabels.clear();
     myMajorMarkerPositions.reset();
     myMinorMarkerPositions.reset();
@@ -338,6 +348,8 @@ public final class AxisComponent extends AnimatedComponent {
     myCurrentMaxValueRelative = myRange.getMax() - myOffset;
     double range = myRange.getLength();
     double labelRange = myGlobalRange == null ? range : myGlobalRange.getLength();
+    myLabelRange = labelRange;
+    myChanged = previousMin != myCurrentMinValueRelative || previousMax != myCurrentMaxValueRelative || previousLabelRange != labelRange;
 
     // During the postAnimate phase, use the interpolated min/max/range values to calculate the current major and minor intervals that
     // should be used. Based on the interval values, cache the normalized marker positions which will be used during the draw call.
@@ -383,6 +395,11 @@ public final class AxisComponent extends AnimatedComponent {
     }
   }
 
+  @Override
+  public boolean isChanged() {
+    return myChanged;
+  }
+
   @Override
   protected void draw(Graphics2D g, Dimension dim) {
     // Calculate drawing parameters.
@@ -17,11 +17,15 @@
 package com.android.tools.adtui;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
+import java.awt.*;
+import java.awt.event.AWTEventListener;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.HierarchyListener;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -29,12 +33,26 @@ import java.util.List;
  * An auxiliary object that synchronizes a group of {@link Animatable} via a simple update loop
  * running at a specific frame rate. This ensures all UI components and model classes are reading
  * and displaying consistent information at any given time.
+ *
+ * Only the components which report a change (see {@link Animatable#isChanged()}) are repainted. Once nothing has changed for
+ * {@link #IDLE_FRAMES_BEFORE_THROTTLING} frames, the frame rate is progressively lowered down to one frame every
+ * {@link #MAX_IDLE_FRAME_DELAY_MS}, and it goes back to the requested rate as soon as something changes or the user interacts
+ * with the parent container.
  */
 public class Choreographer implements ActionListener {
 
   private static final int DEFAULT_FPS = 60;
   private static final float NANOSECONDS_IN_SECOND = 1000000000.0f;
   private static final float DEFAULT_FRAME_LENGTH = 1.0f / DEFAULT_FPS;
+  private static final int IDLE_FRAMES_BEFORE_THROTTLING = 30;
+  private static final int MAX_IDLE_FRAME_DELAY_MS = 1000;
+  private static final long INPUT_EVENT_MASK = AWTEvent.MOUSE_EVENT_MASK | AWTEvent.MOUSE_MOTION_EVENT_MASK |
+                                               AWTEvent.MOUSE_WHEEL_EVENT_MASK | AWTEvent.KEY_EVENT_MASK;
+
+  /**
+   * When set, every {@link AnimatedComponent} registered with a Choreographer draws its frame time overlay.
+   */
+  private static final boolean SHOW_FRAME_TIMES = Boolean.getBoolean("adtui.choreographer.showFrameTimes");
 
   private final List<Animatable> mComponents;
   private List<Animatable> mToRegister;
@@ -43,12 +61,29 @@ public class Choreographer implements ActionListener {
   private boolean mUpdate;
   private long mFrameTime;
   private boolean mReset;
+  private final int mFrameDelayMs;
+  private int mIdleFrameCount;
+
+  /**
+   * Wakes the update loop up to its full frame rate when the user interacts with any component in the parent container. It is only
+   * registered with the {@link Toolkit} while the parent container is showing, so a container that is removed from the UI without
+   * {@link #stop()} being called is not kept reachable by the Toolkit.
+   */
+  @Nullable
+  private AWTEventListener mInputListener;
+  @Nullable
+  private AWTEventListener mRegisteredInputListener;
+
+  /**
+   * Registers and unregisters {@link #mInputListener} as the parent container is shown and hidden.
+   */
+  @Nullable
+  private HierarchyListener mShowingListener;
 
   /**
-   * At the end of each update loop, repaint is trigger on the parent container so that all its
-   * children are redrawn, displaying the updated data. This avoids having to trigger repaint on
-   * individual components registered to the Choreographer, which can result in redundant draw
-   * calls between loops if they overlap.
+   * The container of all the components registered to the Choreographer. At the end of each update loop, it is repainted as a whole
+   * if an {@link Animatable} that isn't a component changed, since that can affect any of its children; otherwise only the changed
+   * components are repainted. User input anywhere in the container wakes a throttled update loop up (see {@link #mInputListener}).
    */
   @NotNull
   private final JComponent mParentContainer;
@@ -66,9 +101,21 @@ public class Choreographer implements ActionListener {
     mToUnregister = new LinkedList<>();
     mUpdate = true;
     mUpdating = false;
-    mTimer = new Timer(1000 / fps, this);
+    mFrameDelayMs = 1000 / fps;
+    mTimer = new Timer(mFrameDelayMs, this);
     if (fps >= 0) {
       mTimer.start();
+      if (!GraphicsEnvironment.isHeadless()) {
+        mInputListener = event -> {
+          if (event.getSource() instanceof Component &&
+              SwingUtilities.isDescendingFrom((Component)event.getSource(), mParentContainer)) {
+            wake();
+          }
+        };
+        mShowingListener = event -> updateInputListener();
+        mParentContainer.addHierarchyListener(mShowingListener);
+        updateInputListener();
+      }
     }
   }
 
@@ -77,6 +124,10 @@ public class Choreographer implements ActionListener {
   }
 
   public void register(Animatable animatable) {
+    if (SHOW_FRAME_TIMES && animatable instanceof AnimatedComponent) {
+      ((AnimatedComponent)animatable).setDrawDebugInfo(true);
+    }
+    wake();
     if (mUpdating) {
       mToRegister.add(animatable);
     } else {
@@ -102,6 +153,47 @@ public class Choreographer implements ActionListener {
     if (mTimer.isRunning()) {
       mTimer.stop();
     }
+    if (mShowingListener != null) {
+      mParentContainer.removeHierarchyListener(mShowingListener);
+      mShowingListener = null;
+    }
+    mInputListener = null;
+    updateInputListener();
+  }
+
+  private void updateInputListener() {
+    AWTEventListener listener = mParentContainer.isShowing() ? mInputListener : null;
+    if (listener == mRegisteredInputListener) {
+      return;
+    }
+    if (mRegisteredInputListener != null) {
+      Toolkit.getDefaultToolkit().removeAWTEventListener(mRegisteredInputListener);
+    }
+    if (listener != null) {
+      Toolkit.getDefaultToolkit().addAWTEventListener(listener, INPUT_EVENT_MASK);
+    }
+    mRegisteredInputListener = listener;
+  }
+
+  /**
+   * Restores the full frame rate if the update loop was throttled because nothing changed, e.g. after a model was modified outside
+   * of the update loop.
+   */
+  public void wake() {
+    mIdleFrameCount = 0;
+    if (mTimer.getDelay() != mFrameDelayMs) {
+      mTimer.setDelay(mFrameDelayMs);
+      if (mTimer.isRunning()) {
+        mTimer.restart();
+      }
+    }
+  }
+
+  /**
+   * Returns the current delay between two frames, in milliseconds.
+   */
+  public int getFrameDelayMs() {
+    return mTimer.getDelay();
   }
 
   @Override
@@ -147,6 +239,7 @@ public class Choreographer implements ActionListener {
 
   public void reset() {
     mReset = true;
+    wake();
   }
 
   private void step(float frameLength) {
@@ -157,16 +250,63 @@ public class Choreographer implements ActionListener {
     }
 
     mComponents.forEach(component -> component.animate(frameLength));
-    mComponents.forEach(Animatable::postAnimate);
+    for (Animatable component : mComponents) {
+      if (component instanceof AnimatedComponent) {
+        long start = System.nanoTime();
+        component.postAnimate();
+        ((AnimatedComponent)component).setPostAnimateTime(System.nanoTime() - start);
+      }
+      else {
+        component.postAnimate();
+      }
+    }
     mUpdating = false;
 
+    // Animatables that are not components (e.g. renderers drawn by a chart) can affect any component, so if one of them changed
+    // the whole container is repainted like before. Otherwise, only the changed components are.
+    boolean repaintAll = false;
+    List<AnimatedComponent> changedComponents = new ArrayList<>();
+    for (Animatable component : mComponents) {
+      boolean changed = component.isChanged();
+      if (component instanceof AnimatedComponent) {
+        if (changed) {
+          changedComponents.add((AnimatedComponent)component);
+        }
+        else {
+          ((AnimatedComponent)component).recordSkippedFrame();
+        }
+      }
+      else if (changed) {
+        repaintAll = true;
+      }
+    }
+
     mToUnregister.forEach(this::unregister);
     mToRegister.forEach(this::register);
 
     mToUnregister.clear();
     mToRegister.clear();
 
-    mParentContainer.repaint();
+    if (repaintAll) {
+      mParentContainer.repaint();
+    }
+    else {
+      changedComponents.forEach(JComponent::repaint);
+    }
+    updateFrameDelay(repaintAll || !changedComponents.isEmpty());
+  }
+
+  private void updateFrameDelay(boolean changed) {
+    if (changed) {
+      wake();
+      return;
+    }
+    if (++mIdleFrameCount > IDLE_FRAMES_BEFORE_THROTTLING && mFrameDelayMs > 0) {
+      int delay = Math.min(Math.max(mTimer.getDelay(), mFrameDelayMs) * 2, MAX_IDLE_FRAME_DELAY_MS);
+      if (delay != mTimer.getDelay()) {
+        mTimer.setDelay(delay);
+      }
+    }
   }
 
   /**
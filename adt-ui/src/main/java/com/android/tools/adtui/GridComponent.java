@@ -45,6 +45,17 @@ public final class GridComponent extends AnimatedComponent {
   protected void updateData() {
   }
 
+  @Override
+  public boolean isChanged() {
+    // The grid only draws the markers of its axes.
+    for (AxisComponent axis : mAxes) {
+      if (axis.isChanged()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Override
   protected void draw(Graphics2D g, Dimension dim) {
     g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
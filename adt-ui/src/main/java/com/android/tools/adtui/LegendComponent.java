@@ -23,6 +23,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * A label component that updates its value based on the reporting series passed to it.
@@ -69,6 +70,8 @@ public class LegendComponent extends AnimatedComponent {
 
   private long mLastUpdate;
 
+  private boolean mChanged = true;
+
   private List<LegendRenderData> mLegendRenderData;
 
   private Orientation mOrientation;
@@ -101,16 +104,16 @@ public class LegendComponent extends AnimatedComponent {
   @Override
   protected void updateData() {
     long now = System.currentTimeMillis();
+    mChanged = false;
     if (now - mLastUpdate > mFrequencyMillis) {
       mLastUpdate = now;
       for (int i = 0; i < mLegendRenderData.size(); ++i) {
         LegendRenderData data = mLegendRenderData.get(i);
         JLabel label = mLabelsToDraw.get(i);
-        if (data.hasData()) {
-          label.setText(String.format("%s: %s", data.getLabel(), data.getFormattedData()));
-        }
-        else {
-          label.setText(data.getLabel());
+        String text = data.hasData() ? String.format("%s: %s", data.getLabel(), data.getFormattedData()) : data.getLabel();
+        if (!Objects.equals(text, label.getText())) {
+          label.setText(text);
+          mChanged = true;
         }
         Dimension preferredSize = label.getPreferredSize();
         if (preferredSize.getWidth() < LABEL_MIN_WIDTH_PX) {
@@ -133,6 +136,11 @@ public class LegendComponent extends AnimatedComponent {
     }
   }
 
+  @Override
+  public boolean isChanged() {
+    return mChanged;
+  }
+
   @Override
   protected void draw(Graphics2D g2d, Dimension dim) {
     // TODO: revisit this method and try to simplify it using JBPanels and a LayoutManager.
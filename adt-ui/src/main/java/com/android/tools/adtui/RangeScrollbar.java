@@ -192,6 +192,12 @@ public final class RangeScrollbar extends JBScrollBar implements Animatable {
     }
   }
 
+  @Override
+  public boolean isChanged() {
+    // Swing repaints the scrollbar when its model changes, and the components showing the ranges it modifies report those changes.
+    return false;
+  }
+
   /**
    * Checks if scrollbar thumb is close to the end of the range.
    *
@@ -32,4 +32,12 @@ public class RangedList implements Animatable {
   public void animate(float frameLength) {
     myModel.update(myRange);
   }
+
+  /**
+   * The model notifies its Swing view of its changes, which Swing repaints.
+   */
+  @Override
+  public boolean isChanged() {
+    return false;
+  }
 }
@@ -39,6 +39,14 @@ public class RangedTree implements Animatable {
     }
   }
 
+  /**
+   * The model notifies the tree of its changes, which Swing repaints.
+   */
+  @Override
+  public boolean isChanged() {
+    return false;
+  }
+
   public void setModel(@Nullable RangedTreeModel model) {
     myModel = model;
   }
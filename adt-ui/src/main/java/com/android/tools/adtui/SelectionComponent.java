@@ -48,6 +48,7 @@ public final class SelectionComponent extends AnimatedComponent {
   private float myStartX;
   private float myEndX;
   private boolean myEmpty;
+  private boolean myChanged = true;
 
   private enum Mode {
     /** The default mode: nothing is happening */
@@ -185,9 +186,18 @@ public final class SelectionComponent extends AnimatedComponent {
 
   @Override
   protected void updateData() {
-    myEmpty = mySelectionRange.isEmpty();
-    myStartX = (float)((mySelectionRange.getMin() - myRange.getMin()) / (myRange.getMax() - myRange.getMin()));
-    myEndX = (float)((mySelectionRange.getMax() - myRange.getMin()) / (myRange.getMax() - myRange.getMin()));
+    boolean empty = mySelectionRange.isEmpty();
+    float startX = (float)((mySelectionRange.getMin() - myRange.getMin()) / (myRange.getMax() - myRange.getMin()));
+    float endX = (float)((mySelectionRange.getMax() - myRange.getMin()) / (myRange.getMax() - myRange.getMin()));
+    myChanged = empty != myEmpty || (!empty && (Float.compare(startX, myStartX) != 0 || Float.compare(endX, myEndX) != 0));
+    myEmpty = empty;
+    myStartX = startX;
+    myEndX = endX;
+  }
+
+  @Override
+  public boolean isChanged() {
+    return myChanged;
   }
 
 
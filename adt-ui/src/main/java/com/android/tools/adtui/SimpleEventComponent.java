@@ -26,6 +26,7 @@ import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * A chart component that renders a series of events as icons.
@@ -41,6 +42,13 @@ public class SimpleEventComponent<E extends Enum<E>> extends AnimatedComponent {
   @NotNull
   private final ArrayList<EventRenderData> mIconsToDraw;
 
+  /**
+   * Hash of the x range and of the events drawn in the last frame, used to tell whether the component needs to be repainted.
+   */
+  private int mRenderHash;
+
+  private boolean mChanged = true;
+
   /**
    * Component that renders EventActions as a series of icons.
    */
@@ -66,6 +74,18 @@ public class SimpleEventComponent<E extends Enum<E>> extends AnimatedComponent {
       long endTimeUs = data.getEndUs() == 0L ? (long)max : data.getEndUs();
       mIconsToDraw.add(new EventRenderData(data.getValueData(), data.getStartUs(), endTimeUs));
     }
+
+    int hash = Objects.hash(mData.getXRange().getMin(), max);
+    for (EventRenderData data : mIconsToDraw) {
+      hash = 31 * hash + Objects.hash(data.getKey(), data.getStartTimestamp(), data.getEndTimestamp());
+    }
+    mChanged = hash != mRenderHash;
+    mRenderHash = hash;
+  }
+
+  @Override
+  public boolean isChanged() {
+    return mChanged;
   }
 
   @Override
@@ -31,6 +31,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 
 import static com.android.tools.adtui.common.AdtUiUtils.getFittedString;
 
@@ -56,6 +57,13 @@ public class StackedEventComponent extends AnimatedComponent {
   private HashMap<EventAction<EventAction.ActivityAction, String>, EventRenderData> myActionToDrawLocationMap = new HashMap<>();
   private List<EventRenderData> myActivities = new ArrayList<>();
 
+  /**
+   * Hash of the x range and of the activities drawn in the last frame, used to tell whether the component needs to be repainted.
+   */
+  private int myRenderHash;
+
+  private boolean myChanged = true;
+
   /**
    * @param data The state chart data.
    */
@@ -110,6 +118,19 @@ public class StackedEventComponent extends AnimatedComponent {
       }
       return erd1.getAction().getStartUs() - erd2.getAction().getStartUs() >= 0 ? 1 : -1;
     });
+
+    int hash = Objects.hash(min, max);
+    for (EventRenderData data : myActivities) {
+      EventAction<EventAction.ActivityAction, String> action = data.getAction();
+      hash = 31 * hash + Objects.hash(action.getStartUs(), action.getEndUs(), action.getValueData());
+    }
+    myChanged = hash != myRenderHash;
+    myRenderHash = hash;
+  }
+
+  @Override
+  public boolean isChanged() {
+    return myChanged;
   }
 
   @Override
@@ -19,12 +19,16 @@ package com.android.tools.adtui.chart;
 import com.android.annotations.VisibleForTesting;
 import com.android.tools.adtui.AnimatedComponent;
 import com.android.tools.adtui.common.AdtUiUtils;
+import com.android.tools.adtui.common.BackgroundGeometryBuilder;
 import com.android.tools.adtui.common.datareducer.DefaultStateChartReducer;
 import com.android.tools.adtui.common.datareducer.StateChartReducer;
+import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedSeries;
 import com.android.tools.adtui.model.SeriesData;
 import com.intellij.util.containers.ImmutableList;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
@@ -34,6 +38,7 @@ import java.awt.geom.RoundRectangle2D;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * A chart component that renders series of state change events as rectangles.
@@ -59,11 +64,29 @@ public class StateChart<E extends Enum<E>> extends AnimatedComponent {
 
   private float mHeightGap;
 
+  /**
+   * Builds the rectangles of the states on a worker thread, so long series don't stall the EDT.
+   */
   @NotNull
-  private final ArrayList<RoundRectangle2D.Float> mRectangles;
+  private final BackgroundGeometryBuilder<List<Double>, StateGeometry<E>> myGeometryBuilder;
 
-  @NotNull
-  private final List<E> mValues;
+  /**
+   * The key (ranges and shape parameters) of the geometry requested in the last frame.
+   */
+  @Nullable
+  private List<Double> myRequestedKey;
+
+  /**
+   * Hash of the rectangles of the last geometry built, used to tell whether the chart needs to be repainted.
+   */
+  private long myGeometryHash = Long.MIN_VALUE;
+
+  /**
+   * Set when a geometry with different rectangles was built since the last frame. Only accessed on the EDT.
+   */
+  private boolean myGeometryChanged = true;
+
+  private boolean myChanged = true;
 
   @NotNull
   private RenderMode mRenderMode;
@@ -84,8 +107,7 @@ public class StateChart<E extends Enum<E>> extends AnimatedComponent {
   @VisibleForTesting
   public StateChart(@NotNull Map<E, Color> colors, @NotNull StateChartReducer<E> reducer) {
     mColors = colors;
-    mRectangles = new ArrayList<>();
-    mValues = new ArrayList<>();
+    myGeometryBuilder = new BackgroundGeometryBuilder<>(this::onGeometryBuilt);
     mSeriesList = new ArrayList<>();
     mRenderMode = RenderMode.BAR;
     myReducer = reducer;
@@ -128,19 +150,72 @@ public class StateChart<E extends Enum<E>> extends AnimatedComponent {
     int seriesSize = mSeriesList.size();
 
     if (seriesSize == 0) {
+      myChanged = false;
       return;
     }
 
+    // Snapshot the inputs of the rectangles on the EDT, the worker must not read the (mutable) ranges and series of the chart.
+    List<DataSeries<E>> seriesList = new ArrayList<>(seriesSize);
+    double[] mins = new double[seriesSize];
+    double[] maxs = new double[seriesSize];
+    List<Double> key = new ArrayList<>(seriesSize * 2 + 3);
+    for (int i = 0; i < seriesSize; i++) {
+      RangedSeries<E> series = mSeriesList.get(i);
+      seriesList.add(series.getDataSeries().snapshot());
+      mins[i] = series.getXRange().getMin();
+      maxs[i] = series.getXRange().getMax();
+      key.add(mins[i]);
+      key.add(maxs[i]);
+    }
+    float arcWidth = mArcWidth;
+    float arcHeight = mArcHeight;
+    float heightGap = mHeightGap;
+    key.add((double)arcWidth);
+    key.add((double)arcHeight);
+    key.add((double)heightGap);
+    myRequestedKey = key;
+    myGeometryBuilder.request(key, () -> buildGeometry(seriesList, mins, maxs, arcWidth, arcHeight, heightGap));
+
+    myChanged = myGeometryChanged;
+    myGeometryChanged = false;
+  }
+
+  @Override
+  public boolean isChanged() {
+    return myChanged;
+  }
+
+  /**
+   * Called on the EDT when a new geometry was built.
+   */
+  private void onGeometryBuilt(@NotNull StateGeometry<E> geometry) {
+    if (geometry.myHash != myGeometryHash) {
+      myGeometryHash = geometry.myHash;
+      myGeometryChanged = true;
+      repaint();
+    }
+  }
+
+  /**
+   * Builds the normalized rectangles of the states. Called on a worker thread, so it only reads its arguments.
+   */
+  @NotNull
+  private static <E> StateGeometry<E> buildGeometry(@NotNull List<DataSeries<E>> seriesList,
+                                                    @NotNull double[] mins,
+                                                    @NotNull double[] maxs,
+                                                    float arcWidth,
+                                                    float arcHeight,
+                                                    float heightGap) {
     // TODO support adding series on the fly and interpolation.
-    float height = 1f / seriesSize;
-    float gap = height * mHeightGap;
-    mValues.clear();
-
-    int seriesIndex = 0, rectCount = 0;
-    for (RangedSeries<E> data : mSeriesList) {
-      double min = data.getXRange().getMin();
-      double max = data.getXRange().getMax();
-      ImmutableList<SeriesData<E>> seriesDataList = data.getSeries();
+    float height = 1f / seriesList.size();
+    float gap = height * heightGap;
+    StateGeometry<E> geometry = new StateGeometry<>();
+
+    int seriesIndex = 0;
+    for (DataSeries<E> data : seriesList) {
+      double min = mins[seriesIndex];
+      double max = maxs[seriesIndex];
+      ImmutableList<SeriesData<E>> seriesDataList = data.getDataForXRange(new Range(min, max));
       int size = seriesDataList.size();
 
       // Construct rectangles.
@@ -157,15 +232,15 @@ public class StateChart<E extends Enum<E>> extends AnimatedComponent {
         // Don't draw if this block doesn't intersect with [min..max]
         if (i > 0 && x >= min) {
           // Draw the previous block.
-          setRectangleAndValueData(rectCount,
-                                   Math.max(min, previousX),
-                                   Math.min(max, x),
-                                   min,
-                                   max,
-                                   previousValue,
-                                   startHeight + gap * 0.5f,
-                                   height - gap);
-          rectCount++;
+          geometry.add(Math.max(min, previousX),
+                       Math.min(max, x),
+                       min,
+                       max,
+                       previousValue,
+                       startHeight + gap * 0.5f,
+                       height - gap,
+                       arcWidth,
+                       arcHeight);
         }
 
         // Start a new block.
@@ -178,23 +253,20 @@ public class StateChart<E extends Enum<E>> extends AnimatedComponent {
         }
         else if (i == size - 1) {
           // Reached the end, assumes the last data point continues till max.
-          setRectangleAndValueData(rectCount,
-                                   Math.max(min, previousX),
-                                   max,
-                                   min,
-                                   max,
-                                   previousValue,
-                                   startHeight + gap * 0.5f,
-                                   height - gap);
-          rectCount++;
+          geometry.add(Math.max(min, previousX),
+                       max,
+                       min,
+                       max,
+                       previousValue,
+                       startHeight + gap * 0.5f,
+                       height - gap,
+                       arcWidth,
+                       arcHeight);
         }
       }
       seriesIndex++;
     }
-
-    if (rectCount < mRectangles.size()) {
-      mRectangles.subList(rectCount, mRectangles.size()).clear();
-    }
+    return geometry;
   }
 
   @Override
@@ -202,14 +274,20 @@ public class StateChart<E extends Enum<E>> extends AnimatedComponent {
     g2d.setFont(getFont());
     g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-    assert mRectangles.size() == mValues.size();
+    StateGeometry<E> geometry = myRequestedKey == null ? null : myGeometryBuilder.getLatest(myRequestedKey);
+    if (geometry == null) {
+      return;
+    }
+    List<RoundRectangle2D.Float> rectangles = geometry.myRectangles;
+    List<E> values = geometry.myValues;
+    assert rectangles.size() == values.size();
 
-    List<Shape> transformedShapes = new ArrayList<>(mRectangles.size());
-    List<E> transformedValues = new ArrayList<>(mRectangles.size());
+    List<Shape> transformedShapes = new ArrayList<>(rectangles.size());
+    List<E> transformedValues = new ArrayList<>(rectangles.size());
     AffineTransform scale = AffineTransform.getScaleInstance(dim.getWidth(), dim.getHeight());
-    for (int i = 0; i < mRectangles.size(); ++i) {
-      transformedShapes.add(scale.createTransformedShape(mRectangles.get(i)));
-      transformedValues.add(mValues.get(i));
+    for (int i = 0; i < rectangles.size(); ++i) {
+      transformedShapes.add(scale.createTransformedShape(rectangles.get(i)));
+      transformedValues.add(values.get(i));
     }
     myReducer.reduce(transformedShapes, transformedValues);
     assert transformedShapes.size() == transformedValues.size();
@@ -239,34 +317,36 @@ public class StateChart<E extends Enum<E>> extends AnimatedComponent {
     }
 
     addDebugInfo("# of drawn rects: %d", transformedShapes.size());
+    addDebugInfo("%s", myGeometryBuilder);
   }
 
-  private void setRectangleAndValueData(int rectCount,
-                                        double previousX,
-                                        double currentX,
-                                        double minX,
-                                        double maxX,
-                                        E previousValue,
-                                        float rectY,
-                                        float rectHeight) {
-    RoundRectangle2D.Float rect;
-
-    //Reuse existing Rectangle objects when possible to avoid unnecessary allocations.
-    if (rectCount == mRectangles.size()) {
-      rect = new RoundRectangle2D.Float();
-      mRectangles.add(rect);
-    } else {
-      rect = mRectangles.get(rectCount);
+  /**
+   * The normalized rectangles of the states and their values.
+   */
+  private static final class StateGeometry<E> {
+    @NotNull private final List<RoundRectangle2D.Float> myRectangles = new ArrayList<>();
+    @NotNull private final List<E> myValues = new ArrayList<>();
+    private long myHash;
+
+    void add(double previousX,
+             double currentX,
+             double minX,
+             double maxX,
+             E previousValue,
+             float rectY,
+             float rectHeight,
+             float arcWidth,
+             float arcHeight) {
+      RoundRectangle2D.Float rect = new RoundRectangle2D.Float();
+      rect.setRoundRect((previousX - minX) / (maxX - minX),
+                        rectY,
+                        (currentX - previousX) / (maxX - minX),
+                        rectHeight,
+                        arcWidth,
+                        arcHeight);
+      myRectangles.add(rect);
+      myValues.add(previousValue);
+      myHash = 31 * (31 * myHash + rect.hashCode()) + Objects.hashCode(previousValue);
     }
-
-    mValues.add(previousValue);
-
-    rect.setRoundRect((previousX - minX) / (maxX - minX),
-                      rectY,
-                      (currentX - previousX) / (maxX - minX),
-                      rectHeight,
-                      mArcWidth,
-                      mArcHeight);
   }
 }
-
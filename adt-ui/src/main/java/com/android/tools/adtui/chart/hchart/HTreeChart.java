@@ -18,6 +18,7 @@ package com.android.tools.adtui.chart.hchart;
 
 import com.android.tools.adtui.AnimatedComponent;
 import com.android.tools.adtui.common.AdtUiUtils;
+import com.android.tools.adtui.common.BackgroundGeometryBuilder;
 import com.android.tools.adtui.model.HNode;
 import com.android.tools.adtui.model.Range;
 import org.jetbrains.annotations.NotNull;
@@ -27,6 +28,9 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Stack;
 
 public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListener, MouseListener {
@@ -51,12 +55,26 @@ public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListen
   private Range mXRange;
   @NotNull
   private Range mYRange;
+  /**
+   * Lays out the nodes on a worker thread, so large trees don't stall the EDT.
+   */
   @NotNull
-  private Rectangle2D.Float mRect;
+  private final BackgroundGeometryBuilder<List<Object>, HTreeGeometry<T>> mGeometryBuilder =
+    new BackgroundGeometryBuilder<>(geometry -> repaint());
+  /**
+   * The key (tree, ranges and size) of the geometry requested in the last frame.
+   */
+  @Nullable
+  private List<Object> mRequestedKey;
+
+  /**
+   * Whether the tree or the ranges changed since the last frame. A geometry built later repaints the chart by itself.
+   */
+  private boolean mChanged = true;
+  private boolean mTreeChanged;
 
   public HTreeChart() {
     mRoot = new HNode<>();
-    mRect = new Rectangle2D.Float();
     mYRange = new Range(0, 0);
     addMouseWheelListener(this);
     mOrientation = HTreeChart.Orientation.TOP_DOWN;
@@ -71,6 +89,27 @@ public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListen
 
   @Override
   protected void updateData() {
+    HNode<T> root = mRoot;
+    if (root == null || root.getChildren().size() == 0 || mXRange == null || mXRange.getLength() == 0) {
+      mChanged = mTreeChanged || mRequestedKey != null;
+      mTreeChanged = false;
+      mRequestedKey = null;
+      return;
+    }
+
+    // Snapshot the inputs of the layout on the EDT, the worker must not read the (mutable) ranges of the chart.
+    double xMin = mXRange.getMin();
+    double xMax = mXRange.getMax();
+    double yMin = mYRange.getMin();
+    int width = getWidth();
+    int height = getHeight();
+    int fontHeight = mDefaultFontMetrics.getHeight();
+    Orientation orientation = mOrientation;
+    List<Object> key = Arrays.asList(root, xMin, xMax, yMin, width, height, fontHeight, orientation);
+    mChanged = mTreeChanged || !key.equals(mRequestedKey);
+    mTreeChanged = false;
+    mRequestedKey = key;
+    mGeometryBuilder.request(key, () -> layout(root, xMin, xMax, yMin, width, height, fontHeight, orientation));
   }
 
   @Override
@@ -90,58 +129,72 @@ public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListen
       return;
     }
 
-    // Render using a LIFO Stack instead of recursion to limit the depth of the Java call
+    HTreeGeometry<T> geometry = mRequestedKey == null ? null : mGeometryBuilder.getLatest(mRequestedKey);
+    if (geometry == null) {
+      return;
+    }
+    for (int i = 0; i < geometry.mRects.size(); i++) {
+      mHRenderer.render(g, geometry.mData.get(i), geometry.mRects.get(i));
+    }
+    addDebugInfo("# of drawn nodes: %d", geometry.mRects.size());
+    addDebugInfo("%s", mGeometryBuilder);
+  }
+
+  /**
+   * Computes the position and dimension of the visible nodes. Called on a worker thread, so it only reads its arguments.
+   */
+  @NotNull
+  private static <T> HTreeGeometry<T> layout(@NotNull HNode<T> root,
+                                             double xMin,
+                                             double xMax,
+                                             double yMin,
+                                             int width,
+                                             int height,
+                                             int fontHeight,
+                                             @NotNull Orientation orientation) {
+    HTreeGeometry<T> geometry = new HTreeGeometry<>();
+    double scale = width / (xMax - xMin);
+
+    // Traverse the tree using a LIFO Stack instead of recursion to limit the depth of the Java call
     // stack.
     Stack<HNode<T>> stack = new Stack<>();
-    stack.addAll(mRoot.getChildren());
+    stack.addAll(root.getChildren());
     while (!stack.isEmpty()) {
       HNode<T> n = stack.pop();
-      renderHNode(g, n);
       stack.addAll(n.getChildren());
-    }
-  }
 
-  // This method is not thread-safe: It re-uses mRect.
-  private void renderHNode(Graphics2D g, HNode<T> n) {
-
-    // 1. Cull node to view Range.
-    if (n.getStart() > getXRange().getMax() || n.getEnd() < getXRange().getMin()) {
-      return;
-    }
+      // 1. Cull node to view Range.
+      if (n.getStart() > xMax || n.getEnd() < xMin) {
+        continue;
+      }
 
-    // 2. Clip node.
-    double leftEdge = rangeToPosition(n.getStart());
-    if (leftEdge < 0) {
-      leftEdge = 0;
-    }
-    double rightEdge = rangeToPosition(n.getEnd());
-    if (rightEdge > getWidth()) {
-      rightEdge = getWidth();
-    }
-    double width = rightEdge - leftEdge;
+      // 2. Clip node.
+      double leftEdge = (n.getStart() - xMin) * scale;
+      if (leftEdge < 0) {
+        leftEdge = 0;
+      }
+      double rightEdge = (n.getEnd() - xMin) * scale;
+      if (rightEdge > width) {
+        rightEdge = width;
+      }
 
-    // 3. Calculate node position and dimension.
-    mRect.x = (float)leftEdge;
-    mRect.y = (float)((mDefaultFontMetrics.getHeight() + BORDER_PLUS_PADDING) * n.getDepth()
-                      - getYRange().getMin());
-    mRect.width = (float)width - BORDER_PLUS_PADDING;
-    mRect.height = mDefaultFontMetrics.getHeight();
+      // 3. Calculate node position and dimension.
+      Rectangle2D.Float rect = new Rectangle2D.Float();
+      rect.x = (float)leftEdge;
+      rect.y = (float)((fontHeight + BORDER_PLUS_PADDING) * n.getDepth() - yMin);
+      rect.width = (float)(rightEdge - leftEdge) - BORDER_PLUS_PADDING;
+      rect.height = fontHeight;
 
-    if (mOrientation == HTreeChart.Orientation.BOTTOM_UP) {
-      mRect.y = (float)(getHeight() - mRect.y - mRect.getHeight());
+      if (orientation == HTreeChart.Orientation.BOTTOM_UP) {
+        rect.y = (float)(height - rect.y - rect.getHeight());
+      }
+      geometry.mRects.add(rect);
+      geometry.mData.add(n.getData());
     }
-
-    // 4. Render node
-    mHRenderer.render(g, n.getData(), mRect);
+    return geometry;
   }
 
   // This could be done with an Axis. But that seems overkill. A simple method will do for now.
-  private double rangeToPosition(double v) {
-    double translate = -getXRange().getMin();
-    double scale = this.getWidth() / (getXRange().getMax() - getXRange().getMin());
-    return (v + translate) * scale;
-  }
-
   private double positionToRange(double x) {
     return x / getWidth() * getXRange().getLength() + getXRange().getMin();
   }
@@ -153,6 +206,12 @@ public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListen
 
   public void setHTree(@Nullable HNode<T> root) {
     this.mRoot = root;
+    mTreeChanged = true;
+  }
+
+  @Override
+  public boolean isChanged() {
+    return mChanged;
   }
 
   public Range getXRange() {
@@ -263,4 +322,12 @@ public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListen
   }
 
   public enum Orientation {TOP_DOWN, BOTTOM_UP}
+
+  /**
+   * The screen space rectangles of the visible nodes, and the data to render in each of them.
+   */
+  private static final class HTreeGeometry<T> {
+    @NotNull private final List<Rectangle2D.Float> mRects = new ArrayList<>();
+    @NotNull private final List<T> mData = new ArrayList<>();
+  }
 }
\ No newline at end of file
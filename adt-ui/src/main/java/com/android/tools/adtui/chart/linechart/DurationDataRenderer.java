@@ -31,6 +31,7 @@ import java.awt.event.MouseEvent;
 import java.awt.geom.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -77,6 +78,14 @@ public final class DurationDataRenderer<E extends DurationData> implements Anima
   private Point myMousePosition;
   private boolean myClick;
 
+  /**
+   * Hash of the regions and labels computed in the last frame, used to tell whether the chart needs to be repainted.
+   */
+  private int myRenderHash;
+
+  private boolean myChanged = true;
+  private boolean myMouseChanged;
+
   public DurationDataRenderer(@NotNull Builder builder) {
     mySeries = builder.mySeries;
     myColor = builder.myColor;
@@ -165,6 +174,20 @@ public final class DurationDataRenderer<E extends DurationData> implements Anima
         clickRegion.setRect(xStart + DISPLAY_OFFSET_PERCENTAGE, attachY - DISPLAY_OFFSET_PERCENTAGE, regionWidth, regionHeight);
       }
     }
+
+    int hash = Objects.hash(myPathCache, myClickRegionCache);
+    for (JLabel label : myLabelCache) {
+      hash = 31 * hash + Objects.hashCode(label.getText());
+    }
+    // The hovered and clicked label are drawn differently
+    myChanged = hash != myRenderHash || myMouseChanged;
+    myRenderHash = hash;
+    myMouseChanged = false;
+  }
+
+  @Override
+  public boolean isChanged() {
+    return myChanged;
   }
 
   @Override
@@ -251,6 +274,7 @@ public final class DurationDataRenderer<E extends DurationData> implements Anima
   }
 
   public boolean handleMouseEvent(@NotNull MouseEvent event) {
+    myMouseChanged |= !event.getPoint().equals(myMousePosition) || myClick != event.getClickCount() > 0;
     myMousePosition = event.getPoint();
     myClick = event.getClickCount() > 0;
     if (myClickHandler == null || !myClick) {
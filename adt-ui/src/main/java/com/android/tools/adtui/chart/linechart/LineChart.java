@@ -20,14 +20,16 @@ import com.android.tools.adtui.AnimatedComponent;
 import com.android.tools.adtui.Choreographer;
 import com.android.tools.adtui.LegendRenderData;
 import com.android.tools.adtui.LineChartLegendRenderData;
+import com.android.tools.adtui.common.BackgroundGeometryBuilder;
 import com.android.tools.adtui.common.datareducer.DataReducer;
 import com.android.tools.adtui.common.formatter.BaseAxisFormatter;
+import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.LongSampleConsumer;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
-import com.android.tools.adtui.model.SeriesData;
-import com.intellij.util.containers.ImmutableList;
 import gnu.trove.TDoubleArrayList;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 
 import java.awt.*;
@@ -36,7 +38,6 @@ import java.awt.geom.Path2D;
 import java.awt.geom.PathIterator;
 import java.util.*;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
 public class LineChart extends AnimatedComponent {
 
@@ -47,12 +48,6 @@ public class LineChart extends AnimatedComponent {
   @NotNull
   private final Map<RangedContinuousSeries, LineConfig> myLinesConfig = new LinkedHashMap<>();
 
-  @NotNull
-  private final ArrayList<Path2D> myLinePaths;
-
-  @NotNull
-  private final ArrayList<LineConfig> myLinePathConfigs;
-
   @NotNull
   private final List<LineChartCustomRenderer> myCustomRenderers = new ArrayList<>();
 
@@ -70,9 +65,38 @@ public class LineChart extends AnimatedComponent {
    */
   private boolean myFirstUpdate = true;
 
+  /**
+   * Reused across frames so reading the series doesn't allocate per sample.
+   */
+  @NotNull
+  private final MaxValueFinder myMaxValueFinder = new MaxValueFinder();
+
+  /**
+   * Builds the normalized paths of the lines on a worker thread, so long series don't stall the EDT.
+   */
+  @NotNull
+  private final BackgroundGeometryBuilder<List<Double>, LineGeometry> myGeometryBuilder =
+    new BackgroundGeometryBuilder<>(this::onGeometryBuilt);
+
+  /**
+   * The key (ranges and width) of the geometry requested in the last frame.
+   */
+  @Nullable
+  private List<Double> myRequestedKey;
+
+  /**
+   * Hash of the points of the last geometry built, used to tell whether the chart needs to be repainted.
+   */
+  private long myPathsHash = Long.MIN_VALUE;
+
+  /**
+   * Set when a geometry with different points was built since the last frame. Only accessed on the EDT.
+   */
+  private boolean myGeometryChanged = true;
+
+  private boolean myChanged = true;
+
   public LineChart() {
-    myLinePaths = new ArrayList<>();
-    myLinePathConfigs = new ArrayList<>();
     // TODO: Replace with myReducer = new LineChartReducer
     // Having a real reducer will be important for the final release, but we don't want to risk
     // unintentional side effects to distract us as we prepare to meet an initial milestone.
@@ -148,21 +172,22 @@ public class LineChart extends AnimatedComponent {
   @Override
   protected void updateData() {
     Map<Range, Double> max = new HashMap<>();
-    // TODO Handle stacked configs
-    for (RangedContinuousSeries ranged : myLinesConfig.keySet()) {
-      Range range = ranged.getYRange();
-      double yMax = Double.MIN_VALUE;
-
-      ImmutableList<SeriesData<Long>> seriesList = ranged.getSeries();
-      for (int i = 0; i < seriesList.size(); i++) {
-        double value = seriesList.get(i).value;
-        if (yMax < value) {
-          yMax = value;
-        }
+    LineGeometry geometry = myGeometryBuilder.getLatestCompleted();
+    if (myFirstUpdate || geometry == null) {
+      // TODO Handle stacked configs
+      for (RangedContinuousSeries ranged : myLinesConfig.keySet()) {
+        Range range = ranged.getYRange();
+        myMaxValueFinder.reset();
+        ranged.forEachInRange(myMaxValueFinder);
+        double yMax = myMaxValueFinder.getMax();
+
+        Double m = max.get(range);
+        max.put(range, m == null ? yMax : Math.max(yMax, m));
       }
-
-      Double m = max.get(range);
-      max.put(range, m == null ? yMax : Math.max(yMax, m));
+    }
+    else {
+      // Afterwards, use the maximum found while building the last geometry rather than reading all the series again on the EDT.
+      max.putAll(geometry.myMaxValues);
     }
 
     for (Map.Entry<Range, Double> entry : max.entrySet()) {
@@ -214,69 +239,77 @@ public class LineChart extends AnimatedComponent {
 
   @Override
   public void postAnimate() {
-    long duration = System.nanoTime();
-    int p = 0;
+    // Snapshot the inputs of the paths on the EDT, the worker must not read the (mutable) ranges and series of the chart.
+    int width = getWidth();
+    List<LineSnapshot> snapshots = new ArrayList<>(myLinesConfig.size());
+    List<Double> key = new ArrayList<>(myLinesConfig.size() * 4 + 1);
+    for (Map.Entry<RangedContinuousSeries, LineConfig> lineConfig : myLinesConfig.entrySet()) {
+      LineSnapshot snapshot = new LineSnapshot(lineConfig.getKey(), lineConfig.getValue());
+      snapshots.add(snapshot);
+      key.add(snapshot.myXRange.getMin());
+      key.add(snapshot.myXRange.getMax());
+      key.add(snapshot.myYMin);
+      key.add(snapshot.myYMax);
+    }
+    key.add((double)width);
+    myRequestedKey = key;
+    myGeometryBuilder.request(key, () -> buildGeometry(snapshots, width));
+
+    myChanged = myGeometryChanged;
+    myGeometryChanged = false;
+  }
+
+  @Override
+  public boolean isChanged() {
+    return myChanged;
+  }
+
+  /**
+   * Called on the EDT when a new geometry was built.
+   */
+  private void onGeometryBuilt(@NotNull LineGeometry geometry) {
+    if (geometry.myHash != myPathsHash) {
+      myPathsHash = geometry.myHash;
+      myGeometryChanged = true;
+      repaint();
+    }
+  }
+
+  /**
+   * Builds the normalized paths of the lines. Called on a worker thread, so it only reads the snapshots.
+   */
+  @NotNull
+  private static LineGeometry buildGeometry(@NotNull List<LineSnapshot> snapshots, int width) {
+    LinePathBuilder pathBuilder = new LinePathBuilder();
+    Map<Range, Double> maxValues = new HashMap<>();
+    int pointCount = 0;
 
     // Store the Y coordinates of the last stacked series to use them to increment the Y values
     // of the current stacked series.
     TDoubleArrayList lastStackedSeriesY = null;
 
-    Deque<Path2D> orderedPaths = new ArrayDeque<>(myLinesConfig.size());
-    Deque<LineConfig> orderedConfigs = new ArrayDeque<>(myLinesConfig.size());
+    Deque<Path2D> orderedPaths = new ArrayDeque<>(snapshots.size());
+    Deque<LineConfig> orderedConfigs = new ArrayDeque<>(snapshots.size());
+    long pathsHash = snapshots.size();
 
-    for (Map.Entry<RangedContinuousSeries, LineConfig> lineConfig : myLinesConfig.entrySet()) {
-      final RangedContinuousSeries ranged = lineConfig.getKey();
-      final LineConfig config = lineConfig.getValue();
+    for (LineSnapshot snapshot : snapshots) {
+      LineConfig config = snapshot.myConfig;
       // Stores the y coordinates of the current series in case it's used as a stacked series
       final TDoubleArrayList currentSeriesY = new TDoubleArrayList();
 
       Path2D path = new Path2D.Float();
-
-      double xMin = ranged.getXRange().getMin();
-      double xMax = ranged.getXRange().getMax();
-      double yMin = ranged.getYRange().getMin();
-      double yMax = ranged.getYRange().getMax();
-
-      // X coordinate of the first point
-      double firstXd = 0f;
-
-      List<SeriesData<Long>> seriesList = ranged.getSeries();
-      for (int i = 0; i < seriesList.size(); i++) {
-        // TODO: refactor to allow different types (e.g. double)
-        SeriesData<Long> seriesData = seriesList.get(i);
-        long currX = seriesData.x;
-        long currY = seriesData.value;
-        double xd = (currX - xMin) / (xMax - xMin);
-        double yd = (currY - yMin) / (yMax - yMin);
-
-        // If the current series is stacked, increment its yd by the yd of the last stacked
-        // series if it's not null.
-        // As the series are constantly populated, the current series might have one more
-        // point than the last stacked series (meaning that the last one was populated in a
-        // prior iteration). In this case, yd of the current series shouldn't change.
-        if (config.isStacked() && lastStackedSeriesY != null &&
-            i < lastStackedSeriesY.size()) {
-          yd += lastStackedSeriesY.get(i);
-        }
-        currentSeriesY.add(yd);
-        // Swing's (0, 0) coordinate is in top-left. As we use bottom-left (0, 0), we need to adjust the y coordinate.
-        float adjustedYd = 1 - (float)yd;
-
-        if (i == 0) {
-          path.moveTo(xd, adjustedYd);
-          firstXd = xd;
-        }
-        else {
-          // If the chart is stepped, a horizontal line should be drawn from the current
-          // point (e.g. (x0, y0)) to the destination's X value (e.g. (x1, y0)) before
-          // drawing a line to the destination point itself (e.g. (x1, y1)).
-          if (config.isStepped()) {
-            float y = (float)path.getCurrentPoint().getY();
-            path.lineTo(xd, y);
-          }
-          path.lineTo(xd, adjustedYd);
-        }
-      }
+      pathBuilder.start(path, config, snapshot, lastStackedSeriesY, currentSeriesY);
+      // Series that keep a level of detail pyramid only pass the min and max samples per pixel column. Stacked lines add up
+      // their samples by index, so they are read unreduced.
+      RangedContinuousSeries.forEachInRange(snapshot.myData, snapshot.myXRange, config.isStacked() ? 0 : width, pathBuilder);
+      double firstXd = pathBuilder.getFirstXd();
+      pathsHash = 31 * pathsHash + pathBuilder.getHash();
+      pointCount += pathBuilder.getPointCount();
+
+      // The reduced reads keep the extremes, so this is the same maximum as reading all the samples.
+      Range yRange = snapshot.mySeries.getYRange();
+      Double max = maxValues.get(yRange);
+      maxValues.put(yRange, max == null ? pathBuilder.getMaxY() : Math.max(max, pathBuilder.getMaxY()));
 
       if (config.isFilled() && path.getCurrentPoint() != null) {
         // If the chart is filled, but not stacked, draw a line from the last point to X
@@ -299,36 +332,31 @@ public class LineChart extends AnimatedComponent {
         orderedPaths.addLast(path);
         orderedConfigs.addLast(config);
       }
-
-      addDebugInfo("Range[%d] Max: %.2f", p, xMax);
-      p++;
     }
 
-    myLinePaths.clear();
-    myLinePaths.addAll(orderedPaths);
-
-    myLinePathConfigs.clear();
-    myLinePathConfigs.addAll(orderedConfigs);
-
-    addDebugInfo("postAnimate time: %d ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - duration));
+    return new LineGeometry(new ArrayList<>(orderedPaths), new ArrayList<>(orderedConfigs), maxValues, pathsHash, pointCount);
   }
 
   @Override
   protected void draw(Graphics2D g2d, Dimension dim) {
-    if (myLinePaths.size() != myLinesConfig.size()) {
-      // Early return if the cached paths have not been sync'd with the configs.
-      // e.g. updateData/postAnimate has not been invoked before this draw call.
+    LineGeometry geometry = myRequestedKey == null ? null : myGeometryBuilder.getLatest(myRequestedKey);
+    if (geometry == null) {
+      // Early return if no paths were built yet, e.g. updateData/postAnimate has not been invoked before this draw call.
       return;
     }
+    List<Path2D> linePaths = geometry.myPaths;
+    List<LineConfig> linePathConfigs = geometry.myConfigs;
+    addDebugInfo("# of points: %d", geometry.myPointCount);
+    addDebugInfo("%s", myGeometryBuilder);
 
     g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
     AffineTransform scale = AffineTransform.getScaleInstance(dim.getWidth(), dim.getHeight());
 
     // Cache the transformed line paths for reuse below.
-    List<Path2D> transformedPaths = new ArrayList<>(myLinePaths.size());
-    for (int i = 0; i < myLinePaths.size(); ++i) {
-      Path2D scaledPath = new Path2D.Float(myLinePaths.get(i), scale);
-      scaledPath = myReducer.reduce(scaledPath, myLinePathConfigs.get(i));
+    List<Path2D> transformedPaths = new ArrayList<>(linePaths.size());
+    for (int i = 0; i < linePaths.size(); ++i) {
+      Path2D scaledPath = new Path2D.Float(linePaths.get(i), scale);
+      scaledPath = myReducer.reduce(scaledPath, linePathConfigs.get(i));
       transformedPaths.add(scaledPath);
 
       if (isDrawDebugInfo()) {
@@ -343,10 +371,10 @@ public class LineChart extends AnimatedComponent {
     }
 
     // 1st pass - draw all the lines in the background.
-    drawLines(g2d, transformedPaths, myLinePathConfigs, false);
+    drawLines(g2d, transformedPaths, linePathConfigs, false);
 
     // 2nd pass - call each custom renderer instances to redraw any regions/lines as needed.
-    myCustomRenderers.forEach(renderer -> renderer.renderLines(this, g2d, transformedPaths, myLinePathConfigs));
+    myCustomRenderers.forEach(renderer -> renderer.renderLines(this, g2d, transformedPaths, linePathConfigs));
   }
 
   public static void drawLines(Graphics2D g2d, List<Path2D> transformedPaths, List<LineConfig> configs, boolean grayScale) {
@@ -374,5 +402,164 @@ public class LineChart extends AnimatedComponent {
       }
     }
   }
-}
 
+  private static final class MaxValueFinder implements LongSampleConsumer {
+    private double myMax;
+
+    void reset() {
+      myMax = Double.MIN_VALUE;
+    }
+
+    double getMax() {
+      return myMax;
+    }
+
+    @Override
+    public void accept(long x, long y) {
+      if (myMax < y) {
+        myMax = y;
+      }
+    }
+  }
+
+  /**
+   * The inputs of the path of a line, captured on the EDT.
+   */
+  private static final class LineSnapshot {
+    @NotNull private final RangedContinuousSeries mySeries;
+    @NotNull private final DataSeries<Long> myData;
+    @NotNull private final LineConfig myConfig;
+    @NotNull private final Range myXRange;
+    private final double myYMin;
+    private final double myYMax;
+
+    LineSnapshot(@NotNull RangedContinuousSeries series, @NotNull LineConfig config) {
+      mySeries = series;
+      myData = series.getDataSeries().snapshot();
+      myConfig = config;
+      myXRange = new Range(series.getXRange().getMin(), series.getXRange().getMax());
+      myYMin = series.getYRange().getMin();
+      myYMax = series.getYRange().getMax();
+    }
+  }
+
+  /**
+   * The normalized paths of the lines, in drawing order, built for a {@link LineSnapshot} of each line.
+   */
+  private static final class LineGeometry {
+    @NotNull private final List<Path2D> myPaths;
+    @NotNull private final List<LineConfig> myConfigs;
+    /**
+     * Maximum sample value of the lines in the x range, per y range.
+     */
+    @NotNull private final Map<Range, Double> myMaxValues;
+    private final long myHash;
+    private final int myPointCount;
+
+    LineGeometry(@NotNull List<Path2D> paths,
+                 @NotNull List<LineConfig> configs,
+                 @NotNull Map<Range, Double> maxValues,
+                 long hash,
+                 int pointCount) {
+      myPaths = paths;
+      myConfigs = configs;
+      myMaxValues = maxValues;
+      myHash = hash;
+      myPointCount = pointCount;
+    }
+  }
+
+  /**
+   * Appends the samples of a series to a normalized {@link Path2D}, i.e. with x and y in [0, 1].
+   */
+  private static final class LinePathBuilder implements LongSampleConsumer {
+    private Path2D myPath;
+    private LineConfig myConfig;
+    private TDoubleArrayList myLastStackedSeriesY;
+    private TDoubleArrayList myCurrentSeriesY;
+    private double myXMin;
+    private double myXMax;
+    private double myYMin;
+    private double myYMax;
+    private int myIndex;
+    private long myHash;
+    private double myMaxY;
+
+    // X coordinate of the first point
+    private double myFirstXd;
+
+    void start(@NotNull Path2D path,
+               @NotNull LineConfig config,
+               @NotNull LineSnapshot snapshot,
+               @Nullable TDoubleArrayList lastStackedSeriesY,
+               @NotNull TDoubleArrayList currentSeriesY) {
+      myPath = path;
+      myConfig = config;
+      myLastStackedSeriesY = lastStackedSeriesY;
+      myCurrentSeriesY = currentSeriesY;
+      myXMin = snapshot.myXRange.getMin();
+      myXMax = snapshot.myXRange.getMax();
+      myYMin = snapshot.myYMin;
+      myYMax = snapshot.myYMax;
+      myIndex = 0;
+      myHash = 0;
+      myMaxY = Double.MIN_VALUE;
+      myFirstXd = 0f;
+    }
+
+    double getFirstXd() {
+      return myFirstXd;
+    }
+
+    int getPointCount() {
+      return myIndex;
+    }
+
+    long getHash() {
+      return myHash;
+    }
+
+    double getMaxY() {
+      return myMaxY;
+    }
+
+    @Override
+    public void accept(long currX, long currY) {
+      if (myMaxY < currY) {
+        myMaxY = currY;
+      }
+      double xd = (currX - myXMin) / (myXMax - myXMin);
+      double yd = (currY - myYMin) / (myYMax - myYMin);
+
+      // If the current series is stacked, increment its yd by the yd of the last stacked
+      // series if it's not null.
+      // As the series are constantly populated, the current series might have one more
+      // point than the last stacked series (meaning that the last one was populated in a
+      // prior iteration). In this case, yd of the current series shouldn't change.
+      if (myConfig.isStacked() && myLastStackedSeriesY != null &&
+          myIndex < myLastStackedSeriesY.size()) {
+        yd += myLastStackedSeriesY.get(myIndex);
+      }
+      myCurrentSeriesY.add(yd);
+      // Swing's (0, 0) coordinate is in top-left. As we use bottom-left (0, 0), we need to adjust the y coordinate.
+      float adjustedYd = 1 - (float)yd;
+      myHash = 31 * (31 * myHash + Double.hashCode(xd)) + Float.hashCode(adjustedYd);
+
+      if (myIndex == 0) {
+        myPath.moveTo(xd, adjustedYd);
+        myFirstXd = xd;
+      }
+      else {
+        // If the chart is stepped, a horizontal line should be drawn from the current
+        // point (e.g. (x0, y0)) to the destination's X value (e.g. (x1, y0)) before
+        // drawing a line to the destination point itself (e.g. (x1, y1)).
+        if (myConfig.isStepped()) {
+          float y = (float)myPath.getCurrentPoint().getY();
+          myPath.lineTo(xd, y);
+        }
+        myPath.lineTo(xd, adjustedYd);
+      }
+      myIndex++;
+    }
+  }
+}
@@ -89,6 +89,14 @@ public final class OverlayComponent extends AnimatedComponent {
     // No-op - each DurationDataRenderer is supposed to animate on their own.
   }
 
+  /**
+   * The {@link DurationDataRenderer}s report the changes of what the overlay draws.
+   */
+  @Override
+  public boolean isChanged() {
+    return false;
+  }
+
   @Override
   protected void draw(Graphics2D g, Dimension size) {
     g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
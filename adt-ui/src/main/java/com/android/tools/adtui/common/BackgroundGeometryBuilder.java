@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.common;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builds the geometry of a chart (e.g. paths or rectangles in normalized or screen space) on a background thread, so the EDT only
+ * draws the latest completed result.
+ *
+ * Every frame, the chart {@link #request}s geometry for a key describing its inputs (e.g. its ranges and size), passing a task that
+ * must only read snapshots of those inputs. Requests that are still waiting when a newer one arrives are dropped, so at most one
+ * build per chart runs at a time and the worker never falls behind. When a build completes, the result consumer is called on the
+ * EDT, where the chart typically repaints itself. Painting never waits for a build: until the first one completes, there is nothing
+ * to draw.
+ *
+ * The counters tell how many requests were dropped, how many builds failed, and how many frames were drawn with geometry built for
+ * an older key than the one last requested.
+ *
+ * In headless mode (e.g. in tests), there is no UI to keep responsive, so the geometry is built synchronously when requested and
+ * every paint shows the geometry of the last request.
+ */
+public final class BackgroundGeometryBuilder<K, G> {
+  private static final Logger LOG = Logger.getLogger(BackgroundGeometryBuilder.class.getName());
+
+  private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+  private static ExecutorService ourExecutor;
+
+  @NotNull private final Executor myExecutor;
+  @NotNull private final Consumer<G> myResultConsumer;
+
+  private final Object myLock = new Object();
+  @Nullable private Request<K, G> myPendingRequest;
+  private boolean myWorkerScheduled;
+  @Nullable private volatile Result<K, G> myLatestResult;
+
+  private final LongAdder myRequestCount = new LongAdder();
+  private final LongAdder myDroppedRequestCount = new LongAdder();
+  private final LongAdder myFailedBuildCount = new LongAdder();
+  private final LongAdder myStaleFrameCount = new LongAdder();
+
+  /**
+   * @param resultConsumer called on the EDT with each completed geometry.
+   */
+  public BackgroundGeometryBuilder(@NotNull Consumer<G> resultConsumer) {
+    this(GraphicsEnvironment.isHeadless() ? DIRECT_EXECUTOR : getSharedExecutor(), resultConsumer);
+  }
+
+  /**
+   * @param executor runs the builds. The result consumer is called directly, rather than later on the EDT, when builds are run by
+   *                 {@link #request}'s caller.
+   */
+  public BackgroundGeometryBuilder(@NotNull Executor executor, @NotNull Consumer<G> resultConsumer) {
+    myExecutor = executor;
+    myResultConsumer = resultConsumer;
+  }
+
+  /**
+   * Schedules building the geometry for the key, replacing the request that is still waiting, if any.
+   */
+  public void request(@NotNull K key, @NotNull Supplier<G> task) {
+    myRequestCount.increment();
+    boolean schedule;
+    synchronized (myLock) {
+      if (myPendingRequest != null) {
+        myDroppedRequestCount.increment();
+      }
+      myPendingRequest = new Request<>(key, task);
+      schedule = !myWorkerScheduled;
+      myWorkerScheduled = true;
+    }
+    if (schedule) {
+      myExecutor.execute(this::buildPendingRequests);
+    }
+  }
+
+  /**
+   * Returns the latest completed geometry, which may have been built for an older key than requestedKey, or null if nothing was built
+   * yet. The result consumer is called when the requested geometry is built.
+   */
+  @Nullable
+  public G getLatest(@NotNull K requestedKey) {
+    Result<K, G> result = myLatestResult;
+    if (result == null) {
+      return null;
+    }
+    if (!result.myKey.equals(requestedKey)) {
+      myStaleFrameCount.increment();
+    }
+    return result.myGeometry;
+  }
+
+  /**
+   * Returns the latest completed geometry without counting stale frames, e.g. to read values computed along with it.
+   */
+  @Nullable
+  public G getLatestCompleted() {
+    Result<K, G> result = myLatestResult;
+    return result == null ? null : result.myGeometry;
+  }
+
+  public long getRequestCount() {
+    return myRequestCount.sum();
+  }
+
+  public long getDroppedRequestCount() {
+    return myDroppedRequestCount.sum();
+  }
+
+  public long getFailedBuildCount() {
+    return myFailedBuildCount.sum();
+  }
+
+  public long getStaleFrameCount() {
+    return myStaleFrameCount.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Geometry requests: %d, dropped: %d, failed: %d, stale frames: %d", getRequestCount(),
+                         getDroppedRequestCount(), getFailedBuildCount(), getStaleFrameCount());
+  }
+
+  private void buildPendingRequests() {
+    while (true) {
+      Request<K, G> request;
+      synchronized (myLock) {
+        request = myPendingRequest;
+        myPendingRequest = null;
+        if (request == null) {
+          myWorkerScheduled = false;
+          return;
+        }
+      }
+      build(request, myExecutor != DIRECT_EXECUTOR);
+    }
+  }
+
+  private void build(@NotNull Request<K, G> request, boolean notifyLater) {
+    G geometry;
+    try {
+      geometry = request.myTask.get();
+    }
+    catch (RuntimeException e) {
+      // Keep drawing the previous geometry, the next frame requests it again. A build that keeps failing would do so every frame, so
+      // only the first failure is logged as a warning.
+      myFailedBuildCount.increment();
+      LOG.log(myFailedBuildCount.sum() == 1 ? Level.WARNING : Level.FINE, "Unable to build chart geometry for " + request.myKey, e);
+      return;
+    }
+    // Only one build runs at a time, so this is the geometry of the latest request built so far.
+    myLatestResult = new Result<>(request.myKey, geometry);
+    if (notifyLater) {
+      SwingUtilities.invokeLater(() -> myResultConsumer.accept(geometry));
+    }
+    else {
+      myResultConsumer.accept(geometry);
+    }
+  }
+
+  @NotNull
+  private static synchronized ExecutorService getSharedExecutor() {
+    if (ourExecutor == null) {
+      AtomicInteger threadCount = new AtomicInteger();
+      int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+      ourExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+        Thread thread = new Thread(runnable, "Chart Geometry Builder " + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+      });
+    }
+    return ourExecutor;
+  }
+
+  private static final class Request<K, G> {
+    @NotNull private final K myKey;
+    @NotNull private final Supplier<G> myTask;
+
+    private Request(@NotNull K key, @NotNull Supplier<G> task) {
+      myKey = key;
+      myTask = task;
+    }
+  }
+
+  private static final class Result<K, G> {
+    @NotNull private final K myKey;
+    private final G myGeometry;
+
+    private Result(@NotNull K key, G geometry) {
+      myKey = key;
+      myGeometry = geometry;
+    }
+  }
+}
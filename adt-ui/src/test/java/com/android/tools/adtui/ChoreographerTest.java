@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui;
+
+import com.android.tools.adtui.chart.StateChart;
+import com.android.tools.adtui.model.DefaultDataSeries;
+import com.android.tools.adtui.model.Range;
+import com.android.tools.adtui.model.RangedSeries;
+import org.junit.Test;
+
+import javax.swing.*;
+import java.util.EnumMap;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class ChoreographerTest {
+
+  @Test
+  public void testFrameRateDropsWhileIdle() throws Exception {
+    Choreographer choreographer = new Choreographer(50, new JPanel());
+    choreographer.setUpdate(false);
+    AnimatedRange range = new AnimatedRange(0, 100);
+    choreographer.register(range);
+
+    for (int i = 0; i < 100; i++) {
+      choreographer.step();
+    }
+    assertThat(choreographer.getFrameDelayMs()).isGreaterThan(20);
+
+    // A change in any animatable restores the full frame rate.
+    range.setMax(200);
+    choreographer.step();
+    assertThat(choreographer.getFrameDelayMs()).isEqualTo(20);
+    choreographer.stop();
+  }
+
+  @Test
+  public void testAnimatablesChangedByDefault() throws Exception {
+    Choreographer choreographer = new Choreographer(50, new JPanel());
+    choreographer.setUpdate(false);
+    choreographer.register(frameLength -> {
+    });
+
+    for (int i = 0; i < 100; i++) {
+      choreographer.step();
+    }
+    assertThat(choreographer.getFrameDelayMs()).isEqualTo(20);
+    choreographer.stop();
+  }
+
+  @Test
+  public void testFrameRateDropsWhileChartDataIsUnchanged() throws Exception {
+    Choreographer choreographer = new Choreographer(50, new JPanel());
+    choreographer.setUpdate(false);
+    DefaultDataSeries<TestState> series = new DefaultDataSeries<>();
+    series.add(0, TestState.ON);
+    series.add(50, TestState.OFF);
+    StateChart<TestState> chart = new StateChart<>(new EnumMap<>(TestState.class));
+    chart.addSeries(new RangedSeries<>(new Range(0, 100), series));
+    choreographer.register(chart);
+
+    for (int i = 0; i < 100; i++) {
+      choreographer.step();
+    }
+    assertThat(choreographer.getFrameDelayMs()).isGreaterThan(20);
+
+    // New data in the visible range changes the rectangles of the chart.
+    series.add(75, TestState.ON);
+    choreographer.step();
+    assertThat(choreographer.getFrameDelayMs()).isEqualTo(20);
+    choreographer.stop();
+  }
+
+  private enum TestState {
+    ON, OFF
+  }
+}
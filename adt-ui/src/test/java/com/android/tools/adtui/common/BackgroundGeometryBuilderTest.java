@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.common;
+
+import org.junit.Test;
+
+import javax.swing.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class BackgroundGeometryBuilderTest {
+
+  @Test
+  public void testWaitingRequestsAreReplaced() throws Exception {
+    Queue<Runnable> tasks = new ArrayDeque<>();
+    List<String> results = new ArrayList<>();
+    BackgroundGeometryBuilder<Integer, String> builder = new BackgroundGeometryBuilder<>(tasks::add, results::add);
+
+    builder.request(1, () -> "one");
+    builder.request(2, () -> "two");
+    builder.request(3, () -> "three");
+    // Painting doesn't wait for the first build.
+    assertThat(builder.getLatest(3)).isNull();
+    assertThat(builder.getDroppedRequestCount()).isEqualTo(2L);
+
+    // The worker scheduled by the first request only builds the latest one.
+    assertThat(tasks).hasSize(1);
+    tasks.poll().run();
+    // The result consumer is called on the EDT.
+    SwingUtilities.invokeAndWait(() -> {});
+    assertThat(results).containsExactly("three");
+    assertThat(builder.getLatest(3)).isEqualTo("three");
+    assertThat(builder.getStaleFrameCount()).isEqualTo(0L);
+  }
+
+  @Test
+  public void testStaleFramesAreCounted() throws Exception {
+    Queue<Runnable> tasks = new ArrayDeque<>();
+    BackgroundGeometryBuilder<Integer, String> builder = new BackgroundGeometryBuilder<>(tasks::add, geometry -> {});
+
+    builder.request(1, () -> "one");
+    tasks.poll().run();
+    assertThat(builder.getLatest(1)).isEqualTo("one");
+
+    // Until the worker runs, the previous geometry is drawn.
+    builder.request(2, () -> "two");
+    assertThat(builder.getLatest(2)).isEqualTo("one");
+    assertThat(builder.getStaleFrameCount()).isEqualTo(1L);
+    assertThat(builder.getLatestCompleted()).isEqualTo("one");
+  }
+
+  @Test
+  public void testFailedBuildKeepsPreviousGeometry() throws Exception {
+    BackgroundGeometryBuilder<Integer, String> builder = new BackgroundGeometryBuilder<>(Runnable::run, geometry -> {});
+    builder.request(1, () -> "one");
+    builder.request(2, () -> {
+      throw new IndexOutOfBoundsException();
+    });
+    assertThat(builder.getLatest(2)).isEqualTo("one");
+    assertThat(builder.getFailedBuildCount()).isEqualTo(1L);
+  }
+}
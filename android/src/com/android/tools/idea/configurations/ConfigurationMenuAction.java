@@ -24,9 +24,11 @@ import com.android.resources.ResourceFolderType;
 import com.android.resources.ScreenOrientation;
 import com.android.resources.ScreenSize;
 import com.android.sdklib.IAndroidTarget;
+import com.android.sdklib.devices.Device;
 import com.android.tools.idea.actions.OverrideResourceAction;
 import com.android.tools.idea.rendering.RenderService;
 import com.android.tools.idea.res.ResourceHelper;
+import com.android.tools.idea.rendering.multi.PreviewBatchRenderer;
 import com.android.tools.idea.rendering.multi.RenderPreviewMode;
 import com.android.tools.idea.ui.designer.EditorDesignSurface;
 import com.intellij.icons.AllIcons;
@@ -34,16 +36,30 @@ import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.DefaultActionGroup;
 import com.intellij.openapi.actionSystem.Presentation;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.fileEditor.OpenFileDescriptor;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.popup.JBPopup;
+import com.intellij.openapi.ui.popup.JBPopupFactory;
+import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.ui.IdeBorderFactory;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.util.ui.JBUI;
 import icons.AndroidIcons;
+import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import javax.swing.*;
+import java.awt.*;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import static com.android.SdkConstants.FD_RES_LAYOUT;
 
@@ -211,7 +227,7 @@ public class ConfigurationMenuAction extends FlatComboAction {
   }
 
   static void addScreenSizeAction(@NotNull EditorDesignSurface context, @NotNull DefaultActionGroup group) {
-    boolean enabled = false;
+    boolean enabled = true;
     group.add(new PreviewAction(context, "Preview All Screen Sizes", ACTION_PREVIEW_MODE, RenderPreviewMode.SCREENS, enabled));
   }
 
@@ -224,6 +240,9 @@ public class ConfigurationMenuAction extends FlatComboAction {
   private static final int ACTION_DELETE_ALL = 2;
   private static final int ACTION_PREVIEW_MODE = 3;
 
+  private static final int PREVIEW_THUMBNAIL_SIZE = 200;
+  private static final int PREVIEW_COLUMNS = 4;
+
   private static class PreviewAction extends AnAction {
     private final int myAction;
     private final RenderPreviewMode myMode;
@@ -250,8 +269,80 @@ public class ConfigurationMenuAction extends FlatComboAction {
 
     @Override
     public void actionPerformed(AnActionEvent e) {
-      //mySurface.updateLayout();
-      //mySurface.zoomFit(true /*onlyZoomOut*/, false /*allowZoomIn*/);
+      if (myMode == null) {
+        return;
+      }
+      RenderPreviewMode.setCurrent(myMode);
+      if (myMode == RenderPreviewMode.LOCALES || myMode == RenderPreviewMode.SCREENS || myMode == RenderPreviewMode.API_LEVELS) {
+        showBatchPreviews(mySurface, myMode);
+      }
+      mySurface.requestRender();
+    }
+  }
+
+  /**
+   * Renders the configurations previewed by the given mode in parallel with a {@link PreviewBatchRenderer}, and shows their thumbnails
+   * in a popup as they are rendered. Closing the popup cancels the renders which haven't started yet.
+   */
+  private static void showBatchPreviews(@NotNull EditorDesignSurface surface, @NotNull RenderPreviewMode mode) {
+    Configuration configuration = surface.getConfiguration();
+    if (configuration == null || configuration.getFile() == null) {
+      return;
+    }
+    AndroidFacet facet = AndroidFacet.getInstance(configuration.getModule());
+    PsiFile file = PsiManager.getInstance(configuration.getModule().getProject()).findFile(configuration.getFile());
+    if (facet == null || !(file instanceof XmlFile)) {
+      return;
+    }
+    List<Configuration> configurations = PreviewBatchRenderer.createConfigurations(configuration, mode);
+    if (configurations.isEmpty()) {
+      return;
+    }
+
+    JPanel thumbnails = new JPanel(new GridLayout(0, PREVIEW_COLUMNS, JBUI.scale(8), JBUI.scale(8)));
+    thumbnails.setBorder(IdeBorderFactory.createEmptyBorder(8));
+    JBScrollPane scrollPane = new JBScrollPane(thumbnails);
+    scrollPane.setPreferredSize(JBUI.size(PREVIEW_COLUMNS * (PREVIEW_THUMBNAIL_SIZE + 16), 2 * (PREVIEW_THUMBNAIL_SIZE + 40)));
+    JBPopup popup = JBPopupFactory.getInstance().createComponentPopupBuilder(scrollPane, null)
+      .setTitle(String.format("Previews of %1$s (%2$d)", file.getName(), configurations.size()))
+      .setResizable(true)
+      .setMovable(true)
+      .setCancelOnClickOutside(true)
+      .createPopup();
+
+    Future<PreviewBatchRenderer.Stats> batch = new PreviewBatchRenderer(facet, (XmlFile)file).render(
+      configurations, PREVIEW_THUMBNAIL_SIZE, (previewConfiguration, thumbnail, logger) -> {
+        String label = getPreviewLabel(previewConfiguration, mode);
+        ApplicationManager.getApplication().invokeLater(() -> {
+          if (popup.isDisposed()) {
+            return;
+          }
+          JLabel preview = thumbnail != null ? new JLabel(label, new ImageIcon(thumbnail), SwingConstants.CENTER)
+                                             : new JLabel(label + " (render failed)", SwingConstants.CENTER);
+          preview.setVerticalTextPosition(SwingConstants.BOTTOM);
+          preview.setHorizontalTextPosition(SwingConstants.CENTER);
+          thumbnails.add(preview);
+          thumbnails.revalidate();
+          thumbnails.repaint();
+        });
+      });
+    Disposer.register(popup, () -> batch.cancel(true));
+    popup.showInCenterOf(surface);
+  }
+
+  @NotNull
+  private static String getPreviewLabel(@NotNull Configuration configuration, @NotNull RenderPreviewMode mode) {
+    switch (mode) {
+      case LOCALES:
+        return LocaleMenuAction.getLocaleLabel(configuration.getLocale(), false);
+      case SCREENS:
+        Device device = configuration.getDevice();
+        return device != null ? device.getDisplayName() : "";
+      case API_LEVELS:
+        IAndroidTarget target = configuration.getTarget();
+        return target != null ? "API " + target.getVersion().getFeatureLevel() : "";
+      default:
+        return "";
     }
   }
 
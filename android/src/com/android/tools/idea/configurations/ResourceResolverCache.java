@@ -46,7 +46,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static com.android.SdkConstants.*;
 
@@ -74,9 +77,21 @@ public class ResourceResolverCache {
    */
   private final Map<String, Map<ResourceType, ResourceValueMap>> myFrameworkResourceMap;
 
+  /**
+   * Resource types of the configured app resources which changed since they were computed, by configuration key. Edits usually only
+   * affect a single resource type, so only the values of that type are configured again, see {@link #invalidateChangedTypes}. The
+   * resolvers of a configuration are only dropped if the values configured again differ, see {@link #refreshStaleTypes}.
+   */
+  private final Map<String, EnumSet<ResourceType>> myStaleAppResourceTypes;
+
   /** The generation timestamp of our most recently cached app resources, used to invalidate on edits */
   private long myCachedGeneration;
 
+  private long myResolverHitCount;
+  private long myResolverMissCount;
+  private long myConfiguredTypeCount;
+  private long myConfigureNanos;
+
   /** Map from API level to framework resources */
   private SparseArray<AndroidTargetData> myFrameworkResources = new SparseArray<AndroidTargetData>();
 
@@ -92,6 +107,7 @@ public class ResourceResolverCache {
     myResolverMap = Maps.newHashMap();
     myAppResourceMap = Maps.newHashMap();
     myFrameworkResourceMap = Maps.newHashMap();
+    myStaleAppResourceTypes = Maps.newHashMap();
   }
 
   @NotNull
@@ -102,8 +118,7 @@ public class ResourceResolverCache {
     final LocalResourceRepository resources = AppResourceRepository.getAppResources(myManager.getModule(), true);
     assert resources != null;
     if (myCachedGeneration != resources.getModificationCount()) {
-      myResolverMap.clear();
-      myAppResourceMap.clear();
+      invalidateChangedTypes(resources, myCachedGeneration);
     }
 
     // Store the modification count as soon as possible. This ensures that if there is any modification of resources while the
@@ -120,8 +135,13 @@ public class ResourceResolverCache {
     // @style/MyTheme-ldltr-sw384dp-w384dp-h640dp-normal-notlong-port-notnight-xhdpi-finger-keyssoft-nokeys-navhidden-nonav-1280x768-v17
     String configurationKey = fullConfiguration.getUniqueKey();
     String resolverKey = themeStyle + configurationKey;
+    refreshStaleTypes(resources, configurationKey, fullConfiguration);
     ResourceResolver resolver = myResolverMap.get(resolverKey);
-    if (resolver == null) {
+    if (resolver != null) {
+      myResolverHitCount++;
+    }
+    else {
+      myResolverMissCount++;
       Map<ResourceType, ResourceValueMap> configuredAppRes;
       Map<ResourceType, ResourceValueMap> frameworkResources;
 
@@ -160,6 +180,7 @@ public class ResourceResolverCache {
       configuredAppRes = myAppResourceMap.get(configurationKey);
       if (configuredAppRes == null) {
         // get the project resource values based on the current config
+        long start = System.nanoTime();
         Application application = ApplicationManager.getApplication();
         configuredAppRes = application.runReadAction(new Computable<Map<ResourceType, ResourceValueMap>>() {
           @Override
@@ -168,6 +189,7 @@ public class ResourceResolverCache {
           }
         });
         myAppResourceMap.put(configurationKey, configuredAppRes);
+        recordConfigured(configurationKey, "all resource types", ResourceType.values().length, start);
       }
 
       // Resource Resolver
@@ -193,6 +215,142 @@ public class ResourceResolverCache {
     return resolver;
   }
 
+  /**
+   * Marks the configured app resources of the types which changed since the given generation as stale. If the change can't be attributed
+   * to some resource types, all the configured app resources and resolvers are dropped.
+   */
+  private void invalidateChangedTypes(@NotNull LocalResourceRepository resources, long cachedGeneration) {
+    if (myAppResourceMap.isEmpty()) {
+      myResolverMap.clear();
+      return;
+    }
+
+    EnumSet<ResourceType> changedTypes = EnumSet.noneOf(ResourceType.class);
+    for (ResourceType type : ResourceType.values()) {
+      if (resources.getModificationCount(type) > cachedGeneration) {
+        changedTypes.add(type);
+      }
+    }
+    if (changedTypes.size() == ResourceType.values().length) {
+      myAppResourceMap.clear();
+      myStaleAppResourceTypes.clear();
+      myResolverMap.clear();
+      return;
+    }
+    for (String configurationKey : myAppResourceMap.keySet()) {
+      EnumSet<ResourceType> staleTypes = myStaleAppResourceTypes.get(configurationKey);
+      if (staleTypes == null) {
+        myStaleAppResourceTypes.put(configurationKey, EnumSet.copyOf(changedTypes));
+      }
+      else {
+        staleTypes.addAll(changedTypes);
+      }
+    }
+  }
+
+  /**
+   * Configures the stale types of the app resources of the given configuration again. The resolvers of the configuration are dropped if
+   * any of the values changed; when the edit doesn't affect this configuration, for example a string of another locale, they are kept.
+   */
+  private void refreshStaleTypes(@NotNull LocalResourceRepository resources,
+                                 @NotNull String configurationKey,
+                                 @NotNull FolderConfiguration fullConfiguration) {
+    EnumSet<ResourceType> staleTypes = myStaleAppResourceTypes.remove(configurationKey);
+    Map<ResourceType, ResourceValueMap> configuredAppRes = myAppResourceMap.get(configurationKey);
+    if (staleTypes == null || staleTypes.isEmpty() || configuredAppRes == null) {
+      return;
+    }
+
+    Map<ResourceType, ResourceValueMap> reconfigured = reconfigure(resources, fullConfiguration, configuredAppRes, staleTypes);
+    for (ResourceType type : staleTypes) {
+      if (!isSameValues(configuredAppRes.get(type), reconfigured.get(type))) {
+        myAppResourceMap.put(configurationKey, reconfigured);
+        // Resolver keys are the theme followed by the configuration key; themes never end with a configuration key, but a key which
+        // is the suffix of another one also drops the resolvers of the latter, which is harmless
+        Iterator<String> iterator = myResolverMap.keySet().iterator();
+        while (iterator.hasNext()) {
+          if (iterator.next().endsWith(configurationKey)) {
+            iterator.remove();
+          }
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns true if the two maps hold the same resource values. Repository items keep their {@link ResourceValue} until they are
+   * edited, so values are compared by identity; an edited value is always considered as changed.
+   */
+  private static boolean isSameValues(@Nullable ResourceValueMap previous, @Nullable ResourceValueMap current) {
+    if (previous == null || current == null) {
+      return previous == current;
+    }
+    if (previous.size() != current.size()) {
+      return false;
+    }
+    for (Map.Entry<String, ResourceValue> entry : current.entrySet()) {
+      if (previous.get(entry.getKey()) != entry.getValue()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns a copy of the configured app resources with the values of the stale types configured again. The previous map isn't
+   * modified, since resolvers created from it may still be in use.
+   */
+  @NotNull
+  private Map<ResourceType, ResourceValueMap> reconfigure(@NotNull final LocalResourceRepository resources,
+                                                          @NotNull final FolderConfiguration fullConfiguration,
+                                                          @NotNull Map<ResourceType, ResourceValueMap> configuredAppRes,
+                                                          @NotNull final EnumSet<ResourceType> staleTypes) {
+    long start = System.nanoTime();
+    final Map<ResourceType, ResourceValueMap> reconfigured = Maps.newEnumMap(ResourceType.class);
+    reconfigured.putAll(configuredAppRes);
+    ApplicationManager.getApplication().runReadAction(new Runnable() {
+      @Override
+      public void run() {
+        for (ResourceType type : staleTypes) {
+          reconfigured.put(type, resources.getConfiguredResources(type, fullConfiguration));
+        }
+      }
+    });
+    recordConfigured(fullConfiguration.getUniqueKey(), staleTypes.toString(), staleTypes.size(), start);
+    return reconfigured;
+  }
+
+  private void recordConfigured(@NotNull String configurationKey, @NotNull String types, int typeCount, long startNanos) {
+    long nanos = System.nanoTime() - startNanos;
+    myConfiguredTypeCount += typeCount;
+    myConfigureNanos += nanos;
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(String.format("Configured %1$s of %2$s in %3$d ms (resolvers: %4$d hits, %5$d misses)", types, configurationKey,
+                              TimeUnit.NANOSECONDS.toMillis(nanos), myResolverHitCount, myResolverMissCount));
+    }
+  }
+
+  /** Returns the number of resource resolvers found in the cache */
+  public long getResolverHitCount() {
+    return myResolverHitCount;
+  }
+
+  /** Returns the number of resource resolvers which had to be created */
+  public long getResolverMissCount() {
+    return myResolverMissCount;
+  }
+
+  /** Returns the number of resource types of app resources configured for a folder configuration, whether in full or after an edit */
+  public long getConfiguredTypeCount() {
+    return myConfiguredTypeCount;
+  }
+
+  /** Returns the total time spent configuring app resources */
+  public long getConfigureTimeMs() {
+    return TimeUnit.NANOSECONDS.toMillis(myConfigureNanos);
+  }
+
   /**
    * Returns a {@link LocalResourceRepository} for the framework resources based on the current configuration selection.
    *
@@ -312,6 +470,7 @@ public class ResourceResolverCache {
   public void reset() {
     myCachedGeneration = 0;
     myAppResourceMap.clear();
+    myStaleAppResourceTypes.clear();
     myResolverMap.clear();
   }
 
@@ -319,6 +478,7 @@ public class ResourceResolverCache {
     if (myCustomConfigurationKey != null) {
       myFrameworkResourceMap.remove(myCustomConfigurationKey);
       myAppResourceMap.remove(myCustomConfigurationKey);
+      myStaleAppResourceTypes.remove(myCustomConfigurationKey);
     }
     if (myCustomResolverKey != null) {
       myResolverMap.remove(myCustomResolverKey);
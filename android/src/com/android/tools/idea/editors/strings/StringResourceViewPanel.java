@@ -68,7 +68,9 @@ import java.awt.event.*;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.IntSupplier;
 import java.util.stream.Stream;
@@ -86,7 +88,6 @@ final class StringResourceViewPanel implements Disposable, HyperlinkListener {
 
   private final AndroidFacet myFacet;
   private LocalResourceRepository myResourceRepository;
-  private long myModificationCount;
   private ResourceChangeListener myResourceChangeListener;
 
   StringResourceViewPanel(AndroidFacet facet, Disposable parentDisposable) {
@@ -364,8 +365,11 @@ final class StringResourceViewPanel implements Disposable, HyperlinkListener {
     };
   }
 
-  public boolean dataIsCurrent() {
-    return myResourceRepository != null && myModificationCount >= myResourceRepository.getModificationCount();
+  /**
+   * Reloads the data if string resources changed while the editor wasn't showing
+   */
+  void selectNotify() {
+    ResourceNotificationManager.getInstance(myFacet.getModule().getProject()).listenerShown(myResourceChangeListener);
   }
 
   private void initTable() {
@@ -376,9 +380,22 @@ final class StringResourceViewPanel implements Disposable, HyperlinkListener {
   }
 
   private void addResourceChangeListener() {
-    myResourceChangeListener = reasons -> {
-      if (reasons.contains(Reason.RESOURCE_EDIT)) {
-        reloadData();
+    myResourceChangeListener = new ResourceChangeListener() {
+      @Override
+      public void resourcesChanged(@NotNull Set<Reason> reasons) {
+        if (reasons.contains(Reason.RESOURCE_EDIT)) {
+          reloadData();
+        }
+      }
+
+      @Override
+      public Set<ResourceType> getResourceTypeDependencies() {
+        return EnumSet.of(ResourceType.STRING);
+      }
+
+      @Override
+      public boolean isVisible() {
+        return myLoadingPanel.isShowing();
       }
     };
 
@@ -477,7 +494,6 @@ final class StringResourceViewPanel implements Disposable, HyperlinkListener {
 
   private void parse(@NotNull LocalResourceRepository resourceRepository, @NotNull StringResourceData data) {
     myResourceRepository = resourceRepository;
-    myModificationCount = resourceRepository.getModificationCount();
 
     myTable.setModel(new StringResourceTableModel(data));
     myLoadingPanel.stopLoading();
@@ -392,7 +392,8 @@ class DomPsiConverter {
 
     @NotNull
     @Override
-    public DomNodeList getChildNodes() {
+    public synchronized DomNodeList getChildNodes() {
+      // Synchronized since converted documents can be shared by lint drivers running in parallel (see LintParseCache)
       if (myChildren == null) {
         PsiElement[] children = myElement.getChildren();
         if (children.length > 0) {
@@ -678,7 +679,7 @@ class DomPsiConverter {
 
     @NotNull
     @Override
-    public DomNodeList getChildNodes() {
+    public synchronized DomNodeList getChildNodes() {
       if (myChildren == null) {
         DomNodeList list = new DomNodeList();
         myChildren = list;
@@ -707,7 +708,7 @@ class DomPsiConverter {
 
     @Nullable
     @Override
-    public Element getDocumentElement() {
+    public synchronized Element getDocumentElement() {
       if (myRoot == null) {
         XmlTag rootTag = myPsiDocument.getRootTag();
         if (rootTag == null) {
@@ -930,16 +931,18 @@ class DomPsiConverter {
         return application.runReadAction((Computable<NamedNodeMap>)this::getAttributes);
       }
 
-      if (myAttributes == null) {
-        XmlAttribute[] attributes = myTag.getAttributes();
-        if (attributes.length == 0) {
-         myAttributes = EMPTY_ATTRIBUTES;
-        } else {
-          myAttributes = new DomNamedNodeMap(this, attributes);
+      synchronized (this) {
+        if (myAttributes == null) {
+          XmlAttribute[] attributes = myTag.getAttributes();
+          if (attributes.length == 0) {
+           myAttributes = EMPTY_ATTRIBUTES;
+          } else {
+            myAttributes = new DomNamedNodeMap(this, attributes);
+          }
         }
-      }
 
-      return myAttributes;
+        return myAttributes;
+      }
     }
 
     // From org.w3c.dom.Element:
@@ -41,10 +41,16 @@ import java.io.File;
  */
 class DomPsiParser extends XmlParser {
   private final LintClient myClient;
+  @Nullable private final LintParseCache myParseCache;
   private AccessToken myReadLock;
 
   public DomPsiParser(LintClient client) {
+    this(client, null);
+  }
+
+  public DomPsiParser(LintClient client, @Nullable LintParseCache parseCache) {
     myClient = client;
+    myParseCache = parseCache;
   }
 
   @Override
@@ -99,6 +105,9 @@ class DomPsiParser extends XmlParser {
     XmlFile xmlFile = (XmlFile)psiFile;
 
     try {
+      if (myParseCache != null) {
+        return myParseCache.get(xmlFile, Document.class, () -> DomPsiConverter.convert(xmlFile));
+      }
       return DomPsiConverter.convert(xmlFile);
     } catch (Throwable t) {
       myClient.log(t, "Failed converting PSI parse tree to DOM for file %1$s",
@@ -97,6 +97,7 @@ public class LintIdeClient extends LintClient implements Disposable {
 
   @NonNull protected Project myProject;
   @Nullable protected Map<com.android.tools.lint.detector.api.Project, Module> myModuleMap;
+  @Nullable private LintParseCache myParseCache;
 
   public LintIdeClient(@NonNull Project project) {
     super(CLIENT_STUDIO);
@@ -152,6 +153,13 @@ public class LintIdeClient extends LintClient implements Disposable {
     myModuleMap = moduleMap;
   }
 
+  /**
+   * Sets a cache the parsers of this client share converted files through, e.g. with the clients of other lint drivers of a batch run
+   */
+  public void setParseCache(@Nullable LintParseCache parseCache) {
+    myParseCache = parseCache;
+  }
+
   @NonNull
   @Override
   public Configuration getConfiguration(@NonNull com.android.tools.lint.detector.api.Project project, @Nullable final LintDriver driver) {
@@ -275,13 +283,13 @@ public class LintIdeClient extends LintClient implements Disposable {
 
   @Override
   public XmlParser getXmlParser() {
-    return new DomPsiParser(this);
+    return new DomPsiParser(this, myParseCache);
   }
 
   @Nullable
   @Override
   public JavaParser getJavaParser(@Nullable com.android.tools.lint.detector.api.Project project) {
-    return new LintIdeJavaParser(this, myProject);
+    return new LintIdeJavaParser(this, myProject, myParseCache);
   }
 
   @NonNull
@@ -497,7 +505,7 @@ public class LintIdeClient extends LintClient implements Disposable {
 
   private static List<Issue> ourReportedCustomIssues;
 
-  private static void recordCustomIssue(@NonNull Issue issue) {
+  private static synchronized void recordCustomIssue(@NonNull Issue issue) {
     if (ourReportedCustomIssues == null) {
       ourReportedCustomIssues = Lists.newArrayList();
     } else if (ourReportedCustomIssues.contains(issue)) {
@@ -507,7 +515,7 @@ public class LintIdeClient extends LintClient implements Disposable {
   }
 
   @Nullable
-  public static Issue findCustomIssue(@NonNull String errorMessage) {
+  public static synchronized Issue findCustomIssue(@NonNull String errorMessage) {
     if (ourReportedCustomIssues != null) {
       // We stash the original id into the error message such that we can
       // find it later
@@ -43,6 +43,7 @@ import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.util.*;
 import com.intellij.util.ArrayUtil;
 import lombok.ast.Catch;
+import lombok.ast.CompilationUnit;
 import lombok.ast.Node;
 import lombok.ast.Position;
 import org.jetbrains.annotations.Contract;
@@ -58,11 +59,17 @@ import static com.android.SdkConstants.ATTR_VALUE;
 
 public class LintIdeJavaParser extends JavaParser {
   private final LintClient myClient;
+  @Nullable private final LintParseCache myParseCache;
   private final JavaEvaluator myJavaEvaluator;
   private AccessToken myLock;
 
   public LintIdeJavaParser(LintClient client, Project project) {
+    this(client, project, null);
+  }
+
+  public LintIdeJavaParser(LintClient client, Project project, @Nullable LintParseCache parseCache) {
     myClient = client;
+    myParseCache = parseCache;
     myJavaEvaluator = new LintPsiJavaEvaluator(project);
   }
 
@@ -75,6 +82,8 @@ public class LintIdeJavaParser extends JavaParser {
   @Override
   public Node parseJava(@NonNull final JavaContext context) {
     assert myLock == null;
+    // Forget stale bodies accessed on this thread outside of a file analysis, see #dispose
+    LombokPsiConverter.checkStaleBodyAccessed();
     myLock = ApplicationManager.getApplication().acquireReadActionLock();
     try {
       Node node = parse(context);
@@ -111,6 +120,12 @@ public class LintIdeJavaParser extends JavaParser {
       context.setCompilationUnit(null);
     }
 
+    if (LombokPsiConverter.checkStaleBodyAccessed()) {
+      // The detectors saw empty bodies of a tree converted before the file was edited: drop this analysis, as we do when the
+      // conversion itself is canceled, without canceling the other drivers
+      context.getDriver().cancel();
+    }
+
     if (myLock != null) {
       myLock.finish();
       myLock = null;
@@ -129,6 +144,9 @@ public class LintIdeJavaParser extends JavaParser {
     PsiJavaFile javaFile = (PsiJavaFile)psiFile;
 
     try {
+      if (myParseCache != null) {
+        return myParseCache.get(javaFile, CompilationUnit.class, () -> LombokPsiConverter.convert(javaFile));
+      }
       return LombokPsiConverter.convert(javaFile);
     } catch (ProcessCanceledException ignore) {
       context.getDriver().cancel();
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.lint;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of the Lombok ASTs and DOM documents lint converted from PSI during a batch run, shared by all the lint drivers of the
+ * run. Lint visits a file again for each phase of a check that requests one, and for each main module a library module is checked
+ * along with; this way the file is only converted once as long as it is in the cache and unchanged.
+ * <p>
+ * The converted trees are shared across threads, so they must not be modified once they are in the cache.
+ */
+public final class LintParseCache {
+  /** Default number of converted files to keep */
+  public static final int DEFAULT_MAX_FILES = 500;
+
+  private final Cache<Key, Optional<Object>> myCache;
+
+  public LintParseCache(int maxFiles) {
+    myCache = CacheBuilder.newBuilder()
+      .maximumSize(maxFiles)
+      .recordStats()
+      .build();
+  }
+
+  /**
+   * Returns the tree converted from the current contents of the given file, calling the given converter if it isn't cached yet. If
+   * several threads ask for the same file at the same time, only one of them converts it.
+   */
+  @Nullable
+  <T> T get(@NotNull PsiFile file, @NotNull Class<T> type, @NotNull Supplier<T> converter) {
+    try {
+      Object value = myCache.get(new Key(file, type), () -> Optional.ofNullable(converter.get())).orElse(null);
+      return type.cast(value);
+    }
+    catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+      // Let the callers handle conversion failures (and cancellations) as if they had converted the file themselves
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error)cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  @NotNull
+  public CacheStats getStats() {
+    return myCache.stats();
+  }
+
+  public void clear() {
+    myCache.invalidateAll();
+  }
+
+  private static final class Key {
+    @NotNull private final PsiFile myFile;
+    @NotNull private final Class<?> myType;
+    private final long myModificationStamp;
+
+    private Key(@NotNull PsiFile file, @NotNull Class<?> type) {
+      myFile = file;
+      myType = type;
+      myModificationStamp = file.getModificationStamp();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      Key key = (Key)o;
+      return myFile == key.myFile && myType == key.myType && myModificationStamp == key.myModificationStamp;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = System.identityHashCode(myFile);
+      result = 31 * result + myType.hashCode();
+      result = 31 * result + (int)(myModificationStamp ^ (myModificationStamp >>> 32));
+      return result;
+    }
+  }
+}
@@ -17,6 +17,7 @@ package com.android.tools.idea.lint;
 
 import com.android.annotations.NonNull;
 import com.android.annotations.Nullable;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Splitter;
 import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
@@ -54,6 +55,9 @@ import lombok.ast.*;
  *        has positions but the individual parts do not)</li>
  * </ul>
  *
+ * The statements of method, constructor and initializer bodies are converted lazily, the first
+ * time the body is accessed (see {@link #toLazyBlock(PsiCodeBlock)}).
+ * <p>
  * To handle positions specifically I'd like to add a new interface to the Lombok AST
  * where position information (as well as type resolution) can be performed
  * lazily, by stashing a reference to the PSI element and adding a location manager
@@ -428,7 +432,7 @@ public class LombokPsiConverter {
       PsiCodeBlock codeBlock = initializer.getBody();
       StaticInitializer s = new StaticInitializer();
       bind(s, codeBlock);
-      s.astBody(toBlock(codeBlock));
+      s.astBody(toLazyBlock(codeBlock));
       members.addToEnd(s);
     }
     for (PsiField field : psiClass.getFields()) {
@@ -496,7 +500,7 @@ public class LombokPsiConverter {
       PsiCodeBlock codeBlock = initializer.getBody();
       StaticInitializer s = new StaticInitializer();
       bind(s, codeBlock);
-      s.astBody(toBlock(codeBlock));
+      s.astBody(toLazyBlock(codeBlock));
       members.addToEnd(s);
     }
     for (PsiField field : psiClass.getFields()) {
@@ -1625,8 +1629,45 @@ public class LombokPsiConverter {
   private static Block toBlock(@NonNull PsiCodeBlock block) {
     Block b = new Block();
     bind(b, block);
+    addStatements(b.astContents(), block);
+    return b;
+  }
+
+  private static final ThreadLocal<Boolean> ourStaleBodyAccessed = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+  /**
+   * Like {@link #toBlock(PsiCodeBlock)}, but the statements of the block are only converted when the block is first accessed.
+   * Used for method, constructor and initializer bodies, which are most of the tree, such that declarations converted for
+   * resolved elements (see {@link #toNode(PsiElement)}) and files only visited for their declarations don't carry a copy of
+   * all their code.
+   */
+  @NonNull
+  private static Block toLazyBlock(@NonNull PsiCodeBlock block) {
+    Block b = new LazyBlock();
+    bind(b, block);
+    return b;
+  }
+
+  /**
+   * Returns true if the statements of the given block have been converted. Only blocks created by {@link #toLazyBlock} can
+   * be unconverted.
+   */
+  @VisibleForTesting
+  static boolean isConverted(@NonNull Block block) {
+    return !(block instanceof LazyBlock) || ((LazyBlock)block).myConverted;
+  }
 
-    StrictListAccessor<Statement, Block> statements = b.astContents();
+  /**
+   * Returns true if the body of a stale tree, whose PSI was invalidated since it was converted, was accessed on the calling thread
+   * since the last call. Such bodies are left empty, so the results of the analysis which accessed them can't be trusted.
+   */
+  static boolean checkStaleBodyAccessed() {
+    boolean accessed = ourStaleBodyAccessed.get();
+    ourStaleBodyAccessed.set(Boolean.FALSE);
+    return accessed;
+  }
+
+  private static void addStatements(@NonNull StrictListAccessor<Statement, Block> statements, @NonNull PsiCodeBlock block) {
     for (PsiStatement statement : block.getStatements()) {
       Statement s = toStatement(statement);
       // In theory all statements should be non null, but since I haven't mapped
@@ -1636,8 +1677,6 @@ public class LombokPsiConverter {
         statements.addToEnd(s);
       }
     }
-
-    return b;
   }
 
   @NonNull
@@ -1931,7 +1970,7 @@ public class LombokPsiConverter {
 
     PsiCodeBlock body = method.getBody();
     if (body != null) {
-      m.astBody(toBlock(body));
+      m.astBody(toLazyBlock(body));
     }
 
     return m;
@@ -1964,9 +2003,108 @@ public class LombokPsiConverter {
 
     PsiCodeBlock body = method.getBody();
     if (body != null) {
-      m.astBody(toBlock(body));
+      m.astBody(toLazyBlock(body));
     }
 
     return m;
   }
+
+  /**
+   * A {@link Block} whose statements are converted from its {@link PsiCodeBlock} (the native node) the first time the block
+   * is accessed. Converted trees can be shared between threads by the {@link LintParseCache}, so the conversion happens at
+   * most once, under a lock; a conversion which fails (for example because it was canceled) is retried on the next access.
+   */
+  private static final class LazyBlock extends Block {
+    private volatile boolean myConverted;
+
+    private void ensureConverted() {
+      if (myConverted) {
+        return;
+      }
+      synchronized (this) {
+        if (myConverted) {
+          return;
+        }
+        final PsiCodeBlock block = (PsiCodeBlock)getNativeNode();
+        Application application = ApplicationManager.getApplication();
+        if (application.isReadAccessAllowed()) {
+          myConverted = convert(block);
+        } else {
+          myConverted = application.runReadAction((Computable<Boolean>)() -> convert(block));
+        }
+      }
+    }
+
+    /**
+     * Converts the statements of the block, returning false if the block is stale
+     */
+    private boolean convert(@NonNull PsiCodeBlock block) {
+      if (!block.isValid()) {
+        // The file was edited since the tree was created. Leave the block empty and unconverted rather than abort the whole
+        // analysis with a ProcessCanceledException; the lint parser cancels the driver which visited the stale tree instead.
+        ourStaleBodyAccessed.set(Boolean.TRUE);
+        return false;
+      }
+      try {
+        addStatements(super.astContents(), block);
+        return true;
+      } catch (ProcessCanceledException e) {
+        // Drop the partial conversion; the next access starts over
+        super.rawContents().clear();
+        throw e;
+      } catch (RuntimeException e) {
+        super.rawContents().clear();
+        throw new RuntimeException("Could not convert code block in " + block.getContainingFile(), e);
+      }
+    }
+
+    @Override
+    public RawListAccessor<Statement, Block> rawContents() {
+      ensureConverted();
+      return super.rawContents();
+    }
+
+    @Override
+    public StrictListAccessor<Statement, Block> astContents() {
+      ensureConverted();
+      return super.astContents();
+    }
+
+    @Override
+    public java.util.List<Node> getChildren() {
+      ensureConverted();
+      return super.getChildren();
+    }
+
+    @Override
+    public boolean replaceChild(Node original, Node replacement) throws AstException {
+      ensureConverted();
+      return super.replaceChild(original, replacement);
+    }
+
+    @Override
+    public boolean detach(Node child) {
+      ensureConverted();
+      return super.detach(child);
+    }
+
+    @Override
+    public void accept(AstVisitor visitor) {
+      // Same as Block#accept, except that visitors which skip the block don't convert it
+      if (visitor.visitBlock(this)) {
+        return;
+      }
+      for (Node child : rawContents()) {
+        child.accept(visitor);
+      }
+      visitor.afterVisitBlock(this);
+      visitor.endVisit(this);
+    }
+
+    @Override
+    public Block copy() {
+      ensureConverted();
+      return super.copy();
+    }
+  }
 }
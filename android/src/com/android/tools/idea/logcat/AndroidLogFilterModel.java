@@ -93,9 +93,17 @@ public abstract class AndroidLogFilterModel extends LogFilterModel {
   }
 
   public final void updateLogcatFilter(@Nullable AndroidLogcatFilter filter) {
+    setLogcatFilter(filter);
+    fireTextFilterChange();
+  }
+
+  /**
+   * Like {@link #updateLogcatFilter(AndroidLogcatFilter)}, but without refiltering the console, for callers which send the matching
+   * old logs again themselves.
+   */
+  public final void setLogcatFilter(@Nullable AndroidLogcatFilter filter) {
     saveConfiguredFilterName(filter != null ? filter.getName() : "");
     myConfiguredFilter = filter;
-    fireTextFilterChange();
   }
 
   protected abstract void saveConfiguredFilterName(String filterName);
@@ -39,6 +39,10 @@ public final class AndroidLogcatPreferences implements PersistentStateComponent<
    * Or, set to an empty string to disable this extra step of processing
    */
   public String LOGCAT_FORMAT_STRING = "";
+  /**
+   * Whether the logs of the devices shown in the logcat view are recorded to disk, see {@link AndroidLogcatService#setRecording}.
+   */
+  public boolean RECORD_LOGCAT_TO_DISK = false;
 
   public static AndroidLogcatPreferences getInstance(Project project) {
     return ServiceManager.getService(project, AndroidLogcatPreferences.class);
@@ -23,21 +23,27 @@ import com.android.ddmlib.logcat.LogCatMessage;
 import com.android.ddmlib.logcat.LogCatTimestamp;
 import com.android.tools.idea.run.LoggingReceiver;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import com.intellij.execution.impl.ConsoleBuffer;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.concurrency.SequentialTaskExecutor;
 import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
 import org.jetbrains.android.util.AndroidBundle;
 import org.jetbrains.android.util.AndroidUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
+import org.jetbrains.ide.PooledThreadExecutor;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -53,33 +59,181 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     return Logger.getInstance(AndroidLogcatService.class);
   }
 
-  private static class LogcatBuffer {
-    private int myBufferSize;
-    private final LinkedList<LogCatMessage> myMessages = new LinkedList<>();
+  public interface LogcatListener {
+    default void onLogLineReceived(@NotNull LogCatMessage line) {}
+    default void onCleared() {}
+  }
+
+  /**
+   * A listener which is being sent the old logs. Lines received meanwhile are queued, and forwarded once the old logs were sent, so
+   * the replay doesn't block receiving logs and the listener still sees every line once, in order.
+   */
+  private static final class ReplayingListener implements LogcatListener {
+    @NotNull private final LogcatListener myDelegate;
+
+    private final Object myPendingLock = new Object();
+
+    /**
+     * Events received during the replay, null once the replay is over.
+     */
+    @GuardedBy("myPendingLock")
+    @Nullable
+    private List<Runnable> myPending = new ArrayList<>();
 
-    public void addMessage(@NotNull LogCatMessage message) {
-      myMessages.add(message);
-      myBufferSize += message.getMessage().length();
-      if (ConsoleBuffer.useCycleBuffer()) {
-        while (myBufferSize > ConsoleBuffer.getCycleBufferSize()) {
-          myBufferSize -= myMessages.removeFirst().getMessage().length();
+    private ReplayingListener(@NotNull LogcatListener delegate) {
+      myDelegate = delegate;
+    }
+
+    @Override
+    public void onLogLineReceived(@NotNull LogCatMessage line) {
+      forward(() -> myDelegate.onLogLineReceived(line));
+    }
+
+    @Override
+    public void onCleared() {
+      forward(myDelegate::onCleared);
+    }
+
+    private void forward(@NotNull Runnable event) {
+      synchronized (myPendingLock) {
+        if (myPending != null) {
+          myPending.add(event);
+          return;
         }
       }
+      event.run();
     }
 
-    @NotNull
-    public List<LogCatMessage> getMessages() {
-      return myMessages;
+    void replay(@Nullable LogcatBuffer.Snapshot oldLogs, @Nullable AndroidLogcatFilter filter) {
+      if (oldLogs != null && filter != null) {
+        new LogcatSnapshotFilter(filter).forEachAccepted(oldLogs, myDelegate::onLogLineReceived);
+      }
+      else if (oldLogs != null) {
+        oldLogs.forEach(myDelegate::onLogLineReceived);
+      }
+      while (true) {
+        List<Runnable> pending;
+        synchronized (myPendingLock) {
+          pending = myPending;
+          if (pending == null || pending.isEmpty()) {
+            myPending = null;
+            return;
+          }
+          myPending = new ArrayList<>();
+        }
+        pending.forEach(Runnable::run);
+      }
     }
   }
 
-  public interface LogcatListener {
-    default void onLogLineReceived(@NotNull LogCatMessage line) {}
-    default void onCleared() {}
+  /**
+   * Records the logs of a device to its {@link LogcatJournal}. Opening the journal, writing lines and closing it run in order on
+   * {@link #myJournalExecutor}, so disk I/O never happens on the thread receiving the logs, the UI thread or under {@link #myLock}.
+   */
+  private static final class Recorder {
+    @NotNull private final File myDirectory;
+    @NotNull private final String myDeviceName;
+    @NotNull private final Executor myExecutor;
+
+    /**
+     * The projects whose logcat view asked for the device to be recorded, see {@link #setRecording}. Only accessed under
+     * {@link AndroidLogcatService#myLock}.
+     */
+    @NotNull private final Set<Project> myProjects = new HashSet<>();
+
+    /**
+     * The open journal, written on {@link #myExecutor} only and read from any thread. Null until it is opened, or if it couldn't be.
+     */
+    @Nullable private volatile LogcatJournal myJournal;
+
+    private final Object myPendingLock = new Object();
+
+    @GuardedBy("myPendingLock")
+    @NotNull private List<LogCatMessage> myPendingLines = new ArrayList<>();
+
+    @GuardedBy("myPendingLock")
+    private boolean myWriteScheduled;
+
+    private Recorder(@NotNull File directory, @NotNull String deviceName, @NotNull Executor executor) {
+      myDirectory = directory;
+      myDeviceName = deviceName;
+      myExecutor = executor;
+      myExecutor.execute(() -> {
+        try {
+          myJournal = LogcatJournal.open(myDirectory);
+        }
+        catch (IOException e) {
+          getLog().warn("Unable to record the logs of " + myDeviceName + " to " + myDirectory, e);
+        }
+      });
+    }
+
+    /**
+     * Queues a line to be written. Lines received while a write is pending are written along with it.
+     */
+    void addMessage(@NotNull LogCatMessage line) {
+      synchronized (myPendingLock) {
+        myPendingLines.add(line);
+        if (myWriteScheduled) {
+          return;
+        }
+        myWriteScheduled = true;
+      }
+      myExecutor.execute(this::writePendingLines);
+    }
+
+    /**
+     * Writes the lines received so far to disk, including the lines of a block that is not full yet.
+     */
+    void flush() {
+      myExecutor.execute(() -> {
+        writePendingLines();
+        LogcatJournal journal = myJournal;
+        if (journal != null) {
+          journal.flush();
+        }
+      });
+    }
+
+    void close() {
+      myExecutor.execute(() -> {
+        writePendingLines();
+        LogcatJournal journal = myJournal;
+        myJournal = null;
+        if (journal != null) {
+          journal.close();
+        }
+      });
+    }
+
+    @Nullable
+    LogcatJournal getJournal() {
+      return myJournal;
+    }
+
+    private void writePendingLines() {
+      List<LogCatMessage> lines;
+      synchronized (myPendingLock) {
+        lines = myPendingLines;
+        myPendingLines = new ArrayList<>();
+        myWriteScheduled = false;
+      }
+      LogcatJournal journal = myJournal;
+      if (journal != null) {
+        lines.forEach(journal::addMessage);
+      }
+    }
   }
 
   private final Object myLock = new Object();
 
+  /**
+   * Runs the disk I/O of all the {@link Recorder}s. It is shared, rather than per device, so a journal is always closed before it is
+   * opened again when recording is turned off and on. The single-thread executors of the devices can't be used for this, since they
+   * run the logcat command until it stops.
+   */
+  private final Executor myJournalExecutor = new SequentialTaskExecutor("Logcat Journal", PooledThreadExecutor.INSTANCE);
+
   @GuardedBy("myLock")
   private final Map<IDevice, List<LogcatListener>> myListeners = new HashMap<>();
 
@@ -89,6 +243,12 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
   @GuardedBy("myLock")
   private final Map<IDevice, AndroidLogcatReceiver> myLogReceivers = new HashMap<>();
 
+  /**
+   * Recorders of the devices whose logs are being recorded to disk, see {@link #setRecording}.
+   */
+  @GuardedBy("myLock")
+  private final Map<IDevice, Recorder> myRecorders = new HashMap<>();
+
   /**
    * This is a list of commands to execute per device. We use a newSingleThreadExecutor
    * to model a single queue of tasks to run, but that is poorly reflected in the
@@ -146,6 +306,9 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
           if (myLogBuffers.containsKey(device)) {
             myLogBuffers.get(device).addMessage(line);
           }
+          if (myRecorders.containsKey(device)) {
+            myRecorders.get(device).addMessage(line);
+          }
         }
       }
     };
@@ -166,6 +329,10 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     synchronized (myLock) {
       stopReceiving(device);
       myExecutors.remove(device);
+      Recorder recorder = myRecorders.remove(device);
+      if (recorder != null) {
+        recorder.close();
+      }
     }
   }
 
@@ -176,9 +343,61 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
         myLogReceivers.remove(device);
         myLogBuffers.remove(device);
       }
+      if (myRecorders.containsKey(device)) {
+        myRecorders.get(device).flush();
+      }
+    }
+  }
+
+  /**
+   * Starts or stops recording the logs received from the device to disk on behalf of a project. Recording is a per-project setting,
+   * while the journal of a device is shared by the application: the device is recorded as long as one project asks for it. Recorded
+   * logs are kept across IDE sessions, within a bounded disk size, and can be read back with {@link #getRecordedLogs}.
+   *
+   * The journal is opened and closed in the background, so this can be called from the UI thread.
+   */
+  public void setRecording(@NotNull IDevice device, @NotNull Project project, boolean record) {
+    synchronized (myLock) {
+      Recorder recorder = myRecorders.get(device);
+      if (record) {
+        if (recorder == null) {
+          recorder = new Recorder(getJournalDirectory(device), device.getName(), myJournalExecutor);
+          myRecorders.put(device, recorder);
+        }
+        recorder.myProjects.add(project);
+      }
+      else if (recorder != null && recorder.myProjects.remove(project) && recorder.myProjects.isEmpty()) {
+        myRecorders.remove(device);
+        recorder.close();
+      }
+    }
+  }
+
+  public boolean isRecording(@NotNull IDevice device) {
+    synchronized (myLock) {
+      return myRecorders.containsKey(device);
     }
   }
 
+  /**
+   * Returns the logs recorded from the device, or null if they aren't being recorded or the journal isn't open yet. The lines of the
+   * block being filled are only included once the block is written; until then they are in the logs kept in memory.
+   */
+  @Nullable
+  LogcatJournal getRecordedLogs(@NotNull IDevice device) {
+    Recorder recorder;
+    synchronized (myLock) {
+      recorder = myRecorders.get(device);
+    }
+    return recorder == null ? null : recorder.getJournal();
+  }
+
+  @NotNull
+  private static File getJournalDirectory(@NotNull IDevice device) {
+    return new File(AndroidUtils.getAndroidSystemDirectoryOsPath(),
+                    "logcat" + File.separator + FileUtil.sanitizeFileName(device.getSerialNumber()));
+  }
+
   /**
    * Clears logs for the current device.
    */
@@ -229,23 +448,61 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
    * to a UI thread. For example, don't directly invoke a runnable on the UI thread per line, but consider batching many log lines first.
    */
   public void addListener(@NotNull IDevice device, @NotNull LogcatListener listener, boolean addOldLogs) {
+    ReplayingListener replayingListener = null;
+    LogcatBuffer.Snapshot oldLogs = null;
     synchronized (myLock) {
       if (addOldLogs && myLogBuffers.containsKey(device)) {
-        for (LogCatMessage line : myLogBuffers.get(device).getMessages()) {
-          listener.onLogLineReceived(line);
-        }
+        // Take the old logs and start receiving new lines atomically, but send the old logs outside of the lock.
+        oldLogs = myLogBuffers.get(device).getSnapshot();
+        replayingListener = new ReplayingListener(listener);
       }
 
       if (!myListeners.containsKey(device)) {
         myListeners.put(device, new ArrayList<>());
       }
 
-      myListeners.get(device).add(listener);
+      myListeners.get(device).add(replayingListener != null ? replayingListener : listener);
 
       if (device.isOnline()) {
         startReceiving(device);
       }
     }
+    if (replayingListener != null) {
+      replayingListener.replay(oldLogs, null);
+    }
+  }
+
+  /**
+   * Sends the old logs accepted by the filter to a listener which was already added, e.g. to show them again after the filter changed.
+   * The filter is evaluated in parallel, and the accepted lines are sent in order on the calling thread while the rest of the logs are
+   * still being filtered. Lines received meanwhile are sent after the old logs.
+   *
+   * @param onReplayStarted called once the listener stopped receiving new lines, before the old logs are sent, e.g. to clear the
+   *                        lines the listener displayed so far.
+   */
+  public void replayOldLogs(@NotNull IDevice device,
+                            @NotNull LogcatListener listener,
+                            @NotNull AndroidLogcatFilter filter,
+                            @NotNull Runnable onReplayStarted) {
+    ReplayingListener replayingListener;
+    LogcatBuffer.Snapshot oldLogs;
+    synchronized (myLock) {
+      // Install the replaying listener and take the old logs atomically, so no line is missed or sent twice.
+      List<LogcatListener> listeners = myListeners.get(device);
+      if (listeners == null || !removeListener(listeners, listener)) {
+        return;
+      }
+      replayingListener = new ReplayingListener(listener);
+      listeners.add(replayingListener);
+      oldLogs = myLogBuffers.containsKey(device) ? myLogBuffers.get(device).getSnapshot() : null;
+    }
+    onReplayStarted.run();
+    replayingListener.replay(oldLogs, filter);
+  }
+
+  private static boolean removeListener(@NotNull List<LogcatListener> listeners, @NotNull LogcatListener listener) {
+    return listeners.removeIf(
+      l -> l == listener || (l instanceof ReplayingListener && ((ReplayingListener)l).myDelegate == listener));
   }
 
   /**
@@ -258,7 +515,7 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
   public void removeListener(@NotNull IDevice device, @NotNull LogcatListener listener) {
     synchronized (myLock) {
       if (myListeners.containsKey(device)) {
-        myListeners.get(device).remove(listener);
+        removeListener(myListeners.get(device), listener);
 
         if (myListeners.get(device).isEmpty()) {
           stopReceiving(device);
@@ -297,6 +554,10 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
       for (AndroidLogcatReceiver receiver : myLogReceivers.values()) {
         receiver.cancel();
       }
+      for (Recorder recorder : myRecorders.values()) {
+        recorder.close();
+      }
+      myRecorders.clear();
     }
   }
 }
@@ -27,6 +27,7 @@ import com.intellij.execution.ui.ConsoleView;
 import com.intellij.icons.AllIcons;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.*;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
@@ -48,7 +49,9 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
 import static javax.swing.BoxLayout.X_AXIS;
 
@@ -62,6 +65,11 @@ public abstract class AndroidLogcatView implements Disposable {
   static final String NO_FILTERS = AndroidBundle.message("android.logcat.filters.none");
   static final String EDIT_FILTER_CONFIGURATION = AndroidBundle.message("android.logcat.filters.edit");
 
+  /**
+   * Number of accepted lines to read per page of recorded logs.
+   */
+  private static final int RECORDED_PAGE_LINES = 10000;
+
   private final Project myProject;
   private final DeviceContext myDeviceContext;
 
@@ -75,6 +83,11 @@ public abstract class AndroidLogcatView implements Disposable {
 
   private final IDevice myPreselectedDevice;
 
+  /**
+   * The page of recorded logs displayed instead of the live logs, if any.
+   */
+  @Nullable private volatile LogcatJournal.Page myRecordedPage;
+
   /**
    * A default filter which will always let everything through.
    */
@@ -156,7 +169,9 @@ public abstract class AndroidLogcatView implements Disposable {
     myLogcatReceiver = new FormattedLogcatReceiver() {
       @Override
       protected void receiveFormattedLogLine(@NotNull String line) {
-        myLogConsole.addLogLine(line);
+        if (myRecordedPage == null) {
+          myLogConsole.addLogLine(line);
+        }
       }
 
       @Override
@@ -315,14 +330,19 @@ public abstract class AndroidLogcatView implements Disposable {
       AndroidLogcatService androidLogcatService = AndroidLogcatService.getInstance();
       if (myDevice != null) {
         androidLogcatService.removeListener(myDevice, myLogcatReceiver);
+        androidLogcatService.setRecording(myDevice, myProject, false);
       }
       // We check for null, because myLogConsole.clear() depends on myLogConsole.getConsole() not being null
       if (myLogConsole.getConsole() != null) {
         myLogConsole.clear();
       }
       myLogFilterModel.processingStarted();
+      myRecordedPage = null;
       myDevice = device;
       androidLogcatService.addListener(myDevice, myLogcatReceiver, true);
+      if (myDevice != null && AndroidLogcatPreferences.getInstance(myProject).RECORD_LOGCAT_TO_DISK) {
+        androidLogcatService.setRecording(myDevice, myProject, true);
+      }
     }
   }
 
@@ -346,12 +366,90 @@ public abstract class AndroidLogcatView implements Disposable {
       ProgressManager.getInstance().run(new Task.Backgroundable(myProject, LogConsoleBase.APPLYING_FILTER_TITLE) {
         @Override
         public void run(@NotNull ProgressIndicator indicator) {
-          myLogFilterModel.updateLogcatFilter((AndroidLogcatFilter)filter);
+          IDevice device = myDevice;
+          if (device == null) {
+            myLogFilterModel.updateLogcatFilter((AndroidLogcatFilter)filter);
+            return;
+          }
+          LogcatJournal.Page recordedPage = myRecordedPage;
+          if (recordedPage != null) {
+            // Filter the recorded page being displayed again, rather than going back to the live logs.
+            myLogFilterModel.setLogcatFilter((AndroidLogcatFilter)filter);
+            showRecordedPage(journal -> journal.readPageAfter(recordedPage.getStartBlock(), (AndroidLogcatFilter)filter,
+                                                              RECORDED_PAGE_LINES));
+            return;
+          }
+          // Rather than refiltering the whole console text on this thread, filter the logs kept by the service in parallel and
+          // stream the matching lines into the cleared console.
+          myLogFilterModel.setLogcatFilter((AndroidLogcatFilter)filter);
+          AndroidLogcatService.getInstance().replayOldLogs(device, myLogcatReceiver, (AndroidLogcatFilter)filter, () -> {
+            // We check for null, because myLogConsole.clear() depends on myLogConsole.getConsole() not being null
+            if (myLogConsole.getConsole() != null) {
+              myLogConsole.clear();
+            }
+            myLogFilterModel.processingStarted();
+          });
         }
       });
     }
   }
 
+  /**
+   * Replaces the logs displayed with a page of the logs recorded from the device, read in the background. Live logs are no longer
+   * displayed until the device is restarted, or the page reader returns null to go back to them.
+   */
+  private void showRecordedPage(@NotNull Function<LogcatJournal, LogcatJournal.Page> pageReader) {
+    IDevice device = myDevice;
+    if (device == null) {
+      return;
+    }
+    ProgressManager.getInstance().run(new Task.Backgroundable(myProject, LogConsoleBase.APPLYING_FILTER_TITLE) {
+      @Override
+      public void run(@NotNull ProgressIndicator indicator) {
+        LogcatJournal journal = AndroidLogcatService.getInstance().getRecordedLogs(device);
+        if (journal == null) {
+          return;
+        }
+        LogcatJournal.Page page = pageReader.apply(journal);
+        if (page == null) {
+          notifyDeviceUpdated(true);
+          return;
+        }
+        if (page.getStartTime() == null) {
+          return;
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add(AndroidBundle.message("android.logcat.recorded.page", page.getStartTime(), page.getEndTime()));
+        FormattedLogcatReceiver receiver = new FormattedLogcatReceiver() {
+          @Override
+          protected void receiveFormattedLogLine(@NotNull String line) {
+            lines.add(line);
+          }
+        };
+        page.getLines().forEach(receiver::onLogLineReceived);
+
+        ApplicationManager.getApplication().invokeLater(() -> {
+          if (myProject.isDisposed() || device != myDevice) {
+            return;
+          }
+          myRecordedPage = page;
+          // We check for null, because myLogConsole.clear() depends on myLogConsole.getConsole() not being null
+          if (myLogConsole.getConsole() != null) {
+            myLogConsole.clear();
+          }
+          myLogFilterModel.processingStarted();
+          lines.forEach(myLogConsole::addLogLine);
+        });
+      }
+    });
+  }
+
+  @Nullable
+  private AndroidLogcatFilter getSelectedFilter() {
+    Object filter = myFilterComboBoxModel.getSelectedItem();
+    return filter instanceof AndroidLogcatFilter ? (AndroidLogcatFilter)filter : null;
+  }
+
   /**
    * Update the list of filters which are provided by default (selected app and filters provided
    * by plugins). These show up in the top half of the filter pulldown.
@@ -423,6 +521,7 @@ public abstract class AndroidLogcatView implements Disposable {
   public final void dispose() {
     if (myDevice != null) {
       AndroidLogcatService.getInstance().removeListener(myDevice, myLogcatReceiver);
+      AndroidLogcatService.getInstance().setRecording(myDevice, myProject, false);
     }
   }
 
@@ -453,6 +552,74 @@ public abstract class AndroidLogcatView implements Disposable {
     }
   }
 
+  private final class MyRecordLogcatAction extends ToggleAction {
+    public MyRecordLogcatAction() {
+      super(AndroidBundle.message("android.logcat.record.action.text"), AndroidBundle.message("android.logcat.record.action.description"),
+            AllIcons.Actions.Menu_saveall);
+    }
+
+    @Override
+    public boolean isSelected(AnActionEvent e) {
+      return AndroidLogcatPreferences.getInstance(myProject).RECORD_LOGCAT_TO_DISK;
+    }
+
+    @Override
+    public void setSelected(AnActionEvent e, boolean state) {
+      AndroidLogcatPreferences.getInstance(myProject).RECORD_LOGCAT_TO_DISK = state;
+      if (myDevice != null) {
+        AndroidLogcatService.getInstance().setRecording(myDevice, myProject, state);
+      }
+    }
+  }
+
+  private final class MyOlderRecordedLogsAction extends AnAction {
+    public MyOlderRecordedLogsAction() {
+      super(AndroidBundle.message("android.logcat.recorded.older.action.text"),
+            AndroidBundle.message("android.logcat.recorded.older.action.description"), AllIcons.Actions.Back);
+    }
+
+    @Override
+    public void update(AnActionEvent e) {
+      // The journal is opened in the background once recording is turned on.
+      IDevice device = myDevice;
+      e.getPresentation().setEnabled(device != null && AndroidLogcatService.getInstance().getRecordedLogs(device) != null);
+    }
+
+    @Override
+    public void actionPerformed(AnActionEvent e) {
+      LogcatJournal.Page page = myRecordedPage;
+      AndroidLogcatFilter filter = getSelectedFilter();
+      showRecordedPage(
+        journal -> journal.readPageBefore(page != null ? page.getStartBlock() : journal.getEndBlock(), filter, RECORDED_PAGE_LINES));
+    }
+  }
+
+  private final class MyNewerRecordedLogsAction extends AnAction {
+    public MyNewerRecordedLogsAction() {
+      super(AndroidBundle.message("android.logcat.recorded.newer.action.text"),
+            AndroidBundle.message("android.logcat.recorded.newer.action.description"), AllIcons.Actions.Forward);
+    }
+
+    @Override
+    public void update(AnActionEvent e) {
+      e.getPresentation().setEnabled(myRecordedPage != null);
+    }
+
+    @Override
+    public void actionPerformed(AnActionEvent e) {
+      LogcatJournal.Page page = myRecordedPage;
+      if (page == null) {
+        return;
+      }
+      AndroidLogcatFilter filter = getSelectedFilter();
+      showRecordedPage(journal -> {
+        LogcatJournal.Page newerPage = journal.readPageAfter(page.getEndBlock(), filter, RECORDED_PAGE_LINES);
+        // The last page is also in the logs kept by the service, show it along with the live logs.
+        return newerPage.getEndBlock() < journal.getEndBlock() ? newerPage : null;
+      });
+    }
+  }
+
   final class AndroidLogConsole extends LogConsoleBase {
     private final RegexFilterComponent myRegexFilterComponent = new RegexFilterComponent("LOG_FILTER_HISTORY", 5);
     private final AndroidLogcatPreferences myPreferences;
@@ -466,6 +633,10 @@ public abstract class AndroidLogcatView implements Disposable {
         c.addCustomConsoleAction(new MyRestartAction());
         c.addCustomConsoleAction(new MyConfigureLogcatHeaderAction());
         c.addCustomConsoleAction(new Separator());
+        c.addCustomConsoleAction(new MyRecordLogcatAction());
+        c.addCustomConsoleAction(new MyOlderRecordedLogsAction());
+        c.addCustomConsoleAction(new MyNewerRecordedLogsAction());
+        c.addCustomConsoleAction(new Separator());
         c.addCustomConsoleAction(new BrowserHelpAction("logcat", "http://developer.android.com/r/studio-ui/am-logcat.html"));
       }
       myPreferences = AndroidLogcatPreferences.getInstance(project);
@@ -19,19 +19,29 @@ import com.android.ddmlib.Log;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Collection;
 import java.util.regex.Pattern;
 
 /**
  * A basic implementation of {@link AndroidLogcatFilter} which does exclusive matching against
  * multiple predicate patterns (all non-null predicates must match).
+ *
+ * The predicates are compiled into a plan when the filter is built: the cheap level and pid checks run first, and patterns which
+ * only match a literal (e.g. filters which aren't regular expressions) are matched with a substring search instead of a regex.
  */
 public final class DefaultAndroidLogcatFilter implements AndroidLogcatFilter {
+  /**
+   * Value of {@link #myPidValue} when no pid can match, e.g. because the pid of the filter isn't a number.
+   */
+  private static final int NO_PID = -1;
+
   @NotNull private final String myName;
-  @Nullable private final Pattern myMessagePattern;
-  @Nullable private final Pattern myTagPattern;
-  @Nullable private final Pattern myPkgNamePattern;
-  @Nullable private final String myPid;
-  @Nullable private final Log.LogLevel myLogLevel;
+  @Nullable private final TextMatcher myMessageMatcher;
+  @Nullable private final TextMatcher myTagMatcher;
+  @Nullable private final TextMatcher myPkgNameMatcher;
+  private final boolean myFilterByPid;
+  private final int myPidValue;
+  private final int myMinPriority;
 
   public static final class Builder {
     @NotNull private final String myName;
@@ -90,33 +100,76 @@ public final class DefaultAndroidLogcatFilter implements AndroidLogcatFilter {
                                      @Nullable String pid,
                                      @Nullable Log.LogLevel logLevel) {
     myName = name;
-    myMessagePattern = messagePattern;
-    myTagPattern = tagPattern;
-    myPkgNamePattern = pkgNamePattern;
-    myPid = pid;
-    myLogLevel = logLevel;
+    myMessageMatcher = TextMatcher.create(messagePattern);
+    myTagMatcher = TextMatcher.create(tagPattern);
+    myPkgNameMatcher = TextMatcher.create(pkgNamePattern);
+    myFilterByPid = pid != null && pid.length() > 0;
+    myPidValue = myFilterByPid ? parsePid(pid) : NO_PID;
+    myMinPriority = logLevel != null ? logLevel.getPriority() : Integer.MIN_VALUE;
+  }
+
+  private static int parsePid(@NotNull String pid) {
+    try {
+      int value = Integer.parseInt(pid);
+      // Pids are compared as strings, e.g. "007" doesn't match pid 7.
+      return value >= 0 && Integer.toString(value).equals(pid) ? value : NO_PID;
+    }
+    catch (NumberFormatException e) {
+      return NO_PID;
+    }
   }
 
   @Override
   public boolean isApplicable(@NotNull String message, @NotNull String tag, @NotNull String pkg, int pid, @NotNull Log.LogLevel logLevel) {
-    if (myLogLevel != null && (logLevel.getPriority() < myLogLevel.getPriority())) {
+    // Cheapest checks first, the message is the longest text to match.
+    if (logLevel.getPriority() < myMinPriority) {
+      return false;
+    }
+
+    if (myFilterByPid && (myPidValue == NO_PID || pid != myPidValue)) {
+      return false;
+    }
+
+    if (myTagMatcher != null && !myTagMatcher.find(tag)) {
       return false;
     }
 
-    if (myMessagePattern != null && !myMessagePattern.matcher(message).find()) {
+    if (myPkgNameMatcher != null && !myPkgNameMatcher.find(pkg)) {
       return false;
     }
 
-    if (myTagPattern != null && !myTagPattern.matcher(tag).find()) {
+    if (myMessageMatcher != null && !myMessageMatcher.find(message)) {
       return false;
     }
 
-    if (myPkgNamePattern != null && !myPkgNamePattern.matcher(pkg).find()) {
+    return true;
+  }
+
+  /**
+   * Returns false if no line logged with one of the levels (a mask of 1 << priority), pids and tags can be accepted, e.g. to skip a
+   * block of {@link LogcatJournal} lines from its summary alone.
+   */
+  boolean mayAcceptAny(int levelMask, @NotNull int[] pids, @NotNull Collection<String> tags) {
+    if (myMinPriority > 0 && levelMask >>> Math.min(myMinPriority, Integer.SIZE - 1) == 0) {
       return false;
     }
 
-    // TODO: If we're always checking against an int pid anyway, why let myPid be a string?
-    if ((myPid != null && myPid.length() > 0) && !myPid.equals(Integer.toString(pid))) {
+    if (myFilterByPid) {
+      boolean found = false;
+      for (int pid : pids) {
+        found |= pid == myPidValue;
+      }
+      if (myPidValue == NO_PID || !found) {
+        return false;
+      }
+    }
+
+    if (myTagMatcher != null) {
+      for (String tag : tags) {
+        if (myTagMatcher.find(tag)) {
+          return true;
+        }
+      }
       return false;
     }
 
@@ -147,4 +200,117 @@ public final class DefaultAndroidLogcatFilter implements AndroidLogcatFilter {
     return new DefaultAndroidLogcatFilter(name, logMessagePattern, logTagPattern, pkgNamePattern, pid, logLevel);
   }
 
+  /**
+   * Finds a {@link Pattern} in text. Patterns which only match a literal, e.g. quoted by {@link RegexFilterComponent} for filters
+   * which aren't regular expressions, are searched with {@link String#indexOf} (or an ASCII case insensitive scan) instead.
+   */
+  abstract static class TextMatcher {
+    private static final String REGEX_META_CHARACTERS = "\\[](){}.*+?^$|";
+
+    abstract boolean find(@NotNull String text);
+
+    @Nullable
+    static TextMatcher create(@Nullable Pattern pattern) {
+      if (pattern == null) {
+        return null;
+      }
+      String literal = getLiteral(pattern);
+      int flags = pattern.flags();
+      if (literal == null || (flags & ~(Pattern.CASE_INSENSITIVE)) != 0) {
+        return new RegexMatcher(pattern);
+      }
+      if ((flags & Pattern.CASE_INSENSITIVE) == 0) {
+        return new LiteralMatcher(literal);
+      }
+      for (int i = 0; i < literal.length(); i++) {
+        if (literal.charAt(i) >= 0x80) {
+          // Only US-ASCII characters are matched case insensitively by Pattern.CASE_INSENSITIVE alone.
+          return new RegexMatcher(pattern);
+        }
+      }
+      return new AsciiCaseInsensitiveLiteralMatcher(literal);
+    }
+
+    /**
+     * Returns the literal text matched by the pattern, or null if it is a regular expression.
+     */
+    @Nullable
+    static String getLiteral(@NotNull Pattern pattern) {
+      String regex = pattern.pattern();
+      if (regex.startsWith("\\Q") && regex.endsWith("\\E") && regex.indexOf("\\E") == regex.length() - 2) {
+        return regex.substring(2, regex.length() - 2);
+      }
+      for (int i = 0; i < regex.length(); i++) {
+        if (REGEX_META_CHARACTERS.indexOf(regex.charAt(i)) >= 0) {
+          return null;
+        }
+      }
+      return regex;
+    }
+  }
+
+  private static final class RegexMatcher extends TextMatcher {
+    @NotNull private final Pattern myPattern;
+
+    private RegexMatcher(@NotNull Pattern pattern) {
+      myPattern = pattern;
+    }
+
+    @Override
+    boolean find(@NotNull String text) {
+      return myPattern.matcher(text).find();
+    }
+  }
+
+  private static final class LiteralMatcher extends TextMatcher {
+    @NotNull private final String myLiteral;
+
+    private LiteralMatcher(@NotNull String literal) {
+      myLiteral = literal;
+    }
+
+    @Override
+    boolean find(@NotNull String text) {
+      return text.contains(myLiteral);
+    }
+  }
+
+  private static final class AsciiCaseInsensitiveLiteralMatcher extends TextMatcher {
+    @NotNull private final char[] myLowerCase;
+    @NotNull private final char[] myUpperCase;
+
+    private AsciiCaseInsensitiveLiteralMatcher(@NotNull String literal) {
+      myLowerCase = new char[literal.length()];
+      myUpperCase = new char[literal.length()];
+      for (int i = 0; i < literal.length(); i++) {
+        char c = literal.charAt(i);
+        myLowerCase[i] = c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+        myUpperCase[i] = c >= 'a' && c <= 'z' ? (char)(c - ('a' - 'A')) : c;
+      }
+    }
+
+    @Override
+    boolean find(@NotNull String text) {
+      int length = myLowerCase.length;
+      if (length == 0) {
+        return true;
+      }
+      char firstLower = myLowerCase[0];
+      char firstUpper = myUpperCase[0];
+      for (int start = 0, last = text.length() - length; start <= last; start++) {
+        char c = text.charAt(start);
+        if (c != firstLower && c != firstUpper) {
+          continue;
+        }
+        int i = 1;
+        while (i < length && (text.charAt(start + i) == myLowerCase[i] || text.charAt(start + i) == myUpperCase[i])) {
+          i++;
+        }
+        if (i == length) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
 }
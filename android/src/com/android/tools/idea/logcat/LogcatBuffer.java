@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import com.intellij.execution.impl.ConsoleBuffer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The log lines received from a device, kept so listeners added later can be sent the logs received so far.
+ *
+ * Instead of a {@link LogCatMessage} per line, lines are stored in chunks of {@link #CHUNK_SIZE}: their text is appended to a shared
+ * char block, and each line only keeps the offset of its text and the index of its header. Consecutive lines of a message share
+ * their header, and the tag and app name of the headers are interned. As in the console, the oldest lines are dropped once the
+ * text exceeds the cycle buffer size.
+ *
+ * The buffer supports a single writer thread (calling {@link #addMessage}) concurrently with any number of readers, without locking.
+ * Chunk data is never modified once published, so a {@link Snapshot} stays valid while more lines are added or old ones dropped.
+ */
+final class LogcatBuffer {
+  static final int CHUNK_SIZE = 1024;
+
+  private static final int INITIAL_CHUNK_TEXT_SIZE = 16 * 1024;
+
+  /**
+   * Upper bound of the interned strings, so a device that logs with ever changing tags can't grow the table forever.
+   */
+  private static final int MAX_INTERNED_STRINGS = 4096;
+
+  /**
+   * Chunks still holding lines in the buffer. Replaced, never modified, when a chunk is added or dropped.
+   */
+  @NotNull private volatile Chunks myChunks = new Chunks(new Chunk[0], 0);
+
+  /**
+   * Index of the oldest line still in the buffer, and index after the newest line. Lines are numbered from 0 in the order they were
+   * added, line i being stored in chunk i / CHUNK_SIZE.
+   */
+  private volatile long myStart;
+  private volatile long myEnd;
+
+  // Writer thread state
+  private long myTextSize;
+  @NotNull private final Map<String, String> myInternedStrings = new HashMap<>();
+  @Nullable private LogCatHeader myLastHeader;
+  @Nullable private LogCatHeader myLastInternedHeader;
+
+  public void addMessage(@NotNull LogCatMessage message) {
+    long index = myEnd;
+    Chunks chunks = myChunks;
+    Chunk chunk;
+    if (index % CHUNK_SIZE == 0) {
+      chunk = new Chunk();
+      Chunk[] grown = Arrays.copyOf(chunks.myChunks, chunks.myChunks.length + 1);
+      grown[grown.length - 1] = chunk;
+      if (grown.length > 1) {
+        // Only the last chunk is still being written, release the unused part of the previous one.
+        grown[grown.length - 2].trimToSize();
+      }
+      myChunks = new Chunks(grown, grown.length > 1 ? chunks.myFirstChunk : index / CHUNK_SIZE);
+    }
+    else {
+      chunk = chunks.myChunks[chunks.myChunks.length - 1];
+    }
+
+    String text = message.getMessage();
+    chunk.add(internHeader(message.getHeader()), text);
+    // Publishes the line to the readers.
+    myEnd = index + 1;
+
+    myTextSize += text.length();
+    if (ConsoleBuffer.useCycleBuffer()) {
+      trim(ConsoleBuffer.getCycleBufferSize());
+    }
+  }
+
+  /**
+   * Returns the lines currently in the buffer. Lines added later are not part of the snapshot.
+   */
+  @NotNull
+  public Snapshot getSnapshot() {
+    // Read the end first, lines before it are in the chunks read afterwards unless they were dropped.
+    long end = myEnd;
+    long start = Math.min(myStart, end);
+    Chunks chunks = myChunks;
+    return new Snapshot(chunks, Math.max(start, chunks.myFirstChunk * CHUNK_SIZE), end);
+  }
+
+  /**
+   * Drops the oldest lines until the text of the remaining ones fits in maxTextSize.
+   */
+  private void trim(long maxTextSize) {
+    long start = myStart;
+    long end = myEnd;
+    Chunks chunks = myChunks;
+    while (myTextSize > maxTextSize && start < end) {
+      myTextSize -= chunks.getChunk(start).getTextLength((int)(start % CHUNK_SIZE));
+      start++;
+    }
+    myStart = start;
+
+    int droppedChunks = (int)(start / CHUNK_SIZE - chunks.myFirstChunk);
+    if (droppedChunks > 0) {
+      myChunks = new Chunks(Arrays.copyOfRange(chunks.myChunks, droppedChunks, chunks.myChunks.length),
+                            chunks.myFirstChunk + droppedChunks);
+    }
+  }
+
+  /**
+   * Returns the header with interned strings. Lines of a multi-line message are received with the same header.
+   */
+  @NotNull
+  private LogCatHeader internHeader(@NotNull LogCatHeader header) {
+    if (header == myLastHeader && myLastInternedHeader != null) {
+      return myLastInternedHeader;
+    }
+    if (myInternedStrings.size() > MAX_INTERNED_STRINGS) {
+      myInternedStrings.clear();
+    }
+    String appName = intern(header.getAppName());
+    String tag = intern(header.getTag());
+    LogCatHeader interned = appName == header.getAppName() && tag == header.getTag()
+                            ? header
+                            : new LogCatHeader(header.getLogLevel(), header.getPid(), header.getTid(), appName, tag,
+                                               header.getTimestamp());
+    myLastHeader = header;
+    myLastInternedHeader = interned;
+    return interned;
+  }
+
+  @NotNull
+  private String intern(@NotNull String s) {
+    String interned = myInternedStrings.putIfAbsent(s, s);
+    return interned == null ? s : interned;
+  }
+
+  /**
+   * The lines of the buffer at some point in time.
+   */
+  static final class Snapshot {
+    @NotNull private final Chunks myChunks;
+    private final long myStart;
+    private final long myEnd;
+
+    private Snapshot(@NotNull Chunks chunks, long start, long end) {
+      myChunks = chunks;
+      myStart = start;
+      myEnd = end;
+    }
+
+    public int size() {
+      return (int)(myEnd - myStart);
+    }
+
+    public void forEach(@NotNull Consumer<LogCatMessage> consumer) {
+      forEach(myStart, consumer);
+    }
+
+    /**
+     * Passes the lines [from, to) of the snapshot, 0 being its first line, to the consumer.
+     */
+    public void forEach(int from, int to, @NotNull Consumer<LogCatMessage> consumer) {
+      assert 0 <= from && from <= to && to <= size();
+      for (long i = myStart + from; i < myStart + to; i++) {
+        Chunk chunk = myChunks.getChunk(i);
+        int index = (int)(i % CHUNK_SIZE);
+        consumer.accept(new LogCatMessage(chunk.getHeader(index), chunk.getText(index)));
+      }
+    }
+
+    /**
+     * Passes the lines logged at or after the timestamp to the consumer. Whole chunks of older lines are skipped without reading them.
+     */
+    public void forEachSince(@NotNull LogCatTimestamp timestamp, @NotNull Consumer<LogCatMessage> consumer) {
+      long start = myStart;
+      while (start < myEnd) {
+        long chunkEnd = Math.min(myEnd, (start / CHUNK_SIZE + 1) * CHUNK_SIZE);
+        LogCatHeader lastHeader = myChunks.getChunk(start).getHeader((int)((chunkEnd - 1) % CHUNK_SIZE));
+        if (!lastHeader.getTimestamp().isBefore(timestamp)) {
+          break;
+        }
+        start = chunkEnd;
+      }
+      forEach(start, message -> {
+        // Within the chunk which contains the timestamp, skip the lines before it.
+        if (!message.getTimestamp().isBefore(timestamp)) {
+          consumer.accept(message);
+        }
+      });
+    }
+
+    private void forEach(long start, @NotNull Consumer<LogCatMessage> consumer) {
+      forEach((int)(start - myStart), size(), consumer);
+    }
+  }
+
+  private static final class Chunks {
+    @NotNull private final Chunk[] myChunks;
+    /**
+     * Number of the first chunk, chunk i holding lines [i * CHUNK_SIZE, (i + 1) * CHUNK_SIZE).
+     */
+    private final long myFirstChunk;
+
+    Chunks(@NotNull Chunk[] chunks, long firstChunk) {
+      myChunks = chunks;
+      myFirstChunk = firstChunk;
+    }
+
+    @NotNull
+    Chunk getChunk(long line) {
+      return myChunks[(int)(line / CHUNK_SIZE - myFirstChunk)];
+    }
+  }
+
+  /**
+   * Up to {@link #CHUNK_SIZE} lines. Written by the writer thread only, and published to readers by {@link LogcatBuffer#myEnd}. Arrays
+   * are replaced rather than modified when they grow, so readers always find the lines they were published.
+   */
+  private static final class Chunk {
+    /**
+     * Offset of the text of each line in myText, followed by the end offset of the last line.
+     */
+    @NotNull private final int[] myTextOffsets = new int[CHUNK_SIZE + 1];
+    @NotNull private final int[] myHeaderIndices = new int[CHUNK_SIZE];
+    @NotNull private volatile char[] myText = new char[INITIAL_CHUNK_TEXT_SIZE];
+    @NotNull private volatile LogCatHeader[] myHeaders = new LogCatHeader[16];
+    private int myLineCount;
+    private int myHeaderCount;
+
+    void add(@NotNull LogCatHeader header, @NotNull String text) {
+      if (myHeaderCount == 0 || myHeaders[myHeaderCount - 1] != header) {
+        if (myHeaderCount == myHeaders.length) {
+          myHeaders = Arrays.copyOf(myHeaders, myHeaders.length * 2);
+        }
+        myHeaders[myHeaderCount++] = header;
+      }
+      myHeaderIndices[myLineCount] = myHeaderCount - 1;
+
+      int offset = myTextOffsets[myLineCount];
+      int end = offset + text.length();
+      char[] chars = myText;
+      if (end > chars.length) {
+        chars = Arrays.copyOf(chars, Math.max(end, chars.length * 2));
+      }
+      text.getChars(0, text.length(), chars, offset);
+      myText = chars;
+      myTextOffsets[++myLineCount] = end;
+    }
+
+    void trimToSize() {
+      myText = Arrays.copyOf(myText, myTextOffsets[myLineCount]);
+      myHeaders = Arrays.copyOf(myHeaders, myHeaderCount);
+    }
+
+    @NotNull
+    LogCatHeader getHeader(int line) {
+      return myHeaders[myHeaderIndices[line]];
+    }
+
+    @NotNull
+    String getText(int line) {
+      return new String(myText, myTextOffsets[line], getTextLength(line));
+    }
+
+    int getTextLength(int line) {
+      return myTextOffsets[line + 1] - myTextOffsets[line];
+    }
+  }
+}
@@ -0,0 +1,674 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import com.intellij.openapi.diagnostic.Logger;
+import gnu.trove.TIntHashSet;
+import net.jcip.annotations.GuardedBy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A recording of the logs of a device on disk, so they outlive the {@link LogcatBuffer} and the IDE session, e.g. to look at the lines
+ * which preceded a crash during the night.
+ *
+ * Lines are written in blocks of about {@link #BLOCK_LINES} lines, each compressed on its own, to segment files of up to
+ * {@link #SEGMENT_SIZE} bytes. The oldest segment is deleted once there are more than {@link #MAX_SEGMENTS}. Next to each segment,
+ * an index file keeps a summary of its blocks: their time range, and the levels, pids and tags of their lines. The index is loaded
+ * in memory, so reading a page of the journal only inflates the blocks whose summary may be accepted by the filter.
+ *
+ * Blocks are numbered from 0 in the order they were written, and keep their number until their segment is deleted. As in
+ * {@link LogcatBuffer}, {@link #addMessage} must be called from a single writer thread, while pages may be read from any thread.
+ */
+final class LogcatJournal implements Closeable {
+  static final int BLOCK_LINES = 4096;
+  static final long SEGMENT_SIZE = 32L * 1024 * 1024;
+  static final int MAX_SEGMENTS = 8;
+
+  private static final int MAX_BLOCK_BYTES = 1024 * 1024;
+  private static final String DATA_EXTENSION = ".logcat";
+  private static final String INDEX_EXTENSION = ".index";
+
+  private static Logger getLog() {
+    return Logger.getInstance(LogcatJournal.class);
+  }
+
+  @NotNull private final File myDirectory;
+
+  @GuardedBy("this")
+  @NotNull private final Deque<Segment> mySegments = new ArrayDeque<>();
+
+  @GuardedBy("this")
+  private boolean myClosed;
+
+  // Writer thread state
+  @NotNull private final BlockWriter myBlockWriter = new BlockWriter();
+  @Nullable private LogCatHeader myLastHeader;
+  private boolean myWriteFailed;
+
+  private LogcatJournal(@NotNull File directory) {
+    myDirectory = directory;
+  }
+
+  /**
+   * Opens the journal in the directory, creating it if needed. New lines are appended to the lines recorded before.
+   */
+  @NotNull
+  static LogcatJournal open(@NotNull File directory) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create " + directory);
+    }
+    LogcatJournal journal = new LogcatJournal(directory);
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(DATA_EXTENSION));
+    if (files != null) {
+      List<Integer> numbers = new ArrayList<>();
+      for (File file : files) {
+        try {
+          numbers.add(Integer.parseInt(file.getName().substring(0, file.getName().length() - DATA_EXTENSION.length())));
+        }
+        catch (NumberFormatException ignored) {
+        }
+      }
+      Collections.sort(numbers);
+      long firstBlock = 0;
+      for (int number : numbers) {
+        Segment segment = Segment.load(directory, number, firstBlock);
+        journal.mySegments.add(segment);
+        firstBlock = segment.getEndBlock();
+      }
+    }
+    return journal;
+  }
+
+  /**
+   * Appends a line. The lines are only written to disk once their block is full, or on {@link #flush}.
+   */
+  public void addMessage(@NotNull LogCatMessage message) {
+    if (myWriteFailed || isClosed()) {
+      return;
+    }
+    LogCatHeader header = message.getHeader();
+    boolean newMessage = header != myLastHeader;
+    // End blocks between messages, so the lines of a message can be filtered together, unless a message is much longer than a block.
+    if (myBlockWriter.isFull(newMessage)) {
+      writeBlock();
+    }
+    myBlockWriter.add(header, newMessage, message.getMessage());
+    myLastHeader = header;
+  }
+
+  /**
+   * Writes the lines added since the last block was written.
+   */
+  public void flush() {
+    if (!myWriteFailed && !isClosed() && myBlockWriter.getLineCount() > 0) {
+      writeBlock();
+    }
+  }
+
+  /**
+   * Writes the pending lines and releases the journal: its index is dropped from memory, further lines are ignored, and pages read
+   * afterwards are empty. The recorded lines stay on disk, to be read back after opening the journal again. Must be called from the
+   * writer thread.
+   */
+  @Override
+  public void close() {
+    flush();
+    myBlockWriter.reset();
+    synchronized (this) {
+      myClosed = true;
+      mySegments.clear();
+    }
+  }
+
+  private synchronized boolean isClosed() {
+    return myClosed;
+  }
+
+  /**
+   * Returns the number of the first block still on disk.
+   */
+  public synchronized long getStartBlock() {
+    return mySegments.isEmpty() ? 0 : mySegments.getFirst().myFirstBlock;
+  }
+
+  /**
+   * Returns the number after the last block written so far.
+   */
+  public synchronized long getEndBlock() {
+    return mySegments.isEmpty() ? 0 : mySegments.getLast().getEndBlock();
+  }
+
+  /**
+   * Returns up to about maxLines lines accepted by the filter, from the blocks right before endBlock. As in
+   * {@link LogcatSnapshotFilter}, a message is accepted as a whole if any of its lines is accepted.
+   */
+  @NotNull
+  public Page readPageBefore(long endBlock, @Nullable AndroidLogcatFilter filter, int maxLines) {
+    Deque<List<LogCatMessage>> blocks = new ArrayDeque<>();
+    int lineCount = 0;
+    long block = Math.min(endBlock, getEndBlock());
+    long startBlock = getStartBlock();
+    while (block > startBlock && lineCount < maxLines) {
+      block--;
+      List<LogCatMessage> lines = readBlock(block, filter);
+      if (lines == null) {
+        // The segment was deleted meanwhile, there are no older lines.
+        block++;
+        break;
+      }
+      blocks.addFirst(lines);
+      lineCount += lines.size();
+    }
+    List<LogCatMessage> lines = new ArrayList<>(lineCount);
+    blocks.forEach(lines::addAll);
+    return createPage(Math.min(block, endBlock), Math.min(endBlock, getEndBlock()), lines);
+  }
+
+  /**
+   * Returns up to about maxLines lines accepted by the filter, from the blocks starting at startBlock.
+   */
+  @NotNull
+  public Page readPageAfter(long startBlock, @Nullable AndroidLogcatFilter filter, int maxLines) {
+    List<LogCatMessage> lines = new ArrayList<>();
+    long block = Math.max(startBlock, getStartBlock());
+    long firstBlock = block;
+    long endBlock = getEndBlock();
+    while (block < endBlock && lines.size() < maxLines) {
+      List<LogCatMessage> blockLines = readBlock(block, filter);
+      block++;
+      if (blockLines == null) {
+        // The segment was deleted meanwhile, continue with the oldest block left.
+        lines.clear();
+        block = firstBlock = getStartBlock();
+        continue;
+      }
+      lines.addAll(blockLines);
+    }
+    return createPage(firstBlock, block, lines);
+  }
+
+  @NotNull
+  private synchronized Page createPage(long startBlock, long endBlock, @NotNull List<LogCatMessage> lines) {
+    BlockSummary first = getSummary(startBlock);
+    BlockSummary last = endBlock > startBlock ? getSummary(endBlock - 1) : null;
+    return new Page(startBlock, endBlock, first != null && last != null ? first.myFirstTimestamp : null,
+                    first != null && last != null ? last.myLastTimestamp : null, lines);
+  }
+
+  @GuardedBy("this")
+  @Nullable
+  private BlockSummary getSummary(long block) {
+    Segment segment = findSegment(block);
+    return segment == null ? null : segment.myBlocks.get((int)(block - segment.myFirstBlock));
+  }
+
+  /**
+   * Returns the lines of the block accepted by the filter, or null if the block was deleted. Blocks whose summary shows that none of
+   * their lines can be accepted are not read.
+   */
+  @Nullable
+  private List<LogCatMessage> readBlock(long block, @Nullable AndroidLogcatFilter filter) {
+    Segment segment;
+    BlockSummary summary;
+    synchronized (this) {
+      segment = findSegment(block);
+      summary = getSummary(block);
+    }
+    if (segment == null || summary == null) {
+      return null;
+    }
+    if (filter instanceof DefaultAndroidLogcatFilter &&
+        !((DefaultAndroidLogcatFilter)filter).mayAcceptAny(summary.myLevelMask, summary.myPids, summary.myTags)) {
+      return Collections.emptyList();
+    }
+
+    List<LogCatMessage> lines = new ArrayList<>(summary.myLineCount);
+    try {
+      readLines(segment.myDataFile, summary, lines::add);
+    }
+    catch (NoSuchFileException e) {
+      return null;
+    }
+    catch (IOException | DataFormatException e) {
+      getLog().warn("Unable to read block " + block + " of the logcat journal in " + myDirectory, e);
+      return Collections.emptyList();
+    }
+    if (filter == null) {
+      return lines;
+    }
+
+    List<LogCatMessage> accepted = new ArrayList<>();
+    LogcatSnapshotFilter.MessageCollector collector = new LogcatSnapshotFilter.MessageCollector(accepted::add);
+    for (LogCatMessage line : lines) {
+      LogCatHeader header = line.getHeader();
+      collector.add(line, filter.isApplicable(line.getMessage(), header.getTag(), header.getAppName(), header.getPid(),
+                                              header.getLogLevel()));
+    }
+    return accepted;
+  }
+
+  @GuardedBy("this")
+  @Nullable
+  private Segment findSegment(long block) {
+    for (Segment segment : mySegments) {
+      if (segment.myFirstBlock <= block && block < segment.getEndBlock()) {
+        return segment;
+      }
+    }
+    return null;
+  }
+
+  private void writeBlock() {
+    try {
+      Segment segment;
+      synchronized (this) {
+        if (myClosed) {
+          return;
+        }
+        segment = mySegments.peekLast();
+        if (segment == null || segment.myDataSize >= SEGMENT_SIZE) {
+          segment = Segment.create(myDirectory, segment == null ? 0 : segment.myNumber + 1, getEndBlock());
+          mySegments.addLast(segment);
+        }
+      }
+      BlockSummary summary = myBlockWriter.write(segment);
+      synchronized (this) {
+        segment.myBlocks.add(summary);
+        segment.myDataSize = summary.myOffset + summary.myLength;
+        while (mySegments.size() > MAX_SEGMENTS) {
+          mySegments.removeFirst().delete();
+        }
+      }
+    }
+    catch (IOException e) {
+      // Keep receiving logs, but stop recording them, e.g. when the disk is full.
+      getLog().warn("Unable to write the logcat journal in " + myDirectory + ", logs are no longer recorded", e);
+      myWriteFailed = true;
+    }
+    finally {
+      myBlockWriter.reset();
+      // The first line of the next block repeats its header.
+      myLastHeader = null;
+    }
+  }
+
+  private static void readLines(@NotNull File dataFile, @NotNull BlockSummary summary, @NotNull Consumer<LogCatMessage> consumer)
+    throws IOException, DataFormatException {
+    ByteBuffer compressed = ByteBuffer.allocate(summary.myLength);
+    try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+      while (compressed.hasRemaining()) {
+        if (channel.read(compressed, summary.myOffset + compressed.position()) < 0) {
+          throw new EOFException();
+        }
+      }
+    }
+    Inflater inflater = new Inflater();
+    byte[] bytes = new byte[summary.myUncompressedLength];
+    try {
+      inflater.setInput(compressed.array());
+      int length = 0;
+      while (length < bytes.length && !inflater.finished()) {
+        int inflated = inflater.inflate(bytes, length, bytes.length - length);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new EOFException();
+        }
+        length += inflated;
+      }
+    }
+    finally {
+      inflater.end();
+    }
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    LogCatHeader header = null;
+    for (int i = 0; i < summary.myLineCount; i++) {
+      if (in.readBoolean() || header == null) {
+        Log.LogLevel level = getLogLevel(in.readByte());
+        int pid = in.readInt();
+        int tid = in.readInt();
+        String appName = in.readUTF();
+        String tag = in.readUTF();
+        LogCatTimestamp timestamp = LogCatTimestamp.fromString(in.readUTF());
+        header = new LogCatHeader(level, pid, tid, appName, tag, timestamp);
+      }
+      byte[] text = new byte[in.readInt()];
+      in.readFully(text);
+      consumer.accept(new LogCatMessage(header, new String(text, StandardCharsets.UTF_8)));
+    }
+  }
+
+  @NotNull
+  private static Log.LogLevel getLogLevel(int priority) {
+    for (Log.LogLevel level : Log.LogLevel.values()) {
+      if (level.getPriority() == priority) {
+        return level;
+      }
+    }
+    return Log.LogLevel.VERBOSE;
+  }
+
+  /**
+   * Lines of the journal read by {@link #readPageBefore} or {@link #readPageAfter}: the accepted lines of the blocks
+   * [startBlock, endBlock).
+   */
+  static final class Page {
+    private final long myStartBlock;
+    private final long myEndBlock;
+    @Nullable private final String myStartTime;
+    @Nullable private final String myEndTime;
+    @NotNull private final List<LogCatMessage> myLines;
+
+    Page(long startBlock, long endBlock, @Nullable String startTime, @Nullable String endTime, @NotNull List<LogCatMessage> lines) {
+      myStartBlock = startBlock;
+      myEndBlock = endBlock;
+      myStartTime = startTime;
+      myEndTime = endTime;
+      myLines = lines;
+    }
+
+    public long getStartBlock() {
+      return myStartBlock;
+    }
+
+    public long getEndBlock() {
+      return myEndBlock;
+    }
+
+    /**
+     * Returns the time of the first line of the blocks, accepted or not, or null if the page is empty.
+     */
+    @Nullable
+    public String getStartTime() {
+      return myStartTime;
+    }
+
+    /**
+     * Returns the time of the last line of the blocks, accepted or not, or null if the page is empty.
+     */
+    @Nullable
+    public String getEndTime() {
+      return myEndTime;
+    }
+
+    @NotNull
+    public List<LogCatMessage> getLines() {
+      return myLines;
+    }
+  }
+
+  /**
+   * What the index keeps about a block: where it is in its segment, and what its lines may be accepted by.
+   */
+  private static final class BlockSummary {
+    private final long myOffset;
+    private final int myLength;
+    private final int myUncompressedLength;
+    private final int myLineCount;
+    @NotNull private final String myFirstTimestamp;
+    @NotNull private final String myLastTimestamp;
+    private final int myLevelMask;
+    @NotNull private final int[] myPids;
+    @NotNull private final Collection<String> myTags;
+
+    private BlockSummary(long offset,
+                         int length,
+                         int uncompressedLength,
+                         int lineCount,
+                         @NotNull String firstTimestamp,
+                         @NotNull String lastTimestamp,
+                         int levelMask,
+                         @NotNull int[] pids,
+                         @NotNull Collection<String> tags) {
+      myOffset = offset;
+      myLength = length;
+      myUncompressedLength = uncompressedLength;
+      myLineCount = lineCount;
+      myFirstTimestamp = firstTimestamp;
+      myLastTimestamp = lastTimestamp;
+      myLevelMask = levelMask;
+      myPids = pids;
+      myTags = tags;
+    }
+
+    private void write(@NotNull DataOutputStream out) throws IOException {
+      out.writeLong(myOffset);
+      out.writeInt(myLength);
+      out.writeInt(myUncompressedLength);
+      out.writeInt(myLineCount);
+      out.writeUTF(myFirstTimestamp);
+      out.writeUTF(myLastTimestamp);
+      out.writeInt(myLevelMask);
+      out.writeInt(myPids.length);
+      for (int pid : myPids) {
+        out.writeInt(pid);
+      }
+      out.writeInt(myTags.size());
+      for (String tag : myTags) {
+        out.writeUTF(tag);
+      }
+    }
+
+    @NotNull
+    private static BlockSummary read(@NotNull DataInputStream in) throws IOException {
+      long offset = in.readLong();
+      int length = in.readInt();
+      int uncompressedLength = in.readInt();
+      int lineCount = in.readInt();
+      String firstTimestamp = in.readUTF();
+      String lastTimestamp = in.readUTF();
+      int levelMask = in.readInt();
+      int[] pids = new int[in.readInt()];
+      for (int i = 0; i < pids.length; i++) {
+        pids[i] = in.readInt();
+      }
+      int tagCount = in.readInt();
+      List<String> tags = new ArrayList<>(tagCount);
+      for (int i = 0; i < tagCount; i++) {
+        tags.add(in.readUTF());
+      }
+      return new BlockSummary(offset, length, uncompressedLength, lineCount, firstTimestamp, lastTimestamp, levelMask, pids, tags);
+    }
+  }
+
+  /**
+   * A data file of compressed blocks, and the index file of their summaries.
+   */
+  private static final class Segment {
+    private final int myNumber;
+    private final long myFirstBlock;
+    @NotNull private final File myDataFile;
+    @NotNull private final File myIndexFile;
+    @NotNull private final List<BlockSummary> myBlocks = new ArrayList<>();
+    private long myDataSize;
+
+    private Segment(@NotNull File directory, int number, long firstBlock) {
+      myNumber = number;
+      myFirstBlock = firstBlock;
+      myDataFile = new File(directory, number + DATA_EXTENSION);
+      myIndexFile = new File(directory, number + INDEX_EXTENSION);
+    }
+
+    long getEndBlock() {
+      return myFirstBlock + myBlocks.size();
+    }
+
+    @NotNull
+    static Segment create(@NotNull File directory, int number, long firstBlock) throws IOException {
+      Segment segment = new Segment(directory, number, firstBlock);
+      new FileOutputStream(segment.myDataFile).close();
+      new FileOutputStream(segment.myIndexFile).close();
+      return segment;
+    }
+
+    /**
+     * Loads the index of a segment written before. Blocks which were only partially written, e.g. because the IDE was killed, are
+     * dropped.
+     */
+    @NotNull
+    static Segment load(@NotNull File directory, int number, long firstBlock) throws IOException {
+      Segment segment = new Segment(directory, number, firstBlock);
+      long dataLength = segment.myDataFile.length();
+      long indexLength = 0;
+      if (segment.myIndexFile.exists()) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.myIndexFile)))) {
+          while (true) {
+            BlockSummary summary = BlockSummary.read(in);
+            if (summary.myOffset != segment.myDataSize || summary.myOffset + summary.myLength > dataLength) {
+              break;
+            }
+            segment.myBlocks.add(summary);
+            segment.myDataSize = summary.myOffset + summary.myLength;
+            indexLength = segment.myIndexFile.length() - in.available();
+          }
+        }
+        catch (EOFException ignored) {
+        }
+      }
+      // Drop what follows the last complete block, so new blocks are appended right after it.
+      try (RandomAccessFile data = new RandomAccessFile(segment.myDataFile, "rw");
+           RandomAccessFile index = new RandomAccessFile(segment.myIndexFile, "rw")) {
+        data.setLength(segment.myDataSize);
+        index.setLength(indexLength);
+      }
+      return segment;
+    }
+
+    void delete() {
+      if (!myDataFile.delete() || !myIndexFile.delete()) {
+        getLog().info("Unable to delete logcat journal segment " + myDataFile);
+      }
+    }
+  }
+
+  /**
+   * Encodes the lines of the block being written, and summarizes them.
+   */
+  private static final class BlockWriter {
+    @NotNull private final ByteArrayOutputStream myBytes = new ByteArrayOutputStream(MAX_BLOCK_BYTES);
+    @NotNull private final DataOutputStream myOut = new DataOutputStream(myBytes);
+    @NotNull private final TIntHashSet myPids = new TIntHashSet();
+    @NotNull private final Set<String> myTags = new LinkedHashSet<>();
+    @Nullable private LogCatHeader myFirstHeader;
+    @Nullable private LogCatHeader myLastHeader;
+    private int myLevelMask;
+    private int myLineCount;
+
+    int getLineCount() {
+      return myLineCount;
+    }
+
+    /**
+     * Returns whether the block should be written before adding a line. Blocks are only ended before the first line of a message,
+     * unless they reached twice their size.
+     */
+    boolean isFull(boolean newMessage) {
+      int limit = newMessage ? 1 : 2;
+      return myLineCount >= limit * BLOCK_LINES || myBytes.size() >= limit * MAX_BLOCK_BYTES;
+    }
+
+    void add(@NotNull LogCatHeader header, boolean newMessage, @NotNull String text) {
+      try {
+        boolean writeHeader = newMessage || myLineCount == 0;
+        myOut.writeBoolean(writeHeader);
+        if (writeHeader) {
+          myOut.writeByte(header.getLogLevel().getPriority());
+          myOut.writeInt(header.getPid());
+          myOut.writeInt(header.getTid());
+          myOut.writeUTF(header.getAppName());
+          myOut.writeUTF(header.getTag());
+          myOut.writeUTF(header.getTimestamp().toString());
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        myOut.writeInt(bytes.length);
+        myOut.write(bytes);
+      }
+      catch (IOException e) {
+        // Not thrown by a ByteArrayOutputStream.
+        throw new RuntimeException(e);
+      }
+      if (myFirstHeader == null) {
+        myFirstHeader = header;
+      }
+      myLastHeader = header;
+      myLevelMask |= 1 << header.getLogLevel().getPriority();
+      myPids.add(header.getPid());
+      myTags.add(header.getTag());
+      myLineCount++;
+    }
+
+    @NotNull
+    BlockSummary write(@NotNull Segment segment) throws IOException {
+      assert myFirstHeader != null && myLastHeader != null;
+      byte[] compressed = compress(myBytes.toByteArray());
+      BlockSummary summary = new BlockSummary(segment.myDataSize, compressed.length, myBytes.size(), myLineCount,
+                                              myFirstHeader.getTimestamp().toString(), myLastHeader.getTimestamp().toString(),
+                                              myLevelMask, myPids.toArray(), new ArrayList<>(myTags));
+      try (FileOutputStream data = new FileOutputStream(segment.myDataFile, true)) {
+        data.write(compressed);
+      }
+      // The index is written after the data, so an index entry always refers to a complete block.
+      try (DataOutputStream index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segment.myIndexFile, true)))) {
+        summary.write(index);
+      }
+      return summary;
+    }
+
+    void reset() {
+      myBytes.reset();
+      myPids.clear();
+      myTags.clear();
+      myFirstHeader = null;
+      myLastHeader = null;
+      myLevelMask = 0;
+      myLineCount = 0;
+    }
+
+    @NotNull
+    private static byte[] compress(@NotNull byte[] bytes) {
+      Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+      try {
+        deflater.setInput(bytes);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+          compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return compressed.toByteArray();
+      }
+      finally {
+        deflater.end();
+      }
+    }
+  }
+}
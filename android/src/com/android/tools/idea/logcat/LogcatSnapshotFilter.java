@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+
+/**
+ * Filters the old logs of a device with an {@link AndroidLogcatFilter}, e.g. when the filter of the logcat view changes. The filter is
+ * evaluated on ranges of lines in parallel, and the accepted lines are passed on in order as soon as the ranges before them are done,
+ * so the first results show up while the rest of the logs are still being filtered.
+ *
+ * As in {@link AndroidLogFilterModel}, a message is accepted as a whole if any of its lines is accepted.
+ */
+final class LogcatSnapshotFilter {
+  static final int RANGE_SIZE = 8 * 1024;
+
+  private static final Executor ourExecutor =
+    // Cap the threads to 4, the ranges are passed on by a single thread anyway.
+    new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+  @NotNull private final AndroidLogcatFilter myFilter;
+  @NotNull private final Executor myExecutor;
+
+  LogcatSnapshotFilter(@NotNull AndroidLogcatFilter filter) {
+    this(filter, ourExecutor);
+  }
+
+  LogcatSnapshotFilter(@NotNull AndroidLogcatFilter filter, @NotNull Executor executor) {
+    myFilter = filter;
+    myExecutor = executor;
+  }
+
+  /**
+   * Passes the lines of the messages accepted by the filter to the consumer, in order, on the calling thread.
+   */
+  void forEachAccepted(@NotNull LogcatBuffer.Snapshot snapshot, @NotNull Consumer<LogCatMessage> consumer) {
+    int size = snapshot.size();
+    List<Future<BitSet>> ranges = new ArrayList<>();
+    for (int from = 0; from < size; from += RANGE_SIZE) {
+      int rangeFrom = from;
+      int rangeTo = Math.min(size, from + RANGE_SIZE);
+      FutureTask<BitSet> task = new FutureTask<>(() -> filter(snapshot, rangeFrom, rangeTo));
+      myExecutor.execute(task);
+      ranges.add(task);
+    }
+
+    MessageCollector collector = new MessageCollector(consumer);
+    for (int i = 0; i < ranges.size(); i++) {
+      BitSet accepted;
+      try {
+        accepted = ranges.get(i).get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        cancel(ranges);
+        return;
+      }
+      catch (ExecutionException e) {
+        cancel(ranges);
+        throw new RuntimeException(e.getCause());
+      }
+      int rangeFrom = i * RANGE_SIZE;
+      int[] index = {0};
+      snapshot.forEach(rangeFrom, Math.min(size, rangeFrom + RANGE_SIZE), line -> collector.add(line, accepted.get(index[0]++)));
+    }
+    collector.endMessage();
+  }
+
+  @NotNull
+  private BitSet filter(@NotNull LogcatBuffer.Snapshot snapshot, int from, int to) {
+    BitSet accepted = new BitSet(to - from);
+    int[] index = {0};
+    snapshot.forEach(from, to, line -> {
+      LogCatHeader header = line.getHeader();
+      if (myFilter.isApplicable(line.getMessage(), header.getTag(), header.getAppName(), header.getPid(), header.getLogLevel())) {
+        accepted.set(index[0]);
+      }
+      index[0]++;
+    });
+    return accepted;
+  }
+
+  private static void cancel(@NotNull List<Future<BitSet>> ranges) {
+    for (Future<BitSet> range : ranges) {
+      range.cancel(false);
+    }
+  }
+
+  /**
+   * Groups the lines of a message, which share their header, to pass them on only if one of them was accepted.
+   */
+  static final class MessageCollector {
+    @NotNull private final Consumer<LogCatMessage> myConsumer;
+    @NotNull private final List<LogCatMessage> myLines = new ArrayList<>();
+    @Nullable private LogCatHeader myHeader;
+    private boolean myAccepted;
+
+    MessageCollector(@NotNull Consumer<LogCatMessage> consumer) {
+      myConsumer = consumer;
+    }
+
+    void add(@NotNull LogCatMessage line, boolean accepted) {
+      if (line.getHeader() != myHeader) {
+        endMessage();
+        myHeader = line.getHeader();
+      }
+      if (myAccepted) {
+        // Lines after an accepted one are passed on right away.
+        myConsumer.accept(line);
+        return;
+      }
+      myLines.add(line);
+      if (accepted) {
+        myAccepted = true;
+        myLines.forEach(myConsumer);
+        myLines.clear();
+      }
+    }
+
+    void endMessage() {
+      myLines.clear();
+      myAccepted = false;
+      myHeader = null;
+    }
+  }
+}
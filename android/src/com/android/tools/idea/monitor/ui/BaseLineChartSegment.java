@@ -20,7 +20,7 @@ import com.android.tools.adtui.chart.linechart.LineChart;
 import com.android.tools.adtui.chart.linechart.LineConfig;
 import com.android.tools.adtui.common.formatter.BaseAxisFormatter;
 import com.android.tools.adtui.model.*;
-import com.android.tools.datastore.DataStoreSeries;
+import com.android.tools.datastore.LongDataStoreSeries;
 import com.android.tools.datastore.SeriesDataStore;
 import com.android.tools.datastore.SeriesDataType;
 import com.android.tools.idea.monitor.tool.ProfilerEventListener;
@@ -353,7 +353,7 @@ public abstract class BaseLineChartSegment extends BaseSegment {
    * Adds a line to {@link #mLineChart} that is associated with the left axis.
    */
   protected void addLeftAxisLine(SeriesDataType type, String label, LineConfig lineConfig) {
-    addLeftAxisLine(type, label, lineConfig, new DataStoreSeries<>(mSeriesDataStore, type));
+    addLeftAxisLine(type, label, lineConfig, new LongDataStoreSeries(mSeriesDataStore, type));
   }
 
   protected void addLeftAxisLine(SeriesDataType type, String label, LineConfig lineConfig, DataSeries series) {
@@ -364,7 +364,7 @@ public abstract class BaseLineChartSegment extends BaseSegment {
    * Adds a line to {@link #mLineChart} that is associated with the right axis.
    */
   protected void addRightAxisLine(SeriesDataType type, String label, LineConfig lineConfig) {
-    addRightAxisLine(type, label, lineConfig, new DataStoreSeries<>(mSeriesDataStore, type));
+    addRightAxisLine(type, label, lineConfig, new LongDataStoreSeries(mSeriesDataStore, type));
   }
   protected void addRightAxisLine(SeriesDataType type, String label, LineConfig lineConfig, DataSeries series) {
     if (mRightAxisFormatter == null) {
@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
+import org.jetbrains.android.util.AndroidUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the classes rewritten by the {@link ClassConverter}, shared by all the render class loaders. Entries are keyed by a hash of
+ * the original class file, the class file version of the running JDK and the layoutlib API level, so the same class of a library used by
+ * several modules, or loaded again after a class loader is recreated, is only converted once.
+ *
+ * The most recently used classes are kept in memory, and all of them are written to disk in the background so they survive IDE
+ * restarts; the least recently used files are evicted once the cache grows over {@link #DEFAULT_MAX_SIZE_BYTES}.
+ *
+ * Classes are loaded from the render thread, inside the {@link RenderSecurityManager} sandbox, so the lookups only read the disk and
+ * all the changes to the cache directory are done by the background tasks, outside of the sandbox.
+ */
+public final class ConvertedClassCache {
+  private static final Logger LOG = Logger.getInstance(ConvertedClassCache.class);
+
+  /**
+   * Version of the cache keys, to be increased whenever the output of the {@link ClassConverter} changes.
+   */
+  private static final int FORMAT_VERSION = 1;
+  private static final String EXTENSION = ".class";
+  private static final long DEFAULT_MAX_SIZE_BYTES = 64 * 1024 * 1024;
+  private static final long DEFAULT_MAX_MEMORY_BYTES = 16 * 1024 * 1024;
+
+  private static final Object INSTANCE_LOCK = new Object();
+  private static ConvertedClassCache ourInstance;
+
+  @NotNull private final File myDirectory;
+  private final long myMaxSizeBytes;
+  @NotNull private final Executor myExecutor;
+  @NotNull private final Cache<String, byte[]> myMemoryCache;
+
+  private final AtomicInteger myMemoryHitCount = new AtomicInteger();
+  private final AtomicInteger myDiskHitCount = new AtomicInteger();
+  private final AtomicInteger myMissCount = new AtomicInteger();
+  private final AtomicLong myConversionNanos = new AtomicLong();
+  /**
+   * Total size of the files in the cache, computed on the first write. Only accessed from the tasks run by {@link #submit(Runnable)}.
+   */
+  private long mySizeBytes = -1;
+
+  @VisibleForTesting
+  ConvertedClassCache(@NotNull File directory, long maxSizeBytes, long maxMemoryBytes, @NotNull Executor executor) {
+    myDirectory = directory;
+    myMaxSizeBytes = maxSizeBytes;
+    myExecutor = executor;
+    myMemoryCache = CacheBuilder.newBuilder()
+      .maximumWeight(maxMemoryBytes)
+      .weigher((String key, byte[] value) -> value.length)
+      .build();
+  }
+
+  @NotNull
+  public static ConvertedClassCache getInstance() {
+    synchronized (INSTANCE_LOCK) {
+      if (ourInstance == null) {
+        File directory = new File(AndroidUtils.getAndroidSystemDirectoryOsPath(), "class-cache");
+        // Writes are serialized so the size of the cache is kept track of in one place
+        ourInstance = new ConvertedClassCache(directory, DEFAULT_MAX_SIZE_BYTES, DEFAULT_MAX_MEMORY_BYTES,
+                                              new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, 1));
+      }
+      return ourInstance;
+    }
+  }
+
+  /**
+   * Returns the given class rewritten by {@link ClassConverter#rewriteClass(byte[], int)}, converting it only if it isn't cached yet.
+   * The returned array is shared between the callers and must not be modified.
+   */
+  @NotNull
+  public byte[] rewriteClass(@NotNull byte[] classData, int layoutlibApi) {
+    int classVersion = ClassConverter.getCurrentClassVersion();
+    String key = computeKey(classData, classVersion, layoutlibApi);
+    byte[] rewritten = myMemoryCache.getIfPresent(key);
+    if (rewritten != null) {
+      myMemoryHitCount.incrementAndGet();
+      return rewritten;
+    }
+
+    rewritten = read(key);
+    if (rewritten != null) {
+      myDiskHitCount.incrementAndGet();
+      myMemoryCache.put(key, rewritten);
+      return rewritten;
+    }
+
+    long start = System.nanoTime();
+    rewritten = ClassConverter.rewriteClass(classData, classVersion, 0, layoutlibApi);
+    myConversionNanos.addAndGet(System.nanoTime() - start);
+    myMissCount.incrementAndGet();
+    myMemoryCache.put(key, rewritten);
+    byte[] toWrite = rewritten;
+    submit(() -> write(key, toWrite));
+    return rewritten;
+  }
+
+  /**
+   * Runs the given change to the cache directory in the background. The pooled threads created by a render thread inherit its sandbox,
+   * which would deny the writes, so the task opts out of it.
+   */
+  private void submit(@NotNull Runnable task) {
+    myExecutor.execute(() -> RenderSecurityManager.runOutsideSandbox(task));
+  }
+
+  @NotNull
+  private static String computeKey(@NotNull byte[] classData, int classVersion, int layoutlibApi) {
+    return Hashing.sha1().newHasher()
+      .putInt(FORMAT_VERSION)
+      .putInt(classVersion)
+      .putInt(layoutlibApi)
+      .putBytes(classData)
+      .hash()
+      .toString();
+  }
+
+  @Nullable
+  private byte[] read(@NotNull String key) {
+    File cacheFile = getCacheFile(key);
+    if (!cacheFile.isFile()) {
+      return null;
+    }
+    byte[] data;
+    try {
+      data = FileUtil.loadFileBytes(cacheFile);
+    }
+    catch (IOException e) {
+      LOG.debug("Can't read cached class " + cacheFile, e);
+      submit(() -> FileUtil.delete(cacheFile));
+      return null;
+    }
+    if (!ClassConverter.isValidClassFile(data)) {
+      // Deleted before the converted class is written again, the tasks being run in order
+      submit(() -> FileUtil.delete(cacheFile));
+      return null;
+    }
+
+    // Recently used entries are evicted last
+    long now = System.currentTimeMillis();
+    //noinspection ResultOfMethodCallIgnored
+    submit(() -> cacheFile.setLastModified(now));
+    return data;
+  }
+
+  private void write(@NotNull String key, @NotNull byte[] data) {
+    File cacheFile = getCacheFile(key);
+    if (cacheFile.isFile()) {
+      return;
+    }
+
+    File tempFile = new File(myDirectory, key + ".tmp");
+    try {
+      FileUtil.writeToFile(tempFile, data);
+      // Readers never see a partially written entry
+      FileUtil.rename(tempFile, cacheFile);
+    }
+    catch (IOException e) {
+      LOG.warn("Can't cache class in " + cacheFile, e);
+      FileUtil.delete(tempFile);
+      return;
+    }
+
+    if (mySizeBytes < 0) {
+      mySizeBytes = 0;
+      for (File file : listCacheFiles()) {
+        mySizeBytes += file.length();
+      }
+    }
+    else {
+      mySizeBytes += data.length;
+    }
+    if (mySizeBytes > myMaxSizeBytes) {
+      evict();
+    }
+  }
+
+  /**
+   * Deletes the least recently used entries until the cache fits in three quarters of its budget, so eviction doesn't run on every
+   * write once the cache is full.
+   */
+  private void evict() {
+    List<File> files = listCacheFiles();
+    files.sort(Comparator.comparingLong(File::lastModified));
+    long targetBytes = myMaxSizeBytes / 4 * 3;
+    int evicted = 0;
+    for (File file : files) {
+      if (mySizeBytes <= targetBytes) {
+        break;
+      }
+      long length = file.length();
+      if (FileUtil.delete(file)) {
+        mySizeBytes -= length;
+        evicted++;
+      }
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(String.format("Evicted %d cached classes, %d bytes left", evicted, mySizeBytes));
+    }
+  }
+
+  @NotNull
+  private List<File> listCacheFiles() {
+    File[] files = myDirectory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+    return files != null ? new ArrayList<>(Arrays.asList(files)) : new ArrayList<>();
+  }
+
+  @NotNull
+  private File getCacheFile(@NotNull String key) {
+    return new File(myDirectory, key + EXTENSION);
+  }
+
+  @VisibleForTesting
+  void clearMemoryCache() {
+    myMemoryCache.invalidateAll();
+  }
+
+  @NotNull
+  public Stats getStats() {
+    return new Stats(myMemoryHitCount.get(), myDiskHitCount.get(), myMissCount.get(),
+                     TimeUnit.NANOSECONDS.toMillis(myConversionNanos.get()));
+  }
+
+  /**
+   * Statistics of the cache since the IDE started
+   */
+  public static final class Stats {
+    private final int myMemoryHitCount;
+    private final int myDiskHitCount;
+    private final int myMissCount;
+    private final long myConversionMs;
+
+    private Stats(int memoryHitCount, int diskHitCount, int missCount, long conversionMs) {
+      myMemoryHitCount = memoryHitCount;
+      myDiskHitCount = diskHitCount;
+      myMissCount = missCount;
+      myConversionMs = conversionMs;
+    }
+
+    public int getMemoryHitCount() {
+      return myMemoryHitCount;
+    }
+
+    public int getDiskHitCount() {
+      return myDiskHitCount;
+    }
+
+    /**
+     * Returns the number of classes which had to be converted
+     */
+    public int getMissCount() {
+      return myMissCount;
+    }
+
+    /**
+     * Returns the time spent converting the classes which weren't cached
+     */
+    public long getConversionMs() {
+      return myConversionMs;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d memory hits, %d disk hits, %d classes converted in %d ms",
+                           myMemoryHitCount, myDiskHitCount, myMissCount, myConversionMs);
+    }
+  }
+}
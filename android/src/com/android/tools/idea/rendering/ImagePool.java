@@ -3,28 +3,34 @@ package com.android.tools.idea.rendering;
 import com.android.annotations.VisibleForTesting;
 import com.google.common.base.FinalizablePhantomReference;
 import com.google.common.base.FinalizableReferenceQueue;
-import com.google.common.collect.EvictingQueue;
 import com.google.common.collect.Sets;
+import com.intellij.concurrency.JobScheduler;
+import com.intellij.openapi.util.LowMemoryWatcher;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import javax.annotation.concurrent.GuardedBy;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.awt.image.ImageObserver;
 import java.awt.image.WritableRaster;
 import java.lang.ref.Reference;
-import java.lang.ref.SoftReference;
-import java.util.HashMap;
-import java.util.NoSuchElementException;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 /**
  * Class that offers a pool of {@link BufferedImage}s. The returned {@link Image} do not offer a direct access
  * to the underlying {@link BufferedImage} to avoid clients holding references to it.
  * Once the {@link Image} is not being referenced anymore, it will be automatically returned to the pool.
+ * <p/>
+ * The free images are kept within a byte budget across all the sizes, the least recently freed ones being evicted first, and the
+ * pool keeps statistics about its use, see {@link #getStats()}. The free images of the shared pool are dropped when the IDE runs low on
+ * memory, when a project is closed and once they haven't been reused for a while.
  */
 public class ImagePool {
   public static final Image NULL_POOLED_IMAGE = new Image() {
@@ -51,7 +57,15 @@ public class ImagePool {
   };
 
   private static final boolean DEBUG = false;
-  private static final EvictingQueue<SoftReference<BufferedImage>> NULL_EVICTING_QUEUE = EvictingQueue.create(0);
+  /**
+   * Default budget of the images kept in the pool for reuse, across all sizes.
+   */
+  private static final long DEFAULT_MAX_POOLED_BYTES = 32L * 1024 * 1024;
+  /**
+   * Free images of the shared pool which haven't been reused for this long are dropped.
+   */
+  private static final long MAX_IDLE_NS = TimeUnit.MINUTES.toNanos(1);
+  private static final long IDLE_TRIM_PERIOD_SECONDS = 30;
   private static final BiFunction<Integer, Integer, Function<Integer, Integer>> DEFAULT_SIZING_POLICY = (w, h) -> (type) -> {
     // Images below 1k, do not pool
     if (w * h < 1000) {
@@ -61,15 +75,40 @@ public class ImagePool {
     return 50_000_000 / (w * h);
   };
 
-  private final HashMap<String, EvictingQueue<SoftReference<BufferedImage>>> myPool = new HashMap<>();
+  private static final Object SHARED_POOL_LOCK = new Object();
+  @GuardedBy("SHARED_POOL_LOCK") private static ImagePool ourSharedPool;
+  /**
+   * {@link LowMemoryWatcher} only keeps weak references to the watchers, so the one of the shared pool is held here.
+   */
+  @GuardedBy("SHARED_POOL_LOCK") private static LowMemoryWatcher ourLowMemoryWatcher;
+
+  private final Object myLock = new Object();
+  /**
+   * Free images of each size and type, least recently freed first.
+   */
+  @GuardedBy("myLock")
+  private final Map<String, Bucket> myBuckets = new HashMap<>();
+  /**
+   * Free images of all the buckets, least recently freed first, to evict them in that order once the pool is over its budget.
+   */
+  @GuardedBy("myLock")
+  private final ArrayDeque<FreeImage> myFreeImages = new ArrayDeque<>();
   @SuppressWarnings("IOResourceOpenedButNotSafelyClosed")
   private final FinalizableReferenceQueue myFinalizableReferenceQueue = new FinalizableReferenceQueue();
   private final Set<Reference<?>> myReferences = Sets.newConcurrentHashSet();
   private final BiFunction<Integer, Integer, Function<Integer, Integer>> myQueueSizingPolicy;
-  private boolean isDisposed = false;
+  private final long myMaxPooledBytes;
+  @NotNull private final LongSupplier myClock;
+  private volatile boolean isDisposed = false;
+
+  @GuardedBy("myLock") private long myPooledBytes;
+  @GuardedBy("myLock") private long myInUseBytes;
+  @GuardedBy("myLock") private long myHitCount;
+  @GuardedBy("myLock") private long myMissCount;
+  @GuardedBy("myLock") private long myEvictionCount;
 
   /**
-   * Returns the key to be used for indexing the {@link EvictingQueue}.
+   * Returns the key to be used for indexing the {@link Bucket}s.
    */
   @NotNull
   private static String getPoolKey(int w, int h, int type) {
@@ -77,53 +116,94 @@ public class ImagePool {
   }
 
   /**
-   * Returns the queue to be used to store images of the given width, height and type.
+   * Returns the bucket of the free images of the given width, height and type.
    *
    * @param type See {@link BufferedImage} types
    */
+  @GuardedBy("myLock")
   @NotNull
-  private EvictingQueue<SoftReference<BufferedImage>> getTypeQueue(int w, int h, int type) {
-    String poolKey = getPoolKey(w, h, type);
-
-    return myPool.computeIfAbsent(poolKey, k -> {
-      int size = myQueueSizingPolicy.apply(w, h).apply(type);
-
-      if (size == 0) {
-        // For size 0, do not allocate extra memory for a new EvictingQueue.
-        return NULL_EVICTING_QUEUE;
-      }
-
-      return EvictingQueue.create(size);
-    });
+  private Bucket getBucket(int w, int h, int type) {
+    return myBuckets.computeIfAbsent(getPoolKey(w, h, type), k -> new Bucket(myQueueSizingPolicy.apply(w, h).apply(type)));
   }
 
   /**
-   * Constructs a new {@link ImagePool} with a custom queue sizing policy. The passed queueSizingPolicy will be called
-   * every time that a new cache is needed for a given (width, height) -> (imageType).
-   * The return value from calling that function will be the size of the EvictingQueue used for caching the pooled
-   * images.
+   * Constructs a new {@link ImagePool} with a custom queue sizing policy and byte budget. The passed queueSizingPolicy will be called
+   * every time that a new bucket is needed for a given (width, height) -> (imageType), and returns the maximum number of free images
+   * of that size kept for reuse. The free images of all the sizes are kept within maxPooledBytes, the least recently freed ones being
+   * evicted first.
    */
-  public ImagePool(@NotNull BiFunction<Integer, Integer, Function<Integer, Integer>> queueSizingPolicy) {
+  public ImagePool(@NotNull BiFunction<Integer, Integer, Function<Integer, Integer>> queueSizingPolicy, long maxPooledBytes) {
+    this(queueSizingPolicy, maxPooledBytes, System::nanoTime);
+  }
+
+  @VisibleForTesting
+  ImagePool(@NotNull BiFunction<Integer, Integer, Function<Integer, Integer>> queueSizingPolicy,
+            long maxPooledBytes,
+            @NotNull LongSupplier clock) {
     myQueueSizingPolicy = queueSizingPolicy;
+    myMaxPooledBytes = maxPooledBytes;
+    myClock = clock;
+  }
+
+  public ImagePool(@NotNull BiFunction<Integer, Integer, Function<Integer, Integer>> queueSizingPolicy) {
+    this(queueSizingPolicy, DEFAULT_MAX_POOLED_BYTES);
   }
 
   public ImagePool() {
     this(DEFAULT_SIZING_POLICY);
   }
 
+  /**
+   * Returns the pool shared by the renders of the IDE, so images freed by a render can be reused by any other one.
+   */
+  @NotNull
+  public static ImagePool getSharedPool() {
+    synchronized (SHARED_POOL_LOCK) {
+      if (ourSharedPool == null) {
+        ImagePool pool = new ImagePool();
+        ourLowMemoryWatcher = LowMemoryWatcher.register(pool::trim);
+        JobScheduler.getScheduler().scheduleWithFixedDelay(() -> pool.trimIdle(MAX_IDLE_NS),
+                                                           IDLE_TRIM_PERIOD_SECONDS, IDLE_TRIM_PERIOD_SECONDS, TimeUnit.SECONDS);
+        ourSharedPool = pool;
+      }
+      return ourSharedPool;
+    }
+  }
+
+  /**
+   * Drops the free images of the shared pool, if it has been created. Images still in use are not affected.
+   */
+  public static void trimSharedPool() {
+    ImagePool pool;
+    synchronized (SHARED_POOL_LOCK) {
+      pool = ourSharedPool;
+    }
+    if (pool != null) {
+      pool.trim();
+    }
+  }
+
   @VisibleForTesting
   @NotNull
   ImageImpl create(final int w, final int h, final int type, @Nullable Consumer<BufferedImage> freedCallback) {
     assert !isDisposed : "ImagePool already disposed";
-    EvictingQueue<SoftReference<BufferedImage>> queue = getTypeQueue(w, h, type);
 
     BufferedImage image;
-    SoftReference<BufferedImage> imageRef;
-    try {
-      imageRef = queue.remove();
-      while ((image = imageRef.get()) == null) {
-        imageRef = queue.remove();
+    synchronized (myLock) {
+      FreeImage free = getBucket(w, h, type).myImages.pollLast();
+      if (free != null) {
+        myFreeImages.removeLastOccurrence(free);
+        myPooledBytes -= free.myBytes;
+        myHitCount++;
+        image = free.myImage;
       }
+      else {
+        myMissCount++;
+        image = null;
+      }
+    }
+
+    if (image != null) {
       if (DEBUG) {
         //noinspection UseOfSystemOutOrSystemErr
         System.out.printf("Re-used image %dx%d - %d\n", w, h, type);
@@ -134,7 +214,7 @@ public class ImagePool {
       g.fillRect(0, 0, w, h);
       g.dispose();
     }
-    catch (NoSuchElementException e) {
+    else {
       if (DEBUG) {
         //noinspection UseOfSystemOutOrSystemErr
         System.out.printf("New image %dx%d - %d\n", w, h, type);
@@ -143,6 +223,11 @@ public class ImagePool {
       image = new BufferedImage(w, h, type);
     }
 
+    long bytes = getSizeInBytes(image);
+    synchronized (myLock) {
+      myInUseBytes += bytes;
+    }
+
     ImageImpl pooledImage = new ImageImpl(image);
     final BufferedImage imagePointer = image;
     Reference<?> reference = new FinalizablePhantomReference<Image>(pooledImage, myFinalizableReferenceQueue) {
@@ -153,7 +238,7 @@ public class ImagePool {
           System.out.printf("Released image %dx%d - %d\n", w, h, type);
         }
         myReferences.remove(this);
-        getTypeQueue(w, h, type).add(new SoftReference<>(imagePointer));
+        release(w, h, type, imagePointer, bytes);
         if (freedCallback != null) {
           freedCallback.accept(imagePointer);
         }
@@ -164,6 +249,78 @@ public class ImagePool {
     return pooledImage;
   }
 
+  /**
+   * Returns an image which isn't referenced anymore to the pool, evicting older free images if the pool is over its budget.
+   */
+  private void release(int w, int h, int type, @NotNull BufferedImage image, long bytes) {
+    synchronized (myLock) {
+      myInUseBytes -= bytes;
+      if (isDisposed) {
+        return;
+      }
+      Bucket bucket = getBucket(w, h, type);
+      if (bucket.myCapacity <= 0 || bytes > myMaxPooledBytes) {
+        return;
+      }
+      if (bucket.myImages.size() >= bucket.myCapacity) {
+        FreeImage oldest = bucket.myImages.pollFirst();
+        myFreeImages.removeFirstOccurrence(oldest);
+        myPooledBytes -= oldest.myBytes;
+        myEvictionCount++;
+      }
+      FreeImage free = new FreeImage(bucket, image, bytes, myClock.getAsLong());
+      bucket.myImages.addLast(free);
+      myFreeImages.addLast(free);
+      myPooledBytes += bytes;
+
+      while (myPooledBytes > myMaxPooledBytes) {
+        evictOldest();
+      }
+    }
+  }
+
+  /**
+   * Drops the least recently freed image of the pool.
+   */
+  @GuardedBy("myLock")
+  private void evictOldest() {
+    // The least recently freed image overall is also the least recently freed one of its bucket
+    FreeImage oldest = myFreeImages.pollFirst();
+    FreeImage removed = oldest.myBucket.myImages.pollFirst();
+    assert removed == oldest;
+    myPooledBytes -= oldest.myBytes;
+    myEvictionCount++;
+  }
+
+  /**
+   * Drops all the free images of the pool. Images still in use are returned to the pool once they are not referenced anymore.
+   */
+  public void trim() {
+    synchronized (myLock) {
+      while (!myFreeImages.isEmpty()) {
+        evictOldest();
+      }
+    }
+  }
+
+  /**
+   * Drops the free images which were freed more than maxIdleNs ago.
+   */
+  @VisibleForTesting
+  void trimIdle(long maxIdleNs) {
+    long now = myClock.getAsLong();
+    synchronized (myLock) {
+      while (!myFreeImages.isEmpty() && now - myFreeImages.peekFirst().myFreedAtNs > maxIdleNs) {
+        evictOldest();
+      }
+    }
+  }
+
+  private static long getSizeInBytes(@NotNull BufferedImage image) {
+    DataBuffer buffer = image.getRaster().getDataBuffer();
+    return (long)buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+  }
+
   @NotNull
   public Image create(final int w, final int h, final int type) {
     return create(w, h, type, null);
@@ -185,11 +342,135 @@ public class ImagePool {
     return image;
   }
 
+  /**
+   * Returns a snapshot of the statistics of the pool.
+   */
+  @NotNull
+  public Stats getStats() {
+    synchronized (myLock) {
+      return new Stats(myHitCount, myMissCount, myEvictionCount, myFreeImages.size(), myPooledBytes, myInUseBytes, myMaxPooledBytes);
+    }
+  }
+
   public void dispose() {
     isDisposed = true;
     myFinalizableReferenceQueue.close();
     myReferences.clear();
-    myPool.clear();
+    synchronized (myLock) {
+      myBuckets.clear();
+      myFreeImages.clear();
+      myPooledBytes = 0;
+    }
+  }
+
+  /**
+   * The free images of a size and type.
+   */
+  private static final class Bucket {
+    private final int myCapacity;
+    private final ArrayDeque<FreeImage> myImages = new ArrayDeque<>();
+
+    private Bucket(int capacity) {
+      myCapacity = capacity;
+    }
+  }
+
+  private static final class FreeImage {
+    @NotNull private final Bucket myBucket;
+    @NotNull private final BufferedImage myImage;
+    private final long myBytes;
+    private final long myFreedAtNs;
+
+    private FreeImage(@NotNull Bucket bucket, @NotNull BufferedImage image, long bytes, long freedAtNs) {
+      myBucket = bucket;
+      myImage = image;
+      myBytes = bytes;
+      myFreedAtNs = freedAtNs;
+    }
+  }
+
+  /**
+   * A snapshot of the statistics of a pool.
+   */
+  public static final class Stats {
+    private final long myHitCount;
+    private final long myMissCount;
+    private final long myEvictionCount;
+    private final int myPooledImageCount;
+    private final long myPooledBytes;
+    private final long myInUseBytes;
+    private final long myMaxPooledBytes;
+
+    private Stats(long hitCount,
+                  long missCount,
+                  long evictionCount,
+                  int pooledImageCount,
+                  long pooledBytes,
+                  long inUseBytes,
+                  long maxPooledBytes) {
+      myHitCount = hitCount;
+      myMissCount = missCount;
+      myEvictionCount = evictionCount;
+      myPooledImageCount = pooledImageCount;
+      myPooledBytes = pooledBytes;
+      myInUseBytes = inUseBytes;
+      myMaxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * Returns the number of images created by reusing a free image
+     */
+    public long getHitCount() {
+      return myHitCount;
+    }
+
+    /**
+     * Returns the number of images which had to be allocated
+     */
+    public long getMissCount() {
+      return myMissCount;
+    }
+
+    public double getHitRate() {
+      long total = myHitCount + myMissCount;
+      return total == 0 ? 0 : (double)myHitCount / total;
+    }
+
+    /**
+     * Returns the number of free images dropped to keep the pool within its budget, or because of low memory or idleness
+     */
+    public long getEvictionCount() {
+      return myEvictionCount;
+    }
+
+    public int getPooledImageCount() {
+      return myPooledImageCount;
+    }
+
+    /**
+     * Returns the size of the free images kept for reuse
+     */
+    public long getPooledBytes() {
+      return myPooledBytes;
+    }
+
+    /**
+     * Returns the size of the images which are still referenced
+     */
+    public long getInUseBytes() {
+      return myInUseBytes;
+    }
+
+    public long getMaxPooledBytes() {
+      return myMaxPooledBytes;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Hit rate: %.1f%% (%d hits, %d misses), pooled: %d images, %d KB of %d KB, in use: %d KB, evictions: %d",
+                           getHitRate() * 100, myHitCount, myMissCount, myPooledImageCount, myPooledBytes / 1024,
+                           myMaxPooledBytes / 1024, myInUseBytes / 1024, myEvictionCount);
+    }
   }
 
   /**
@@ -28,6 +28,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static com.android.SdkConstants.DOT_CLASS;
 import static com.android.tools.idea.rendering.ClassConverter.isValidClassFile;
@@ -44,6 +45,11 @@ public abstract class RenderClassLoader extends ClassLoader {
   protected boolean myInsideJarClassLoader;
   protected final int myLayoutlibApiLevel;
 
+  /**
+   * Time spent and classes defined by the render class loaders on each thread, see {@link #getThreadLoadingStats()}
+   */
+  private static final ThreadLocal<LoadingStats> ourLoadingStats = ThreadLocal.withInitial(LoadingStats::new);
+
   public RenderClassLoader(@Nullable ClassLoader parent, int layoutlibApiLevel) {
     super(parent);
     myLayoutlibApiLevel = layoutlibApiLevel;
@@ -51,6 +57,21 @@ public abstract class RenderClassLoader extends ClassLoader {
 
   protected abstract List<URL> getExternalJars();
 
+  @Override
+  protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+    // Only the outermost load is timed, since defining a class loads its super classes
+    LoadingStats stats = ourLoadingStats.get();
+    long start = stats.myDepth++ == 0 ? System.nanoTime() : 0;
+    try {
+      return super.loadClass(name, resolve);
+    }
+    finally {
+      if (--stats.myDepth == 0) {
+        stats.myLoadNanos += System.nanoTime() - start;
+      }
+    }
+  }
+
   @Override
   protected Class<?> findClass(String name) throws ClassNotFoundException {
     return load(name);
@@ -159,9 +180,13 @@ public abstract class RenderClassLoader extends ClassLoader {
     }
   }
 
+  /**
+   * Returns the given class converted for layoutlib. The conversions are shared by all the render class loaders, see
+   * {@link ConvertedClassCache}, so the returned array must not be modified.
+   */
   @NotNull
   protected byte[] convertClass(@NotNull byte[] data) {
-    return ClassConverter.rewriteClass(data, myLayoutlibApiLevel);
+    return ConvertedClassCache.getInstance().rewriteClass(data, myLayoutlibApiLevel);
   }
 
   @NotNull
@@ -174,6 +199,55 @@ public abstract class RenderClassLoader extends ClassLoader {
         definePackage(packageName, null, null, null, null, null, null, null);
       }
     }
+    ourLoadingStats.get().myDefinedCount++;
     return defineClass(name, b, offset, len);
   }
+
+  /**
+   * Returns a snapshot of the class loading done by the render class loaders on the current thread so far. Renders measure the classes
+   * they load as the difference between two snapshots, see {@link LoadingStats#since}.
+   */
+  @NotNull
+  public static LoadingStats getThreadLoadingStats() {
+    LoadingStats stats = ourLoadingStats.get();
+    return new LoadingStats(stats.myLoadNanos, stats.myDefinedCount);
+  }
+
+  /**
+   * Time spent loading classes, including the classes of the parent class loaders, and number of classes defined by render class loaders
+   */
+  public static final class LoadingStats {
+    private int myDepth;
+    private long myLoadNanos;
+    private int myDefinedCount;
+
+    private LoadingStats() {
+    }
+
+    private LoadingStats(long loadNanos, int definedCount) {
+      myLoadNanos = loadNanos;
+      myDefinedCount = definedCount;
+    }
+
+    public long getLoadMs() {
+      return TimeUnit.NANOSECONDS.toMillis(myLoadNanos);
+    }
+
+    public int getDefinedClassCount() {
+      return myDefinedCount;
+    }
+
+    /**
+     * Returns the class loading done since the given earlier snapshot of the same thread
+     */
+    @NotNull
+    public LoadingStats since(@NotNull LoadingStats earlier) {
+      return new LoadingStats(myLoadNanos - earlier.myLoadNanos, myDefinedCount - earlier.myDefinedCount);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d classes defined, %d ms loading classes", myDefinedCount, getLoadMs());
+    }
+  }
 }
@@ -103,6 +103,26 @@ public class RenderResult {
       Collections.emptyMap());
   }
 
+  /**
+   * Creates a {@link RenderResult} from a render cached by {@link RenderResultCache}. It has no render task nor default properties.
+   */
+  @NotNull
+  static RenderResult createCached(@NotNull PsiFile file,
+                                   @NotNull Module module,
+                                   @NotNull List<ViewInfo> rootViews,
+                                   @NotNull ImagePool.Image image) {
+    return new RenderResult(
+      file,
+      module,
+      new RenderLogger(null, module),
+      null,
+      Result.Status.SUCCESS.createResult(),
+      rootViews,
+      Collections.emptyList(),
+      image,
+      Collections.emptyMap());
+  }
+
   /**
    * Creates a new blank {@link RenderResult}
    *
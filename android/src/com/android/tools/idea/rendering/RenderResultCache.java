@@ -0,0 +1,579 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.ide.common.rendering.api.MergeCookie;
+import com.android.ide.common.rendering.api.ViewInfo;
+import com.android.ide.common.res2.ResourceItem;
+import com.android.ide.common.resources.ResourceUrl;
+import com.android.resources.ResourceType;
+import com.android.sdklib.IAndroidTarget;
+import com.android.sdklib.devices.Device;
+import com.android.sdklib.devices.State;
+import com.android.tools.idea.configurations.Configuration;
+import com.android.tools.idea.res.AppResourceRepository;
+import com.android.tools.idea.res.LocalResourceRepository;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileVisitor;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.psi.xml.XmlTag;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.android.facet.AndroidFacet;
+import org.jetbrains.android.util.AndroidUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executor;
+
+import static com.android.SdkConstants.ATTR_LAYOUT;
+import static com.android.SdkConstants.VIEW_INCLUDE;
+
+/**
+ * On-disk cache of rendered layouts, so a layout which is opened again can show its last render right away, while layoutlib renders it
+ * again. The cache stores the image of a render and the bounds of its views, keyed by a hash of everything the render depends on: the
+ * layout text, the resources of the module, the theme and the configuration (see {@link #computeKey}).
+ *
+ * Entries are written in the background and the least recently used ones are evicted once the cache grows over
+ * {@link #DEFAULT_MAX_SIZE_BYTES}.
+ */
+public final class RenderResultCache {
+  private static final Logger LOG = Logger.getInstance(RenderResultCache.class);
+
+  /**
+   * Version of the cache files and keys, to be increased when either of them changes.
+   */
+  private static final int FORMAT_VERSION = 1;
+  private static final String EXTENSION = ".render";
+  private static final long DEFAULT_MAX_SIZE_BYTES = 64 * 1024 * 1024;
+
+  private static final Object INSTANCE_LOCK = new Object();
+  private static RenderResultCache ourInstance;
+
+  /**
+   * Hash of the files of the resource folders of each module, along with the modification count of the resources it was computed for.
+   */
+  private static final Map<Module, Pair<Long, String>> ourResourceHashes = ContainerUtil.createConcurrentWeakMap();
+
+  @NotNull private final File myDirectory;
+  private final long myMaxSizeBytes;
+  @NotNull private final Executor myExecutor;
+  @NotNull private final ImagePool myImagePool = ImagePool.getSharedPool();
+  /**
+   * Total size of the files in the cache, computed on the first write. Only accessed from {@link #myExecutor}.
+   */
+  private long mySizeBytes = -1;
+
+  @VisibleForTesting
+  RenderResultCache(@NotNull File directory, long maxSizeBytes, @NotNull Executor executor) {
+    myDirectory = directory;
+    myMaxSizeBytes = maxSizeBytes;
+    myExecutor = executor;
+  }
+
+  @NotNull
+  public static RenderResultCache getInstance() {
+    synchronized (INSTANCE_LOCK) {
+      if (ourInstance == null) {
+        File directory = new File(AndroidUtils.getAndroidSystemDirectoryOsPath(), "render-cache");
+        // Writes are serialized so the size of the cache is kept track of in one place
+        ourInstance = new RenderResultCache(directory, DEFAULT_MAX_SIZE_BYTES, new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, 1));
+      }
+      return ourInstance;
+    }
+  }
+
+  /**
+   * Returns the key of the render of the given layout file with the given configuration, or null if the configuration is not complete
+   * enough to render it. Hashing the resources is expensive when they changed, so callers should only compute the key when they read or
+   * write the cache, and use {@link #computeStamp} to tell whether the layout changed in between.
+   */
+  @Nullable
+  public static String computeKey(@NotNull AndroidFacet facet, @NotNull XmlFile file, @NotNull Configuration configuration) {
+    String theme = configuration.getTheme();
+    Device device = configuration.getDevice();
+    IAndroidTarget target = configuration.getTarget();
+    if (theme == null || device == null || target == null) {
+      return null;
+    }
+
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putInt(FORMAT_VERSION);
+    String text = ApplicationManager.getApplication().runReadAction((Computable<String>)file::getText);
+    hasher.putString(text, StandardCharsets.UTF_8);
+    LocalResourceRepository resources = AppResourceRepository.getAppResources(facet, true);
+    hasher.putString(getResourceHash(facet, resources), StandardCharsets.UTF_8);
+    putUnsavedResources(hasher, resources);
+    putString(hasher, theme);
+    putString(hasher, configuration.getActivity());
+    putString(hasher, device.getId());
+    State state = configuration.getDeviceState();
+    putString(hasher, state != null ? state.getName() : null);
+    putString(hasher, configuration.getFullConfig().getUniqueKey());
+    putString(hasher, target.hashString());
+    hasher.putInt(target.getRevision());
+    return hasher.hash().toString();
+  }
+
+  private static void putString(@NotNull Hasher hasher, @Nullable String value) {
+    // Length prefixed, so consecutive values can't be mistaken for each other
+    hasher.putInt(value != null ? value.length() : -1);
+    if (value != null) {
+      hasher.putString(value, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Returns a stamp of the inputs of the render of the given layout file within this session: the modification counts of the app
+   * resources and of the configuration, and the document stamps of the layout and of the layouts it includes. Unlike the key, it is cheap
+   * to compute, and it changes on unsaved edits, so it tells whether a render still matches the key computed when it was inflated.
+   */
+  @NotNull
+  public static List<Long> computeStamp(@NotNull AndroidFacet facet, @NotNull XmlFile file, @NotNull Configuration configuration) {
+    LocalResourceRepository resources = AppResourceRepository.getAppResources(facet, true);
+    List<Long> stamp = new ArrayList<>();
+    stamp.add(resources.getModificationCount());
+    stamp.add(configuration.getModificationCount());
+    Project project = facet.getModule().getProject();
+    ApplicationManager.getApplication().runReadAction(() -> addDocumentStamps(project, resources, file, stamp, new HashSet<>()));
+    return stamp;
+  }
+
+  private static void addDocumentStamps(@NotNull Project project,
+                                        @NotNull LocalResourceRepository resources,
+                                        @NotNull XmlFile file,
+                                        @NotNull List<Long> stamp,
+                                        @NotNull Set<XmlFile> visited) {
+    if (!visited.add(file)) {
+      return;
+    }
+    stamp.add(getDocumentStamp(file));
+    XmlTag rootTag = file.getRootTag();
+    if (rootTag != null) {
+      addIncludedDocumentStamps(project, resources, rootTag, stamp, visited);
+    }
+  }
+
+  private static void addIncludedDocumentStamps(@NotNull Project project,
+                                                @NotNull LocalResourceRepository resources,
+                                                @NotNull XmlTag tag,
+                                                @NotNull List<Long> stamp,
+                                                @NotNull Set<XmlFile> visited) {
+    if (VIEW_INCLUDE.equals(tag.getName())) {
+      String layout = tag.getAttributeValue(ATTR_LAYOUT);
+      ResourceUrl url = layout != null ? ResourceUrl.parse(layout) : null;
+      if (url != null && url.type == ResourceType.LAYOUT && !url.framework) {
+        List<ResourceItem> items = resources.getResourceItem(ResourceType.LAYOUT, url.name);
+        if (items != null) {
+          // Any of the variants may be picked for the configuration
+          for (ResourceItem item : items) {
+            PsiFile included = LocalResourceRepository.getItemPsiFile(project, item);
+            if (included instanceof XmlFile) {
+              addDocumentStamps(project, resources, (XmlFile)included, stamp, visited);
+            }
+          }
+        }
+      }
+    }
+    for (XmlTag subTag : tag.getSubTags()) {
+      addIncludedDocumentStamps(project, resources, subTag, stamp, visited);
+    }
+  }
+
+  /**
+   * Returns the modification stamp of the document of the file, which unlike the stamp of the file on disk changes on unsaved edits.
+   */
+  private static long getDocumentStamp(@NotNull PsiFile file) {
+    VirtualFile virtualFile = file.getVirtualFile();
+    if (virtualFile == null) {
+      return file.getModificationStamp();
+    }
+    Document document = FileDocumentManager.getInstance().getCachedDocument(virtualFile);
+    return document != null ? document.getModificationStamp() : virtualFile.getModificationStamp();
+  }
+
+  /**
+   * Returns a hash of the paths, sizes and time stamps of the files in the resource folders of the module and its dependencies. It is
+   * only recomputed when the app resources change. The time stamps are the ones on disk, see {@link #putUnsavedResources}.
+   */
+  @NotNull
+  private static String getResourceHash(@NotNull AndroidFacet facet, @NotNull LocalResourceRepository resources) {
+    long modificationCount = resources.getModificationCount();
+    Pair<Long, String> cached = ourResourceHashes.get(facet.getModule());
+    if (cached != null && cached.getFirst() == modificationCount) {
+      return cached.getSecond();
+    }
+
+    String hash = ApplicationManager.getApplication().runReadAction((Computable<String>)() -> {
+      List<VirtualFile> dirs = new ArrayList<>(resources.getResourceDirs());
+      dirs.sort(Comparator.comparing(VirtualFile::getPath));
+      Hasher hasher = Hashing.sha1().newHasher();
+      for (VirtualFile dir : dirs) {
+        VfsUtilCore.visitChildrenRecursively(dir, new VirtualFileVisitor<Void>() {
+          @Override
+          public boolean visitFile(@NotNull VirtualFile file) {
+            if (!file.isDirectory()) {
+              putString(hasher, file.getPath());
+              hasher.putLong(file.getTimeStamp());
+              hasher.putLong(file.getLength());
+            }
+            return true;
+          }
+        });
+      }
+      return hasher.hash().toString();
+    });
+    ourResourceHashes.put(facet.getModule(), Pair.create(modificationCount, hash));
+    return hash;
+  }
+
+  /**
+   * Adds the text of the documents in the resource folders with unsaved changes, which the files on disk don't reflect yet.
+   */
+  private static void putUnsavedResources(@NotNull Hasher hasher, @NotNull LocalResourceRepository resources) {
+    Document[] unsavedDocuments = FileDocumentManager.getInstance().getUnsavedDocuments();
+    if (unsavedDocuments.length == 0) {
+      return;
+    }
+    ApplicationManager.getApplication().runReadAction(() -> {
+      Set<VirtualFile> dirs = resources.getResourceDirs();
+      // Sorted by path, so the hash doesn't depend on the order the documents were edited in
+      Map<String, Document> unsaved = new TreeMap<>();
+      for (Document document : unsavedDocuments) {
+        VirtualFile file = FileDocumentManager.getInstance().getFile(document);
+        if (file != null && dirs.stream().anyMatch(dir -> VfsUtilCore.isAncestor(dir, file, true))) {
+          unsaved.put(file.getPath(), document);
+        }
+      }
+      for (Map.Entry<String, Document> entry : unsaved.entrySet()) {
+        putString(hasher, entry.getKey());
+        putString(hasher, entry.getValue().getText());
+      }
+    });
+  }
+
+  /**
+   * Returns the cached render of the given layout file, or null if there is none. The views of the result have {@link TagSnapshot}
+   * cookies pointing to the tags of the file, and the result has no render task, so it can only be used as a placeholder until the file
+   * is rendered.
+   *
+   * @param key the key of the render, as returned by {@link #computeKey}; it must have been computed for the current text of the file
+   */
+  @Nullable
+  public RenderResult get(@NotNull String key, @NotNull XmlFile file, @NotNull Module module) {
+    File cacheFile = getCacheFile(key);
+    if (!cacheFile.isFile()) {
+      return null;
+    }
+
+    List<SavedView> savedViews;
+    BufferedImage image;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+      if (in.readInt() != FORMAT_VERSION) {
+        return null;
+      }
+      savedViews = readViews(in);
+      image = ImageIO.read(in);
+    }
+    catch (IOException e) {
+      LOG.debug("Can't read cached render " + cacheFile, e);
+      FileUtil.delete(cacheFile);
+      return null;
+    }
+    if (image == null || image.getType() == BufferedImage.TYPE_CUSTOM) {
+      // The pool can't allocate images of custom types, and we only write 8 bit PNGs
+      return null;
+    }
+
+    List<ViewInfo> rootViews = ApplicationManager.getApplication().runReadAction((Computable<List<ViewInfo>>)() -> {
+      XmlTag rootTag = file.getRootTag();
+      return rootTag != null ? createViews(savedViews, rootTag) : null;
+    });
+    if (rootViews == null) {
+      return null;
+    }
+
+    // Recently used entries are evicted last
+    //noinspection ResultOfMethodCallIgnored
+    cacheFile.setLastModified(System.currentTimeMillis());
+    return RenderResult.createCached(file, module, rootViews, myImagePool.copyOf(image));
+  }
+
+  /**
+   * Stores the given successful render in the background, unless an entry already exists for the key. Must be called with read access,
+   * while the tags of the result are still the ones of the file.
+   */
+  public void put(@NotNull String key, @NotNull RenderResult result) {
+    if (!result.getRenderResult().isSuccess() || !result.hasImage()) {
+      return;
+    }
+    List<SavedView> views = saveViews(result.getRootViews());
+    if (views == null) {
+      return;
+    }
+    ImagePool.Image image = result.getRenderedImage();
+    myExecutor.execute(() -> write(key, views, image));
+  }
+
+  private void write(@NotNull String key, @NotNull List<SavedView> views, @NotNull ImagePool.Image image) {
+    File cacheFile = getCacheFile(key);
+    if (cacheFile.isFile()) {
+      //noinspection ResultOfMethodCallIgnored
+      cacheFile.setLastModified(System.currentTimeMillis());
+      return;
+    }
+    BufferedImage copy = image.getCopy();
+    if (copy == null) {
+      return;
+    }
+
+    File tempFile = new File(myDirectory, key + ".tmp");
+    try {
+      FileUtil.createParentDirs(tempFile);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+        out.writeInt(FORMAT_VERSION);
+        writeViews(out, views);
+        ImageIO.write(copy, "png", out);
+      }
+      // Readers never see a partially written entry
+      FileUtil.rename(tempFile, cacheFile);
+    }
+    catch (IOException e) {
+      LOG.warn("Can't cache render in " + cacheFile, e);
+      FileUtil.delete(tempFile);
+      return;
+    }
+
+    if (mySizeBytes < 0) {
+      mySizeBytes = 0;
+      for (File file : listCacheFiles()) {
+        mySizeBytes += file.length();
+      }
+    }
+    else {
+      mySizeBytes += cacheFile.length();
+    }
+    if (mySizeBytes > myMaxSizeBytes) {
+      evict();
+    }
+  }
+
+  /**
+   * Deletes the least recently used entries until the cache fits in three quarters of its budget, so eviction doesn't run on every
+   * write once the cache is full.
+   */
+  private void evict() {
+    List<File> files = listCacheFiles();
+    files.sort(Comparator.comparingLong(File::lastModified));
+    long targetBytes = myMaxSizeBytes / 4 * 3;
+    int evicted = 0;
+    for (File file : files) {
+      if (mySizeBytes <= targetBytes) {
+        break;
+      }
+      long length = file.length();
+      if (FileUtil.delete(file)) {
+        mySizeBytes -= length;
+        evicted++;
+      }
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(String.format("Evicted %d cached renders, %d bytes left", evicted, mySizeBytes));
+    }
+  }
+
+  @NotNull
+  private List<File> listCacheFiles() {
+    File[] files = myDirectory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+    return files != null ? new ArrayList<>(Arrays.asList(files)) : new ArrayList<>();
+  }
+
+  @NotNull
+  private File getCacheFile(@NotNull String key) {
+    return new File(myDirectory, key + EXTENSION);
+  }
+
+  /**
+   * Returns the views to save, with the position of their tags in the file, or null if a tag is no longer valid.
+   */
+  @Nullable
+  private static List<SavedView> saveViews(@NotNull List<ViewInfo> views) {
+    List<SavedView> saved = new ArrayList<>(views.size());
+    for (ViewInfo view : views) {
+      Object cookie = view.getCookie();
+      if (cookie instanceof MergeCookie) {
+        cookie = ((MergeCookie)cookie).getCookie();
+      }
+      int[] tagPath = null;
+      if (cookie instanceof TagSnapshot && ((TagSnapshot)cookie).tag != null) {
+        tagPath = getTagPath(((TagSnapshot)cookie).tag);
+        if (tagPath == null) {
+          return null;
+        }
+      }
+      List<SavedView> children = saveViews(view.getChildren());
+      if (children == null) {
+        return null;
+      }
+      saved.add(new SavedView(StringUtil.notNullize(view.getClassName()), tagPath, view.getLeft(), view.getTop(), view.getRight(),
+                              view.getBottom(), children));
+    }
+    return saved;
+  }
+
+  /**
+   * Returns the indices of the given tag and its parents among the sub tags of their parent, from the root tag down.
+   */
+  @Nullable
+  private static int[] getTagPath(@NotNull XmlTag tag) {
+    if (!tag.isValid()) {
+      return null;
+    }
+    List<Integer> path = new ArrayList<>();
+    for (XmlTag current = tag; current.getParentTag() != null; current = current.getParentTag()) {
+      path.add(Arrays.asList(current.getParentTag().getSubTags()).indexOf(current));
+    }
+    int[] result = new int[path.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = path.get(result.length - 1 - i);
+    }
+    return result;
+  }
+
+  /**
+   * Creates the views of a cached render. The layout text is part of the key, so the tag paths are valid in the given root tag.
+   */
+  @Nullable
+  private static List<ViewInfo> createViews(@NotNull List<SavedView> savedViews, @NotNull XmlTag rootTag) {
+    List<ViewInfo> views = new ArrayList<>(savedViews.size());
+    for (SavedView saved : savedViews) {
+      Object cookie = null;
+      if (saved.myTagPath != null) {
+        XmlTag tag = rootTag;
+        for (int index : saved.myTagPath) {
+          XmlTag[] subTags = tag.getSubTags();
+          if (index < 0 || index >= subTags.length) {
+            return null;
+          }
+          tag = subTags[index];
+        }
+        cookie = TagSnapshot.createTagSnapshotWithoutChildren(tag);
+      }
+      List<ViewInfo> children = createViews(saved.myChildren, rootTag);
+      if (children == null) {
+        return null;
+      }
+      ViewInfo view = new ViewInfo(saved.myClassName, cookie, saved.myLeft, saved.myTop, saved.myRight, saved.myBottom);
+      view.setChildren(children);
+      views.add(view);
+    }
+    return views;
+  }
+
+  private static void writeViews(@NotNull DataOutputStream out, @NotNull List<SavedView> views) throws IOException {
+    out.writeInt(views.size());
+    for (SavedView view : views) {
+      out.writeUTF(view.myClassName);
+      if (view.myTagPath == null) {
+        out.writeInt(-1);
+      }
+      else {
+        out.writeInt(view.myTagPath.length);
+        for (int index : view.myTagPath) {
+          out.writeInt(index);
+        }
+      }
+      out.writeInt(view.myLeft);
+      out.writeInt(view.myTop);
+      out.writeInt(view.myRight);
+      out.writeInt(view.myBottom);
+      writeViews(out, view.myChildren);
+    }
+  }
+
+  @NotNull
+  private static List<SavedView> readViews(@NotNull DataInputStream in) throws IOException {
+    int count = in.readInt();
+    List<SavedView> views = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      String className = in.readUTF();
+      int pathLength = in.readInt();
+      int[] tagPath = null;
+      if (pathLength >= 0) {
+        tagPath = new int[pathLength];
+        for (int j = 0; j < pathLength; j++) {
+          tagPath[j] = in.readInt();
+        }
+      }
+      int left = in.readInt();
+      int top = in.readInt();
+      int right = in.readInt();
+      int bottom = in.readInt();
+      views.add(new SavedView(className, tagPath, left, top, right, bottom, readViews(in)));
+    }
+    return views;
+  }
+
+  /**
+   * The class name, bounds and tag position of a view, detached from the PSI so it can be written in the background.
+   */
+  private static final class SavedView {
+    @NotNull private final String myClassName;
+    @Nullable private final int[] myTagPath;
+    private final int myLeft;
+    private final int myTop;
+    private final int myRight;
+    private final int myBottom;
+    @NotNull private final List<SavedView> myChildren;
+
+    private SavedView(@NotNull String className,
+                      @Nullable int[] tagPath,
+                      int left,
+                      int top,
+                      int right,
+                      int bottom,
+                      @NotNull List<SavedView> children) {
+      myClassName = className;
+      myTagPath = tagPath;
+      myLeft = left;
+      myTop = top;
+      myRight = right;
+      myBottom = bottom;
+      myChildren = children;
+    }
+  }
+}
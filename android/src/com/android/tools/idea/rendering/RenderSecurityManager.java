@@ -15,6 +15,7 @@
  */
 package com.android.tools.idea.rendering;
 
+import com.android.annotations.NonNull;
 import com.android.annotations.Nullable;
 import com.android.ide.common.rendering.RenderSecurityException;
 import com.android.tools.idea.rendering.webp.WebpNativeLibHelper;
@@ -260,6 +261,22 @@ public class RenderSecurityManager extends SecurityManager {
     sEnabled = token;
   }
 
+  /**
+   * Runs the given IDE task on the current thread without the sandbox. Unlike {@link #enterSafeRegion(Object)}, this only affects
+   * the current thread, so it can be used by background tasks running on threads created by a render thread, which inherit
+   * its sandbox. It is package private so that it can't be called by the rendered code.
+   */
+  static void runOutsideSandbox(@NonNull Runnable task) {
+    Boolean wasRenderThread = sIsRenderThread.get();
+    sIsRenderThread.set(false);
+    try {
+      task.run();
+    }
+    finally {
+      sIsRenderThread.set(wasRenderThread);
+    }
+  }
+
   /**
    * Returns the most recently denied path.
    *
@@ -59,7 +59,6 @@ import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 
 import static com.android.SdkConstants.TAG_PREFERENCE_SCREEN;
 import static com.intellij.lang.annotation.HighlightSeverity.ERROR;
@@ -74,29 +73,25 @@ public class RenderService {
 
   /** Number of ms that we will wait for the rendering thread to return before timing out */
   private static final long DEFAULT_RENDER_THREAD_TIMEOUT_MS = Integer.getInteger("layoutlib.thread.timeout", 6000);
-  /** Number of ms that we will keep the render thread alive when idle */
-  private static final long RENDER_THREAD_IDLE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
-
-  private static final AtomicReference<Thread> ourRenderingThread = new AtomicReference<>();
-  private static final ExecutorService ourRenderingExecutor = new ThreadPoolExecutor(0, 1,
-                                                                                     RENDER_THREAD_IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS,
-                                                                                     new LinkedBlockingQueue<>(),
-                                                                                     (Runnable r) -> {
-                                                                                       Thread renderingThread =
-                                                                                         new Thread(null, r, "Layoutlib Render Thread");
-                                                                                       renderingThread.setDaemon(true);
-                                                                                       ourRenderingThread.set(renderingThread);
-
-                                                                                       return renderingThread;
-                                                                                     });
-  private static final AtomicInteger ourTimeoutExceptionCounter = new AtomicInteger(0);
+
+  /**
+   * Priority of render actions waiting for the same layout library. Actions of a higher priority run first.
+   */
+  public enum Priority {
+    /** Renders of the layout editor or preview the user is looking at */
+    HIGH,
+    NORMAL,
+    /** Renders nobody is waiting for, e.g. palette icons or thumbnails */
+    LOW
+  }
+
+  private static final RenderThreadPool ourRenderThreadPool = new RenderThreadPool();
+
+  private static final Object ourSandboxLock = new Object();
 
   static {
     // Register the executor to be shutdown on close
-    ShutDownTracker.getInstance().registerShutdownTask(() -> {
-      ourRenderingExecutor.shutdownNow();
-      ourRenderingThread.set(null);
-    });
+    ShutDownTracker.getInstance().registerShutdownTask(ourRenderThreadPool::shutdownNow);
   }
 
   private static final String JDK_INSTALL_URL = "https://developer.android.com/preview/setup-sdk.html#java8";
@@ -395,23 +390,45 @@ public class RenderService {
    * method.
    */
   public static <T> T runRenderAction(@NotNull Callable<T> callable) throws Exception {
+    return runRenderAction(null, Priority.NORMAL, callable);
+  }
+
+  /**
+   * Runs a action that uses the given layout library, see {@link #runRenderAction(LayoutLibrary, Priority, Callable)}.
+   */
+  public static void runRenderAction(@Nullable LayoutLibrary layoutLib, @NotNull Priority priority, @NotNull Runnable runnable)
+    throws Exception {
+    runRenderAction(layoutLib, priority, Executors.callable(runnable));
+  }
+
+  /**
+   * Runs a action that uses the given layout library. Actions of the same layout library run one at a time on its render thread, in
+   * priority order, while actions of other layout libraries may run in parallel. Actions without a layout library run on a shared
+   * render thread.
+   */
+  public static <T> T runRenderAction(@Nullable LayoutLibrary layoutLib, @NotNull Priority priority, @NotNull Callable<T> callable)
+    throws Exception {
+    AtomicInteger timeoutCounter = ourRenderThreadPool.getTimeoutCounter(layoutLib);
     try {
       // If the number of timeouts exceeds a certain threshold, stop waiting so the caller doesn't block. We try to submit a task that
       // clean-up the timeout counter instead. If it goes through, it means the queue is free.
-      if (ourTimeoutExceptionCounter.get() > 3) {
-        ourRenderingExecutor.submit(() -> ourTimeoutExceptionCounter.set(0)).get(50, TimeUnit.MILLISECONDS);
+      if (timeoutCounter.get() > 3) {
+        ourRenderThreadPool.submit(layoutLib, priority, () -> {
+          timeoutCounter.set(0);
+          return null;
+        }).get(50, TimeUnit.MILLISECONDS);
       }
 
-      T result = ourRenderingExecutor.submit(callable).get(DEFAULT_RENDER_THREAD_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      T result = ourRenderThreadPool.submit(layoutLib, priority, callable).get(DEFAULT_RENDER_THREAD_TIMEOUT_MS, TimeUnit.MILLISECONDS);
       // The executor seems to be taking tasks so reset the counter
-      ourTimeoutExceptionCounter.set(0);
+      timeoutCounter.set(0);
 
       return result;
     }
     catch (TimeoutException e) {
-      ourTimeoutExceptionCounter.incrementAndGet();
+      timeoutCounter.incrementAndGet();
 
-      Thread renderingThread = ourRenderingThread.get();
+      Thread renderingThread = ourRenderThreadPool.getThread(layoutLib);
       TimeoutException timeoutException = new TimeoutException("Preview timed out while rendering the layout.\n" +
                                                                "This typically happens when there is an infinite loop or unbounded recursion in one of the custom views.");
       if (renderingThread != null) {
@@ -422,6 +439,23 @@ public class RenderService {
     }
   }
 
+  /**
+   * Returns the lock to hold while a {@link RenderSecurityManager} is active. It is installed as the process wide security manager, so
+   * the sandboxed sections of render actions running in parallel for different layout libraries must not overlap.
+   */
+  @NotNull
+  public static Object getSandboxLock() {
+    return ourSandboxLock;
+  }
+
+  /**
+   * Returns the queue depth and latency metrics of the render threads.
+   */
+  @NotNull
+  public static RenderThreadPool.Metrics getRenderPoolMetrics() {
+    return ourRenderThreadPool.getMetrics();
+  }
+
   /**
    * Given a {@link ViewInfo} from a layoutlib rendering, checks that the view info provides
    * valid bounds. This is normally the case. However, there are known scenarios, where
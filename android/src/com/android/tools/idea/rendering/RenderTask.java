@@ -83,7 +83,7 @@ import static com.intellij.lang.annotation.HighlightSeverity.ERROR;
 public class RenderTask implements IImageFactory {
   private static final Logger LOG = Logger.getInstance(RenderTask.class);
 
-  private final ImagePool myImagePool = new ImagePool();
+  private final ImagePool myImagePool = ImagePool.getSharedPool();
 
   @NotNull
   private final RenderService myRenderService;
@@ -126,6 +126,9 @@ public class RenderTask implements IImageFactory {
 
   private long myTimeout;
 
+  @NotNull
+  private RenderService.Priority myPriority = RenderService.Priority.NORMAL;
+
   @Nullable
   private Set<XmlTag> myExpandNodes;
 
@@ -254,7 +257,6 @@ public class RenderTask implements IImageFactory {
    * Disposes the RenderTask and releases the allocated resources. Do not call this method while holding the read lock.
    */
   public void dispose() {
-    myImagePool.dispose();
     myLayoutlibCallback.setLogger(null);
     myLayoutlibCallback.setResourceResolver(null);
     if (myRenderSession != null) {
@@ -262,7 +264,7 @@ public class RenderTask implements IImageFactory {
              !ApplicationManager.getApplication().isReadAccessAllowed() : "Do not hold read lock during dispose!";
 
       try {
-        RenderService.runRenderAction(myRenderSession::dispose);
+        RenderService.runRenderAction(myLayoutLib, myPriority, myRenderSession::dispose);
         myRenderSession = null;
       }
       catch (Exception ignored) {
@@ -328,6 +330,24 @@ public class RenderTask implements IImageFactory {
     return this;
   }
 
+  /**
+   * Sets the priority of the layoutlib actions of this task over the ones of other tasks using the same layout library. The default
+   * is {@link RenderService.Priority#NORMAL}.
+   *
+   * @param priority the priority, e.g. {@link RenderService.Priority#LOW} for renders nobody is waiting for
+   * @return this (such that chains of setters can be stringed together)
+   */
+  @NotNull
+  public RenderTask setPriority(@NotNull RenderService.Priority priority) {
+    myPriority = priority;
+    return this;
+  }
+
+  @NotNull
+  public RenderService.Priority getPriority() {
+    return myPriority;
+  }
+
   /**
    * Sets the overriding background color to be used, if any. The color should be a
    * bitmask of AARRGGBB. The default is null.
@@ -546,7 +566,7 @@ public class RenderTask implements IImageFactory {
       myLayoutlibCallback.setLogger(myLogger);
       myLayoutlibCallback.setResourceResolver(resolver);
 
-      RenderResult result = ApplicationManager.getApplication().runReadAction(new Computable<RenderResult>() {
+      Computable<RenderResult> createSession = new Computable<RenderResult>() {
         @NotNull
         @Override
         public RenderResult compute() {
@@ -558,6 +578,12 @@ public class RenderTask implements IImageFactory {
           }
 
           try {
+            if (myRenderSession != null) {
+              // Inflating again, e.g. after an attribute edit
+              myRenderSession.dispose();
+              myRenderSession = null;
+            }
+            RenderClassLoader.LoadingStats loadingStart = RenderClassLoader.getThreadLoadingStats();
             int retries = 0;
             RenderSession session = null;
             while (retries < 10) {
@@ -576,6 +602,10 @@ public class RenderTask implements IImageFactory {
               }
               retries++;
             }
+            if (LOG.isDebugEnabled()) {
+              LOG.debug(String.format("Inflated %s: %s", myPsiFile.getName(),
+                                      RenderClassLoader.getThreadLoadingStats().since(loadingStart)));
+            }
 
             if (session.getResult().isSuccess()) {
               // Advance the frame time to display the material progress bars
@@ -596,7 +626,17 @@ public class RenderTask implements IImageFactory {
             }
           }
         }
-      });
+      };
+      RenderResult result;
+      if (isSecurityManagerEnabled) {
+        // Sessions of other layout libraries may be created in parallel, but the sandbox is installed process wide.
+        synchronized (RenderService.getSandboxLock()) {
+          result = ApplicationManager.getApplication().runReadAction(createSession);
+        }
+      }
+      else {
+        result = ApplicationManager.getApplication().runReadAction(createSession);
+      }
       addDiagnostics(result.getRenderResult());
       return result;
     }
@@ -677,7 +717,7 @@ public class RenderTask implements IImageFactory {
     }
 
     try {
-      return RenderService.runRenderAction(() -> createRenderSession((width, height) -> {
+      return RenderService.runRenderAction(myLayoutLib, myPriority, () -> createRenderSession((width, height) -> {
         if (myImageFactoryDelegate != null) {
           return myImageFactoryDelegate.getImage(width, height);
         }
@@ -704,7 +744,7 @@ public class RenderTask implements IImageFactory {
       return null;
     }
     try {
-      return RenderService.runRenderAction(() -> {
+      return RenderService.runRenderAction(myLayoutLib, myPriority, () -> {
         myRenderSession.measure();
         return RenderResult.create(this, myRenderSession, myPsiFile, myLogger, ImagePool.NULL_POOLED_IMAGE);
       });
@@ -748,7 +788,7 @@ public class RenderTask implements IImageFactory {
     assert myPsiFile != null;
 
     try {
-      return RenderService.runRenderAction(() -> {
+      return RenderService.runRenderAction(myLayoutLib, myPriority, () -> {
         myRenderSession.render();
         RenderResult result =
           RenderResult.create(this, myRenderSession, myPsiFile, myLogger, myImagePool.copyOf(myRenderSession.getImage()));
@@ -852,7 +892,7 @@ public class RenderTask implements IImageFactory {
     params.setAssetRepository(myAssetRepository);
 
     try {
-      Result result = RenderService.runRenderAction(new Callable<Result>() {
+      Result result = RenderService.runRenderAction(myLayoutLib, myPriority, new Callable<Result>() {
         @Override
         public Result call() throws Exception {
           return myLayoutLib.renderDrawable(params);
@@ -901,7 +941,7 @@ public class RenderTask implements IImageFactory {
     }
 
     try {
-      Result result = RenderService.runRenderAction(new Callable<Result>() {
+      Result result = RenderService.runRenderAction(myLayoutLib, myPriority, new Callable<Result>() {
         @Override
         public Result call() throws Exception {
           return myLayoutLib.renderDrawable(params);
@@ -1033,7 +1073,7 @@ public class RenderTask implements IImageFactory {
     Map<XmlTag, ViewInfo> map = Maps.newHashMap();
     RenderSession session = null;
     try {
-      session = RenderService.runRenderAction(() -> measure(modelParser));
+      session = RenderService.runRenderAction(myLayoutLib, myPriority, () -> measure(modelParser));
     }
     catch (Exception ignored) {
     }
@@ -1056,7 +1096,7 @@ public class RenderTask implements IImageFactory {
         return map;
       } finally {
         try {
-          RenderService.runRenderAction(session::dispose);
+          RenderService.runRenderAction(myLayoutLib, myPriority, session::dispose);
         }
         catch (Exception ignored) {
         }
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.ide.common.rendering.LayoutLibrary;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The threads running the layoutlib actions of {@link RenderService}.
+ *
+ * Layoutlib is not thread safe: each {@link LayoutLibrary} keeps global state guarded by its own lock, and a render session must be
+ * used from the thread which created it. So every layout library gets a lane, a single thread which runs the actions of that library
+ * in priority order, and is stopped once idle. Actions of different layout libraries, e.g. previews of different API levels, run in
+ * parallel on their own lanes. Actions which don't say which layout library they use run on a default lane.
+ *
+ * The pool also keeps metrics about the queue depth and the time actions spent waiting and running, see {@link #getMetrics()}.
+ */
+public final class RenderThreadPool {
+  private static final Logger LOG = Logger.getInstance(RenderThreadPool.class);
+
+  /** Number of ms that we will keep a render thread alive when idle */
+  private static final long RENDER_THREAD_IDLE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
+
+  /**
+   * Sequence of the submitted actions, so actions of the same priority run in submission order.
+   */
+  private static final AtomicLong ourSequence = new AtomicLong();
+
+  private final Map<LayoutLibrary, Lane> myLanes = new WeakHashMap<>();
+  @NotNull private final Lane myDefaultLane = new Lane("Layoutlib Render Thread");
+  private final AtomicInteger myLaneNumber = new AtomicInteger(1);
+  private volatile boolean myShutdown;
+
+  private final AtomicInteger myQueueDepth = new AtomicInteger();
+  private final AtomicInteger myMaxQueueDepth = new AtomicInteger();
+  private final LongAdder[] myCompletedCount = new LongAdder[RenderService.Priority.values().length];
+  private final LongAdder myWaitNanos = new LongAdder();
+  private final LongAdder myRunNanos = new LongAdder();
+  private final AtomicLong myMaxWaitNanos = new AtomicLong();
+  private final AtomicLong myMaxRunNanos = new AtomicLong();
+
+  RenderThreadPool() {
+    for (int i = 0; i < myCompletedCount.length; i++) {
+      myCompletedCount[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Submits an action to the lane of the layout library. Actions submitted from the thread of that lane run right away, rather than
+   * waiting for the action which submitted them.
+   */
+  @NotNull
+  <T> Future<T> submit(@Nullable LayoutLibrary layoutLib, @NotNull RenderService.Priority priority, @NotNull Callable<T> callable) {
+    Lane lane = getLane(layoutLib);
+    PrioritizedTask<T> task = new PrioritizedTask<>(callable, priority);
+    if (lane.isCurrentThread()) {
+      task.run();
+    }
+    else {
+      task.myQueued = true;
+      int depth = myQueueDepth.incrementAndGet();
+      myMaxQueueDepth.accumulateAndGet(depth, Math::max);
+      try {
+        lane.myExecutor.execute(task);
+      }
+      catch (RejectedExecutionException e) {
+        myQueueDepth.decrementAndGet();
+        throw e;
+      }
+    }
+    return task;
+  }
+
+  /**
+   * Returns the thread of the lane of the layout library, if it is running, e.g. to report where an action is stuck.
+   */
+  @Nullable
+  Thread getThread(@Nullable LayoutLibrary layoutLib) {
+    return getLane(layoutLib).myThread.get();
+  }
+
+  /**
+   * Returns the number of consecutive actions of the lane of the layout library which timed out.
+   */
+  @NotNull
+  AtomicInteger getTimeoutCounter(@Nullable LayoutLibrary layoutLib) {
+    return getLane(layoutLib).myTimeoutCounter;
+  }
+
+  void shutdownNow() {
+    myShutdown = true;
+    List<Lane> lanes;
+    synchronized (myLanes) {
+      lanes = new ArrayList<>(myLanes.values());
+    }
+    lanes.add(myDefaultLane);
+    for (Lane lane : lanes) {
+      lane.myExecutor.shutdownNow();
+      lane.myThread.set(null);
+    }
+  }
+
+  @NotNull
+  public Metrics getMetrics() {
+    long[] completed = new long[myCompletedCount.length];
+    long total = 0;
+    for (int i = 0; i < completed.length; i++) {
+      completed[i] = myCompletedCount[i].sum();
+      total += completed[i];
+    }
+    int laneCount;
+    synchronized (myLanes) {
+      laneCount = myLanes.size() + 1;
+    }
+    return new Metrics(laneCount, myQueueDepth.get(), myMaxQueueDepth.get(), completed,
+                       total == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(myWaitNanos.sum() / total),
+                       TimeUnit.NANOSECONDS.toMillis(myMaxWaitNanos.get()),
+                       total == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(myRunNanos.sum() / total),
+                       TimeUnit.NANOSECONDS.toMillis(myMaxRunNanos.get()));
+  }
+
+  @NotNull
+  private Lane getLane(@Nullable LayoutLibrary layoutLib) {
+    if (layoutLib == null) {
+      return myDefaultLane;
+    }
+    synchronized (myLanes) {
+      Lane lane = myLanes.get(layoutLib);
+      if (lane == null) {
+        lane = new Lane("Layoutlib Render Thread " + myLaneNumber.incrementAndGet());
+        if (myShutdown) {
+          lane.myExecutor.shutdownNow();
+        }
+        myLanes.put(layoutLib, lane);
+      }
+      return lane;
+    }
+  }
+
+  private final class Lane {
+    @NotNull private final AtomicReference<Thread> myThread = new AtomicReference<>();
+    @NotNull private final AtomicInteger myTimeoutCounter = new AtomicInteger();
+    @NotNull private final ThreadPoolExecutor myExecutor;
+
+    private Lane(@NotNull String threadName) {
+      myExecutor = new ThreadPoolExecutor(0, 1, RENDER_THREAD_IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+                                          (Runnable r) -> {
+                                            Thread renderingThread = new Thread(null, r, threadName);
+                                            renderingThread.setDaemon(true);
+                                            myThread.set(renderingThread);
+
+                                            return renderingThread;
+                                          });
+    }
+
+    private boolean isCurrentThread() {
+      return myThread.get() == Thread.currentThread();
+    }
+  }
+
+  private final class PrioritizedTask<T> extends FutureTask<T> implements Comparable<PrioritizedTask<?>> {
+    @NotNull private final RenderService.Priority myPriority;
+    private final long mySequence = ourSequence.incrementAndGet();
+    private final long mySubmitNanos = System.nanoTime();
+    private boolean myQueued;
+    private long myStartNanos;
+
+    private PrioritizedTask(@NotNull Callable<T> callable, @NotNull RenderService.Priority priority) {
+      super(callable);
+      myPriority = priority;
+    }
+
+    @Override
+    public void run() {
+      if (myQueued) {
+        myQueued = false;
+        myQueueDepth.decrementAndGet();
+      }
+      if (isDone()) {
+        // Cancelled while queued
+        return;
+      }
+      myStartNanos = System.nanoTime();
+      super.run();
+    }
+
+    @Override
+    protected void set(T t) {
+      // Recorded before the result is published, so callers which got the result see the action in the metrics.
+      record(myStartNanos - mySubmitNanos, System.nanoTime() - myStartNanos);
+      super.set(t);
+    }
+
+    @Override
+    protected void setException(Throwable t) {
+      record(myStartNanos - mySubmitNanos, System.nanoTime() - myStartNanos);
+      super.setException(t);
+    }
+
+    private void record(long waitNanos, long runNanos) {
+      myCompletedCount[myPriority.ordinal()].increment();
+      myWaitNanos.add(waitNanos);
+      myRunNanos.add(runNanos);
+      myMaxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+      myMaxRunNanos.accumulateAndGet(runNanos, Math::max);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug(String.format("%s render action waited %d ms, ran %d ms", myPriority, TimeUnit.NANOSECONDS.toMillis(waitNanos),
+                                TimeUnit.NANOSECONDS.toMillis(runNanos)));
+      }
+    }
+
+    @Override
+    public int compareTo(@NotNull PrioritizedTask<?> other) {
+      int result = myPriority.compareTo(other.myPriority);
+      return result != 0 ? result : Long.compare(mySequence, other.mySequence);
+    }
+  }
+
+  /**
+   * A snapshot of the metrics of the pool since the IDE started.
+   */
+  public static final class Metrics {
+    private final int myLaneCount;
+    private final int myQueueDepth;
+    private final int myMaxQueueDepth;
+    @NotNull private final long[] myCompletedCount;
+    private final long myAverageWaitMs;
+    private final long myMaxWaitMs;
+    private final long myAverageRunMs;
+    private final long myMaxRunMs;
+
+    private Metrics(int laneCount,
+                    int queueDepth,
+                    int maxQueueDepth,
+                    @NotNull long[] completedCount,
+                    long averageWaitMs,
+                    long maxWaitMs,
+                    long averageRunMs,
+                    long maxRunMs) {
+      myLaneCount = laneCount;
+      myQueueDepth = queueDepth;
+      myMaxQueueDepth = maxQueueDepth;
+      myCompletedCount = completedCount;
+      myAverageWaitMs = averageWaitMs;
+      myMaxWaitMs = maxWaitMs;
+      myAverageRunMs = averageRunMs;
+      myMaxRunMs = maxRunMs;
+    }
+
+    public int getLaneCount() {
+      return myLaneCount;
+    }
+
+    /**
+     * Returns the number of actions waiting for their lane.
+     */
+    public int getQueueDepth() {
+      return myQueueDepth;
+    }
+
+    public int getMaxQueueDepth() {
+      return myMaxQueueDepth;
+    }
+
+    public long getCompletedCount(@NotNull RenderService.Priority priority) {
+      return myCompletedCount[priority.ordinal()];
+    }
+
+    public long getAverageWaitMs() {
+      return myAverageWaitMs;
+    }
+
+    public long getMaxWaitMs() {
+      return myMaxWaitMs;
+    }
+
+    public long getAverageRunMs() {
+      return myAverageRunMs;
+    }
+
+    public long getMaxRunMs() {
+      return myMaxRunMs;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder completed = new StringBuilder();
+      for (RenderService.Priority priority : RenderService.Priority.values()) {
+        completed.append(completed.length() == 0 ? "" : ", ").append(priority).append(' ').append(getCompletedCount(priority));
+      }
+      return String.format("Render lanes: %d, queued: %d (max %d), completed: %s, wait: %d ms avg (max %d), run: %d ms avg (max %d)",
+                           myLaneCount, myQueueDepth, myMaxQueueDepth, completed, myAverageWaitMs, myMaxWaitMs, myAverageRunMs,
+                           myMaxRunMs);
+    }
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.tools.idea.configurations.ConfigurationManager;
+import com.android.tools.idea.configurations.ResourceResolverCache;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import org.jetbrains.android.facet.AndroidFacet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Internal action showing the statistics of the shared {@link ImagePool}, of the render threads, of the {@link ConvertedClassCache} and of
+ * the {@link ResourceResolverCache} of each module of the project.
+ */
+public class ShowRenderStatsAction extends AnAction {
+  public ShowRenderStatsAction() {
+    super("Show Rendering Stats");
+  }
+
+  @Override
+  public void actionPerformed(@NotNull AnActionEvent event) {
+    String message = "Image pool\n" + ImagePool.getSharedPool().getStats() + "\n\n" +
+                     "Render threads\n" + RenderService.getRenderPoolMetrics() + "\n\n" +
+                     "Converted classes\n" + ConvertedClassCache.getInstance().getStats() +
+                     getResolverCacheStats(event.getProject());
+    Messages.showInfoMessage(event.getProject(), message, "Rendering Stats");
+  }
+
+  @NotNull
+  private static String getResolverCacheStats(@Nullable Project project) {
+    if (project == null) {
+      return "";
+    }
+    StringBuilder builder = new StringBuilder();
+    for (Module module : ModuleManager.getInstance(project).getModules()) {
+      AndroidFacet facet = AndroidFacet.getInstance(module);
+      ConfigurationManager manager = facet != null ? facet.getConfigurationManager(false) : null;
+      if (manager == null) {
+        continue;
+      }
+      ResourceResolverCache cache = manager.getResolverCache();
+      builder.append("\n\nResource resolvers of ").append(module.getName()).append('\n')
+        .append(String.format("%1$d hits, %2$d misses, %3$d resource types configured in %4$d ms", cache.getResolverHitCount(),
+                              cache.getResolverMissCount(), cache.getConfiguredTypeCount(), cache.getConfigureTimeMs()));
+    }
+    return builder.toString();
+  }
+}
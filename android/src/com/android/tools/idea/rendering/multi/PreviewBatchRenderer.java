@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering.multi;
+
+import com.android.sdklib.IAndroidTarget;
+import com.android.sdklib.devices.Device;
+import com.android.tools.idea.configurations.Configuration;
+import com.android.tools.idea.configurations.ConfigurationManager;
+import com.android.tools.idea.rendering.*;
+import com.android.tools.idea.rendering.Locale;
+import com.google.common.annotations.VisibleForTesting;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
+import org.jetbrains.android.facet.AndroidFacet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.android.ide.common.rendering.HardwareConfigHelper.*;
+
+/**
+ * Renders a layout in a batch of configurations, such as the ones previewed by a {@link RenderPreviewMode}, and passes on a thumbnail
+ * of each configuration as soon as it's rendered.
+ *
+ * The configurations are rendered in parallel: creating the render tasks, which loads the R classes and parses the layout, and scaling
+ * the rendered images run on up to one thread per core, while layoutlib runs the actions of each layout library one at a time on its
+ * render lane. The resources of all the configurations are resolved first, on a single thread since the {@link
+ * com.android.tools.idea.configurations.ResourceResolverCache} of the configuration manager isn't thread safe; the configurations
+ * share that cache, so the framework resources of a target and the resolvers of a configuration are only computed once.
+ */
+public class PreviewBatchRenderer {
+  private static final Logger LOG = Logger.getInstance(PreviewBatchRenderer.class);
+
+  /** We don't preview ancient rendering targets, as in the target menu */
+  private static final int MIN_PREVIEW_API_LEVEL = 7;
+
+  private static final Executor ourExecutor =
+    new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, Runtime.getRuntime().availableProcessors());
+
+  @NotNull private final AndroidFacet myFacet;
+  @NotNull private final XmlFile myFile;
+  @NotNull private final Executor myExecutor;
+
+  public PreviewBatchRenderer(@NotNull AndroidFacet facet, @NotNull XmlFile file) {
+    this(facet, file, ourExecutor);
+  }
+
+  @VisibleForTesting
+  PreviewBatchRenderer(@NotNull AndroidFacet facet, @NotNull XmlFile file, @NotNull Executor executor) {
+    myFacet = facet;
+    myFile = file;
+    myExecutor = executor;
+  }
+
+  /**
+   * Listener notified of each rendered configuration of a batch
+   */
+  public interface ThumbnailListener {
+    /**
+     * Called once a configuration has been rendered, on a background thread, in the order the renders complete.
+     *
+     * @param thumbnail the scaled render, or null if the configuration couldn't be rendered, in which case the logger has the problems
+     */
+    void thumbnailRendered(@NotNull Configuration configuration, @Nullable BufferedImage thumbnail, @NotNull RenderLogger logger);
+  }
+
+  /**
+   * Returns copies of the given configuration for each of the configurations previewed by the given mode. Only the modes which vary a
+   * single attribute of the configuration, {@link RenderPreviewMode#LOCALES}, {@link RenderPreviewMode#SCREENS} and
+   * {@link RenderPreviewMode#API_LEVELS}, are supported; no configurations are returned for the others.
+   */
+  @NotNull
+  public static List<Configuration> createConfigurations(@NotNull Configuration base, @NotNull RenderPreviewMode mode) {
+    ConfigurationManager manager = base.getConfigurationManager();
+    List<Configuration> configurations = new ArrayList<>();
+    switch (mode) {
+      case LOCALES:
+        for (Locale locale : manager.getLocales()) {
+          Configuration configuration = Configuration.copy(base);
+          configuration.setLocale(locale);
+          configurations.add(configuration);
+        }
+        break;
+      case SCREENS:
+        for (Device device : manager.getDevices()) {
+          if (isNexus(device) && !MANUFACTURER_GENERIC.equals(device.getManufacturer()) && !isWear(device) && !isTv(device)) {
+            Configuration configuration = Configuration.copy(base);
+            configuration.setDevice(device, false);
+            configurations.add(configuration);
+          }
+        }
+        break;
+      case API_LEVELS:
+        IAndroidTarget highestTarget = manager.getHighestApiTarget();
+        if (highestTarget == null) {
+          break;
+        }
+        int minApiLevel = Math.max(MIN_PREVIEW_API_LEVEL, getMinSdkVersion(base));
+        for (int apiLevel = highestTarget.getVersion().getFeatureLevel(); apiLevel >= minApiLevel; apiLevel--) {
+          Configuration configuration = Configuration.copy(base);
+          // All the levels render with the layoutlib of the highest target, see CompatibilityRenderTarget
+          configuration.setTarget(new CompatibilityRenderTarget(highestTarget, apiLevel, null));
+          configurations.add(configuration);
+        }
+        break;
+      default:
+        break;
+    }
+    return configurations;
+  }
+
+  private static int getMinSdkVersion(@NotNull Configuration configuration) {
+    AndroidFacet facet = AndroidFacet.getInstance(configuration.getModule());
+    return facet != null ? facet.getAndroidModuleInfo().getMinSdkVersion().getFeatureLevel() : -1;
+  }
+
+  /**
+   * Renders the layout in each of the given configurations in the background, passing on their thumbnails to the listener as they are
+   * rendered. Cancelling the returned future, with interruption, skips the configurations which haven't started rendering yet.
+   *
+   * @param maxThumbnailSize the maximum width and height of the thumbnails; renders are only scaled down
+   * @return the future statistics of the batch
+   */
+  @NotNull
+  public Future<Stats> render(@NotNull List<Configuration> configurations, int maxThumbnailSize, @NotNull ThumbnailListener listener) {
+    List<Configuration> batch = new ArrayList<>(configurations);
+    return ApplicationManager.getApplication().executeOnPooledThread(() -> renderBatch(batch, maxThumbnailSize, listener));
+  }
+
+  @NotNull
+  private Stats renderBatch(@NotNull List<Configuration> configurations, int maxThumbnailSize, @NotNull ThumbnailListener listener)
+    throws InterruptedException {
+    long start = System.nanoTime();
+    for (Configuration configuration : configurations) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      configuration.getResourceResolver();
+    }
+    long resolveNanos = System.nanoTime() - start;
+
+    AtomicInteger failed = new AtomicInteger();
+    List<Future<?>> renders = new ArrayList<>(configurations.size());
+    for (Configuration configuration : configurations) {
+      FutureTask<Void> render = new FutureTask<>(() -> {
+        if (!renderConfiguration(configuration, maxThumbnailSize, listener)) {
+          failed.incrementAndGet();
+        }
+      }, null);
+      myExecutor.execute(render);
+      renders.add(render);
+    }
+
+    try {
+      for (Future<?> render : renders) {
+        render.get();
+      }
+    }
+    catch (InterruptedException e) {
+      for (Future<?> render : renders) {
+        // Renders which already started run to completion, layoutlib can't be interrupted
+        render.cancel(false);
+      }
+      throw e;
+    }
+    catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+
+    Stats stats = new Stats(configurations.size(), failed.get(), TimeUnit.NANOSECONDS.toMillis(resolveNanos),
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Rendered previews of " + myFile.getName() + ": " + stats);
+    }
+    return stats;
+  }
+
+  /**
+   * Renders a configuration and passes on its thumbnail, returning whether it was rendered.
+   */
+  private boolean renderConfiguration(@NotNull Configuration configuration, int maxThumbnailSize, @NotNull ThumbnailListener listener) {
+    RenderService renderService = RenderService.get(myFacet);
+    RenderLogger logger = renderService.createLogger();
+    BufferedImage thumbnail = null;
+    RenderTask task = renderService.createTask(myFile, configuration, logger, null);
+    if (task != null) {
+      // Previews are less urgent than the layout being edited
+      task.setPriority(RenderService.Priority.NORMAL);
+      try {
+        RenderResult result = task.render();
+        if (result != null && result.getRenderResult().isSuccess() && result.hasImage()) {
+          thumbnail = createThumbnail(result.getRenderedImage(), maxThumbnailSize);
+        }
+      }
+      finally {
+        task.dispose();
+      }
+    }
+    listener.thumbnailRendered(configuration, thumbnail, logger);
+    return thumbnail != null;
+  }
+
+  @Nullable
+  private static BufferedImage createThumbnail(@NotNull ImagePool.Image image, int maxSize) {
+    BufferedImage copy = image.getCopy();
+    if (copy == null) {
+      return null;
+    }
+    double scale = Math.min(1, Math.min(maxSize / (double)copy.getWidth(), maxSize / (double)copy.getHeight()));
+    return scale < 1 ? ImageUtils.scale(copy, scale, scale) : copy;
+  }
+
+  /**
+   * Statistics of a rendered batch, to keep track of the preview throughput
+   */
+  public static final class Stats {
+    private final int myConfigurationCount;
+    private final int myFailedCount;
+    private final long myResolveMs;
+    private final long myElapsedMs;
+
+    private Stats(int configurationCount, int failedCount, long resolveMs, long elapsedMs) {
+      myConfigurationCount = configurationCount;
+      myFailedCount = failedCount;
+      myResolveMs = resolveMs;
+      myElapsedMs = elapsedMs;
+    }
+
+    public int getConfigurationCount() {
+      return myConfigurationCount;
+    }
+
+    /**
+     * Returns the number of configurations which couldn't be rendered
+     */
+    public int getFailedCount() {
+      return myFailedCount;
+    }
+
+    /**
+     * Returns the time spent resolving the resources of the configurations before rendering them
+     */
+    public long getResolveMs() {
+      return myResolveMs;
+    }
+
+    public long getElapsedMs() {
+      return myElapsedMs;
+    }
+
+    /**
+     * Returns the number of configurations rendered per second
+     */
+    public double getThroughput() {
+      return myElapsedMs == 0 ? myConfigurationCount : myConfigurationCount * 1000.0 / myElapsedMs;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d configurations (%d failed) in %d ms, %d ms resolving resources, %.1f configurations/s",
+                           myConfigurationCount, myFailedCount, myElapsedMs, myResolveMs, getThroughput());
+    }
+  }
+}
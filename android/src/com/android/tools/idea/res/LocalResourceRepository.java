@@ -26,6 +26,7 @@ import com.android.ide.common.resources.configuration.FolderConfiguration;
 import com.android.resources.FolderTypeRelationship;
 import com.android.resources.ResourceFolderType;
 import com.android.resources.ResourceType;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.SetMultimap;
@@ -49,6 +50,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import static com.android.SdkConstants.ANDROID_URI;
 import static com.android.SdkConstants.ATTR_ID;
@@ -153,6 +155,25 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
 
   protected long myGeneration;
 
+  /**
+   * Value of {@link #myGeneration} set by the last {@link #setModified(ResourceType)}. When the generation differs, it was last bumped
+   * by a change which wasn't attributed to a resource type.
+   */
+  private long myTypedGeneration;
+  /** Generation of the last change which wasn't attributed to a resource type, as far as known when a typed change was recorded */
+  private long myUntypedGeneration;
+  /** Generation of the last change attributed to each resource type, indexed by {@link ResourceType#ordinal()} */
+  private final long[] myTypeGenerations = new long[ResourceType.values().length];
+
+  /**
+   * Generation of the last {@link #invalidateItemCaches} of each resource type, indexed by {@link ResourceType#ordinal()}. Unlike
+   * {@link #getModificationCount(ResourceType)}, it also changes when items are replaced by equal ones.
+   */
+  private final AtomicLongArray myItemsInvalidatedGenerations = new AtomicLongArray(ResourceType.values().length);
+  private final Object ITEM_SNAPSHOTS_LOCK = new Object();
+  /** The last copy of the items of each resource type made for the parents, indexed by {@link ResourceType#ordinal()} */
+  private final ItemSnapshot[] myItemSnapshots = new ItemSnapshot[ResourceType.values().length];
+
   private final Object RESOURCE_DIRS_LOCK = new Object();
   @Nullable private Set<VirtualFile> myResourceDirs;
 
@@ -190,6 +211,17 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
   }
 
   protected void invalidateItemCaches(@Nullable ResourceType... types) {
+    long generation = ourModificationCounter.incrementAndGet();
+    if (types == null || types.length == 0) {
+      for (int i = 0; i < myItemsInvalidatedGenerations.length(); i++) {
+        myItemsInvalidatedGenerations.set(i, generation);
+      }
+    }
+    else {
+      for (ResourceType type : types) {
+        myItemsInvalidatedGenerations.set(type.ordinal(), generation);
+      }
+    }
     if (myParents != null) {
       for (MultiResourceRepository parent : myParents) {
         parent.invalidateCache(this, types);
@@ -197,6 +229,35 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
     }
   }
 
+  /**
+   * Returns the generation of the last invalidation of the items of the given type. The items can only differ from a
+   * {@link #getItemSnapshot} with the same generation if the repository changed them without calling {@link #invalidateItemCaches}.
+   */
+  final long getItemsModificationCount(@NotNull ResourceType type) {
+    return myItemsInvalidatedGenerations.get(type.ordinal());
+  }
+
+  /**
+   * Returns an immutable copy of the items of the given type, for parents which merge changed items incrementally. The copy is shared by
+   * all the parents and only made again after the items are invalidated, so a repository keeps one copy of the references to its items
+   * per resource type merged by its parents, plus older copies for as long as a parent hasn't merged the change yet.
+   */
+  @NotNull
+  final ItemSnapshot getItemSnapshot(@NotNull ResourceType type) {
+    synchronized (ITEM_SNAPSHOTS_LOCK) {
+      // Read before copying, so an invalidation during the copy makes the next call copy again
+      long generation = getItemsModificationCount(type);
+      ItemSnapshot snapshot = myItemSnapshots[type.ordinal()];
+      if (snapshot == null || snapshot.getGeneration() != generation) {
+        ListMultimap<String, ResourceItem> items = getMap(type, false);
+        snapshot = new ItemSnapshot(generation, items != null ? ImmutableListMultimap.copyOf(items)
+                                                              : ImmutableListMultimap.<String, ResourceItem>of());
+        myItemSnapshots[type.ordinal()] = snapshot;
+      }
+      return snapshot;
+    }
+  }
+
   /** If this repository has not already been visited, merge its items of the given type into result. */
   protected final void merge(@NotNull Set<LocalResourceRepository> visited,
                              @NotNull ResourceType type,
@@ -259,6 +320,30 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
     return myGeneration;
   }
 
+  /**
+   * Returns the generation of the last change which may have affected resources of the given type. Changes which aren't attributed to a
+   * resource type, e.g. adding or removing a file, count as a change of all types. The result is never more recent than
+   * {@link #getModificationCount()}, so caches of resources of a single type can compare it with the generation they were computed at.
+   */
+  public long getModificationCount(@NotNull ResourceType type) {
+    if (myGeneration != myTypedGeneration) {
+      return myGeneration;
+    }
+    return Math.max(myUntypedGeneration, myTypeGenerations[type.ordinal()]);
+  }
+
+  /**
+   * Bumps the generation for a change which only affected resources of the given type.
+   */
+  protected final void setModified(@NotNull ResourceType type) {
+    if (myGeneration != myTypedGeneration) {
+      myUntypedGeneration = myGeneration;
+    }
+    myGeneration = ourModificationCounter.incrementAndGet();
+    myTypedGeneration = myGeneration;
+    myTypeGenerations[type.ordinal()] = myGeneration;
+  }
+
   @Nullable
   public VirtualFile getMatchingFile(@NonNull VirtualFile file, @NonNull ResourceType type, @NonNull FolderConfiguration config) {
     List<VirtualFile> matches = getMatchingFiles(file, type, config);
@@ -454,4 +539,27 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
       }
     }
   }
+
+  /**
+   * An immutable copy of the items of one resource type, see {@link #getItemSnapshot}
+   */
+  static final class ItemSnapshot {
+    private final long myGeneration;
+    @NotNull private final ListMultimap<String, ResourceItem> myItems;
+
+    private ItemSnapshot(long generation, @NotNull ListMultimap<String, ResourceItem> items) {
+      myGeneration = generation;
+      myItems = items;
+    }
+
+    /** Returns the {@link #getItemsModificationCount} the items were copied at */
+    long getGeneration() {
+      return myGeneration;
+    }
+
+    @NotNull
+    ListMultimap<String, ResourceItem> getItems() {
+      return myItems;
+    }
+  }
 }
@@ -24,25 +24,35 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
+import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-@SuppressWarnings({
-  "deprecation",  // Deprecated com.android.util.Pair is required by ProjectCallback interface
-  "SynchronizeOnThis"})
+@SuppressWarnings("deprecation") // Deprecated com.android.util.Pair is required by ProjectCallback interface
 public abstract class MultiResourceRepository extends LocalResourceRepository {
   protected List<? extends LocalResourceRepository> myChildren;
   private long[] myModificationCounts;
-  private Map<ResourceType, ListMultimap<String, ResourceItem>> myItems = Maps.newEnumMap(ResourceType.class);
-  private final Map<ResourceType, ListMultimap<String, ResourceItem>> myCachedTypeMaps = Maps.newEnumMap(ResourceType.class);
-  private final Map<ResourceType, Boolean> myCachedHasResourcesOfType = Maps.newEnumMap(ResourceType.class);
+  private volatile Map<ResourceType, ListMultimap<String, ResourceItem>> myItems = Maps.newEnumMap(ResourceType.class);
+  /** The merged items of each resource type, indexed by {@link ResourceType#ordinal()}. Replaced when the children are. */
+  private volatile TypeIndex[] myTypeIndices = createTypeIndices();
+  private final ConcurrentMap<ResourceType, Boolean> myCachedHasResourcesOfType = Maps.newConcurrentMap();
   private Map<String, DataBindingInfo> myDataBindingResourceFiles = Maps.newHashMap();
   private long myDataBindingResourceFilesModificationCount = Long.MIN_VALUE;
+  /** Generation of the last change of the children, or of an invalidation of all resource types by one of them */
+  private long myAllTypesInvalidatedGeneration;
+  /** Generation of the last invalidation of each resource type by the children, indexed by {@link ResourceType#ordinal()} */
+  private final long[] myTypesInvalidatedGenerations = new long[ResourceType.values().length];
+
+  private final AtomicInteger myFullMergeCount = new AtomicInteger();
+  private final AtomicInteger myIncrementalMergeCount = new AtomicInteger();
+  private final AtomicInteger myRemergedNameCount = new AtomicInteger();
+  private final AtomicLong myMergeNanos = new AtomicLong();
 
   MultiResourceRepository(@NotNull String displayName, @NotNull List<? extends LocalResourceRepository> children) {
     super(displayName);
@@ -57,6 +67,7 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
       }
     }
     myGeneration = ourModificationCounter.incrementAndGet();
+    myAllTypesInvalidatedGeneration = myGeneration;
     myChildren = children;
     myModificationCounts = new long[children.size()];
     if (children.size() == 1) {
@@ -76,10 +87,18 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
 
   private void clearCache() {
     myItems = null;
-    synchronized (this) {
-      myCachedTypeMaps.clear();
-      myCachedHasResourcesOfType.clear();
+    myTypeIndices = createTypeIndices();
+    myCachedHasResourcesOfType.clear();
+  }
+
+  @NotNull
+  private TypeIndex[] createTypeIndices() {
+    ResourceType[] types = ResourceType.values();
+    TypeIndex[] indices = new TypeIndex[types.length];
+    for (ResourceType type : types) {
+      indices[type.ordinal()] = new TypeIndex(type);
     }
+    return indices;
   }
 
   public List<? extends LocalResourceRepository> getChildren() {
@@ -109,6 +128,19 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
     return myGeneration;
   }
 
+  @Override
+  public long getModificationCount(@NotNull ResourceType type) {
+    if (myChildren.size() == 1) {
+      return myChildren.get(0).getModificationCount(type);
+    }
+
+    long generation = Math.max(myAllTypesInvalidatedGeneration, myTypesInvalidatedGenerations[type.ordinal()]);
+    for (int i = myChildren.size() - 1; i >= 0; i--) {
+      generation = Math.max(generation, myChildren.get(i).getModificationCount(type));
+    }
+    return generation;
+  }
+
   @Nullable
   @Override
   public DataBindingInfo getDataBindingInfoForLayout(String layoutName) {
@@ -163,13 +195,6 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
   @Override
   protected ListMultimap<String, ResourceItem> getMap(ResourceType type, boolean create) {
     // Should I assert !create here? If we try to manipulate the cache it won't work right...
-    synchronized (this) {
-      ListMultimap<String, ResourceItem> map = myCachedTypeMaps.get(type);
-      if (map != null) {
-        return map;
-      }
-    }
-
     if (myChildren.size() == 1) {
       LocalResourceRepository child = myChildren.get(0);
       if (child instanceof MultiResourceRepository) {
@@ -178,17 +203,7 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
       return child.getItems().get(type);
     }
 
-    ListMultimap<String, ResourceItem> map = ArrayListMultimap.create();
-    Set<LocalResourceRepository> visited = Sets.newHashSet();
-    SetMultimap<String, String> seenQualifiers = HashMultimap.create();
-    // Merge all items of the given type
-    merge(visited, type, seenQualifiers, map);
-
-    synchronized (this) {
-      myCachedTypeMaps.put(type, map);
-    }
-
-    return map;
+    return myTypeIndices[type.ordinal()].getMap();
   }
 
   @NonNull
@@ -219,17 +234,13 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
       return myChildren.get(0).hasResourcesOfType(type);
     }
 
-    synchronized (this) {
-      Boolean result = myCachedHasResourcesOfType.get(type);
-      if (result != null) {
-        return result;
-      }
+    Boolean cached = myCachedHasResourcesOfType.get(type);
+    if (cached != null) {
+      return cached;
     }
     Set<LocalResourceRepository> visited = Sets.newHashSet();
     boolean result = computeHasResourcesOfType(type, visited);
-    synchronized (this) {
-      myCachedHasResourcesOfType.put(type, result);
-    }
+    myCachedHasResourcesOfType.put(type, result);
     return result;
   }
 
@@ -262,20 +273,29 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
   public void invalidateCache(@NotNull LocalResourceRepository repository, @Nullable ResourceType... types) {
     assert myChildren.contains(repository) : repository;
 
-    synchronized (this) {
-      if (types == null || types.length == 0) {
-        myCachedTypeMaps.clear();
-        myCachedHasResourcesOfType.clear();
+    TypeIndex[] indices = myTypeIndices;
+    if (types == null || types.length == 0) {
+      for (TypeIndex index : indices) {
+        index.invalidate(repository);
       }
-      else {
-        for (ResourceType type : types) {
-          myCachedTypeMaps.remove(type);
-          myCachedHasResourcesOfType.remove(type);
-        }
+      myCachedHasResourcesOfType.clear();
+    }
+    else {
+      for (ResourceType type : types) {
+        indices[type.ordinal()].invalidate(repository);
+        myCachedHasResourcesOfType.remove(type);
       }
     }
     myItems = null;
     myGeneration = ourModificationCounter.incrementAndGet();
+    if (types == null || types.length == 0) {
+      myAllTypesInvalidatedGeneration = myGeneration;
+    }
+    else {
+      for (ResourceType type : types) {
+        myTypesInvalidatedGenerations[type.ordinal()] = myGeneration;
+      }
+    }
 
     invalidateItemCaches(types);
   }
@@ -318,4 +338,260 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
     }
     return result;
   }
+
+  /**
+   * Collects the leaf repositories below the given one, in the order their items are merged by {@link #merge}: later children first, and
+   * repositories reachable through several children only once.
+   */
+  private static void collectLeaves(@NotNull LocalResourceRepository repository,
+                                    @NotNull Set<LocalResourceRepository> visited,
+                                    @NotNull List<LocalResourceRepository> leaves) {
+    if (!visited.add(repository)) {
+      return;
+    }
+    if (repository instanceof MultiResourceRepository) {
+      List<? extends LocalResourceRepository> children = ((MultiResourceRepository)repository).myChildren;
+      for (int i = children.size() - 1; i >= 0; i--) {
+        collectLeaves(children.get(i), visited, leaves);
+      }
+    }
+    else {
+      leaves.add(repository);
+    }
+  }
+
+  /**
+   * Returns the cost of merging the children's items since this repository was created
+   */
+  @NotNull
+  public MergeStats getMergeStats() {
+    return new MergeStats(myFullMergeCount.get(), myIncrementalMergeCount.get(), myRemergedNameCount.get(),
+                          TimeUnit.NANOSECONDS.toMillis(myMergeNanos.get()));
+  }
+
+  /**
+   * The merged items of the children for one resource type.
+   * <p>
+   * Reads and invalidations don't lock: a merged map is never modified once it's returned, it's replaced by a new one instead. When
+   * children invalidate the type, the next read looks for the leaf repositories below them whose items were invalidated since the last
+   * merge, compares their items with the {@link ItemSnapshot} taken at that merge, and only merges the names which changed again. Since
+   * the merge of a name only depends on the items with that name, the result is the same as merging all the items again.
+   * <p>
+   * Snapshots are made by the leaf repositories and shared by all their parents, so the repositories stacked above a module (module,
+   * project and app repositories) don't each keep their own copy. That costs one copy of the references to the items of every merged type
+   * of each leaf, plus the older copies still held by parents which haven't merged a change yet. AAR repositories never change, so they
+   * aren't compared and don't need snapshots.
+   */
+  private final class TypeIndex {
+    @NotNull private final ResourceType myType;
+    @Nullable private volatile ListMultimap<String, ResourceItem> myMap;
+    private volatile boolean myUpToDate;
+    /** Direct children which invalidated the type since the last merge */
+    @NotNull private final Set<LocalResourceRepository> myInvalidatedChildren = ContainerUtil.newConcurrentSet();
+
+    // The fields below are guarded by this index
+
+    /** The leaf repositories at the last merge, in merge order */
+    @NotNull private List<LocalResourceRepository> myLeaves = Collections.emptyList();
+    /** The items of the type of each mutable leaf repository at the last merge */
+    @NotNull private final Map<LocalResourceRepository, ItemSnapshot> mySnapshots = Maps.newHashMap();
+
+    TypeIndex(@NotNull ResourceType type) {
+      myType = type;
+    }
+
+    @NotNull
+    ListMultimap<String, ResourceItem> getMap() {
+      ListMultimap<String, ResourceItem> map = myMap;
+      if (map != null && myUpToDate) {
+        return map;
+      }
+      synchronized (this) {
+        if (myMap == null || !myUpToDate) {
+          // Set first, so an invalidation arriving during the merge is handled by the next read
+          myUpToDate = true;
+          long start = System.nanoTime();
+          update();
+          long nanos = System.nanoTime() - start;
+          myMergeNanos.addAndGet(nanos);
+          if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Merged %1$s of %2$s in %3$d ms", myType.getName(), getDisplayName(),
+                                    TimeUnit.NANOSECONDS.toMillis(nanos)));
+          }
+        }
+        //noinspection ConstantConditions
+        return myMap;
+      }
+    }
+
+    void invalidate(@NotNull LocalResourceRepository child) {
+      myInvalidatedChildren.add(child);
+      myUpToDate = false;
+    }
+
+    private void update() {
+      Set<LocalResourceRepository> invalidatedChildren = Sets.newHashSet();
+      for (Iterator<LocalResourceRepository> iterator = myInvalidatedChildren.iterator(); iterator.hasNext(); ) {
+        invalidatedChildren.add(iterator.next());
+        iterator.remove();
+      }
+      List<LocalResourceRepository> leaves = new ArrayList<>();
+      collectLeaves(MultiResourceRepository.this, Sets.newHashSet(), leaves);
+      ListMultimap<String, ResourceItem> map = myMap;
+      if (map == null || !leaves.equals(myLeaves)) {
+        mergeAll(leaves);
+      }
+      else {
+        mergeChanges(map, leaves, invalidatedChildren);
+      }
+      myLeaves = leaves;
+    }
+
+    private void mergeAll(@NotNull List<LocalResourceRepository> leaves) {
+      ListMultimap<String, ResourceItem> map = ArrayListMultimap.create();
+      Set<LocalResourceRepository> visited = Sets.newHashSet();
+      SetMultimap<String, String> seenQualifiers = HashMultimap.create();
+      // Merge all items of the given type
+      merge(visited, myType, seenQualifiers, map);
+
+      mySnapshots.clear();
+      for (LocalResourceRepository leaf : leaves) {
+        if (!(leaf instanceof FileResourceRepository)) {
+          mySnapshots.put(leaf, leaf.getItemSnapshot(myType));
+        }
+      }
+      myMap = map;
+      myFullMergeCount.incrementAndGet();
+    }
+
+    private void mergeChanges(@NotNull ListMultimap<String, ResourceItem> map,
+                              @NotNull List<LocalResourceRepository> leaves,
+                              @NotNull Set<LocalResourceRepository> invalidatedChildren) {
+      Set<LocalResourceRepository> changedLeaves = Sets.newHashSet();
+      Set<LocalResourceRepository> visited = Sets.newHashSet();
+      for (LocalResourceRepository child : invalidatedChildren) {
+        List<LocalResourceRepository> childLeaves = new ArrayList<>();
+        collectLeaves(child, visited, childLeaves);
+        changedLeaves.addAll(childLeaves);
+      }
+
+      Set<String> changedNames = Sets.newHashSet();
+      for (LocalResourceRepository leaf : changedLeaves) {
+        ItemSnapshot before = mySnapshots.get(leaf);
+        // Leaves whose items of this type weren't invalidated since the last merge don't need to be compared
+        if (before == null || before.getGeneration() == leaf.getItemsModificationCount(myType)) {
+          continue;
+        }
+        ItemSnapshot after = leaf.getItemSnapshot(myType);
+        addChangedNames(before.getItems(), after.getItems(), changedNames);
+        mySnapshots.put(leaf, after);
+      }
+      if (changedNames.isEmpty()) {
+        return;
+      }
+
+      // The map may be in use by other threads, so the changes are applied to a copy
+      ListMultimap<String, ResourceItem> merged = ArrayListMultimap.create(map);
+      for (String name : changedNames) {
+        merged.removeAll(name);
+        mergeName(leaves, name, merged);
+      }
+      myMap = merged;
+      myIncrementalMergeCount.incrementAndGet();
+      myRemergedNameCount.addAndGet(changedNames.size());
+    }
+
+    /**
+     * Merges the items of the given name, the same way {@link LocalResourceRepository#doMerge} merges all the items.
+     */
+    private void mergeName(@NotNull List<LocalResourceRepository> leaves, @NotNull String name,
+                           @NotNull ListMultimap<String, ResourceItem> result) {
+      Set<String> seenQualifiers = Sets.newHashSet();
+      for (LocalResourceRepository leaf : leaves) {
+        ListMultimap<String, ResourceItem> items = leaf.getMap(myType, false);
+        if (items == null) {
+          continue;
+        }
+        for (ResourceItem item : items.get(name)) {
+          String qualifiers = item.getQualifiers();
+          if (!result.containsKey(name) || myType == ResourceType.ID || !seenQualifiers.contains(qualifiers)) {
+            result.put(name, item);
+            seenQualifiers.add(qualifiers);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds the names whose items differ between the two maps, comparing items by identity.
+   */
+  private static void addChangedNames(@NotNull ListMultimap<String, ResourceItem> before,
+                                      @NotNull ListMultimap<String, ResourceItem> after,
+                                      @NotNull Set<String> changedNames) {
+    for (String name : before.keySet()) {
+      if (!after.containsKey(name)) {
+        changedNames.add(name);
+      }
+    }
+    for (String name : after.keySet()) {
+      List<ResourceItem> beforeItems = before.get(name);
+      List<ResourceItem> afterItems = after.get(name);
+      boolean same = beforeItems.size() == afterItems.size();
+      for (int i = 0; same && i < afterItems.size(); i++) {
+        same = beforeItems.get(i) == afterItems.get(i);
+      }
+      if (!same) {
+        changedNames.add(name);
+      }
+    }
+  }
+
+  /**
+   * Counts of the merges of the children's items, and the time spent in them
+   */
+  public static final class MergeStats {
+    private final int myFullMergeCount;
+    private final int myIncrementalMergeCount;
+    private final int myRemergedNameCount;
+    private final long myMergeMs;
+
+    private MergeStats(int fullMergeCount, int incrementalMergeCount, int remergedNameCount, long mergeMs) {
+      myFullMergeCount = fullMergeCount;
+      myIncrementalMergeCount = incrementalMergeCount;
+      myRemergedNameCount = remergedNameCount;
+      myMergeMs = mergeMs;
+    }
+
+    /**
+     * Returns the number of times all the items of a resource type were merged
+     */
+    public int getFullMergeCount() {
+      return myFullMergeCount;
+    }
+
+    /**
+     * Returns the number of times only the changed items of a resource type were merged again
+     */
+    public int getIncrementalMergeCount() {
+      return myIncrementalMergeCount;
+    }
+
+    /**
+     * Returns the number of resource names merged again by incremental merges
+     */
+    public int getRemergedNameCount() {
+      return myRemergedNameCount;
+    }
+
+    public long getMergeMs() {
+      return myMergeMs;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d full merges, %d incremental merges of %d names, %d ms",
+                           myFullMergeCount, myIncrementalMergeCount, myRemergedNameCount, myMergeMs);
+    }
+  }
 }
@@ -33,6 +33,7 @@ import org.jetbrains.org.objectweb.asm.Type;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -67,11 +68,32 @@ import static org.jetbrains.org.objectweb.asm.Opcodes.*;
 public class ResourceClassGenerator {
   private static final Logger LOG = Logger.getInstance(ResourceClassGenerator.class);
 
-  private Map<ResourceType, TObjectIntHashMap<String>> myCache;
-  /** For int[] in styleables. The ints in styleables are stored in {@link #myCache}. */
-  private Map<String, List<Integer>> myStyleableCache;
+  /** The generated inner classes of each resource type, see {@link TypeClasses} */
+  private final Map<ResourceType, TypeClasses> myTypeClasses = Maps.newEnumMap(ResourceType.class);
+  /** The generated R classes, by class name, for the resource types available at {@link #myRootClassesGeneration} */
+  private final Map<String, byte[]> myRootClasses = Maps.newHashMap();
+  private long myRootClassesGeneration = -1;
   @NotNull private final AppResourceRepository myAppResources;
 
+  /**
+   * The field values and generated bytecode of the inner R classes of a resource type. They are computed once per generation of the
+   * resources of the type, see {@link LocalResourceRepository#getModificationCount(ResourceType)}, so editing a resource only regenerates
+   * the classes of its type. The ids of the resources are assigned by the {@link AppResourceRepository}, which keeps them stable across
+   * generations.
+   */
+  private static final class TypeClasses {
+    private final long myGeneration;
+    private final TObjectIntHashMap<String> myFields = new TObjectIntHashMap<String>();
+    /** For int[] in styleables. The ints in styleables are stored in {@link #myFields}. */
+    private final Map<String, List<Integer>> myStyleableArrays = Maps.newLinkedHashMap();
+    /** The generated class of each R package */
+    private final Map<String, byte[]> myClasses = Maps.newHashMap();
+
+    private TypeClasses(long generation) {
+      myGeneration = generation;
+    }
+  }
+
   private ResourceClassGenerator(@NotNull AppResourceRepository appResources) {
     myAppResources = appResources;
   }
@@ -88,17 +110,18 @@ public class ResourceClassGenerator {
   }
 
   /**
+   * Returns the bytecode of the given R class or inner R class. Classes are only generated again if the resources they are generated
+   * from have changed since, and the returned array must not be modified.
+   *
    * @param fqcn Fully qualified class name (as accepted by ClassLoader, or as returned by Class.getName())
    */
   @Nullable
-  public byte[] generate(String fqcn) {
+  public synchronized byte[] generate(String fqcn) {
     String className = fqcn.replace('.', '/');
 
     if (LOG.isDebugEnabled()) {
       LOG.debug(String.format("generate(%s)", anonymizeClassName(className)));
     }
-    ClassWriter cw = new ClassWriter(0);  // Don't compute MAXS and FRAMES.
-    cw.visit(V1_6, ACC_PUBLIC + ACC_FINAL + ACC_SUPER, className, null, Type.getInternalName(Object.class), null);
 
     int index = className.lastIndexOf('$');
     if (index != -1) {
@@ -111,36 +134,47 @@ public class ResourceClassGenerator {
         return null;
       }
 
-      cw.visitInnerClass(className, className.substring(0, index), typeName, ACC_PUBLIC + ACC_FINAL + ACC_STATIC);
-      if (myCache == null) {
-        myCache = Maps.newHashMap();
-      }
-      if (type == ResourceType.STYLEABLE) {
-        if (myStyleableCache == null) {
-          TObjectIntHashMap<String> styleableIntCache = new TObjectIntHashMap<String>();
-          myCache.put(type, styleableIntCache);
-          myStyleableCache = Maps.newHashMap();
-          generateStyleable(cw, styleableIntCache, className);
+      long generation = getGeneration(type);
+      TypeClasses classes = myTypeClasses.get(type);
+      if (classes == null || classes.myGeneration != generation) {
+        if (LOG.isDebugEnabled() && classes != null) {
+          LOG.debug(String.format("  resources of type '%s' changed, regenerating", typeName));
         }
-        else {
-          TObjectIntHashMap<String> styleableIntCache = myCache.get(type);
-          assert styleableIntCache != null;
-          generateFields(cw, styleableIntCache);
-          generateIntArrayFromCache(cw, className, myStyleableCache);
-        }
-      } else {
-        TObjectIntHashMap<String> typeCache = myCache.get(type);
-        if (typeCache == null) {
-          typeCache = new TObjectIntHashMap<String>();
-          myCache.put(type, typeCache);
-          generateValuesForType(cw, type, typeCache);
+        classes = new TypeClasses(generation);
+        if (type == ResourceType.STYLEABLE) {
+          computeStyleableValues(classes, className);
         }
         else {
-          generateFields(cw, typeCache);
+          computeValuesForType(type, classes.myFields);
         }
+        myTypeClasses.put(type, classes);
       }
-    } else {
-      // Default R class.
+
+      byte[] data = classes.myClasses.get(className);
+      if (data == null) {
+        ClassWriter cw = new ClassWriter(0);  // Don't compute MAXS and FRAMES.
+        cw.visit(V1_6, ACC_PUBLIC + ACC_FINAL + ACC_SUPER, className, null, Type.getInternalName(Object.class), null);
+        cw.visitInnerClass(className, className.substring(0, index), typeName, ACC_PUBLIC + ACC_FINAL + ACC_STATIC);
+        generateFields(cw, classes.myFields);
+        if (type == ResourceType.STYLEABLE) {
+          generateIntArrayFromCache(cw, className, classes.myStyleableArrays);
+        }
+        data = finish(cw);
+        classes.myClasses.put(className, data);
+      }
+      return data;
+    }
+
+    // Default R class.
+    long generation = myAppResources.getModificationCount();
+    if (generation != myRootClassesGeneration) {
+      myRootClasses.clear();
+      myRootClassesGeneration = generation;
+    }
+    byte[] data = myRootClasses.get(className);
+    if (data == null) {
+      ClassWriter cw = new ClassWriter(0);  // Don't compute MAXS and FRAMES.
+      cw.visit(V1_6, ACC_PUBLIC + ACC_FINAL + ACC_SUPER, className, null, Type.getInternalName(Object.class), null);
       boolean styleableAdded = false;
       for (ResourceType t : myAppResources.getAvailableResourceTypes()) {
         // getAvailableResourceTypes() sometimes returns both styleable and declare styleable. Make sure that we only create one subclass.
@@ -156,31 +190,48 @@ public class ResourceClassGenerator {
         }
         cw.visitInnerClass(className + "$" + t.getName(), className, t.getName(), ACC_PUBLIC + ACC_FINAL + ACC_STATIC);
       }
+      data = finish(cw);
+      myRootClasses.put(className, data);
     }
+    return data;
+  }
 
+  /**
+   * Returns the generation of the resources the inner R class of the given type is generated from.
+   */
+  private long getGeneration(@NotNull ResourceType type) {
+    if (type == ResourceType.STYLEABLE) {
+      // The styleables also hold the ids of their attributes
+      return Math.max(myAppResources.getModificationCount(ResourceType.DECLARE_STYLEABLE),
+                      myAppResources.getModificationCount(ResourceType.ATTR));
+    }
+    return myAppResources.getModificationCount(type);
+  }
+
+  @NotNull
+  private static byte[] finish(@NotNull ClassWriter cw) {
     generateConstructor(cw);
     cw.visitEnd();
     return cw.toByteArray();
   }
 
-  private void generateValuesForType(@NotNull ClassWriter cw, @NotNull ResourceType resType, @NotNull TObjectIntHashMap<String> cache) {
+  private void computeValuesForType(@NotNull ResourceType resType, @NotNull TObjectIntHashMap<String> cache) {
     Collection<String> keys = myAppResources.getItemsOfType(resType);
     for (String key : keys) {
       int initialValue = myAppResources.getResourceId(resType, key);
       key = AndroidResourceUtil.getFieldNameByResourceName(key);
-      generateField(cw, key, initialValue);
       cache.put(key, initialValue);
     }
   }
 
-  private void generateStyleable(@NotNull ClassWriter cw, @NotNull TObjectIntHashMap<String> styleableIntCache, String className) {
+  private void computeStyleableValues(@NotNull TypeClasses classes, String className) {
     if (LOG.isDebugEnabled()) {
       LOG.debug(String.format("generateStyleable(%s)", anonymizeClassName(className)));
     }
 
     boolean debug = LOG.isDebugEnabled() && isPublicClass(className);
     Collection<String> declaredStyleables = myAppResources.getItemsOfType(ResourceType.DECLARE_STYLEABLE);
-    // Generate all declarations - both int[] and int for the indices into the array.
+    // Compute all declarations - both int[] and int for the indices into the array.
     for (String styleableName : declaredStyleables) {
       List<ResourceItem> items = myAppResources.getResourceItem(ResourceType.DECLARE_STYLEABLE, styleableName);
       if (items == null || items.isEmpty()) {
@@ -190,7 +241,6 @@ public class ResourceClassGenerator {
         continue;
       }
       String fieldName = AndroidResourceUtil.getFieldNameByResourceName(styleableName);
-      cw.visitField(ACC_PUBLIC + ACC_FINAL + ACC_STATIC, fieldName, "[I", null, null);
       if (debug) {
         LOG.debug("  Defined styleable " + fieldName);
       }
@@ -200,49 +250,31 @@ public class ResourceClassGenerator {
       List<AttrResourceValue> attributes = dv.getAllAttributes();
       int idx = 0;
       for (AttrResourceValue value : attributes) {
-        Integer initialValue = idx++;
+        int initialValue = idx++;
         String styleableEntryName = getResourceName(fieldName, value);
-        cw.visitField(ACC_PUBLIC + ACC_FINAL + ACC_STATIC, styleableEntryName, "I", null, initialValue);
-        styleableIntCache.put(styleableEntryName, initialValue);
+        classes.myFields.put(styleableEntryName, initialValue);
         if (debug) {
           LOG.debug("  Defined styleable " + styleableEntryName);
         }
       }
-    }
 
-    // Generate class initializer block to initialize the arrays declared above.
-    MethodVisitor mv = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
-    mv.visitCode();
-    for (String styleableName : declaredStyleables) {
-      List<ResourceItem> items = myAppResources.getResourceItem(ResourceType.DECLARE_STYLEABLE, styleableName);
-      if (items == null || items.isEmpty()) {
-        continue;
-      }
-      ResourceValue resourceValue = items.get(0).getResourceValue(false);
-      assert resourceValue instanceof DeclareStyleableResourceValue;
-      DeclareStyleableResourceValue dv = (DeclareStyleableResourceValue)resourceValue;
-      List<AttrResourceValue> attributes = dv.getAllAttributes();
+      // The values of the array, initialized by the class initializer
       if (attributes.isEmpty()) {
+        classes.myStyleableArrays.put(fieldName, Collections.<Integer>emptyList());
         continue;
       }
       Integer[] valuesArray = myAppResources.getDeclaredArrayValues(attributes, styleableName);
       if (valuesArray == null) {
         valuesArray = new Integer[attributes.size()];
       }
-      List<Integer> values = Arrays.asList(valuesArray);
-      String fieldName = AndroidResourceUtil.getFieldNameByResourceName(styleableName);
-      myStyleableCache.put(fieldName, values);
-      int idx = -1;
+      idx = -1;
       for (AttrResourceValue value : attributes) {
         if (valuesArray[++idx] == null || !value.isFramework()) {
           valuesArray[idx] = myAppResources.getResourceId(ResourceType.ATTR, value.getName());
         }
       }
-      generateArrayInitialization(mv, className, fieldName, values);
+      classes.myStyleableArrays.put(fieldName, Arrays.asList(valuesArray));
     }
-    mv.visitInsn(RETURN);
-    mv.visitMaxs(4, 0);
-    mv.visitEnd();
   }
 
   private static void generateFields(@NotNull final ClassWriter cw, @NotNull TObjectIntHashMap<String> values) {
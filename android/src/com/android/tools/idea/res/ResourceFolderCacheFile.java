@@ -0,0 +1,444 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res;
+
+import com.android.ide.common.rendering.api.ResourceValue;
+import com.android.ide.common.res2.ResourceFile;
+import com.android.ide.common.res2.ResourceItem;
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.resources.ResourceType;
+import com.android.utils.XmlUtils;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.*;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import static com.android.SdkConstants.TAG_RESOURCES;
+import static com.android.SdkConstants.XMLNS_PREFIX;
+
+/**
+ * The file written by {@link ResourceFolderRepository} to its {@link ResourceFolderRepositoryFileCache} directory, holding the items of
+ * the XML files parsed without PSI.
+ *
+ * The file starts with a table of all the strings it uses, followed by fixed size records for the resource files and their items, which
+ * refer to the strings by index. Loading it only reads the records and copies the XML of each value resource out of the file, which is
+ * then only parsed when its {@link ResourceValue} is requested. The items don't refer to the file, so it can be collected once loaded.
+ * Each file record holds the size, timestamp and CRC32 checksum of the file when it was parsed, so the files are validated one by one and
+ * only the ones which changed need to be parsed again.
+ */
+final class ResourceFolderCacheFile {
+  private static final Logger LOG = Logger.getInstance(ResourceFolderCacheFile.class);
+
+  static final String FILE_NAME = "resources.bin";
+
+  private static final int MAGIC = 0x52455343; // "RESC"
+  /**
+   * Version of the format, to be increased whenever the layout of the file changes.
+   */
+  private static final int FORMAT_VERSION = 1;
+  private static final int NO_STRING = -1;
+  // Path, namespaces, size, timestamp, checksum, first item and item count
+  private static final int FILE_RECORD_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+  // Type, name and value
+  private static final int ITEM_RECORD_SIZE = 4 + 4 + 4;
+
+  @NotNull private final ByteBuffer myBuffer;
+  @NotNull private final File myResourceDir;
+  @Nullable private final String myLibraryName;
+  private final int[] myStringOffsets;
+  private final int myStringDataStart;
+  private final String[] myStrings;
+  private final int mySourceIndex;
+  private final int myFileRecordsStart;
+  private final int myFileCount;
+  private final int myItemRecordsStart;
+
+  private ResourceFolderCacheFile(@NotNull ByteBuffer buffer, @NotNull File resourceDir, @Nullable String libraryName) {
+    myBuffer = buffer;
+    myResourceDir = resourceDir;
+    myLibraryName = libraryName;
+    int stringCount = buffer.getInt();
+    myStringOffsets = new int[stringCount + 1];
+    for (int i = 0; i <= stringCount; i++) {
+      myStringOffsets[i] = buffer.getInt();
+    }
+    myStringDataStart = buffer.position();
+    myStrings = new String[stringCount];
+    buffer.position(myStringDataStart + myStringOffsets[stringCount]);
+    mySourceIndex = buffer.getInt();
+    myFileCount = buffer.getInt();
+    myFileRecordsStart = buffer.position();
+    buffer.position(myFileRecordsStart + myFileCount * FILE_RECORD_SIZE);
+    int itemCount = buffer.getInt();
+    myItemRecordsStart = buffer.position();
+    if (myItemRecordsStart + itemCount * ITEM_RECORD_SIZE > buffer.limit()) {
+      throw new BufferUnderflowException();
+    }
+  }
+
+  /**
+   * Loads the cache file of the given resource directory, or returns null if it doesn't exist or can't be read.
+   */
+  @Nullable
+  static ResourceFolderCacheFile load(@NotNull File cacheFile, @NotNull File resourceDir, @Nullable String libraryName) {
+    if (!cacheFile.isFile()) {
+      return null;
+    }
+    ByteBuffer buffer;
+    try {
+      // The format can be mapped, but the file is read into memory so it can be replaced while the items loaded from it are alive
+      buffer = ByteBuffer.wrap(FileUtil.loadFileBytes(cacheFile));
+    }
+    catch (IOException e) {
+      LOG.warn("Can't read resource cache " + cacheFile, e);
+      return null;
+    }
+    try {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+        return null;
+      }
+      ResourceFolderCacheFile file = new ResourceFolderCacheFile(buffer, resourceDir, libraryName);
+      // Check that the cache we're loading actually corresponds to this resource directory.
+      // This could happen if there's a hash collision in naming the cache directory.
+      String source = file.getString(file.mySourceIndex);
+      if (!FileUtil.filesEqual(new File(source), resourceDir)) {
+        LOG.warn(String.format("source file %1$s, does not match resource dir %2$s", source, resourceDir));
+        return null;
+      }
+      return file;
+    }
+    catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+      LOG.warn("Corrupt resource cache " + cacheFile, e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns the number of resource files in the cache
+   */
+  int getFileCount() {
+    return myFileCount;
+  }
+
+  /**
+   * Returns the path of the given file, relative to the resource directory
+   */
+  @NotNull
+  String getRelativePath(int fileIndex) {
+    return getString(myBuffer.getInt(getFileRecord(fileIndex)));
+  }
+
+  /**
+   * Returns true if the given file still has the contents it had when the cache was written. The checksum is only computed if the
+   * timestamp changed, e.g. when a version control operation rewrote the file without modifying it.
+   */
+  boolean isUpToDate(int fileIndex) {
+    int record = getFileRecord(fileIndex);
+    File file = new File(myResourceDir, getRelativePath(fileIndex));
+    // The length of a missing file is 0, and the cache has no empty files
+    long length = file.length();
+    if (length == 0 || length != myBuffer.getLong(record + 8)) {
+      return false;
+    }
+    if (file.lastModified() == myBuffer.getLong(record + 16)) {
+      return true;
+    }
+    try {
+      return computeChecksum(file) == myBuffer.getInt(record + 24);
+    }
+    catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Creates the items of the given file, and a {@link ResourceFile} holding them. Returns null if the file's items can't be created.
+   */
+  @Nullable
+  ResourceFile loadFile(int fileIndex, @NotNull String qualifiers, @NotNull FolderConfiguration folderConfiguration) {
+    int record = getFileRecord(fileIndex);
+    int namespaces = myBuffer.getInt(record + 4);
+    int firstItem = myBuffer.getInt(record + 28);
+    int itemCount = myBuffer.getInt(record + 32);
+    List<ResourceItem> items = new ArrayList<>(itemCount);
+    for (int i = firstItem; i < firstItem + itemCount; i++) {
+      int itemRecord = myItemRecordsStart + i * ITEM_RECORD_SIZE;
+      ResourceType type = ResourceType.getEnum(getString(myBuffer.getInt(itemRecord)));
+      if (type == null) {
+        return null;
+      }
+      String name = getString(myBuffer.getInt(itemRecord + 4));
+      int value = myBuffer.getInt(itemRecord + 8);
+      items.add(value == NO_STRING
+                ? new ResourceItem(name, type, null, myLibraryName)
+                : new CachedResourceItem(name, type, myLibraryName, getStringBytes(value), getString(namespaces)));
+    }
+    return new ResourceFile(new File(myResourceDir, getRelativePath(fileIndex)), items, qualifiers, folderConfiguration);
+  }
+
+  private int getFileRecord(int fileIndex) {
+    return myFileRecordsStart + fileIndex * FILE_RECORD_SIZE;
+  }
+
+  @NotNull
+  private String getString(int index) {
+    String string = myStrings[index];
+    if (string == null) {
+      int start = myStringOffsets[index];
+      int length = myStringOffsets[index + 1] - start;
+      string = new String(myBuffer.array(), myBuffer.arrayOffset() + myStringDataStart + start, length, StandardCharsets.UTF_8);
+      myStrings[index] = string;
+    }
+    return string;
+  }
+
+  /**
+   * Returns a copy of the UTF-8 bytes of the given string
+   */
+  @NotNull
+  private byte[] getStringBytes(int index) {
+    int start = myBuffer.arrayOffset() + myStringDataStart + myStringOffsets[index];
+    return Arrays.copyOfRange(myBuffer.array(), start, start + myStringOffsets[index + 1] - myStringOffsets[index]);
+  }
+
+  /**
+   * Parses the XML of a value resource. The element is wrapped in a resources element declaring the namespaces declared in the original
+   * file, e.g. the xliff namespace in strings.
+   */
+  @Nullable
+  private static Node parseValue(@NotNull String valueXml, @NotNull String namespaces) {
+    String xml = "<" + TAG_RESOURCES + " " + namespaces + ">" + valueXml + "</" + TAG_RESOURCES + ">";
+    Document document = XmlUtils.parseDocumentSilently(xml, true);
+    if (document == null) {
+      return null;
+    }
+    for (Node child = document.getDocumentElement().getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child.getNodeType() == Node.ELEMENT_NODE) {
+        return child;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Writes the cached items of the given resource files, which are all in the given resource directory. Items ignored from disk merges
+   * aren't written, nor files without items.
+   */
+  static void write(@NotNull File cacheFile, @NotNull File resourceDir, @NotNull Collection<ResourceFile> resourceFiles)
+    throws IOException {
+    StringTable strings = new StringTable();
+    ByteArrayOutputStream fileRecordBytes = new ByteArrayOutputStream();
+    DataOutputStream fileRecords = new DataOutputStream(fileRecordBytes);
+    ByteArrayOutputStream itemRecordBytes = new ByteArrayOutputStream();
+    DataOutputStream itemRecords = new DataOutputStream(itemRecordBytes);
+    int fileCount = 0;
+    int itemCount = 0;
+    for (ResourceFile resourceFile : resourceFiles) {
+      File file = resourceFile.getFile();
+      String relativePath = FileUtil.getRelativePath(resourceDir, file);
+      if (relativePath == null || !file.isFile()) {
+        continue;
+      }
+      int firstItem = itemCount;
+      String namespaces = null;
+      for (ResourceItem item : resourceFile.getItems()) {
+        if (item.getIgnoredFromDiskMerge()) {
+          continue;
+        }
+        String xml = null;
+        if (item instanceof CachedResourceItem) {
+          // Written again without parsing it
+          CachedResourceItem cachedItem = (CachedResourceItem)item;
+          xml = cachedItem.getValueXml();
+          namespaces = cachedItem.getNamespaceDeclarations();
+        }
+        else {
+          Node value = item.getValue();
+          if (value != null) {
+            xml = XmlUtils.toXml(value);
+            if (namespaces == null) {
+              namespaces = getNamespaceDeclarations(value);
+            }
+          }
+        }
+        itemRecords.writeInt(strings.indexOf(item.getType().getName()));
+        itemRecords.writeInt(strings.indexOf(item.getName()));
+        itemRecords.writeInt(xml != null ? strings.indexOf(xml) : NO_STRING);
+        itemCount++;
+      }
+      if (itemCount == firstItem) {
+        continue;
+      }
+      fileRecords.writeInt(strings.indexOf(FileUtil.toSystemIndependentName(relativePath)));
+      fileRecords.writeInt(strings.indexOf(namespaces != null ? namespaces : ""));
+      fileRecords.writeLong(file.length());
+      fileRecords.writeLong(file.lastModified());
+      fileRecords.writeInt(computeChecksum(file));
+      fileRecords.writeInt(firstItem);
+      fileRecords.writeInt(itemCount - firstItem);
+      fileCount++;
+    }
+    int source = strings.indexOf(resourceDir.getPath());
+
+    FileUtil.createParentDirs(cacheFile);
+    File tempFile = new File(cacheFile.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      strings.write(out);
+      out.writeInt(source);
+      out.writeInt(fileCount);
+      fileRecordBytes.writeTo(out);
+      out.writeInt(itemCount);
+      itemRecordBytes.writeTo(out);
+    }
+    // Readers never see a partially written cache
+    FileUtil.rename(tempFile, cacheFile);
+  }
+
+  /**
+   * Returns the namespace declarations in scope of the given node, as XML attributes.
+   */
+  @NotNull
+  private static String getNamespaceDeclarations(@NotNull Node node) {
+    Set<String> declarations = new LinkedHashSet<>();
+    Set<String> prefixes = new LinkedHashSet<>();
+    for (Node parent = node.getParentNode(); parent != null; parent = parent.getParentNode()) {
+      NamedNodeMap attributes = parent.getAttributes();
+      if (attributes == null) {
+        continue;
+      }
+      for (int i = 0; i < attributes.getLength(); i++) {
+        Attr attribute = (Attr)attributes.item(i);
+        // The innermost declaration of a prefix wins
+        if (attribute.getName().startsWith(XMLNS_PREFIX) && prefixes.add(attribute.getName())) {
+          declarations.add(attribute.getName() + "=\"" + XmlUtils.toXmlAttributeValue(attribute.getValue()) + '"');
+        }
+      }
+    }
+    return String.join(" ", declarations);
+  }
+
+  private static int computeChecksum(@NotNull File file) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(FileUtil.loadFileBytes(file));
+    return (int)crc.getValue();
+  }
+
+  private static final class StringTable {
+    private final TObjectIntHashMap<String> myIndices = new TObjectIntHashMap<>();
+    private final List<byte[]> myStrings = new ArrayList<>();
+
+    int indexOf(@NotNull String string) {
+      if (myIndices.containsKey(string)) {
+        return myIndices.get(string);
+      }
+      int index = myStrings.size();
+      myStrings.add(string.getBytes(StandardCharsets.UTF_8));
+      myIndices.put(string, index);
+      return index;
+    }
+
+    void write(@NotNull DataOutputStream out) throws IOException {
+      out.writeInt(myStrings.size());
+      int offset = 0;
+      out.writeInt(offset);
+      for (byte[] string : myStrings) {
+        offset += string.length;
+        out.writeInt(offset);
+      }
+      for (byte[] string : myStrings) {
+        out.write(string);
+      }
+    }
+  }
+
+  /**
+   * A value resource loaded from the cache, which parses its XML when its value is first requested. Items are read from several threads,
+   * so the lazily computed values are guarded by the item.
+   */
+  private static final class CachedResourceItem extends ResourceItem {
+    @Nullable private final String myLibraryName;
+    /** The UTF-8 encoded XML of the value, copied out of the cache file */
+    @NotNull private final byte[] myValueXml;
+    /** The namespace declarations of the file, shared by its items */
+    @NotNull private final String myNamespaceDeclarations;
+    private Node myValue;
+
+    CachedResourceItem(@NotNull String name,
+                       @NotNull ResourceType type,
+                       @Nullable String libraryName,
+                       @NotNull byte[] valueXml,
+                       @NotNull String namespaceDeclarations) {
+      super(name, type, null, libraryName);
+      myLibraryName = libraryName;
+      myValueXml = valueXml;
+      myNamespaceDeclarations = namespaceDeclarations;
+    }
+
+    @Nullable
+    @Override
+    public synchronized Node getValue() {
+      if (myValue == null) {
+        myValue = parseValue(getValueXml(), myNamespaceDeclarations);
+      }
+      return myValue;
+    }
+
+    @Nullable
+    @Override
+    public synchronized ResourceValue getResourceValue(boolean isFrameworks) {
+      if (mResourceValue == null) {
+        Node value = getValue();
+        if (value != null) {
+          // Parsed by an item holding the value, in a file like the one of this item, the same way as the items of a resource set
+          ResourceItem parsed = new ResourceItem(getName(), getType(), value, myLibraryName);
+          ResourceFile source = getSource();
+          if (source != null) {
+            //noinspection ResultOfObjectAllocationIgnored
+            new ResourceFile(source.getFile(), parsed, source.getQualifiers(), source.getFolderConfiguration());
+          }
+          mResourceValue = parsed.getResourceValue(isFrameworks);
+        }
+      }
+      return mResourceValue;
+    }
+
+    @NotNull
+    String getValueXml() {
+      return new String(myValueXml, StandardCharsets.UTF_8);
+    }
+
+    @NotNull
+    String getNamespaceDeclarations() {
+      return myNamespaceDeclarations;
+    }
+  }
+}
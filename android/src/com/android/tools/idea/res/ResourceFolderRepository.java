@@ -39,17 +39,20 @@ import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.fileTypes.FileTypeManager;
 import com.intellij.openapi.fileTypes.StdFileTypes;
 import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Condition;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
-import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.psi.xml.*;
 import com.intellij.util.ArrayUtil;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.android.sdk.AndroidTargetData;
@@ -57,10 +60,14 @@ import org.jetbrains.android.util.AndroidResourceUtil;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.android.SdkConstants.*;
@@ -97,6 +104,16 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
   @VisibleForTesting
   static int ourFullRescans;
 
+  /**
+   * Maximum number of threads parsing the XML files of one resource folder during the initial scan
+   */
+  private static final int MAX_SCAN_THREADS = 4;
+  /**
+   * Number of XML files to parse during the initial scan for each additional thread, so small folders are parsed on the scanning thread
+   */
+  @VisibleForTesting
+  static int ourFilesPerScanThread = 32;
+
   private ResourceFolderRepository(@NotNull AndroidFacet facet, @NotNull VirtualFile resourceDir, @Nullable String libraryName) {
     super(resourceDir.getName());
     myFacet = facet;
@@ -105,9 +122,17 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
     myResourceDir = resourceDir;
     myLibraryName = libraryName;
 
-    ResourceMerger merger = loadPreviousStateIfExists();
-    myInitialScanState = new InitialScanState(merger, VfsUtilCore.virtualToIoFile(myResourceDir));
+    long start = System.nanoTime();
+    loadPreviousStateIfExists();
+    long loadNanos = System.nanoTime() - start;
+    myInitialScanState = new InitialScanState(createFreshResourceMerger(), VfsUtilCore.virtualToIoFile(myResourceDir), libraryName);
     scanRemainingFiles();
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(String.format("Scanned %1$s in %2$d ms (%3$d ms loading the file cache): %4$d cached XML files, %5$d parsed",
+                              myResourceDir.getPath(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                              TimeUnit.NANOSECONDS.toMillis(loadNanos), myInitialScanState.numXml - myInitialScanState.numXmlReparsed,
+                              myInitialScanState.numXmlReparsed));
+    }
     Application app = ApplicationManager.getApplication();
     // For now, automatically save the state. We may want to move this out to a separate task.
     if (!hasFreshFileCache() && !app.isUnitTestMode()) {
@@ -147,17 +172,11 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
     }
 
     try {
-      ResourcePreprocessor preprocessor = new NoOpResourcePreprocessor();
-      File tempDirectory = FileUtil.createTempDirectory("resource", "tmp", false);
-      try {
-        MergeConsumer<ResourceItem> consumer = MergedResourceWriter.createWriterWithoutPngCruncher(
-          blobRoot, null, null, preprocessor, tempDirectory);
-        myInitialScanState.myResourceMerger.writeBlobToWithTimestamps(blobRoot, consumer);
-      } finally {
-        FileUtil.delete(tempDirectory);
-      }
+      List<ResourceFile> resourceFiles = ContainerUtil.filter(myResourceFiles.values(), file -> !(file instanceof PsiResourceFile));
+      ResourceFolderCacheFile.write(new File(blobRoot, ResourceFolderCacheFile.FILE_NAME), VfsUtilCore.virtualToIoFile(myResourceDir),
+                                    resourceFiles);
     }
-    catch (MergingException|IOException e) {
+    catch (IOException e) {
       LOG.error("Failed to saveStateToFile", e);
       // Delete the blob root just in case it's in an inconsistent state.
       FileUtil.delete(blobRoot);
@@ -168,73 +187,43 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
    * Reloads ResourceFile and ResourceItems which have not changed since the last {@link #saveStateToFile}.
    * Some Resource file and items may not be covered, so {@link #scanRemainingFiles} should be run
    * to load the rest of the items.
-   *
-   * @return the loaded ResourceMerger -- this can be used to save state again, if the cache isn't fresh
    */
-  private ResourceMerger loadPreviousStateIfExists() {
+  private void loadPreviousStateIfExists() {
     File blobRoot = ResourceFolderRepositoryFileCacheService.get().getResourceDir(
       myModule.getProject(), myResourceDir);
-    if (blobRoot == null || !blobRoot.exists()) {
-      return createFreshResourceMerger();
-    }
-    ResourceMerger merger = new ResourceMerger(0 /* minSdk */);
-    // This load may fail if the data is in an inconsistent state or the xml contains illegal
-    // resource names, which the Psi parser would otherwise allow, so load failures are not
-    // strictly an error.
-    // loadFromBlob will check timestamps for stale data and skip.
-    try {
-      if (!merger.loadFromBlob(blobRoot, false)) {
-        LOG.warn("failed to loadPreviousStateIfExists " + blobRoot);
-        return createFreshResourceMerger();
-      }
+    if (blobRoot == null) {
+      return;
     }
-    catch (MergingException e) {
-      LOG.warn("failed to loadPreviousStateIfExists " + blobRoot, e);
-      return createFreshResourceMerger();
-    }
-    // This temp resourceFiles set is just to avoid calling VfsUtil#findFileByIoFile a ton.
-    Set<ResourceFile> resourceFiles = Sets.newHashSet();
-    List<ResourceSet> resourceSets = merger.getDataSets();
-    if (resourceSets.size() != 1) {
-      LOG.error("Expecting exactly one resource set, but found " + resourceSets.size());
-      return createFreshResourceMerger();
-    }
-    ResourceSet dataSet = resourceSets.get(0);
-    List<File> sourceFiles = dataSet.getSourceFiles();
-    if (sourceFiles.size() != 1) {
-      LOG.error("Expecting exactly source files (res/ directories), but found " + sourceFiles.size());
-      return createFreshResourceMerger();
+    ResourceFolderCacheFile cacheFile = ResourceFolderCacheFile.load(new File(blobRoot, ResourceFolderCacheFile.FILE_NAME),
+                                                                     VfsUtilCore.virtualToIoFile(myResourceDir), myLibraryName);
+    if (cacheFile == null) {
+      return;
     }
-    File myResourceDirFile = VfsUtilCore.virtualToIoFile(myResourceDir);
-    // Check that the dataSet we're loading actually corresponds to this resource directory.
-    // This could happen if there's a hash collision in naming the cache directory.
-    if (!FileUtil.filesEqual(sourceFiles.get(0), myResourceDirFile)) {
-      LOG.warn(String.format("source file %1$s, does not match resource dir %2$s",
-                             sourceFiles.get(0), myResourceDirFile));
-      return createFreshResourceMerger();
-    }
-    for (Map.Entry<String, ResourceItem> entry : dataSet.getDataMap().entries()) {
-      ResourceItem item = entry.getValue();
-      ResourceFile file = item.getSource();
-      if (file != null) {
-        if (!resourceFiles.contains(file)) {
-          VirtualFile vFile = VfsUtil.findFileByIoFile(file.getFile(), false);
-          if (vFile == null) {
-            // Cannot handle this item, mark it ignored to that it doesn't persist.
-            item.setIgnoredFromDiskMerge(true);
-            continue;
-          }
-          resourceFiles.add(file);
-          myResourceFiles.put(vFile, file);
-        }
+    Map<String, FolderConfiguration> folderConfigurations = new HashMap<>();
+    for (int i = 0; i < cacheFile.getFileCount(); i++) {
+      // Files which changed since the cache was written are left to scanRemainingFiles, which parses them again
+      if (!cacheFile.isUpToDate(i)) {
+        continue;
+      }
+      VirtualFile vFile = myResourceDir.findFileByRelativePath(cacheFile.getRelativePath(i));
+      if (vFile == null || vFile.getParent() == null) {
+        continue;
+      }
+      String folderName = vFile.getParent().getName();
+      FolderConfiguration folderConfiguration = folderConfigurations.computeIfAbsent(folderName, FolderConfiguration::getConfigForFolder);
+      if (folderConfiguration == null) {
+        continue;
+      }
+      ResourceFile file = cacheFile.loadFile(i, getQualifiers(folderName), folderConfiguration);
+      if (file == null) {
+        continue;
+      }
+      for (ResourceItem item : file.getItems()) {
         ListMultimap<String, ResourceItem> map = getMap(item.getType(), true);
         map.put(item.getName(), item);
-      } else {
-        // Cannot handle this item, mark it ignored to that it doesn't persist.
-        item.setIgnoredFromDiskMerge(true);
       }
+      myResourceFiles.put(vFile, file);
     }
-    return merger;
   }
 
   private ResourceMerger createFreshResourceMerger() {
@@ -270,21 +259,28 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
     int numXmlReparsed;
 
     final ResourceMerger myResourceMerger;
+    /** The resource set of the merger the files parsed on the scanning thread are loaded into */
     final ResourceSet myResourceSet;
     final ILogger myILogger;
     final File myResourceDir;
+    @Nullable private final String myLibraryName;
     final Collection<PsiFileResourceQueueEntry> myPsiFileResourceQueue = new ArrayList<>();
     final Collection<PsiValueResourceQueueEntry> myPsiValueResourceQueue = new ArrayList<>();
 
-    public InitialScanState(ResourceMerger merger, File resourceDir) {
+    public InitialScanState(ResourceMerger merger, File resourceDir, @Nullable String libraryName) {
       myResourceMerger = merger;
       assert myResourceMerger.getDataSets().size() == 1;
       myResourceSet = myResourceMerger.getDataSets().get(0);
-      myResourceSet.setShouldParseResourceIds(true);
-      myResourceSet.setDontNormalizeQualifiers(true);
-      myResourceSet.setTrackSourcePositions(false);
+      configure(myResourceSet);
       myILogger = new LogWrapper(LOG);
       myResourceDir = resourceDir;
+      myLibraryName = libraryName;
+    }
+
+    private static void configure(@NotNull ResourceSet resourceSet) {
+      resourceSet.setShouldParseResourceIds(true);
+      resourceSet.setDontNormalizeQualifiers(true);
+      resourceSet.setTrackSourcePositions(false);
     }
 
     public void countCacheHit() {
@@ -297,15 +293,36 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
     }
 
     /**
-     * Load a ResourceFile into the resource merger's resource set and return it.
+     * Returns a resource set for a thread parsing files in parallel with the scanning thread. Resource sets aren't thread safe, so each
+     * thread parses into a set of its own, which is only added to the merger by {@link #addResourceSet} once the thread is done.
+     */
+    @NotNull
+    ResourceSet createResourceSet() {
+      ResourceSet resourceSet = new ResourceSet(myResourceDir.getName(), myLibraryName, false /* validateEnabled */);
+      resourceSet.addSource(myResourceDir);
+      configure(resourceSet);
+      return resourceSet;
+    }
+
+    /**
+     * Adds a resource set returned by {@link #createResourceSet} to the merger. Only called from the scanning thread.
+     */
+    void addResourceSet(@NotNull ResourceSet resourceSet) {
+      myResourceMerger.addDataSet(resourceSet);
+    }
+
+    /**
+     * Load a ResourceFile into the given resource set and return it.
      *
+     * @param resourceSet {@link #myResourceSet} or a set returned by {@link #createResourceSet}, which no other thread is loading
+     *                    files into
      * @param file a resource XML file to load and parse
      * @return the resulting ResourceFile, if there is no parse error.
      * @throws MergingException
      */
     @Nullable
-    ResourceFile loadFile(File file) throws MergingException {
-      return myResourceSet.loadFile(myResourceDir, file, myILogger);
+    ResourceFile loadFile(@NotNull ResourceSet resourceSet, File file) throws MergingException {
+      return resourceSet.loadFile(myResourceDir, file, myILogger);
     }
 
     public void queuePsiFileResourceScan(PsiFileResourceQueueEntry data) {
@@ -416,7 +433,39 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
     return null;
   }
 
+  /**
+   * A resource file found by the initial scan. The XML files which aren't in the file cache are parsed, possibly in parallel, then all the
+   * files are added to the repository from the scanning thread in the order they were found, so the items don't depend on the order the
+   * parsing completes in.
+   */
+  private static class ScannedFile {
+    public final VirtualFile file;
+    public final String qualifiers;
+    public final ResourceFolderType folderType;
+    public final FolderConfiguration folderConfiguration;
+    /** The type of the file resource, or null for a file of value resources */
+    @Nullable public final ResourceType type;
+    public final boolean idGenerating;
+    /** The file parsed by the resource set, or null if it couldn't be parsed and should be scanned as PSI instead */
+    @Nullable public ResourceFile resourceFile;
+
+    public ScannedFile(VirtualFile file, String qualifiers, ResourceFolderType folderType, FolderConfiguration folderConfiguration,
+                       @Nullable ResourceType type, boolean idGenerating) {
+      this.file = file;
+      this.qualifiers = qualifiers;
+      this.folderType = folderType;
+      this.folderConfiguration = folderConfiguration;
+      this.type = type;
+      this.idGenerating = idGenerating;
+    }
+
+    public boolean needsParsing() {
+      return type == null || idGenerating;
+    }
+  }
+
   private void scanResFolder(@NotNull VirtualFile resDir) {
+    List<ScannedFile> scannedFiles = new ArrayList<>();
     for (VirtualFile subDir : resDir.getChildren()) {
       if (subDir.isValid() && subDir.isDirectory()) {
         String name = subDir.getName();
@@ -428,14 +477,86 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
           }
           String qualifiers = getQualifiers(name);
           if (folderType == VALUES) {
-            scanValueResFolder(subDir, qualifiers, folderConfiguration);
+            scanValueResFolder(subDir, qualifiers, folderConfiguration, scannedFiles);
           }
           else {
-            scanFileResourceFolder(subDir, folderType, qualifiers, folderConfiguration);
+            scanFileResourceFolder(subDir, folderType, qualifiers, folderConfiguration, scannedFiles);
           }
         }
       }
     }
+
+    parseScannedFiles(scannedFiles.stream().filter(ScannedFile::needsParsing).collect(Collectors.toList()));
+    for (ScannedFile scannedFile : scannedFiles) {
+      if (scannedFile.type == null) {
+        addValueFile(scannedFile);
+      }
+      else {
+        addFileResourceFile(scannedFile, getMap(scannedFile.type, true));
+      }
+    }
+  }
+
+  /**
+   * Parses the XML files found by the initial scan. Parsing doesn't need PSI, so the files of large folders are split in consecutive
+   * chunks parsed on a few pooled threads, each into a resource set of its own; the sets are then added to the merger in the order of
+   * the chunks, on the scanning thread.
+   */
+  private void parseScannedFiles(@NotNull List<ScannedFile> scannedFiles) {
+    int threads = Math.min(MAX_SCAN_THREADS, scannedFiles.size() / ourFilesPerScanThread);
+    if (threads <= 1) {
+      for (ScannedFile scannedFile : scannedFiles) {
+        ProgressManager.checkCanceled();
+        parseScannedFile(myInitialScanState.myResourceSet, scannedFile);
+      }
+      return;
+    }
+
+    ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+    BoundedTaskExecutor executor = new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, threads);
+    List<ResourceSet> resourceSets = new ArrayList<>();
+    List<Future<?>> jobs = new ArrayList<>();
+    for (List<ScannedFile> chunk : Lists.partition(scannedFiles, (scannedFiles.size() + threads - 1) / threads)) {
+      ResourceSet resourceSet = myInitialScanState.createResourceSet();
+      resourceSets.add(resourceSet);
+      jobs.add(executor.submit(() -> ProgressManager.getInstance().runProcess(() -> {
+        for (ScannedFile scannedFile : chunk) {
+          ProgressManager.checkCanceled();
+          parseScannedFile(resourceSet, scannedFile);
+        }
+      }, indicator)));
+    }
+
+    for (Future<?> job : jobs) {
+      try {
+        job.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ProcessCanceledException();
+      }
+      catch (ExecutionException e) {
+        if (e.getCause() instanceof ProcessCanceledException) {
+          throw (ProcessCanceledException)e.getCause();
+        }
+        // The files of the chunk which weren't parsed are scanned as PSI instead
+        LOG.error(e.getCause());
+      }
+    }
+    resourceSets.forEach(myInitialScanState::addResourceSet);
+  }
+
+  /**
+   * Parses a file found by the initial scan into the given resource set.
+   */
+  private void parseScannedFile(@NotNull ResourceSet resourceSet, @NotNull ScannedFile scannedFile) {
+    try {
+      scannedFile.resourceFile = myInitialScanState.loadFile(resourceSet, VfsUtilCore.virtualToIoFile(scannedFile.file));
+    }
+    catch (MergingException e) {
+      // The file-based parser may not be able handle the file, e.g. if it is a data-binding file. It's scanned as PSI instead.
+      scannedFile.resourceFile = null;
+    }
   }
 
   private static String getQualifiers(String dirName) {
@@ -445,21 +566,27 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
 
   private void scanFileResourceFolder(@NotNull VirtualFile directory,
                                       ResourceFolderType folderType, String qualifiers,
-                                      FolderConfiguration folderConfiguration) {
+                                      FolderConfiguration folderConfiguration,
+                                      @NotNull List<ScannedFile> scannedFiles) {
     List<ResourceType> resourceTypes = FolderTypeRelationship.getRelatedResourceTypes(folderType);
     assert resourceTypes.size() >= 1 : folderType;
     ResourceType type = resourceTypes.get(0);
 
     boolean idGeneratingFolder = FolderTypeRelationship.isIdGeneratingFolderType(folderType);
 
-    ListMultimap<String, ResourceItem> map = getMap(type, true);
+    // The items are added after parsing, but the map for the folder's type exists even if there are none
+    getMap(type, true);
 
     for (VirtualFile file : directory.getChildren()) {
       if (file.isValid() && !file.isDirectory()) {
         FileType fileType = file.getFileType();
         boolean idGeneratingFile = idGeneratingFolder && fileType == StdFileTypes.XML;
         if (PsiProjectListener.isRelevantFileType(fileType) || folderType == ResourceFolderType.RAW) {
-          scanFileResourceFile(qualifiers, folderType, folderConfiguration, type, idGeneratingFile, map, file);
+          if (idGeneratingFile && myResourceFiles.containsKey(file)) {
+            myInitialScanState.countCacheHit();
+            continue;
+          }
+          scannedFiles.add(new ScannedFile(file, qualifiers, folderType, folderConfiguration, type, idGeneratingFile));
         } // TODO: Else warn about files that aren't expected to be found here?
       }
     }
@@ -492,57 +619,44 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
     }
   }
 
-  private void scanFileResourceFile(String qualifiers,
-                                    ResourceFolderType folderType,
-                                    FolderConfiguration folderConfiguration,
-                                    ResourceType type,
-                                    boolean idGenerating,
-                                    ListMultimap<String, ResourceItem> map,
-                                    VirtualFile file) {
+  private void addFileResourceFile(@NotNull ScannedFile scannedFile, ListMultimap<String, ResourceItem> map) {
+    VirtualFile file = scannedFile.file;
+    String qualifiers = scannedFile.qualifiers;
+    ResourceFolderType folderType = scannedFile.folderType;
+    FolderConfiguration folderConfiguration = scannedFile.folderConfiguration;
+    ResourceType type = scannedFile.type;
     ResourceFile resourceFile;
-    if (idGenerating) {
-      if (myResourceFiles.containsKey(file)) {
-        myInitialScanState.countCacheHit();
+    if (scannedFile.idGenerating) {
+      resourceFile = scannedFile.resourceFile;
+      if (resourceFile == null) {
+        // The file-based parser failed for some reason. Fall back to Psi in case it is more lax.
+        // Don't count Psi items in myInitialScanState.numXml, because they are never cached.
+        myInitialScanState.queuePsiFileResourceScan(
+          new PsiFileResourceQueueEntry(file, qualifiers, folderType, folderConfiguration));
         return;
       }
-      try {
-        resourceFile = myInitialScanState.loadFile(VfsUtilCore.virtualToIoFile(file));
-        if (resourceFile == null) {
-          // The file-based parser failed for some reason. Fall back to Psi in case it is more lax.
-          // Don't count Psi items in myInitialScanState.numXml, because they are never cached.
-          myInitialScanState.queuePsiFileResourceScan(
-            new PsiFileResourceQueueEntry(file, qualifiers, folderType, folderConfiguration));
-          return;
-        }
-        ListMultimap<String, ResourceItem> idMap = getMap(ResourceType.ID, true);
-        boolean isDensityBasedResource = folderType == DRAWABLE || folderType == MIPMAP;
-        // We skip caching density-based resources, so don't count those against cache statistics.
-        if (!isDensityBasedResource) {
-          myInitialScanState.countCacheMiss();
+      ListMultimap<String, ResourceItem> idMap = getMap(ResourceType.ID, true);
+      boolean isDensityBasedResource = folderType == DRAWABLE || folderType == MIPMAP;
+      // We skip caching density-based resources, so don't count those against cache statistics.
+      if (!isDensityBasedResource) {
+        myInitialScanState.countCacheMiss();
+      }
+      for (ResourceItem item : resourceFile.getItems()) {
+        ListMultimap<String, ResourceItem> itemMap;
+        if (item.getType() == ResourceType.ID) {
+          itemMap = idMap;
+        } else {
+          assert item.getType() == type;
+          itemMap = map;
         }
-        for (ResourceItem item : resourceFile.getItems()) {
-          ListMultimap<String, ResourceItem> itemMap;
-          if (item.getType() == ResourceType.ID) {
-            itemMap = idMap;
-          } else {
-            assert item.getType() == type;
-            itemMap = map;
-          }
-          itemMap.put(item.getName(), item);
-          // It's not yet safe to serialize density-based resources items to blob files.
-          // The ResourceValue should be an instance of DensityBasedResourceValue, but no flags are
-          // serialized to the blob to indicate that.
-          if (isDensityBasedResource) {
-            item.setIgnoredFromDiskMerge(true);
-          }
+        itemMap.put(item.getName(), item);
+        // It's not yet safe to serialize density-based resources items to blob files.
+        // The ResourceValue should be an instance of DensityBasedResourceValue, but no flags are
+        // serialized to the blob to indicate that.
+        if (isDensityBasedResource) {
+          item.setIgnoredFromDiskMerge(true);
         }
       }
-      catch (MergingException e) {
-        // The file-based parser may not be able handle the file if it is a data-binding file.
-        myInitialScanState.queuePsiFileResourceScan(
-          new PsiFileResourceQueueEntry(file, qualifiers, folderType, folderConfiguration));
-        return;
-      }
     }
     else {
       // We create the items without adding it to the resource set / resource merger.
@@ -818,13 +932,18 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
     }
   }
 
-  private void scanValueResFolder(@NotNull VirtualFile directory, String qualifiers, FolderConfiguration folderConfiguration) {
+  private void scanValueResFolder(@NotNull VirtualFile directory, String qualifiers, FolderConfiguration folderConfiguration,
+                                  @NotNull List<ScannedFile> scannedFiles) {
     //noinspection ConstantConditions
     assert directory.getName().startsWith(FD_RES_VALUES);
 
     for (VirtualFile file : directory.getChildren()) {
-      if (file.isValid() && !file.isDirectory()) {
-        scanValueFile(qualifiers, file, folderConfiguration);
+      if (file.isValid() && !file.isDirectory() && file.getFileType() == StdFileTypes.XML) {
+        if (myResourceFiles.containsKey(file)) {
+          myInitialScanState.countCacheHit();
+          continue;
+        }
+        scannedFiles.add(new ScannedFile(file, qualifiers, VALUES, folderConfiguration, null, false));
       }
     }
   }
@@ -888,33 +1007,20 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
     return added;
   }
 
-  private void scanValueFile(String qualifiers, VirtualFile virtualFile, FolderConfiguration folderConfiguration) {
-    FileType fileType = virtualFile.getFileType();
-    if (fileType == StdFileTypes.XML) {
-      if (myResourceFiles.containsKey(virtualFile)) {
-        myInitialScanState.countCacheHit();
-        return;
-      }
-      File file = VfsUtilCore.virtualToIoFile(virtualFile);
-      try {
-        ResourceFile resourceFile = myInitialScanState.loadFile(file);
-        if (resourceFile == null) {
-          // The file-based parser failed for some reason. Fall back to Psi in case it is more lax.
-          myInitialScanState.queuePsiValueResourceScan(new PsiValueResourceQueueEntry(virtualFile, qualifiers, folderConfiguration));
-          return;
-        }
-        for (ResourceItem item : resourceFile.getItems()) {
-          ListMultimap<String, ResourceItem> map = getMap(item.getType(), true);
-          map.put(item.getName(), item);
-        }
-        myInitialScanState.countCacheMiss();
-        myResourceFiles.put(virtualFile, resourceFile);
-      }
-      catch (MergingException e) {
-        // The file-based parser failed for some reason. Fall back to Psi in case it is more lax.
-        myInitialScanState.queuePsiValueResourceScan(new PsiValueResourceQueueEntry(virtualFile, qualifiers, folderConfiguration));
-      }
+  private void addValueFile(@NotNull ScannedFile scannedFile) {
+    ResourceFile resourceFile = scannedFile.resourceFile;
+    if (resourceFile == null) {
+      // The file-based parser failed for some reason. Fall back to Psi in case it is more lax.
+      myInitialScanState.queuePsiValueResourceScan(
+        new PsiValueResourceQueueEntry(scannedFile.file, scannedFile.qualifiers, scannedFile.folderConfiguration));
+      return;
+    }
+    for (ResourceItem item : resourceFile.getItems()) {
+      ListMultimap<String, ResourceItem> map = getMap(item.getType(), true);
+      map.put(item.getName(), item);
     }
+    myInitialScanState.countCacheMiss();
+    myResourceFiles.put(scannedFile.file, resourceFile);
   }
 
   // Schedule a rescan to convert any map ResourceItems to Psi if needed, and return true if conversion
@@ -1139,7 +1245,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
           }
 
           if (!idsBefore.equals(idsAfter)) {
-            myGeneration = ourModificationCounter.incrementAndGet();
+            setModified(ResourceType.ID);
           }
           scanDataBinding(resourceFile, myGeneration);
           // Identities may have changed even if the ids are the same, so update maps
@@ -1294,7 +1400,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
                       ResourceItem item = new PsiResourceItem(name, type, tag, psiFile);
                       map.put(name, item);
                       resourceFile.addItems(Collections.singletonList(item));
-                      myGeneration = ourModificationCounter.incrementAndGet();
+                      setModified(type);
                       invalidateItemCaches(type);
                       return;
                     }
@@ -1312,7 +1418,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
                 ResourceItem parentItem = findValueResourceItem(parentTag, psiFile);
                 if (parentItem instanceof PsiResourceItem) {
                   if (((PsiResourceItem)parentItem).recomputeValue()) {
-                    myGeneration = ourModificationCounter.incrementAndGet();
+                    setModified(parentItem.getType());
                   }
                   return;
                 }
@@ -1357,7 +1463,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
                     assert resFile instanceof PsiResourceFile;
                     PsiResourceFile resourceFile = (PsiResourceFile)resFile;
                     resourceFile.addItems(ids);
-                    myGeneration = ourModificationCounter.incrementAndGet();
+                    setModified(ResourceType.ID);
                     invalidateItemCaches(ResourceType.ID);
                   }
                 }
@@ -1458,7 +1564,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
                   ResourceItem resourceItem = findValueResourceItem(parentTag, psiFile);
                   if (resourceItem instanceof PsiResourceItem) {
                     if (((PsiResourceItem)resourceItem).recomputeValue()) {
-                      myGeneration = ourModificationCounter.incrementAndGet();
+                      setModified(resourceItem.getType());
                     }
 
                     if (resourceItem.getType() == ResourceType.ATTR) {
@@ -1467,7 +1573,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
                         ResourceItem declareStyleable = findValueResourceItem(parentTag, psiFile);
                         if (declareStyleable instanceof PsiResourceItem) {
                           if (((PsiResourceItem)declareStyleable).recomputeValue()) {
-                            myGeneration = ourModificationCounter.incrementAndGet();
+                            setModified(ResourceType.DECLARE_STYLEABLE);
                           }
                         }
                       }
@@ -1505,7 +1611,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
                         return;
                       }
                       if (removeItems(resourceFile, type, name, true)) {
-                        myGeneration = ourModificationCounter.incrementAndGet();
+                        setModified(type);
                         invalidateItemCaches(type);
                       }
                     }
@@ -1685,7 +1791,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
                             ResourceItem newItem = new PsiResourceItem(newName, ResourceType.ID, xmlTag, psiFile);
                             map.put(newName, newItem);
                             resourceFile.replace(item, newItem);
-                            myGeneration = ourModificationCounter.incrementAndGet();
+                            setModified(ResourceType.ID);
                             invalidateItemCaches(ResourceType.ID);
                             return;
                           }
@@ -1730,7 +1836,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
                           ResourceItem newItem = new PsiResourceItem(newName, ResourceType.ID, xmlTag, psiFile);
                           map.put(newName, newItem);
                           resourceFile.replace(item, newItem);
-                          myGeneration = ourModificationCounter.incrementAndGet();
+                          setModified(ResourceType.ID);
                           invalidateItemCaches(ResourceType.ID);
                           return;
                         }
@@ -1787,7 +1893,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
                   ResourceItem resourceItem = findValueResourceItem(parentTag, psiFile);
                   if (resourceItem instanceof PsiResourceItem) {
                     if (((PsiResourceItem)resourceItem).recomputeValue()) {
-                      myGeneration = ourModificationCounter.incrementAndGet();
+                      setModified(resourceItem.getType());
                     }
                     return;
                   }
@@ -1852,7 +1958,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
                         else {
                           assert false : item;
                         }
-                        myGeneration = ourModificationCounter.incrementAndGet();
+                        setModified(type);
                         invalidateItemCaches(type);
 
                         // Invalidate surrounding declare styleable if any
@@ -1880,7 +1986,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
                       ResourceItem resourceItem = findValueResourceItem(parentTag, psiFile);
                       if (resourceItem instanceof PsiResourceItem) {
                         if (((PsiResourceItem)resourceItem).recomputeValue()) {
-                          myGeneration = ourModificationCounter.incrementAndGet();
+                          setModified(resourceItem.getType());
                         }
                         return;
                       }
@@ -1964,7 +2070,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
           if (item instanceof PsiResourceItem) {
             boolean cleared = ((PsiResourceItem)item).recomputeValue();
             if (cleared) { // Only bump revision if this is a value which has already been observed!
-              myGeneration = ourModificationCounter.incrementAndGet();
+              setModified(item.getType());
             }
           }
           return;
@@ -1983,7 +2089,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
             // Edited XML value
             boolean cleared = ((PsiResourceItem)item).recomputeValue();
             if (cleared) { // Only bump revision if this is a value which has already been observed!
-              myGeneration = ourModificationCounter.incrementAndGet();
+              setModified(item.getType());
             }
           }
           break;
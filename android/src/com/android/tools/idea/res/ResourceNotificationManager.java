@@ -19,12 +19,14 @@ import com.android.annotations.NonNull;
 import com.android.annotations.Nullable;
 import com.android.ide.common.resources.ResourceUrl;
 import com.android.resources.ResourceFolderType;
+import com.android.resources.ResourceType;
 import com.android.tools.idea.configurations.Configuration;
 import com.android.tools.idea.configurations.ConfigurationListener;
 import com.android.tools.idea.databinding.DataBindingUtil;
 import com.android.tools.idea.project.AndroidProjectBuildNotifications;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.ProjectComponent;
 import com.intellij.openapi.module.Module;
@@ -71,6 +73,12 @@ import static com.android.SdkConstants.PREFIX_RESOURCE_REF;
  * <li>All events are delivered on the event dispatch (UI) thread</li>
  * <li>Add listener or remove listener can be done from any thread</li>
  * </ul>
+ * <p/>
+ * Events are batched and delivered per listener: each listener gets a {@link ResourceChange} describing the
+ * files which were edited and the resource types which changed, and listeners whose
+ * {@linkplain ResourceChangeListener#getResourceTypeDependencies() dependencies} weren't touched by the change
+ * aren't notified at all. Changes for listeners which aren't {@linkplain ResourceChangeListener#isVisible() visible}
+ * are merged and held back until {@link #listenerShown(ResourceChangeListener)} is called.
  */
 @SuppressWarnings({"SynchronizeOnThis", "UseOfSystemOutOrSystemErr"})
 public class ResourceNotificationManager {
@@ -112,6 +120,16 @@ public class ResourceNotificationManager {
    */
   private EnumSet<Reason> myEvents = EnumSet.noneOf(Reason.class);
 
+  /**
+   * Set of files edited since the last notification
+   */
+  private Set<PsiFile> myEditedFiles = Sets.newHashSet();
+
+  /**
+   * Changes held back for listeners which weren't visible when they were notified, merged per listener
+   */
+  private final Map<ResourceChangeListener, ResourceChange> myDeferredChanges = Maps.newHashMap();
+
   /**
    * Do not instantiate directly; this is a {@link ProjectComponent} and its lifecycle is managed by the IDE;
    * use {@link #getInstance(Project)} instead
@@ -155,9 +173,9 @@ public class ResourceNotificationManager {
      *
      * @param listener      the listener to notify when there is a resource change
      * @param facet         the facet for the Android module whose resources the listener is interested in
-     * @param file          an optional file to observe for any edits. Note that this is not currently
-     *                      limited to this listener; all listeners in the module will be notified when
-     *                      there is an edit of this file.
+     * @param file          an optional file to observe for any edits. Edits of other observed files are only
+     *                      reported to this listener as {@link Reason#RESOURCE_EDIT} if they changed resources
+     *                      it depends on.
      * @param configuration if file is non null, this is an optional configuration
      *                      you can listen for changes in (must be a configuration corresponding to the file)
      * @return the current resource modification stamp of the given module
@@ -179,7 +197,7 @@ public class ResourceNotificationManager {
         moduleEventObserver = new ModuleEventObserver(facet);
         myModuleToObserverMap.put(module, moduleEventObserver);
       }
-      moduleEventObserver.addListener(listener);
+      moduleEventObserver.addListener(listener, file);
 
       if (file != null) {
         FileEventObserver fileEventObserver = myFileToObserverMap.get(file);
@@ -243,6 +261,7 @@ public class ResourceNotificationManager {
 
       Module module = facet.getModule();
       ModuleEventObserver moduleEventObserver = myModuleToObserverMap.get(module);
+      myDeferredChanges.remove(listener);
       if (moduleEventObserver != null) {
         moduleEventObserver.removeListener(listener);
         if (!moduleEventObserver.hasListeners()) {
@@ -255,14 +274,38 @@ public class ResourceNotificationManager {
     }
   }
 
+  /**
+   * Delivers the changes which were held back while the given listener wasn't {@linkplain ResourceChangeListener#isVisible() visible}.
+   * Listeners which report themselves as invisible should call this when they are shown again. Does nothing if no
+   * change was held back.
+   *
+   * @param listener the listener which became visible
+   */
+  public void listenerShown(@NotNull ResourceChangeListener listener) {
+    ResourceChange change;
+    synchronized (this) {
+      change = myDeferredChanges.remove(listener);
+    }
+    if (change != null) {
+      ApplicationManager.getApplication().invokeLater(() -> listener.resourcesChanged(change));
+    }
+  }
+
   private final Object CHANGE_PENDING_LOCK = new Object();
 
+  private void notice(Reason reason) {
+    notice(reason, null);
+  }
+
   /**
    * Something happened. Either schedule a notification or if one is already pending, do nothing.
    */
-  private void notice(Reason reason) {
-    myEvents.add(reason);
+  private void notice(Reason reason, @Nullable PsiFile file) {
     synchronized (CHANGE_PENDING_LOCK) {
+      myEvents.add(reason);
+      if (file != null) {
+        myEditedFiles.add(file);
+      }
       if (myPendingNotify) {
         return;
       }
@@ -288,23 +331,53 @@ public class ResourceNotificationManager {
         ApplicationManager.getApplication().invokeLater(new Runnable() {
           @Override
           public void run() {
-            EnumSet<Reason> reason = myEvents;
-            myEvents = EnumSet.noneOf(Reason.class);
-            notifyListeners(reason);
-            myEvents.clear();
+            EnumSet<Reason> reason;
+            Set<PsiFile> files;
+            synchronized (CHANGE_PENDING_LOCK) {
+              reason = myEvents;
+              files = myEditedFiles;
+              myEvents = EnumSet.noneOf(Reason.class);
+              myEditedFiles = Sets.newHashSet();
+            }
+            if (!reason.isEmpty()) {
+              notifyListeners(reason, files);
+            }
           }
         });
       }
     });
   }
 
-  private void notifyListeners(@NonNull EnumSet<Reason> reason) {
+  private void notifyListeners(@NonNull EnumSet<Reason> reason, @NotNull Set<PsiFile> files) {
     ApplicationManager.getApplication().assertIsDispatchThread();
 
-    for (ModuleEventObserver moduleEventObserver : myModuleToObserverMap.values()) {
+    List<ModuleEventObserver> observers;
+    synchronized (this) {
+      observers = Lists.newArrayList(myModuleToObserverMap.values());
+    }
+    for (ModuleEventObserver moduleEventObserver : observers) {
       // Not every module may have pending changes; each one will check
-      moduleEventObserver.notifyListeners(reason);
+      moduleEventObserver.notifyListeners(reason, files);
+    }
+  }
+
+  private void deliver(@NotNull ModuleEventObserver observer, @NotNull ResourceChangeListener listener, @NotNull ResourceChange change) {
+    if (!listener.isVisible()) {
+      synchronized (this) {
+        // Don't hold back changes for a listener removed since the notification started
+        if (observer.myListeners.contains(listener)) {
+          ResourceChange deferred = myDeferredChanges.get(listener);
+          myDeferredChanges.put(listener, deferred != null ? deferred.merge(change) : change);
+        }
+      }
+      return;
+    }
+    ResourceChange deferred;
+    synchronized (this) {
+      // The listener may have been shown without calling listenerShown
+      deferred = myDeferredChanges.remove(listener);
     }
+    listener.resourcesChanged(deferred != null ? deferred.merge(change) : change);
   }
 
   /**
@@ -315,6 +388,8 @@ public class ResourceNotificationManager {
     private final AndroidFacet myFacet;
     private long myGeneration;
     private final List<ResourceChangeListener> myListeners = Lists.newArrayListWithExpectedSize(4);
+    /** The file each listener observes, for listeners registered with one */
+    private final Map<ResourceChangeListener, PsiFile> myListenerFiles = Maps.newHashMap();
 
     private ModuleEventObserver(@NotNull AndroidFacet facet) {
       myFacet = facet;
@@ -326,15 +401,19 @@ public class ResourceNotificationManager {
       return myGeneration;
     }
 
-    private void addListener(@NotNull ResourceChangeListener listener) {
+    private void addListener(@NotNull ResourceChangeListener listener, @Nullable PsiFile file) {
       if (myListeners.isEmpty()) {
         registerListeners();
       }
       myListeners.add(listener);
+      if (file != null) {
+        myListenerFiles.put(listener, file);
+      }
     }
 
     private void removeListener(@NotNull ResourceChangeListener listener) {
       myListeners.remove(listener);
+      myListenerFiles.remove(listener);
 
       if (myListeners.isEmpty()) {
         unregisterListeners();
@@ -358,24 +437,62 @@ public class ResourceNotificationManager {
       }
     }
 
-    private void notifyListeners(@NonNull EnumSet<Reason> reason) {
-      long generation = myFacet.getAppResources(true).getModificationCount();
-      if (reason.size() == 1 && reason.contains(Reason.RESOURCE_EDIT) && generation == myGeneration) {
-        // Notified of an edit in some file that could potentially affect the resources, but
-        // it didn't cause the modification stamp to increase: ignore. (If there are other reasons,
-        // such as a variant change, then notify regardless
-        return;
+    private void notifyListeners(@NonNull EnumSet<Reason> reason, @NotNull Set<PsiFile> files) {
+      ApplicationManager.getApplication().assertIsDispatchThread();
+      AppResourceRepository repository = myFacet.getAppResources(true);
+      long generation = repository.getModificationCount();
+
+      // Edits in some file that could potentially affect the resources only matter for the types whose
+      // modification stamp increased; if none did, they are ignored. (If there are other reasons,
+      // such as a variant change, then notify regardless)
+      Set<ResourceType> changedTypes = EnumSet.noneOf(ResourceType.class);
+      if (generation != myGeneration) {
+        for (ResourceType type : ResourceType.values()) {
+          if (repository.getModificationCount(type) > myGeneration) {
+            changedTypes.add(type);
+          }
+        }
+        if (changedTypes.isEmpty()) {
+          // The change can't be attributed to any type, e.g. the repository was recreated
+          changedTypes = EnumSet.allOf(ResourceType.class);
+        }
       }
-
       myGeneration = generation;
-      ApplicationManager.getApplication().assertIsDispatchThread();
+
       List<ResourceChangeListener> listeners;
-      synchronized (this) {
+      Map<ResourceChangeListener, PsiFile> listenerFiles;
+      synchronized (ResourceNotificationManager.this) {
         listeners = Lists.newArrayList(myListeners);
+        listenerFiles = Maps.newHashMap(myListenerFiles);
       }
       for (ResourceChangeListener listener : listeners) {
-        listener.resourcesChanged(reason);
+        EnumSet<Reason> listenerReason = EnumSet.copyOf(reason);
+        PsiFile file = listenerFiles.get(listener);
+        if (file != null && listenerReason.contains(Reason.EDIT) && !files.contains(file)) {
+          // Only an edit of some other observed file: that only matters if it affected the resources
+          listenerReason.remove(Reason.EDIT);
+          listenerReason.add(Reason.RESOURCE_EDIT);
+        }
+        if (listenerReason.contains(Reason.RESOURCE_EDIT) && !dependsOn(listener, changedTypes)) {
+          listenerReason.remove(Reason.RESOURCE_EDIT);
+        }
+        if (!listenerReason.isEmpty()) {
+          deliver(this, listener, new ResourceChange(listenerReason, files, changedTypes));
+        }
+      }
+    }
+
+    private boolean dependsOn(@NotNull ResourceChangeListener listener, @NotNull Set<ResourceType> changedTypes) {
+      Set<ResourceType> dependencies = listener.getResourceTypeDependencies();
+      if (dependencies == null) {
+        return !changedTypes.isEmpty();
+      }
+      for (ResourceType type : dependencies) {
+        if (changedTypes.contains(type)) {
+          return true;
+        }
       }
+      return false;
     }
 
     private boolean hasListeners() {
@@ -501,10 +618,10 @@ public class ResourceNotificationManager {
             }
           }
         }
-        notice(Reason.EDIT);
+        notice(Reason.EDIT, event.getFile());
       }
       else {
-        notice(Reason.RESOURCE_EDIT);
+        notice(Reason.RESOURCE_EDIT, event.getFile());
       }
     }
 
@@ -528,9 +645,9 @@ public class ResourceNotificationManager {
           }
         }
 
-        notice(Reason.EDIT);
+        notice(Reason.EDIT, event.getFile());
       } else {
-        notice(Reason.RESOURCE_EDIT);
+        notice(Reason.RESOURCE_EDIT, event.getFile());
       }
     }
 
@@ -571,10 +688,10 @@ public class ResourceNotificationManager {
             }
           }
         }
-        notice(Reason.EDIT);
+        notice(Reason.EDIT, event.getFile());
       }
       else {
-        notice(Reason.RESOURCE_EDIT);
+        notice(Reason.RESOURCE_EDIT, event.getFile());
       }
     }
 
@@ -644,12 +761,12 @@ public class ResourceNotificationManager {
       if (isRelevantFile(event)) {
         final PsiFile file = event.getFile();
         if (file != null) {
-          notice(Reason.EDIT);
+          notice(Reason.EDIT, file);
           return;
         }
       }
 
-      notice(Reason.RESOURCE_EDIT);
+      notice(Reason.RESOURCE_EDIT, event.getFile());
     }
   }
 
@@ -810,6 +927,93 @@ public class ResourceNotificationManager {
      * @param reason the set of reasons that the resources have changed since the last notification
      */
     void resourcesChanged(@NotNull Set<Reason> reason);
+
+    /**
+     * One or more resources have changed. By default this forwards the reasons to {@link #resourcesChanged(Set)};
+     * listeners which can update themselves partially can override it to look at the changed files and types.
+     *
+     * @param change the change since the last notification
+     */
+    default void resourcesChanged(@NotNull ResourceChange change) {
+      resourcesChanged(change.getReasons());
+    }
+
+    /**
+     * Returns the resource types this listener depends on, or null if it depends on all of them. Resource edits
+     * which didn't change any of these types are not delivered to the listener.
+     */
+    @Nullable
+    default Set<ResourceType> getResourceTypeDependencies() {
+      return null;
+    }
+
+    /**
+     * Returns whether the listener is currently visible. Changes for invisible listeners are held back until
+     * {@link ResourceNotificationManager#listenerShown(ResourceChangeListener)} is called.
+     */
+    default boolean isVisible() {
+      return true;
+    }
+  }
+
+  /**
+   * A batch of changes delivered to a {@link ResourceChangeListener}. This snapshot is immutable.
+   */
+  public static class ResourceChange {
+    private final Set<Reason> myReasons;
+    private final Set<PsiFile> myFiles;
+    private final Set<ResourceType> myTypes;
+
+    private ResourceChange(@NotNull Set<Reason> reasons, @NotNull Set<PsiFile> files, @NotNull Set<ResourceType> types) {
+      myReasons = Collections.unmodifiableSet(reasons);
+      myFiles = Collections.unmodifiableSet(files);
+      myTypes = Collections.unmodifiableSet(types);
+    }
+
+    /**
+     * Returns the set of reasons that the resources have changed
+     */
+    @NotNull
+    public Set<Reason> getReasons() {
+      return myReasons;
+    }
+
+    /**
+     * Returns the files which were edited. This doesn't include files changed outside of the IDE.
+     */
+    @NotNull
+    public Set<PsiFile> getFiles() {
+      return myFiles;
+    }
+
+    /**
+     * Returns the types of the resources which changed in the repository
+     */
+    @NotNull
+    public Set<ResourceType> getTypes() {
+      return myTypes;
+    }
+
+    @NotNull
+    private ResourceChange merge(@NotNull ResourceChange change) {
+      EnumSet<Reason> reasons = EnumSet.copyOf(myReasons);
+      reasons.addAll(change.myReasons);
+      Set<PsiFile> files = Sets.newHashSet(myFiles);
+      files.addAll(change.myFiles);
+      Set<ResourceType> types = EnumSet.noneOf(ResourceType.class);
+      types.addAll(myTypes);
+      types.addAll(change.myTypes);
+      return new ResourceChange(reasons, files, types);
+    }
+
+    @Override
+    public String toString() {
+      return "ResourceChange{" +
+             "reasons=" + myReasons +
+             ", files=" + myFiles.size() +
+             ", types=" + myTypes +
+             '}';
+    }
   }
 
   /**
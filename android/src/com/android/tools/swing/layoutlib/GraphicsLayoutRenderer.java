@@ -68,6 +68,7 @@ public class GraphicsLayoutRenderer {
   private final DynamicHardwareConfig myHardwareConfig;
   private final Object myCredential;
   private final RenderSecurityManager mySecurityManager;
+  private final LayoutLibrary myLayoutLib;
   /**
    * Invalidate the layout in the next render call
    */
@@ -94,6 +95,7 @@ public class GraphicsLayoutRenderer {
                                  @NotNull List<ResourceValue> resourceLookupChain,
                                  @NotNull Object credential) {
     mySecurityManager = securityManager;
+    myLayoutLib = layoutLib;
     myHardwareConfig = hardwareConfig;
     myImageFactory = new FakeImageFactory();
     myResourceLookupChain = resourceLookupChain;
@@ -322,17 +324,18 @@ public class GraphicsLayoutRenderer {
       Result result = null;
 
       try {
-        result = RenderService.runRenderAction(new Callable<Result>() {
+        result = RenderService.runRenderAction(myLayoutLib, RenderService.Priority.NORMAL, new Callable<Result>() {
           @Override
           public Result call() {
-            if (mySecurityManager != null) {
-              mySecurityManager.setActive(true, myCredential);
-            }
-            try {
+            if (mySecurityManager == null) {
               return myRenderSession.render(RenderParams.DEFAULT_TIMEOUT, myInvalidate);
             }
-            finally {
-              if (mySecurityManager != null) {
+            synchronized (RenderService.getSandboxLock()) {
+              mySecurityManager.setActive(true, myCredential);
+              try {
+                return myRenderSession.render(RenderParams.DEFAULT_TIMEOUT, myInvalidate);
+              }
+              finally {
                 mySecurityManager.setActive(false, myCredential);
               }
             }
@@ -378,25 +381,27 @@ public class GraphicsLayoutRenderer {
                                                  @Nullable final RenderSecurityManager securityManager,
                                                  final @NotNull Object credential) {
     try {
-      RenderSession session = RenderService.runRenderAction(new Callable<RenderSession>() {
+      RenderSession session = RenderService.runRenderAction(layoutLibrary, RenderService.Priority.NORMAL, new Callable<RenderSession>() {
         @Override
         public RenderSession call() {
-          if (securityManager != null) {
-            securityManager.setActive(true, credential);
-          }
-          try {
-            // createSession() might access the PSI tree so we need to run it inside as a read action.
-            return ApplicationManager.getApplication().runReadAction(new Computable<RenderSession>() {
-              @Override
-              public RenderSession compute() {
-                // createSession will also render the layout for the first time.
-                return layoutLibrary.createSession(sessionParams);
+          // createSession() might access the PSI tree so we need to run it inside as a read action.
+          Computable<RenderSession> createSession = new Computable<RenderSession>() {
+            @Override
+            public RenderSession compute() {
+              // createSession will also render the layout for the first time.
+              return layoutLibrary.createSession(sessionParams);
 
-              }
-            });
+            }
+          };
+          if (securityManager == null) {
+            return ApplicationManager.getApplication().runReadAction(createSession);
           }
-          finally {
-            if (securityManager != null) {
+          synchronized (RenderService.getSandboxLock()) {
+            securityManager.setActive(true, credential);
+            try {
+              return ApplicationManager.getApplication().runReadAction(createSession);
+            }
+            finally {
               securityManager.setActive(false, credential);
             }
           }
@@ -518,7 +523,7 @@ public class GraphicsLayoutRenderer {
     try {
       if (myRenderSession != null) {
         myImageFactory.setGraphics(null);
-        RenderService.runRenderAction(myRenderSession::dispose);
+        RenderService.runRenderAction(myLayoutLib, RenderService.Priority.NORMAL, myRenderSession::dispose);
         myRenderSession = null;
       }
     }
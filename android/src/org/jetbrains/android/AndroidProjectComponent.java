@@ -15,6 +15,7 @@
  */
 package org.jetbrains.android;
 
+import com.android.tools.idea.rendering.ImagePool;
 import com.intellij.facet.Facet;
 import com.intellij.facet.FacetManager;
 import com.intellij.facet.FacetManagerAdapter;
@@ -83,6 +84,8 @@ public class AndroidProjectComponent extends AbstractProjectComponent {
   @Override
   public void projectClosed() {
     Disposer.dispose(myDisposable);
+    // The images pooled for the renders of this project are unlikely to match the sizes needed by the other ones
+    ImagePool.trimSharedPool();
   }
 
   private void createAndroidSpecificComponents() {
@@ -3,12 +3,15 @@ package org.jetbrains.android.inspections.lint;
 import com.android.SdkConstants;
 import com.android.tools.idea.lint.*;
 import com.android.tools.idea.project.AndroidProjectInfo;
+import com.android.tools.idea.res.AppResourceRepository;
 import com.android.tools.idea.res.PsiProjectListener;
 import com.android.tools.lint.checks.DeprecationDetector;
 import com.android.tools.lint.checks.GradleDetector;
+import com.android.tools.lint.client.api.DefaultConfiguration;
 import com.android.tools.lint.client.api.IssueRegistry;
 import com.android.tools.lint.client.api.LintDriver;
 import com.android.tools.lint.client.api.LintRequest;
+import com.android.tools.lint.detector.api.Detector;
 import com.android.tools.lint.detector.api.Issue;
 import com.android.tools.lint.detector.api.Scope;
 import com.android.utils.SdkUtils;
@@ -25,6 +28,7 @@ import com.intellij.lang.annotation.AnnotationHolder;
 import com.intellij.lang.annotation.ExternalAnnotator;
 import com.intellij.lang.annotation.HighlightSeverity;
 import com.intellij.openapi.actionSystem.IdeActions;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.fileTypes.FileTypes;
@@ -36,16 +40,21 @@ import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleUtilCore;
 import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.util.*;
+import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
 import com.intellij.util.IncorrectOperationException;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.ui.UIUtil;
 import com.intellij.xml.util.XmlStringUtil;
 import org.jetbrains.android.compiler.AndroidCompileUtil;
 import org.jetbrains.android.facet.AndroidFacet;
+import org.jetbrains.android.facet.AndroidRootUtil;
 import org.jetbrains.android.util.AndroidBundle;
 import org.jetbrains.android.util.AndroidCommonUtils;
 import org.jetbrains.annotations.NotNull;
@@ -53,10 +62,8 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.plugins.groovy.GroovyFileType;
 
 import javax.swing.*;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.EnumSet;
-import java.util.List;
+import java.io.File;
+import java.util.*;
 
 import static com.android.SdkConstants.*;
 import static com.android.tools.lint.detector.api.TextFormat.HTML;
@@ -66,8 +73,18 @@ import static com.android.tools.lint.detector.api.TextFormat.RAW;
  * @author Eugene.Kudelevsky
  */
 public class AndroidLintExternalAnnotator extends ExternalAnnotator<State, State> {
+  private static final Logger LOG = Logger.getInstance(AndroidLintExternalAnnotator.class);
+
   static final boolean INCLUDE_IDEA_SUPPRESS_ACTIONS = false;
 
+  /**
+   * When set, each detector is run on its own, in the editor and in batch runs, and the time each one took is logged to find the slow
+   * ones. This makes checking slower, since every detector visits the files again.
+   */
+  static final boolean PROFILE_DETECTORS = Boolean.getBoolean("android.lint.profile.detectors");
+
+  private static final LintResultCache ourResultCache = new LintResultCache();
+
   @Nullable
   @Override
   public State collectInformation(@NotNull PsiFile file, @NotNull Editor editor, boolean hasErrors) {
@@ -123,46 +140,118 @@ public class AndroidLintExternalAnnotator extends ExternalAnnotator<State, State
     if (issues.size() == 0) {
       return null;
     }
-    return new State(module, vFile, file.getText(), issues);
+
+    Project project = file.getProject();
+    List<Long> projectStamps = new ArrayList<>();
+    List<Long> contextStamps = new ArrayList<>();
+    projectStamps.add(ProjectRootManager.getInstance(project).getModificationCount());
+    // The lint.xml of the module changes the severity of issues and which problems are ignored, for file-local issues too
+    projectStamps.add(getLintXmlStamp(module, facet));
+    contextStamps.add(PsiManager.getInstance(project).getModificationTracker().getJavaStructureModificationCount());
+    if (facet != null) {
+      VirtualFile manifest = AndroidRootUtil.getPrimaryManifestFile(facet);
+      PsiFile manifestFile = manifest != null ? PsiManager.getInstance(project).findFile(manifest) : null;
+      projectStamps.add(manifestFile != null ? manifestFile.getModificationStamp() : -1L);
+      AppResourceRepository resources = AppResourceRepository.getAppResources(facet, false);
+      contextStamps.add(resources != null ? resources.getModificationCount() : -1L);
+    }
+    return new State(module, vFile, file.getText(), issues, projectStamps, contextStamps);
+  }
+
+  /**
+   * Returns the modification stamp of the lint.xml file lint reads the configuration of the module from, or -1 if there is none
+   */
+  private static long getLintXmlStamp(@NotNull Module module, @Nullable AndroidFacet facet) {
+    File dir = LintIdeProject.getLintProjectDirectory(module, facet);
+    if (dir == null) {
+      return -1L;
+    }
+    VirtualFile lintXml = LocalFileSystem.getInstance().findFileByIoFile(new File(dir, DefaultConfiguration.CONFIG_FILE_NAME));
+    return lintXml != null ? lintXml.getModificationStamp() : -1L;
   }
 
   @Override
   public State doAnnotate(final State state) {
-    final LintIdeClient client = LintIdeClient.forEditor(state);
-    try {
-      final LintDriver lint = new LintDriver(new LintIdeIssueRegistry(), client);
+    VirtualFile mainFile = state.getMainFile();
+    EnumSet<Scope> scope = getScope(mainFile);
+    if (scope == null) {
+      // #collectionInformation above should have prevented this
+      assert false;
+      return state;
+    }
 
-      EnumSet<Scope> scope;
-      VirtualFile mainFile = state.getMainFile();
-      final FileType fileType = mainFile.getFileType();
-      String name = mainFile.getName();
-      if (fileType == StdFileTypes.XML) {
-        if (name.equals(ANDROID_MANIFEST_XML)) {
-          scope = Scope.MANIFEST_SCOPE;
-        } else {
-          scope = Scope.RESOURCE_FILE_SCOPE;
-        }
-      } else if (fileType == StdFileTypes.JAVA) {
-        scope = Scope.JAVA_FILE_SCOPE;
-      } else if (name.equals(OLD_PROGUARD_FILE) || name.equals(FN_PROJECT_PROGUARD_FILE)) {
-        scope = EnumSet.of(Scope.PROGUARD_FILE);
-      } else if (fileType == GroovyFileType.GROOVY_FILE_TYPE) {
-        scope = Scope.GRADLE_SCOPE;
-      } else if (fileType == StdFileTypes.PROPERTIES) {
-        scope = Scope.PROPERTY_SCOPE;
+    Project project = state.getModule().getProject();
+    if (project.isDisposed()) {
+      return state;
+    }
+
+    List<ProblemData> cachedProblems = ourResultCache.getProblems(state);
+    if (cachedProblems != null) {
+      state.getProblems().addAll(cachedProblems);
+      return state;
+    }
+
+    List<Issue> issues = state.getIssues();
+    List<ProblemData> fileLocalProblems = ourResultCache.getFileLocalProblems(state, scope);
+    if (fileLocalProblems != null) {
+      // Only files this one depends on changed, so the problems of the issues which just look at this file still hold
+      issues = ContainerUtil.filter(issues, issue -> !LintResultCache.isFileLocal(issue, scope));
+      state.getProblems().addAll(fileLocalProblems);
+    }
+
+    long start = System.currentTimeMillis();
+    if (PROFILE_DETECTORS) {
+      analyzePerDetector(state, issues, scope);
+    }
+    else {
+      state.getProblems().addAll(analyze(state, issues, scope));
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(String.format("Checked %1$s for %2$d of %3$d issues in %4$d ms", mainFile.getName(), issues.size(),
+                              state.getIssues().size(), System.currentTimeMillis() - start));
+    }
+
+    if (!state.isDirty()) {
+      ourResultCache.put(state, state.getProblems());
+    }
+    return state;
+  }
+
+  @Nullable
+  private static EnumSet<Scope> getScope(@NotNull VirtualFile mainFile) {
+    final FileType fileType = mainFile.getFileType();
+    String name = mainFile.getName();
+    if (fileType == StdFileTypes.XML) {
+      if (name.equals(ANDROID_MANIFEST_XML)) {
+        return Scope.MANIFEST_SCOPE;
       } else {
-        // #collectionInformation above should have prevented this
-        assert false;
-        return state;
+        return Scope.RESOURCE_FILE_SCOPE;
       }
+    } else if (fileType == StdFileTypes.JAVA) {
+      return Scope.JAVA_FILE_SCOPE;
+    } else if (name.equals(OLD_PROGUARD_FILE) || name.equals(FN_PROJECT_PROGUARD_FILE)) {
+      return EnumSet.of(Scope.PROGUARD_FILE);
+    } else if (fileType == GroovyFileType.GROOVY_FILE_TYPE) {
+      return Scope.GRADLE_SCOPE;
+    } else if (fileType == StdFileTypes.PROPERTIES) {
+      return Scope.PROPERTY_SCOPE;
+    }
+    return null;
+  }
 
-      Project project = state.getModule().getProject();
-      if (project.isDisposed()) {
-        return state;
-      }
+  /**
+   * Checks the file of the given state for the given issues, and returns the problems found. Lint checks from custom rule jars are always
+   * included.
+   */
+  @NotNull
+  private static List<ProblemData> analyze(@NotNull State state, @NotNull List<Issue> issues, @NotNull EnumSet<Scope> scope) {
+    State issueState = state.withIssues(issues);
+    final LintIdeClient client = LintIdeClient.forEditor(issueState);
+    try {
+      final LintDriver lint = new LintDriver(new LintIdeIssueRegistry(), client);
 
-      List<VirtualFile> files = Collections.singletonList(mainFile);
-      LintRequest request = new LintIdeRequest(client, project, files,
+      List<VirtualFile> files = Collections.singletonList(state.getMainFile());
+      LintRequest request = new LintIdeRequest(client, state.getModule().getProject(), files,
                                                Collections.singletonList(state.getModule()), true /* incremental */);
       request.setScope(scope);
 
@@ -171,7 +260,62 @@ public class AndroidLintExternalAnnotator extends ExternalAnnotator<State, State
     finally {
       Disposer.dispose(client);
     }
-    return state;
+    if (issueState.isDirty()) {
+      state.markDirty();
+    }
+    return issueState.getProblems();
+  }
+
+  /**
+   * Like {@link #analyze}, but runs each detector on its own and logs how long each of them took
+   */
+  private static void analyzePerDetector(@NotNull State state, @NotNull List<Issue> issues, @NotNull EnumSet<Scope> scope) {
+    List<Pair<String, Long>> times = new ArrayList<>();
+    boolean first = true;
+    for (Map.Entry<Class<? extends Detector>, List<Issue>> entry : groupByDetector(issues).entrySet()) {
+      long start = System.currentTimeMillis();
+      List<ProblemData> problems = analyze(state, entry.getValue(), scope);
+      times.add(Pair.create(entry.getKey().getSimpleName(), System.currentTimeMillis() - start));
+      for (ProblemData problem : problems) {
+        // Custom checks run along with every detector; only keep their problems once
+        Issue issue = problem.getIssue();
+        if (first || issue != LintIdeIssueRegistry.CUSTOM_ERROR && issue != LintIdeIssueRegistry.CUSTOM_WARNING) {
+          state.getProblems().add(problem);
+        }
+      }
+      first = false;
+    }
+
+    LOG.info("Lint detector times for " + state.getMainFile().getName() + ": " + formatDetectorTimes(times));
+  }
+
+  /**
+   * Groups the given issues by the detector which checks them, in the order the detectors first appear
+   */
+  @NotNull
+  static Map<Class<? extends Detector>, List<Issue>> groupByDetector(@NotNull List<Issue> issues) {
+    Map<Class<? extends Detector>, List<Issue>> issuesByDetector = new LinkedHashMap<>();
+    for (Issue issue : issues) {
+      issuesByDetector.computeIfAbsent(issue.getImplementation().getDetectorClass(), detector -> new ArrayList<>()).add(issue);
+    }
+    return issuesByDetector;
+  }
+
+  /**
+   * Formats the given times of detectors, slowest first
+   */
+  @NotNull
+  static String formatDetectorTimes(@NotNull List<Pair<String, Long>> times) {
+    List<Pair<String, Long>> sorted = new ArrayList<>(times);
+    sorted.sort((time1, time2) -> Long.compare(time2.getSecond(), time1.getSecond()));
+    StringBuilder sb = new StringBuilder();
+    for (Pair<String, Long> time : sorted) {
+      if (sb.length() > 0) {
+        sb.append(", ");
+      }
+      sb.append(time.getFirst()).append(' ').append(time.getSecond()).append(" ms");
+    }
+    return sb.toString();
   }
 
   @NotNull
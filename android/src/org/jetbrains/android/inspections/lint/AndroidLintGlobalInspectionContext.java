@@ -7,16 +7,21 @@ import com.android.tools.idea.gradle.project.model.AndroidModuleModel;
 import com.android.tools.idea.lint.*;
 import com.android.tools.lint.client.api.LintBaseline;
 import com.android.tools.lint.client.api.LintDriver;
+import com.android.tools.lint.client.api.LintListener;
 import com.android.tools.lint.client.api.LintRequest;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Detector;
 import com.android.tools.lint.detector.api.Issue;
 import com.android.tools.lint.detector.api.LintUtils;
 import com.android.tools.lint.detector.api.Scope;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.Lists;
 import com.intellij.analysis.AnalysisScope;
 import com.intellij.codeInspection.GlobalInspectionContext;
 import com.intellij.codeInspection.ex.InspectionToolWrapper;
 import com.intellij.codeInspection.ex.Tools;
 import com.intellij.codeInspection.lang.GlobalInspectionContextExtension;
+import com.intellij.concurrency.SensitiveProgressWrapper;
 import com.intellij.facet.ProjectFacetManager;
 import com.intellij.notification.NotificationDisplayType;
 import com.intellij.notification.NotificationGroup;
@@ -28,11 +33,14 @@ import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
 import com.intellij.openapi.module.ModuleUtilCore;
 import com.intellij.openapi.module.impl.scopes.ModuleWithDependenciesScope;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.util.ProgressWrapper;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
@@ -40,18 +48,33 @@ import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.search.LocalSearchScope;
 import com.intellij.psi.search.SearchScope;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import com.intellij.util.containers.HashMap;
 import org.jetbrains.android.facet.AndroidFacet;
+import org.jetbrains.android.util.AndroidUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.jetbrains.android.inspections.lint.AndroidLintInspectionBase.LINT_INSPECTION_PREFIX;
 
 class AndroidLintGlobalInspectionContext implements GlobalInspectionContextExtension<AndroidLintGlobalInspectionContext> {
+  private static final Logger LOG = Logger.getInstance(AndroidLintGlobalInspectionContext.class);
+
   static final Key<AndroidLintGlobalInspectionContext> ID = Key.create("AndroidLintGlobalInspectionContext");
+
+  /**
+   * Maximum number of module groups checked at the same time. Lint is mostly bound by PSI resolution and memory, so more threads
+   * don't help much.
+   */
+  private static final int MAX_THREADS = 4;
   private Map<Issue, Map<File, List<ProblemData>>> myResults;
   private LintBaseline myBaseline;
   private Issue myEnabledIssue;
@@ -205,7 +228,7 @@ class AndroidLintGlobalInspectionContext implements GlobalInspectionContextExten
       case AnalysisScope.INVALID:
         break;
       default:
-        Logger.getInstance(this.getClass()).warn("Unexpected inspection scope " + scope + ", " + scopeType);
+        LOG.warn("Unexpected inspection scope " + scope + ", " + scopeType);
     }
 
     if (modules.isEmpty()) {
@@ -272,13 +295,217 @@ class AndroidLintGlobalInspectionContext implements GlobalInspectionContextExten
       }
     }
 
-    lint.analyze(request);
+    // The baseline is updated by a single driver, and single file runs are too small to be worth splitting
+    List<List<Module>> partitions = myBaseline == null && files == null
+                                    ? ReadAction.compute(() -> partitionModules(modules))
+                                    : Collections.singletonList(modules);
+    LintParseCache parseCache = new LintParseCache(LintParseCache.DEFAULT_MAX_FILES);
+    BatchTimings timings = new BatchTimings();
+    long start = System.currentTimeMillis();
+    if (AndroidLintExternalAnnotator.PROFILE_DETECTORS && myBaseline == null) {
+      analyzePerDetector(project, files, modules, scope, issues, lintScope, parseCache, problemMap);
+    }
+    else if (partitions.size() <= 1) {
+      client.setParseCache(parseCache);
+      lint.addLintListener(timings.new ModuleTimer());
+      lint.analyze(request);
+    }
+    else {
+      analyzeInParallel(project, partitions, scope, issues, lintScope, parseCache, timings, problemMap, indicator);
+    }
+    LOG.info(timings.getReport(modules.size(), Math.max(1, partitions.size()), System.currentTimeMillis() - start,
+                               parseCache.getStats()));
+    parseCache.clear();
 
     AndroidLintLintBaselineInspection.clearNextRunState();
 
     myResults = problemMap;
   }
 
+  /**
+   * Splits the given modules into groups which don't share any Android dependencies. Lint checks library modules along with the modules
+   * depending on them, so each group can be checked by its own lint driver with the same results as checking them all together.
+   * <p>
+   * The groups can't be split any further without changing the results, since checks such as unused resources look at an app and all
+   * of its libraries at once. So there is no speedup for projects where one app depends on every library: they form a single group,
+   * which is checked by a single driver as before.
+   */
+  @NotNull
+  static List<List<Module>> partitionModules(@NotNull List<Module> modules) {
+    Map<Module, Module> parents = new HashMap<>();
+    for (Module module : modules) {
+      boolean androidModule = AndroidFacet.getInstance(module) != null;
+      for (AndroidFacet dependency : AndroidUtils.getAllAndroidDependencies(module, androidModule)) {
+        Module root1 = findRoot(parents, module);
+        Module root2 = findRoot(parents, dependency.getModule());
+        if (root1 != root2) {
+          parents.put(root1, root2);
+        }
+      }
+    }
+
+    Map<Module, List<Module>> partitions = new LinkedHashMap<>();
+    for (Module module : modules) {
+      partitions.computeIfAbsent(findRoot(parents, module), root -> new ArrayList<>()).add(module);
+    }
+    return new ArrayList<>(partitions.values());
+  }
+
+  @NotNull
+  private static Module findRoot(@NotNull Map<Module, Module> parents, @NotNull Module module) {
+    Module root = module;
+    Module parent;
+    while ((parent = parents.get(root)) != null) {
+      root = parent;
+    }
+    if (root != module) {
+      // Point straight at the root such that later lookups are fast
+      parents.put(module, root);
+    }
+    return root;
+  }
+
+  /**
+   * Checks each of the given groups of modules with its own lint driver, on a pool of threads, and merges the problems they found into
+   * the given problem map. Each driver runs under its own indicator, which is canceled along with the given one, and the progress is
+   * reported on the given indicator as groups complete. When a driver is canceled, the others are canceled as well before the
+   * cancellation is rethrown.
+   */
+  private static void analyzeInParallel(@NotNull Project project,
+                                        @NotNull List<List<Module>> partitions,
+                                        @NotNull AnalysisScope scope,
+                                        @NotNull List<Issue> issues,
+                                        @Nullable EnumSet<Scope> lintScope,
+                                        @NotNull LintParseCache parseCache,
+                                        @NotNull BatchTimings timings,
+                                        @NotNull Map<Issue, Map<File, List<ProblemData>>> problemMap,
+                                        @Nullable ProgressIndicator indicator) {
+    int threads = Math.min(partitions.size(), Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+    BoundedTaskExecutor executor = new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, threads);
+    AtomicInteger checkedCount = new AtomicInteger();
+    reportProgress(indicator, 0, partitions.size());
+    // Canceled when any of the drivers is, so the others stop as well
+    ProgressIndicator sharedIndicator = indicator != null ? new SensitiveProgressWrapper(indicator) : new EmptyProgressIndicator();
+    List<Future<Map<Issue, Map<File, List<ProblemData>>>>> jobs = new ArrayList<>();
+    for (List<Module> partition : partitions) {
+      jobs.add(executor.submit(() -> {
+        Map<Issue, Map<File, List<ProblemData>>> partitionProblems = new HashMap<>();
+        ProgressIndicator partitionIndicator = new SensitiveProgressWrapper(sharedIndicator);
+        ProgressManager.getInstance().runProcess(() -> {
+          LintIdeClient client = LintIdeClient.forBatch(project, partitionProblems, scope, issues);
+          client.setParseCache(parseCache);
+          LintDriver lint = new LintDriver(new LintIdeIssueRegistry(), client);
+          lint.addLintListener(timings.new ModuleTimer());
+          LintRequest request = new LintIdeRequest(client, project, null, partition, false);
+          request.setScope(lintScope);
+          lint.analyze(request);
+        }, partitionIndicator);
+        synchronized (checkedCount) {
+          // Report the counts in order
+          reportProgress(indicator, checkedCount.incrementAndGet(), partitions.size());
+        }
+        return partitionProblems;
+      }));
+    }
+
+    boolean completed = false;
+    try {
+      for (Future<Map<Issue, Map<File, List<ProblemData>>>> job : jobs) {
+        try {
+          mergeProblems(problemMap, job.get());
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new ProcessCanceledException();
+        }
+        catch (ExecutionException e) {
+          if (e.getCause() instanceof ProcessCanceledException) {
+            throw (ProcessCanceledException)e.getCause();
+          }
+          LOG.error(e.getCause());
+        }
+      }
+      completed = true;
+    }
+    finally {
+      if (!completed) {
+        // Stop the drivers which are still running, and drop the groups which haven't started yet
+        sharedIndicator.cancel();
+        for (Future<?> job : jobs) {
+          job.cancel(false);
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the request once for each detector, with the issues of that detector, and logs how long each run took, slowest first. This is
+   * much slower than a single run, since every detector visits all the files again, so it is only done when
+   * {@link AndroidLintExternalAnnotator#PROFILE_DETECTORS} is set. The files are converted once and shared through the parse cache, so
+   * the time of the first detector includes converting them.
+   */
+  private static void analyzePerDetector(@NotNull Project project,
+                                         @Nullable List<VirtualFile> files,
+                                         @NotNull List<Module> modules,
+                                         @NotNull AnalysisScope scope,
+                                         @NotNull List<Issue> issues,
+                                         @Nullable EnumSet<Scope> lintScope,
+                                         @NotNull LintParseCache parseCache,
+                                         @NotNull Map<Issue, Map<File, List<ProblemData>>> problemMap) {
+    List<Pair<String, Long>> times = new ArrayList<>();
+    for (Map.Entry<Class<? extends Detector>, List<Issue>> entry : AndroidLintExternalAnnotator.groupByDetector(issues).entrySet()) {
+      ProgressManager.checkCanceled();
+      Map<Issue, Map<File, List<ProblemData>>> detectorProblems = new HashMap<>();
+      LintIdeClient client = LintIdeClient.forBatch(project, detectorProblems, scope, entry.getValue());
+      client.setParseCache(parseCache);
+      LintDriver lint = new LintDriver(new LintIdeIssueRegistry(), client);
+      LintRequest request = new LintIdeRequest(client, project, files, modules, false);
+      request.setScope(lintScope);
+      long start = System.currentTimeMillis();
+      lint.analyze(request);
+      times.add(Pair.create(entry.getKey().getSimpleName(), System.currentTimeMillis() - start));
+      // Custom checks run along with every detector; merging only keeps their problems once
+      mergeProblems(problemMap, detectorProblems);
+    }
+    LOG.info("Android Lint detector times: " + AndroidLintExternalAnnotator.formatDetectorTimes(times));
+  }
+
+  private static void reportProgress(@Nullable ProgressIndicator indicator, int checkedCount, int partitionCount) {
+    if (indicator != null) {
+      ProgressWrapper.unwrap(indicator).setText2(String.format("Checked %1$d of %2$d module groups", checkedCount, partitionCount));
+    }
+  }
+
+  /**
+   * Adds the problems of one lint driver to the problems found so far. Module groups don't overlap, but Gradle libraries can still be
+   * checked by more than one driver, so problems which were already reported are skipped.
+   */
+  private static void mergeProblems(@NotNull Map<Issue, Map<File, List<ProblemData>>> problemMap,
+                                    @NotNull Map<Issue, Map<File, List<ProblemData>>> problems) {
+    for (Map.Entry<Issue, Map<File, List<ProblemData>>> issueEntry : problems.entrySet()) {
+      Map<File, List<ProblemData>> fileProblems = problemMap.computeIfAbsent(issueEntry.getKey(), issue -> new HashMap<>());
+      for (Map.Entry<File, List<ProblemData>> fileEntry : issueEntry.getValue().entrySet()) {
+        List<ProblemData> merged = fileProblems.computeIfAbsent(fileEntry.getKey(), file -> new ArrayList<>());
+        for (ProblemData problem : fileEntry.getValue()) {
+          if (!containsProblem(merged, problem)) {
+            merged.add(problem);
+          }
+        }
+      }
+    }
+  }
+
+  private static boolean containsProblem(@NotNull List<ProblemData> problems, @NotNull ProblemData problem) {
+    for (ProblemData other : problems) {
+      if (other.getIssue() == problem.getIssue() &&
+          other.getTextRange().equals(problem.getTextRange()) &&
+          other.getMessage().equals(problem.getMessage())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Nullable
   public Map<Issue, Map<File, List<ProblemData>>> getResults() {
     return myResults;
@@ -317,4 +544,60 @@ class AndroidLintGlobalInspectionContext implements GlobalInspectionContextExten
       myEnabledIssue = null;
     }
   }
+
+  /**
+   * Time lint spent checking each module of a batch run, measured from the events of its drivers
+   */
+  private static final class BatchTimings {
+    private final Map<String, Long> myModuleTimes = new ConcurrentHashMap<>();
+
+    @NotNull
+    private String getReport(int moduleCount, int groupCount, long totalMs, @NotNull CacheStats parseStats) {
+      StringBuilder sb = new StringBuilder();
+      sb.append(String.format("Android Lint checked %1$d modules in %2$d groups in %3$d ms; converted %4$d files, reused %5$d",
+                              moduleCount, groupCount, totalMs, parseStats.missCount(), parseStats.hitCount()));
+      List<Map.Entry<String, Long>> times = new ArrayList<>(myModuleTimes.entrySet());
+      times.sort((time1, time2) -> Long.compare(time2.getValue(), time1.getValue()));
+      for (Map.Entry<String, Long> time : times) {
+        sb.append(String.format("\n  %1$s: %2$d ms", time.getKey(), time.getValue()));
+      }
+      return sb.toString();
+    }
+
+    /**
+     * Attributes the time of a driver to the (library) project it is scanning. Each driver gets its own timer, since the events of a
+     * driver are delivered on the thread it runs on.
+     */
+    private class ModuleTimer implements LintListener {
+      @Nullable private String myProject;
+      private long myStart;
+
+      @Override
+      public void update(@NotNull LintDriver driver, @NotNull EventType type, @Nullable Context context) {
+        switch (type) {
+          case SCANNING_PROJECT:
+          case SCANNING_LIBRARY_PROJECT:
+            stop();
+            if (context != null) {
+              myProject = context.getProject().getName();
+              myStart = System.currentTimeMillis();
+            }
+            break;
+          case CANCELED:
+          case COMPLETED:
+            stop();
+            break;
+          default:
+            break;
+        }
+      }
+
+      private void stop() {
+        if (myProject != null) {
+          myModuleTimes.merge(myProject, System.currentTimeMillis() - myStart, Long::sum);
+          myProject = null;
+        }
+      }
+    }
+  }
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.inspections.lint;
+
+import com.android.tools.lint.checks.*;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.Scope;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Cache of the problems lint found in files checked in the editor, so a file isn't checked again when the highlighting of an unchanged
+ * file is restarted. Results are keyed by the path and a hash of the content of the file, the issues that were checked and the
+ * {@linkplain State#getProjectStamps() project} and {@linkplain State#getContextStamps() context} stamps it was checked with.
+ * <p>
+ * When only the context changed, the problems of {@linkplain #isFileLocal file-local} issues are still valid, and only the other issues
+ * have to be checked again. Edits to one file change the context of the other files open in the editor, e.g. the resources or the Java
+ * structure of the module, so when their highlighting is restarted, they are only checked for the issues which depend on that context.
+ */
+final class LintResultCache {
+  private static final int MAX_ENTRIES = 64;
+
+  /**
+   * Issues whose detectors only look at the content of the file being checked. Most detectors of single resource files still read other
+   * files or the project resources (e.g. {@link WrongIdDetector#UNKNOWN_ID} looks up the ids of the other layouts), so issues have to be
+   * listed here explicitly after checking what their detector reads.
+   */
+  private static final Set<Issue> FILE_LOCAL_ISSUES = ImmutableSet.of(
+    CommentDetector.EASTER_EGG,
+    CommentDetector.STOP_SHIP,
+    DosLineEndingDetector.ISSUE,
+    ExtraTextDetector.ISSUE,
+    HardcodedValuesDetector.ISSUE,
+    NestedScrollingWidgetDetector.ISSUE,
+    PropertyFileDetector.ESCAPE,
+    PropertyFileDetector.HTTP,
+    ScrollViewChildDetector.ISSUE,
+    TextFieldDetector.ISSUE,
+    TooManyViewsDetector.TOO_DEEP,
+    TooManyViewsDetector.TOO_MANY,
+    TypoDetector.ISSUE,
+    UseCompoundDrawableDetector.ISSUE,
+    UselessViewDetector.USELESS_LEAF,
+    UselessViewDetector.USELESS_PARENT,
+    Utf8Detector.ISSUE);
+
+  private final Map<String, Entry> myEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+      return size() > MAX_ENTRIES;
+    }
+  };
+
+  /**
+   * Returns all problems previously found for the file of the given state, or null if the file, the issues or the stamps changed since.
+   */
+  @Nullable
+  synchronized List<ProblemData> getProblems(@NotNull State state) {
+    Entry entry = findEntry(state);
+    return entry != null && entry.myContextStamps.equals(state.getContextStamps()) ? entry.myProblems : null;
+  }
+
+  /**
+   * Returns the problems of the file-local issues previously found for the file of the given state, or null if the file, the issues or
+   * the project stamps changed since.
+   *
+   * @param scope the scope the file is checked with
+   */
+  @Nullable
+  synchronized List<ProblemData> getFileLocalProblems(@NotNull State state, @NotNull EnumSet<Scope> scope) {
+    Entry entry = findEntry(state);
+    if (entry == null) {
+      return null;
+    }
+    List<ProblemData> problems = new ArrayList<>();
+    for (ProblemData problem : entry.myProblems) {
+      if (isFileLocal(problem.getIssue(), scope)) {
+        problems.add(problem);
+      }
+    }
+    return problems;
+  }
+
+  /**
+   * Records the problems found for the file of the given state
+   */
+  synchronized void put(@NotNull State state, @NotNull List<ProblemData> problems) {
+    myEntries.put(state.getMainFile().getPath(), new Entry(state, problems));
+  }
+
+  synchronized void clear() {
+    myEntries.clear();
+  }
+
+  @Nullable
+  private Entry findEntry(@NotNull State state) {
+    Entry entry = myEntries.get(state.getMainFile().getPath());
+    if (entry == null ||
+        !entry.myContentHash.equals(hashContent(state)) ||
+        !entry.myIssues.equals(state.getIssues()) ||
+        !entry.myProjectStamps.equals(state.getProjectStamps())) {
+      return null;
+    }
+    return entry;
+  }
+
+  @NotNull
+  private static HashCode hashContent(@NotNull State state) {
+    return Hashing.murmur3_128().hashString(state.getMainFileContent(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns true if the problems of the given issue only depend on the content of the file being checked, and on the project setup.
+   * That is only the case for the {@link #FILE_LOCAL_ISSUES}, when the file is checked with the issue's scope.
+   *
+   * @param scope the scope the file is checked with
+   */
+  static boolean isFileLocal(@NotNull Issue issue, @NotNull EnumSet<Scope> scope) {
+    return FILE_LOCAL_ISSUES.contains(issue) && scope.containsAll(issue.getImplementation().getScope());
+  }
+
+  private static final class Entry {
+    @NotNull private final HashCode myContentHash;
+    @NotNull private final List<Issue> myIssues;
+    @NotNull private final List<Long> myProjectStamps;
+    @NotNull private final List<Long> myContextStamps;
+    @NotNull private final List<ProblemData> myProblems;
+
+    private Entry(@NotNull State state, @NotNull List<ProblemData> problems) {
+      myContentHash = hashContent(state);
+      myIssues = new ArrayList<>(state.getIssues());
+      myProjectStamps = state.getProjectStamps();
+      myContextStamps = state.getContextStamps();
+      myProblems = Collections.unmodifiableList(new ArrayList<>(problems));
+    }
+  }
+}
@@ -6,6 +6,7 @@ import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -18,6 +19,8 @@ public class State {
   private final String myMainFileContent;
   private final List<ProblemData> myProblems = new ArrayList<ProblemData>();
   private final List<Issue> myIssues;
+  private final List<Long> myProjectStamps;
+  private final List<Long> myContextStamps;
 
   private volatile boolean myDirty;
 
@@ -25,10 +28,29 @@ public class State {
         @NotNull VirtualFile mainFile,
         @NotNull String mainFileContent,
         @NotNull List<Issue> issues) {
+    this(module, mainFile, mainFileContent, issues, Collections.<Long>emptyList(), Collections.<Long>emptyList());
+  }
+
+  State(@NotNull Module module,
+        @NotNull VirtualFile mainFile,
+        @NotNull String mainFileContent,
+        @NotNull List<Issue> issues,
+        @NotNull List<Long> projectStamps,
+        @NotNull List<Long> contextStamps) {
     myModule = module;
     myMainFile = mainFile;
     myMainFileContent = mainFileContent;
     myIssues = issues;
+    myProjectStamps = projectStamps;
+    myContextStamps = contextStamps;
+  }
+
+  /**
+   * Returns a state for checking the same file for a subset of the issues
+   */
+  @NotNull
+  State withIssues(@NotNull List<Issue> issues) {
+    return new State(myModule, myMainFile, myMainFileContent, issues, myProjectStamps, myContextStamps);
   }
 
   @NotNull
@@ -63,4 +85,22 @@ public class State {
   public List<Issue> getIssues() {
     return myIssues;
   }
+
+  /**
+   * Modification stamps of the project setup the file is checked in, such as the project roots, the manifest and the lint.xml
+   * configuration. When any of them changes, all results for the file are out of date.
+   */
+  @NotNull
+  List<Long> getProjectStamps() {
+    return myProjectStamps;
+  }
+
+  /**
+   * Modification stamps of the other files the results may depend on, such as the resources and the Java structure. When any of them
+   * changes, only the results of issues which look beyond the file itself are out of date.
+   */
+  @NotNull
+  List<Long> getContextStamps() {
+    return myContextStamps;
+  }
 }
@@ -6,6 +6,7 @@ import com.android.tools.idea.editors.theme.ThemeEditorProvider;
 import com.android.tools.idea.editors.theme.ThemeEditorUtils;
 import com.android.tools.idea.model.AndroidModel;
 import com.android.tools.idea.model.ClassJarProvider;
+import com.android.tools.idea.rendering.ClassConverter;
 import com.android.tools.idea.rendering.RenderClassLoader;
 import com.android.tools.idea.rendering.RenderSecurityManager;
 import com.android.tools.idea.res.FileResourceRepository;
@@ -107,7 +108,8 @@ public final class ModuleClassLoader extends RenderClassLoader {
             if (appResources != null) {
               byte[] data = ResourceClassRegistry.get(module.getProject()).findClassDefinition(name, appResources);
               if (data != null) {
-                data = convertClass(data);
+                // Generated from the resources, which change often, so they're not worth keeping in the converted class cache
+                data = ClassConverter.rewriteClass(data, myLayoutlibApiLevel);
                 if (LOG.isDebugEnabled()) {
                   LOG.debug("  Defining class from AAR registry");
                 }
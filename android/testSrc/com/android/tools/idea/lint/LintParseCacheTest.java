@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.lint;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.psi.PsiFile;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LintParseCacheTest {
+  @Test
+  public void testReuse() {
+    LintParseCache cache = new LintParseCache(10);
+    PsiFile file = mock(PsiFile.class);
+    when(file.getModificationStamp()).thenReturn(1L);
+    AtomicInteger conversions = new AtomicInteger();
+
+    String converted = cache.get(file, String.class, () -> "tree" + conversions.incrementAndGet());
+    assertEquals("tree1", converted);
+    assertSame(converted, cache.get(file, String.class, () -> "tree" + conversions.incrementAndGet()));
+    assertEquals(1, cache.getStats().missCount());
+    assertEquals(1, cache.getStats().hitCount());
+
+    // Edits invalidate the converted tree
+    when(file.getModificationStamp()).thenReturn(2L);
+    assertEquals("tree2", cache.get(file, String.class, () -> "tree" + conversions.incrementAndGet()));
+
+    // Failed conversions are remembered too
+    PsiFile other = mock(PsiFile.class);
+    assertNull(cache.get(other, String.class, () -> null));
+    assertNull(cache.get(other, String.class, () -> "unexpected"));
+  }
+
+  @Test(expected = ProcessCanceledException.class)
+  public void testCancellation() {
+    LintParseCache cache = new LintParseCache(10);
+    cache.get(mock(PsiFile.class), String.class, () -> {
+      throw new ProcessCanceledException();
+    });
+  }
+}
@@ -16,6 +16,7 @@
 package com.android.tools.idea.lint;
 
 import com.android.annotations.Nullable;
+import com.google.common.collect.Lists;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.project.Project;
@@ -24,8 +25,16 @@ import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiJavaFile;
 import com.intellij.psi.PsiManager;
+import com.intellij.testFramework.PlatformTestUtil;
+import lombok.ast.Block;
+import lombok.ast.ClassDeclaration;
 import lombok.ast.CompilationUnit;
+import lombok.ast.ConstructorDeclaration;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodDeclaration;
 import lombok.ast.Node;
+import lombok.ast.StaticInitializer;
+import lombok.ast.TypeMember;
 import lombok.ast.ecj.EcjTreeConverter;
 import lombok.ast.printer.SourcePrinter;
 import lombok.ast.printer.StructureFormatter;
@@ -768,6 +777,200 @@ public class LombokPsiConverterTest extends AndroidTestCase {
                  actual);
   }
 
+  public void testLazyBodies() {
+    @Language("JAVA")
+    String testClass =
+      "package test.pkg;\n" +
+      "\n" +
+      "public class LazyBodies {\n" +
+      "    static {\n" +
+      "        System.out.println();\n" +
+      "    }\n" +
+      "    public LazyBodies() {\n" +
+      "        this(1);\n" +
+      "    }\n" +
+      "    public LazyBodies(int x) {\n" +
+      "    }\n" +
+      "    public int foo() {\n" +
+      "        return 42;\n" +
+      "    }\n" +
+      "}";
+    PsiJavaFile file = (PsiJavaFile)myFixture.addFileToProject("src/test/pkg/LazyBodies.java", testClass);
+    CompilationUnit unit = LombokPsiConverter.convert(file);
+    assertNotNull(unit);
+
+    List<Block> bodies = Lists.newArrayList();
+    ClassDeclaration declaration = (ClassDeclaration)unit.astTypeDeclarations().first();
+    for (TypeMember member : declaration.astBody().astMembers()) {
+      if (member instanceof MethodDeclaration) {
+        bodies.add((Block)((MethodDeclaration)member).rawBody());
+      } else if (member instanceof ConstructorDeclaration) {
+        bodies.add((Block)((ConstructorDeclaration)member).rawBody());
+      } else if (member instanceof StaticInitializer) {
+        bodies.add((Block)((StaticInitializer)member).rawBody());
+      }
+    }
+    assertEquals(4, bodies.size());
+    for (Block body : bodies) {
+      assertFalse(LombokPsiConverter.isConverted(body));
+    }
+
+    // Accessing a body converts just that body
+    assertEquals(1, bodies.get(0).astContents().size());
+    assertTrue(LombokPsiConverter.isConverted(bodies.get(0)));
+    assertFalse(LombokPsiConverter.isConverted(bodies.get(3)));
+
+    // Visitors which skip bodies don't convert them
+    assertTrue(countNodes(unit, false) > 0);
+    assertFalse(LombokPsiConverter.isConverted(bodies.get(3)));
+
+    // Visiting the whole tree converts everything
+    TextFormatter formatter = new TextFormatter();
+    unit.accept(new SourcePrinter(formatter));
+    assertTrue(formatter.finish().contains("return 42;"));
+    for (Block body : bodies) {
+      assertTrue(LombokPsiConverter.isConverted(body));
+    }
+  }
+
+  public void testLazyBodyOfDeletedFile() {
+    @Language("JAVA")
+    String testClass =
+      "package test.pkg;\n" +
+      "\n" +
+      "public class DeletedBody {\n" +
+      "    public int foo() {\n" +
+      "        return 42;\n" +
+      "    }\n" +
+      "}";
+    final PsiJavaFile file = (PsiJavaFile)myFixture.addFileToProject("src/test/pkg/DeletedBody.java", testClass);
+    CompilationUnit unit = LombokPsiConverter.convert(file);
+    assertNotNull(unit);
+    ClassDeclaration declaration = (ClassDeclaration)unit.astTypeDeclarations().first();
+    Block body = (Block)((MethodDeclaration)declaration.astBody().astMembers().first()).rawBody();
+
+    WriteCommandAction.runWriteCommandAction(getProject(), file::delete);
+
+    // The body of a stale tree can't be converted: it's left empty and unconverted, and the access is flagged for the lint parser
+    LombokPsiConverter.checkStaleBodyAccessed();
+    assertTrue(body.astContents().isEmpty());
+    assertFalse(LombokPsiConverter.isConverted(body));
+    assertTrue(LombokPsiConverter.checkStaleBodyAccessed());
+    assertFalse(LombokPsiConverter.checkStaleBodyAccessed());
+  }
+
+  /**
+   * Converting the lint test sources up to their declarations only, as lint does for resolved elements and for checks which don't
+   * look at code, must create fewer nodes than converting them completely, and must not convert any body.
+   */
+  public void testDeclarationsOnlyConversion() {
+    int totalDeclarationNodes = 0;
+    int totalNodes = 0;
+    for (String path : new String[]{"intentions/R.java", "lint/apiCheck1b.java", "lint/appCompatMethod.java", "lint/checkPermission.java",
+      "lint/commitToApply.java", "lint/missingIntDefSwitch.java", "lint/parcelLoader.java", "lint/stopShip.java", "lint/useValueOf.java",
+      "lint/wrongViewCall.java"}) {
+      VirtualFile file = myFixture.copyFileToProject(path, "src/lazy/" + path);
+      PsiJavaFile psiFile = (PsiJavaFile)PsiManager.getInstance(getProject()).findFile(file);
+      assertNotNull(psiFile);
+      CompilationUnit unit = LombokPsiConverter.convert(psiFile);
+      assertNotNull(unit);
+
+      int declarationNodes = countNodes(unit, false);
+      assertNoBodyConverted(unit);
+      int declarationNodesAgain = countNodes(unit, false);
+      assertEquals(path, declarationNodes, declarationNodesAgain);
+      int allNodes = countNodes(unit, true);
+      assertTrue(path, declarationNodes <= allNodes);
+      assertEquals(path, allNodes, countNodes(unit, true));
+      totalDeclarationNodes += declarationNodes;
+      totalNodes += allNodes;
+    }
+    assertTrue(totalDeclarationNodes < totalNodes);
+  }
+
+  /**
+   * Benchmark of converting the lint test sources up to their declarations only, as lint does for resolved elements and for checks
+   * which don't look at code, versus converting them completely. The number of nodes created is roughly proportional to the memory
+   * the converted trees hold on to.
+   */
+  public void testConversionBenchmark() {
+    final List<PsiJavaFile> files = Lists.newArrayList();
+    for (String path : new String[]{"intentions/R.java", "lint/apiCheck1b.java", "lint/appCompatMethod.java", "lint/checkPermission.java",
+      "lint/commitToApply.java", "lint/missingIntDefSwitch.java", "lint/parcelLoader.java", "lint/stopShip.java", "lint/useValueOf.java",
+      "lint/wrongViewCall.java"}) {
+      VirtualFile file = myFixture.copyFileToProject(path, "src/benchmark/" + path);
+      files.add((PsiJavaFile)PsiManager.getInstance(getProject()).findFile(file));
+    }
+
+    int declarationNodes = 0;
+    int allNodes = 0;
+    for (PsiJavaFile file : files) {
+      CompilationUnit unit = LombokPsiConverter.convert(file);
+      assertNotNull(unit);
+      declarationNodes += countNodes(unit, false);
+      allNodes += countNodes(unit, true);
+    }
+    assertTrue(declarationNodes + " declaration nodes of " + allNodes, declarationNodes < allNodes);
+
+    PlatformTestUtil.startPerformanceTest("lombok declarations conversion of " + declarationNodes + " nodes", 400, () -> {
+      for (int i = 0; i < 20; i++) {
+        for (PsiJavaFile file : files) {
+          CompilationUnit unit = LombokPsiConverter.convert(file);
+          assertNotNull(unit);
+          countNodes(unit, false);
+        }
+      }
+    }).attempts(2).assertTiming();
+    PlatformTestUtil.startPerformanceTest("lombok full conversion of " + allNodes + " nodes", 1000, () -> {
+      for (int i = 0; i < 20; i++) {
+        for (PsiJavaFile file : files) {
+          CompilationUnit unit = LombokPsiConverter.convert(file);
+          assertNotNull(unit);
+          countNodes(unit, true);
+        }
+      }
+    }).attempts(2).assertTiming();
+  }
+
+  /**
+   * Checks that none of the bodies of the given tree has been converted
+   */
+  private static void assertNoBodyConverted(Node root) {
+    root.accept(new ForwardingAstVisitor() {
+      @Override
+      public boolean visitBlock(Block node) {
+        // Bodies are the outermost blocks; don't visit into them, which would convert them
+        assertFalse(LombokPsiConverter.isConverted(node));
+        return true;
+      }
+    });
+  }
+
+  /**
+   * Counts the nodes of the given tree, including the statements of the bodies which haven't been converted yet if
+   * {@code convertBodies} is true, and excluding them otherwise
+   */
+  private static int countNodes(Node root, final boolean convertBodies) {
+    final int[] count = new int[1];
+    root.accept(new ForwardingAstVisitor() {
+      @Override
+      public boolean visitNode(Node node) {
+        count[0]++;
+        return false;
+      }
+
+      @Override
+      public boolean visitBlock(Block node) {
+        if (!convertBodies && !LombokPsiConverter.isConverted(node)) {
+          count[0]++;
+          return true;
+        }
+        return super.visitBlock(node);
+      }
+    });
+    return count[0];
+  }
+
   private void check(VirtualFile file) {
     assertNotNull(file);
     assertTrue(file.exists());
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class DefaultAndroidLogcatFilterTest {
+
+  @Test
+  public void literalPatternsMatchLikeRegex() throws Exception {
+    String[] filters = {"tag", "TAG", "Tag", "a.b", "x\\Ey", "Ünï", ""};
+    String[] texts = {"MyTag", "mytag", "MYTAG", "a.b", "axb", "x\\Ey", "ünï", "ÜNÏ", "Ünï", "", "ta"};
+    for (String filter : filters) {
+      for (boolean isRegex : new boolean[]{false, true}) {
+        Pattern pattern = RegexFilterComponent.pattern(filter, isRegex);
+        DefaultAndroidLogcatFilter.TextMatcher matcher = DefaultAndroidLogcatFilter.TextMatcher.create(pattern);
+        for (String text : texts) {
+          boolean expected = pattern == null || pattern.matcher(text).find();
+          assertThat(matcher == null || matcher.find(text)).named(filter + (isRegex ? " (regex) in " : " in ") + text).isEqualTo(expected);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void literalIsExtractedFromQuotedPattern() throws Exception {
+    assertThat(DefaultAndroidLogcatFilter.TextMatcher.getLiteral(Pattern.compile(Pattern.quote("a.b")))).isEqualTo("a.b");
+    assertThat(DefaultAndroidLogcatFilter.TextMatcher.getLiteral(Pattern.compile("plain"))).isEqualTo("plain");
+    assertThat(DefaultAndroidLogcatFilter.TextMatcher.getLiteral(Pattern.compile("a.b"))).isNull();
+  }
+
+  @Test
+  public void pidIsComparedAsString() throws Exception {
+    DefaultAndroidLogcatFilter filter = new DefaultAndroidLogcatFilter.Builder("test").setPid("007").build();
+    assertThat(filter.isApplicable("message", "tag", "pkg", 7, LogLevel.INFO)).isFalse();
+
+    filter = new DefaultAndroidLogcatFilter.Builder("test").setPid(7).build();
+    assertThat(filter.isApplicable("message", "tag", "pkg", 7, LogLevel.INFO)).isTrue();
+    assertThat(filter.isApplicable("message", "tag", "pkg", 8, LogLevel.INFO)).isFalse();
+  }
+
+  @Test
+  public void allPredicatesMustMatch() throws Exception {
+    DefaultAndroidLogcatFilter filter = new DefaultAndroidLogcatFilter.Builder("test")
+      .setLogLevel(LogLevel.WARN)
+      .setTagPattern(RegexFilterComponent.pattern("net", false))
+      .setMessagePattern(RegexFilterComponent.pattern("time.*out", true))
+      .build();
+    assertThat(filter.isApplicable("Connection timed out", "Network", "pkg", 1, LogLevel.ERROR)).isTrue();
+    assertThat(filter.isApplicable("Connection timed out", "Network", "pkg", 1, LogLevel.INFO)).isFalse();
+    assertThat(filter.isApplicable("Connection timed out", "Wifi", "pkg", 1, LogLevel.ERROR)).isFalse();
+    assertThat(filter.isApplicable("Connected", "Network", "pkg", 1, LogLevel.ERROR)).isFalse();
+  }
+
+  @Test
+  public void blockSummaryIsRejectedByLevelPidAndTag() throws Exception {
+    DefaultAndroidLogcatFilter filter = new DefaultAndroidLogcatFilter.Builder("test")
+      .setLogLevel(LogLevel.WARN)
+      .setPid(7)
+      .setTagPattern(RegexFilterComponent.pattern("net", false))
+      .build();
+    int infoAndError = 1 << LogLevel.INFO.getPriority() | 1 << LogLevel.ERROR.getPriority();
+    assertThat(filter.mayAcceptAny(infoAndError, new int[]{3, 7}, Arrays.asList("Wifi", "Network"))).isTrue();
+    assertThat(filter.mayAcceptAny(1 << LogLevel.INFO.getPriority(), new int[]{7}, Collections.singletonList("Network"))).isFalse();
+    assertThat(filter.mayAcceptAny(infoAndError, new int[]{3}, Collections.singletonList("Network"))).isFalse();
+    assertThat(filter.mayAcceptAny(infoAndError, new int[]{7}, Collections.singletonList("Wifi"))).isFalse();
+  }
+}
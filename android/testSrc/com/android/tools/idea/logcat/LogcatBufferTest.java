@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class LogcatBufferTest {
+  private String myBufferSize;
+  private LogcatBuffer myBuffer;
+
+  @Before
+  public void setUp() throws Exception {
+    myBufferSize = System.setProperty("idea.cycle.buffer.size", "disabled");
+    myBuffer = new LogcatBuffer();
+  }
+
+  @After
+  public void tearDown() {
+    if (myBufferSize != null) {
+      System.setProperty("idea.cycle.buffer.size", myBufferSize);
+    }
+    else {
+      System.clearProperty("idea.cycle.buffer.size");
+    }
+  }
+
+  @Test
+  public void snapshotReturnsLinesInOrder() throws Exception {
+    addLines(0, 3 * LogcatBuffer.CHUNK_SIZE + 10);
+
+    List<String> lines = getLines(myBuffer.getSnapshot());
+    assertThat(lines).hasSize(3 * LogcatBuffer.CHUNK_SIZE + 10);
+    assertThat(lines.get(0)).isEqualTo("01-23 12:34:00.000: I/Tag(123): line 0");
+    assertThat(lines.get(lines.size() - 1)).isEqualTo("01-23 12:34:00.000: I/Tag(123): line " + (lines.size() - 1));
+  }
+
+  @Test
+  public void snapshotIgnoresLaterLines() throws Exception {
+    addLines(0, 100);
+    LogcatBuffer.Snapshot snapshot = myBuffer.getSnapshot();
+    addLines(100, 2 * LogcatBuffer.CHUNK_SIZE);
+
+    assertThat(snapshot.size()).isEqualTo(100);
+    assertThat(getLines(snapshot)).hasSize(100);
+  }
+
+  @Test
+  public void oldestLinesAreDroppedOverCycleBufferSize() throws Exception {
+    // 1 KB of text.
+    System.setProperty("idea.cycle.buffer.size", "1");
+    LogcatBuffer.Snapshot before = null;
+    for (int i = 0; i < 4 * LogcatBuffer.CHUNK_SIZE; i++) {
+      myBuffer.addMessage(new LogCatMessage(createHeader("12:34:00.000"), String.format("line %04d", i)));
+      if (i == 10) {
+        before = myBuffer.getSnapshot();
+      }
+    }
+
+    // Each line is 9 characters long.
+    List<String> lines = getLines(myBuffer.getSnapshot());
+    assertThat(lines).hasSize(1024 / 9);
+    assertThat(lines.get(lines.size() - 1)).endsWith("line " + (4 * LogcatBuffer.CHUNK_SIZE - 1));
+
+    // Snapshots taken before are still readable.
+    assertThat(getLines(before)).hasSize(11);
+  }
+
+  @Test
+  public void forEachSinceSkipsOlderLines() throws Exception {
+    for (int i = 0; i < 3 * LogcatBuffer.CHUNK_SIZE; i++) {
+      myBuffer.addMessage(new LogCatMessage(createHeader(String.format("12:%02d:00.000", i / 100)), "line " + i));
+    }
+
+    List<String> lines = new ArrayList<>();
+    myBuffer.getSnapshot().forEachSince(LogCatTimestamp.fromString("01-23 12:25:00.000"), line -> lines.add(line.getMessage()));
+    assertThat(lines).hasSize(3 * LogcatBuffer.CHUNK_SIZE - 2500);
+    assertThat(lines.get(0)).isEqualTo("line 2500");
+  }
+
+  @Test
+  public void linesOfMessageShareHeader() throws Exception {
+    LogCatHeader header = createHeader("12:34:00.000");
+    myBuffer.addMessage(new LogCatMessage(header, "Line1"));
+    myBuffer.addMessage(new LogCatMessage(header, "Line2"));
+
+    List<LogCatMessage> messages = new ArrayList<>();
+    myBuffer.getSnapshot().forEach(messages::add);
+    assertThat(messages).hasSize(2);
+    assertThat(messages.get(0).getHeader()).isSameAs(messages.get(1).getHeader());
+  }
+
+  private void addLines(int from, int to) {
+    LogCatHeader header = createHeader("12:34:00.000");
+    for (int i = from; i < to; i++) {
+      myBuffer.addMessage(new LogCatMessage(header, "line " + i));
+    }
+  }
+
+  private static LogCatHeader createHeader(String time) {
+    return new LogCatHeader(LogLevel.INFO, 123, 456, "com.android.sample", "Tag", LogCatTimestamp.fromString("01-23 " + time));
+  }
+
+  private static List<String> getLines(LogcatBuffer.Snapshot snapshot) {
+    List<String> lines = new ArrayList<>();
+    snapshot.forEach(line -> lines.add(line.toString()));
+    return lines;
+  }
+}
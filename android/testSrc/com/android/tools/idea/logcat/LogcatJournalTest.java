@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class LogcatJournalTest {
+  @Rule
+  public TemporaryFolder myFolder = new TemporaryFolder();
+
+  @Test
+  public void linesAreReadBackAfterReopening() throws Exception {
+    File directory = myFolder.newFolder();
+    LogcatJournal journal = LogcatJournal.open(directory);
+    addLines(journal, "Tag", 0, 3 * LogcatJournal.BLOCK_LINES + 10);
+    journal.close();
+
+    journal = LogcatJournal.open(directory);
+    assertThat(journal.getEndBlock()).isEqualTo(4);
+    LogcatJournal.Page page = journal.readPageAfter(0, null, Integer.MAX_VALUE);
+    List<String> lines = getLines(page);
+    assertThat(lines).hasSize(3 * LogcatJournal.BLOCK_LINES + 10);
+    assertThat(lines.get(0)).isEqualTo("01-23 12:34:00.000: I/Tag(123): line 0");
+    assertThat(page.getStartTime()).isEqualTo("01-23 12:34:00.000");
+
+    // New lines are appended to the recorded ones.
+    addLines(journal, "Tag", lines.size(), lines.size() + 1);
+    journal.flush();
+    assertThat(getLines(journal.readPageAfter(0, null, Integer.MAX_VALUE))).hasSize(lines.size() + 1);
+  }
+
+  @Test
+  public void pagesAreReadBackwards() throws Exception {
+    LogcatJournal journal = LogcatJournal.open(myFolder.newFolder());
+    addLines(journal, "Tag", 0, 3 * LogcatJournal.BLOCK_LINES);
+    journal.flush();
+
+    LogcatJournal.Page last = journal.readPageBefore(journal.getEndBlock(), null, LogcatJournal.BLOCK_LINES);
+    assertThat(last.getStartBlock()).isEqualTo(2);
+    assertThat(last.getLines().get(0).getMessage()).isEqualTo("line " + 2 * LogcatJournal.BLOCK_LINES);
+
+    LogcatJournal.Page previous = journal.readPageBefore(last.getStartBlock(), null, LogcatJournal.BLOCK_LINES);
+    assertThat(previous.getStartBlock()).isEqualTo(1);
+    assertThat(previous.getEndBlock()).isEqualTo(2);
+
+    LogcatJournal.Page first = journal.readPageBefore(0, null, LogcatJournal.BLOCK_LINES);
+    assertThat(first.getLines()).isEmpty();
+    assertThat(first.getStartTime()).isNull();
+  }
+
+  @Test
+  public void filterIsAppliedToMessages() throws Exception {
+    LogcatJournal journal = LogcatJournal.open(myFolder.newFolder());
+    addLines(journal, "Ignored", 0, 2 * LogcatJournal.BLOCK_LINES);
+    LogCatHeader header = createHeader("Selected", "12:35:00.000");
+    journal.addMessage(new LogCatMessage(header, "Line1"));
+    journal.addMessage(new LogCatMessage(header, "Line2 selected"));
+    journal.flush();
+
+    AndroidLogcatFilter filter =
+      new DefaultAndroidLogcatFilter.Builder("filter").setMessagePattern(Pattern.compile("selected")).build();
+    assertThat(getLines(journal.readPageBefore(journal.getEndBlock(), filter, 100)))
+      .containsExactly("01-23 12:35:00.000: I/Selected(123): Line1", "01-23 12:35:00.000: I/Selected(123): Line2 selected").inOrder();
+
+    AndroidLogcatFilter tagFilter = new DefaultAndroidLogcatFilter.Builder("tag").setTagPattern(Pattern.compile("Sel")).build();
+    assertThat(getLines(journal.readPageAfter(0, tagFilter, 100))).hasSize(2);
+  }
+
+  @Test
+  public void closedJournalIsReleased() throws Exception {
+    File directory = myFolder.newFolder();
+    LogcatJournal journal = LogcatJournal.open(directory);
+    addLines(journal, "Tag", 0, LogcatJournal.BLOCK_LINES + 1);
+    journal.close();
+
+    assertThat(journal.getEndBlock()).isEqualTo(0);
+    assertThat(journal.readPageAfter(0, null, Integer.MAX_VALUE).getLines()).isEmpty();
+    addLines(journal, "Tag", 0, 1);
+    journal.flush();
+
+    journal = LogcatJournal.open(directory);
+    assertThat(journal.getEndBlock()).isEqualTo(2);
+    assertThat(getLines(journal.readPageAfter(0, null, Integer.MAX_VALUE))).hasSize(LogcatJournal.BLOCK_LINES + 1);
+  }
+
+  @Test
+  public void partiallyWrittenBlockIsDropped() throws Exception {
+    File directory = myFolder.newFolder();
+    LogcatJournal journal = LogcatJournal.open(directory);
+    addLines(journal, "Tag", 0, LogcatJournal.BLOCK_LINES + 1);
+    journal.close();
+
+    File data = new File(directory, "0.logcat");
+    try (RandomAccessFile file = new RandomAccessFile(data, "rw")) {
+      file.setLength(file.length() - 1);
+    }
+
+    journal = LogcatJournal.open(directory);
+    assertThat(journal.getEndBlock()).isEqualTo(1);
+    assertThat(getLines(journal.readPageAfter(0, null, Integer.MAX_VALUE))).hasSize(LogcatJournal.BLOCK_LINES);
+  }
+
+  private static void addLines(LogcatJournal journal, String tag, int from, int to) {
+    for (int i = from; i < to; i++) {
+      // One message per line.
+      journal.addMessage(new LogCatMessage(createHeader(tag, "12:34:00.000"), "line " + i));
+    }
+  }
+
+  private static LogCatHeader createHeader(String tag, String time) {
+    return new LogCatHeader(LogLevel.INFO, 123, 456, "com.android.sample", tag, LogCatTimestamp.fromString("01-23 " + time));
+  }
+
+  private static List<String> getLines(LogcatJournal.Page page) {
+    List<String> lines = new ArrayList<>();
+    page.getLines().forEach(line -> lines.add(line.toString()));
+    return lines;
+  }
+}
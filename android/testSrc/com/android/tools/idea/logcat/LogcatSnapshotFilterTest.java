@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class LogcatSnapshotFilterTest {
+  private String myBufferSize;
+  private ExecutorService myExecutor;
+
+  @Before
+  public void setUp() throws Exception {
+    myBufferSize = System.setProperty("idea.cycle.buffer.size", "disabled");
+    myExecutor = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    myExecutor.shutdownNow();
+    if (myBufferSize != null) {
+      System.setProperty("idea.cycle.buffer.size", myBufferSize);
+    }
+    else {
+      System.clearProperty("idea.cycle.buffer.size");
+    }
+  }
+
+  @Test
+  public void acceptedLinesArePassedInOrder() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer();
+    int count = 5 * LogcatSnapshotFilter.RANGE_SIZE + 123;
+    for (int i = 0; i < count; i++) {
+      buffer.addMessage(new LogCatMessage(createHeader(i % 3 == 0 ? "Even" : "Odd"), "line " + i));
+    }
+
+    List<String> lines = new ArrayList<>();
+    createFilter("Even").forEachAccepted(buffer.getSnapshot(), line -> lines.add(line.getMessage()));
+
+    assertThat(lines).hasSize((count + 2) / 3);
+    for (int i = 0; i < lines.size(); i++) {
+      assertThat(lines.get(i)).isEqualTo("line " + i * 3);
+    }
+  }
+
+  @Test
+  public void messagesAreAcceptedAsWhole() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer();
+    // A multi-line message straddling two ranges, whose last line only matches.
+    for (int i = 0; i < LogcatSnapshotFilter.RANGE_SIZE - 1; i++) {
+      buffer.addMessage(new LogCatMessage(createHeader("Tag"), "before"));
+    }
+    LogCatHeader header = createHeader("Tag");
+    buffer.addMessage(new LogCatMessage(header, "Line1"));
+    buffer.addMessage(new LogCatMessage(header, "Line2"));
+    buffer.addMessage(new LogCatMessage(header, "Line3 match"));
+    buffer.addMessage(new LogCatMessage(createHeader("Tag"), "after"));
+
+    List<String> lines = new ArrayList<>();
+    new LogcatSnapshotFilter(new DefaultAndroidLogcatFilter.Builder("test").setMessagePattern(Pattern.compile("match")).build(), myExecutor)
+      .forEachAccepted(buffer.getSnapshot(), line -> lines.add(line.getMessage()));
+    assertThat(lines).containsExactly("Line1", "Line2", "Line3 match").inOrder();
+  }
+
+  private LogcatSnapshotFilter createFilter(String tag) {
+    return new LogcatSnapshotFilter(new DefaultAndroidLogcatFilter.Builder("test").setTagPattern(Pattern.compile(tag)).build(), myExecutor);
+  }
+
+  private static LogCatHeader createHeader(String tag) {
+    return new LogCatHeader(LogLevel.INFO, 123, 456, "com.android.sample", tag, LogCatTimestamp.fromString("01-23 12:34:56.789"));
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.google.common.io.ByteStreams;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ConvertedClassCacheTest {
+  private static final long MAX_MEMORY_BYTES = 1024 * 1024;
+
+  private File myDirectory;
+
+  @Before
+  public void before() throws IOException {
+    myDirectory = FileUtil.createTempDirectory("class-cache", null);
+  }
+
+  @After
+  public void after() {
+    FileUtil.delete(myDirectory);
+  }
+
+  private static byte[] getClassData(Class<?> aClass) throws IOException {
+    try (InputStream is = aClass.getResourceAsStream(aClass.getSimpleName() + ".class")) {
+      return ByteStreams.toByteArray(is);
+    }
+  }
+
+  @Test
+  public void testCacheHits() throws IOException {
+    byte[] data = getClassData(ConvertedClassCacheTest.class);
+    ConvertedClassCache cache = new ConvertedClassCache(myDirectory, Long.MAX_VALUE, MAX_MEMORY_BYTES, Runnable::run);
+
+    byte[] rewritten = cache.rewriteClass(data, 15);
+    assertArrayEquals(ClassConverter.rewriteClass(data, 15), rewritten);
+    assertSame(rewritten, cache.rewriteClass(data, 15));
+    assertEquals(1, cache.getStats().getMissCount());
+    assertEquals(1, cache.getStats().getMemoryHitCount());
+
+    // The conversion depends on the layoutlib API level
+    cache.rewriteClass(data, 16);
+    assertEquals(2, cache.getStats().getMissCount());
+
+    cache.clearMemoryCache();
+    assertArrayEquals(rewritten, cache.rewriteClass(data, 15));
+    assertEquals(1, cache.getStats().getDiskHitCount());
+    assertEquals(2, cache.getStats().getMissCount());
+
+    // The conversions are still there after a restart
+    ConvertedClassCache restarted = new ConvertedClassCache(myDirectory, Long.MAX_VALUE, MAX_MEMORY_BYTES, Runnable::run);
+    assertArrayEquals(rewritten, restarted.rewriteClass(data, 15));
+    assertEquals(1, restarted.getStats().getDiskHitCount());
+    assertEquals(0, restarted.getStats().getMissCount());
+  }
+
+  @Test
+  public void testDiskHitInSandbox() throws IOException {
+    byte[] data1 = getClassData(ConvertedClassCacheTest.class);
+    byte[] data2 = getClassData(ClassConverterTest.class);
+    List<Runnable> pendingTasks = new ArrayList<>();
+    ConvertedClassCache cache = new ConvertedClassCache(myDirectory, Long.MAX_VALUE, MAX_MEMORY_BYTES, pendingTasks::add);
+
+    byte[] rewritten1 = cache.rewriteClass(data1, 15);
+    runAll(pendingTasks);
+    File cacheFile1 = getOnlyCacheFile();
+    assertTrue(cacheFile1.setLastModified(0));
+    byte[] rewritten2 = cache.rewriteClass(data2, 15);
+    runAll(pendingTasks);
+    File cacheFile2 = myDirectory.listFiles((dir, name) -> name.endsWith(".class") && !name.equals(cacheFile1.getName()))[0];
+    FileUtil.writeToFile(cacheFile2, "corrupted");
+    cache.clearMemoryCache();
+
+    // The cache directory is in the temp directory, where the sandbox allows writes, so pretend the temp directory is somewhere else
+    String tempDir = System.getProperty("java.io.tmpdir");
+    Object credential = new Object();
+    RenderSecurityManager manager;
+    try {
+      System.setProperty("java.io.tmpdir", new File(myDirectory, "render-temp").getPath());
+      manager = new RenderSecurityManager(null, null);
+    }
+    finally {
+      System.setProperty("java.io.tmpdir", tempDir);
+    }
+    try {
+      manager.setActive(true, credential);
+      assertArrayEquals(rewritten1, cache.rewriteClass(data1, 15));
+      assertArrayEquals(rewritten2, cache.rewriteClass(data2, 15));
+      // The pooled threads created by the render thread are sandboxed too
+      runAll(pendingTasks);
+    }
+    finally {
+      manager.dispose(credential);
+    }
+
+    assertEquals(1, cache.getStats().getDiskHitCount());
+    assertEquals(3, cache.getStats().getMissCount());
+    // The disk hit was marked as recently used and the corrupted entry replaced
+    assertTrue(cacheFile1.lastModified() > 0);
+    assertArrayEquals(rewritten2, FileUtil.loadFileBytes(cacheFile2));
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+    byte[] data1 = getClassData(ConvertedClassCacheTest.class);
+    byte[] data2 = getClassData(ClassConverterTest.class);
+    byte[] data3 = getClassData(ImagePoolTest.class);
+    long classSize = ClassConverter.rewriteClass(data1, 15).length;
+    ConvertedClassCache cache = new ConvertedClassCache(myDirectory, classSize + 1, MAX_MEMORY_BYTES, Runnable::run);
+
+    cache.rewriteClass(data1, 15);
+    cache.rewriteClass(data2, 15);
+    cache.rewriteClass(data3, 15);
+    File[] files = myDirectory.listFiles((dir, name) -> name.endsWith(".class"));
+    assertNotNull(files);
+    assertTrue(files.length < 3);
+  }
+
+  private static void runAll(@NotNull List<Runnable> tasks) {
+    List<Runnable> toRun = new ArrayList<>(tasks);
+    tasks.clear();
+    toRun.forEach(Runnable::run);
+  }
+
+  @NotNull
+  private File getOnlyCacheFile() {
+    File[] files = myDirectory.listFiles((dir, name) -> name.endsWith(".class"));
+    assertNotNull(files);
+    assertEquals(1, files.length);
+    return files[0];
+  }
+}
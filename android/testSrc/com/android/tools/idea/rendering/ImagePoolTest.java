@@ -121,6 +121,93 @@ public class ImagePoolTest {
     assertNotEquals(internalPtr, myPool.create(10, 10, BufferedImage.TYPE_INT_ARGB, null).myBuffer);
   }
 
+  @Test
+  public void testByteBudget() throws InterruptedException {
+    // Room for two 50x50 ARGB images
+    ImagePool pool = new ImagePool((w, h) -> (type) -> 10, 2 * 50 * 50 * 4);
+    try {
+      CountDownLatch countDown1 = new CountDownLatch(1);
+      CountDownLatch countDown2 = new CountDownLatch(1);
+      CountDownLatch countDown3 = new CountDownLatch(1);
+      ImagePool.ImageImpl image1 = pool.create(50, 50, BufferedImage.TYPE_INT_ARGB, (image) -> countDown1.countDown());
+      ImagePool.ImageImpl image2 = pool.create(50, 50, BufferedImage.TYPE_INT_ARGB, (image) -> countDown2.countDown());
+      ImagePool.ImageImpl image3 = pool.create(50, 50, BufferedImage.TYPE_INT_ARGB_PRE, (image) -> countDown3.countDown());
+      BufferedImage internalPtr2 = image2.myBuffer;
+      assertEquals(3 * 50 * 50 * 4, pool.getStats().getInUseBytes());
+
+      //noinspection UnusedAssignment
+      image1 = null;
+      gc();
+      countDown1.await(3, TimeUnit.SECONDS);
+      //noinspection UnusedAssignment
+      image2 = null;
+      gc();
+      countDown2.await(3, TimeUnit.SECONDS);
+      //noinspection UnusedAssignment
+      image3 = null;
+      gc();
+      countDown3.await(3, TimeUnit.SECONDS);
+
+      // The least recently freed image was evicted to stay within the budget
+      ImagePool.Stats stats = pool.getStats();
+      assertEquals(1, stats.getEvictionCount());
+      assertEquals(2, stats.getPooledImageCount());
+      assertEquals(2 * 50 * 50 * 4, stats.getPooledBytes());
+      assertEquals(0, stats.getInUseBytes());
+
+      assertEquals(internalPtr2, pool.create(50, 50, BufferedImage.TYPE_INT_ARGB, null).myBuffer);
+      stats = pool.getStats();
+      assertEquals(1, stats.getHitCount());
+      assertEquals(3, stats.getMissCount());
+      assertEquals(0.25, stats.getHitRate(), 0.001);
+    }
+    finally {
+      pool.dispose();
+    }
+  }
+
+  @Test
+  public void testTrim() throws InterruptedException {
+    long[] time = {0};
+    ImagePool pool = new ImagePool((w, h) -> (type) -> 10, 10 * 50 * 50 * 4, () -> time[0]);
+    try {
+      CountDownLatch countDown1 = new CountDownLatch(1);
+      CountDownLatch countDown2 = new CountDownLatch(1);
+      ImagePool.ImageImpl image1 = pool.create(50, 50, BufferedImage.TYPE_INT_ARGB, (image) -> countDown1.countDown());
+      ImagePool.ImageImpl image2 = pool.create(50, 50, BufferedImage.TYPE_INT_ARGB, (image) -> countDown2.countDown());
+      BufferedImage internalPtr2 = image2.myBuffer;
+
+      //noinspection UnusedAssignment
+      image1 = null;
+      gc();
+      countDown1.await(3, TimeUnit.SECONDS);
+      time[0] = TimeUnit.SECONDS.toNanos(10);
+      //noinspection UnusedAssignment
+      image2 = null;
+      gc();
+      countDown2.await(3, TimeUnit.SECONDS);
+      assertEquals(2, pool.getStats().getPooledImageCount());
+
+      // Only the image freed more than 5s ago is dropped
+      time[0] = TimeUnit.SECONDS.toNanos(12);
+      pool.trimIdle(TimeUnit.SECONDS.toNanos(5));
+      ImagePool.Stats stats = pool.getStats();
+      assertEquals(1, stats.getPooledImageCount());
+      assertEquals(50 * 50 * 4, stats.getPooledBytes());
+      assertEquals(1, stats.getEvictionCount());
+
+      pool.trim();
+      stats = pool.getStats();
+      assertEquals(0, stats.getPooledImageCount());
+      assertEquals(0, stats.getPooledBytes());
+      assertEquals(2, stats.getEvictionCount());
+      assertNotEquals(internalPtr2, pool.create(50, 50, BufferedImage.TYPE_INT_ARGB, null).myBuffer);
+    }
+    finally {
+      pool.dispose();
+    }
+  }
+
   @Test
   public void testImageCopy() throws IOException {
     BufferedImage original = getSampleImage();
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.ide.common.rendering.api.ViewInfo;
+import com.android.tools.idea.configurations.Configuration;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.psi.xml.XmlTag;
+import org.jetbrains.android.AndroidTestCase;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class RenderResultCacheTest extends AndroidTestCase {
+  private static final String LAYOUT = "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+                                       "    android:layout_width=\"match_parent\"\n" +
+                                       "    android:layout_height=\"match_parent\">\n" +
+                                       "  <Button android:layout_width=\"wrap_content\" android:layout_height=\"wrap_content\" />\n" +
+                                       "  <TextView android:layout_width=\"wrap_content\" android:layout_height=\"wrap_content\" />\n" +
+                                       "</LinearLayout>";
+
+  private File myDirectory;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    myDirectory = FileUtil.createTempDirectory("render-cache", null);
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myDirectory);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testCachedRenderIsReadBack() {
+    XmlFile file = (XmlFile)myFixture.addFileToProject("res/layout/layout.xml", LAYOUT);
+    RenderResultCache cache = new RenderResultCache(myDirectory, Long.MAX_VALUE, Runnable::run);
+    put(cache, "key", createResult(file));
+
+    assertNull(cache.get("other", file, myModule));
+    RenderResult cached = cache.get("key", file, myModule);
+    assertNotNull(cached);
+    assertTrue(cached.getRenderResult().isSuccess());
+    assertNull(cached.getRenderTask());
+    assertEquals(20, cached.getRenderedImage().getWidth());
+    assertEquals(30, cached.getRenderedImage().getHeight());
+
+    assertEquals(1, cached.getRootViews().size());
+    ViewInfo root = cached.getRootViews().get(0);
+    assertEquals("android.widget.LinearLayout", root.getClassName());
+    assertSame(file.getRootTag(), ((TagSnapshot)root.getCookie()).tag);
+    assertEquals(2, root.getChildren().size());
+    ViewInfo textView = root.getChildren().get(1);
+    assertEquals("android.widget.TextView", textView.getClassName());
+    assertSame(file.getRootTag().getSubTags()[1], ((TagSnapshot)textView.getCookie()).tag);
+    assertEquals(10, textView.getTop());
+    assertEquals(20, textView.getBottom());
+  }
+
+  public void testLeastRecentlyUsedRendersAreEvicted() {
+    XmlFile file = (XmlFile)myFixture.addFileToProject("res/layout/layout.xml", LAYOUT);
+    RenderResult result = createResult(file);
+    put(new RenderResultCache(myDirectory, Long.MAX_VALUE, Runnable::run), "first", result);
+    File first = new File(myDirectory, "first.render");
+    long entrySize = first.length();
+    assertTrue(entrySize > 0);
+    assertTrue(first.setLastModified(System.currentTimeMillis() - 60000));
+
+    // Room for one and a half entries
+    RenderResultCache cache = new RenderResultCache(myDirectory, entrySize * 3 / 2, Runnable::run);
+    put(cache, "second", result);
+    assertNull(cache.get("first", file, myModule));
+    assertNotNull(cache.get("second", file, myModule));
+  }
+
+  public void testStampChangesOnUnsavedEditsOfIncludedLayouts() {
+    XmlFile included = (XmlFile)myFixture.addFileToProject("res/layout/included.xml", LAYOUT);
+    XmlFile file = (XmlFile)myFixture.addFileToProject("res/layout/layout.xml",
+                                                       "<FrameLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+                                                       "    android:layout_width=\"match_parent\"\n" +
+                                                       "    android:layout_height=\"match_parent\">\n" +
+                                                       "  <include layout=\"@layout/included\" />\n" +
+                                                       "</FrameLayout>");
+    Configuration configuration = myFacet.getConfigurationManager().getConfiguration(file.getVirtualFile());
+    List<Long> stamp = RenderResultCache.computeStamp(myFacet, file, configuration);
+    assertEquals(stamp, RenderResultCache.computeStamp(myFacet, file, configuration));
+
+    Document document = FileDocumentManager.getInstance().getDocument(included.getVirtualFile());
+    assertNotNull(document);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> document.insertString(0, "<!-- unsaved -->"));
+    assertTrue(FileDocumentManager.getInstance().isDocumentUnsaved(document));
+    assertFalse(stamp.equals(RenderResultCache.computeStamp(myFacet, file, configuration)));
+  }
+
+  private RenderResult createResult(XmlFile file) {
+    XmlTag rootTag = file.getRootTag();
+    assertNotNull(rootTag);
+    XmlTag[] subTags = rootTag.getSubTags();
+    ViewInfo button = new ViewInfo("android.widget.Button", TagSnapshot.createTagSnapshotWithoutChildren(subTags[0]), 0, 0, 10, 10);
+    ViewInfo textView = new ViewInfo("android.widget.TextView", TagSnapshot.createTagSnapshotWithoutChildren(subTags[1]), 0, 10, 10, 20);
+    ViewInfo root = new ViewInfo("android.widget.LinearLayout", TagSnapshot.createTagSnapshotWithoutChildren(rootTag), 0, 0, 20, 30);
+    root.setChildren(Arrays.asList(button, textView));
+
+    //noinspection UndesirableClassUsage
+    BufferedImage image = new BufferedImage(20, 30, BufferedImage.TYPE_INT_ARGB);
+    return RenderResult.createCached(file, myModule, Collections.singletonList(root), new ImagePool().copyOf(image));
+  }
+
+  private static void put(RenderResultCache cache, String key, RenderResult result) {
+    ApplicationManager.getApplication().runReadAction(() -> cache.put(key, result));
+  }
+}
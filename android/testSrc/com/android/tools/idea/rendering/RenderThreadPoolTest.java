@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RenderThreadPoolTest {
+  private final RenderThreadPool myPool = new RenderThreadPool();
+
+  @After
+  public void tearDown() {
+    myPool.shutdownNow();
+  }
+
+  @Test
+  public void testActionsRunInPriorityOrder() throws Exception {
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Future<?> blocker = myPool.submit(null, RenderService.Priority.NORMAL, () -> {
+      blocked.countDown();
+      release.await();
+      return null;
+    });
+    assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    List<Future<?>> futures = new ArrayList<>();
+    futures.add(myPool.submit(null, RenderService.Priority.LOW, () -> order.add("low")));
+    futures.add(myPool.submit(null, RenderService.Priority.NORMAL, () -> order.add("normal 1")));
+    futures.add(myPool.submit(null, RenderService.Priority.HIGH, () -> order.add("high")));
+    futures.add(myPool.submit(null, RenderService.Priority.NORMAL, () -> order.add("normal 2")));
+    assertEquals(4, myPool.getMetrics().getQueueDepth());
+
+    release.countDown();
+    blocker.get(10, TimeUnit.SECONDS);
+    for (Future<?> future : futures) {
+      future.get(10, TimeUnit.SECONDS);
+    }
+    assertEquals(Arrays.asList("high", "normal 1", "normal 2", "low"), order);
+
+    RenderThreadPool.Metrics metrics = myPool.getMetrics();
+    assertEquals(0, metrics.getQueueDepth());
+    assertEquals(4, metrics.getMaxQueueDepth());
+    assertEquals(1, metrics.getCompletedCount(RenderService.Priority.HIGH));
+    assertEquals(3, metrics.getCompletedCount(RenderService.Priority.NORMAL));
+    assertEquals(1, metrics.getCompletedCount(RenderService.Priority.LOW));
+  }
+
+  @Test
+  public void testNestedActionsRunInline() throws Exception {
+    Future<Thread> nested = myPool.submit(null, RenderService.Priority.LOW, () -> {
+      Future<Thread> inner = myPool.submit(null, RenderService.Priority.HIGH, Thread::currentThread);
+      assertTrue(inner.isDone());
+      assertSame(Thread.currentThread(), inner.get());
+      return inner.get();
+    });
+    assertSame(myPool.getThread(null), nested.get(10, TimeUnit.SECONDS));
+  }
+}
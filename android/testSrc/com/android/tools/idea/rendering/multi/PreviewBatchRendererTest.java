@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering.multi;
+
+import com.android.tools.idea.configurations.Configuration;
+import com.android.tools.idea.rendering.RenderTestBase;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.testFramework.PlatformTestUtil;
+import org.jetbrains.android.facet.AndroidFacet;
+
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+public class PreviewBatchRendererTest extends RenderTestBase {
+  private static final int THUMBNAIL_SIZE = 200;
+
+  public void testScreens() throws Exception {
+    VirtualFile file = myFixture.copyFileToProject("xmlpull/simple.xml", "res/layout/simple.xml");
+    Configuration configuration = getConfiguration(file, DEFAULT_DEVICE_ID);
+    List<Configuration> configurations = PreviewBatchRenderer.createConfigurations(configuration, RenderPreviewMode.SCREENS);
+    assertFalse(configurations.isEmpty());
+
+    Map<Configuration, BufferedImage> thumbnails = Collections.synchronizedMap(new IdentityHashMap<>());
+    PreviewBatchRenderer.Stats stats =
+      createRenderer(file).render(configurations, THUMBNAIL_SIZE, (config, thumbnail, logger) -> thumbnails.put(config, thumbnail))
+        .get(2, TimeUnit.MINUTES);
+
+    assertEquals(configurations.size(), stats.getConfigurationCount());
+    assertEquals(0, stats.getFailedCount());
+    assertEquals(configurations.size(), thumbnails.size());
+    for (BufferedImage thumbnail : thumbnails.values()) {
+      assertNotNull(thumbnail);
+      assertTrue(thumbnail.getWidth() <= THUMBNAIL_SIZE && thumbnail.getHeight() <= THUMBNAIL_SIZE);
+    }
+  }
+
+  public void testApiLevelsUseCompatibilityTargets() throws Exception {
+    VirtualFile file = myFixture.copyFileToProject("xmlpull/simple.xml", "res/layout/simple.xml");
+    Configuration configuration = getConfiguration(file, DEFAULT_DEVICE_ID);
+    List<Configuration> configurations = PreviewBatchRenderer.createConfigurations(configuration, RenderPreviewMode.API_LEVELS);
+    assertFalse(configurations.isEmpty());
+    for (Configuration apiConfiguration : configurations) {
+      assertTrue(apiConfiguration.getTarget() instanceof CompatibilityRenderTarget);
+    }
+    assertTrue(PreviewBatchRenderer.createConfigurations(configuration, RenderPreviewMode.CUSTOM).isEmpty());
+  }
+
+  public void testRendererIsReusedAcrossBatches() throws Exception {
+    VirtualFile file = myFixture.copyFileToProject("xmlpull/simple.xml", "res/layout/simple.xml");
+    Configuration configuration = getConfiguration(file, DEFAULT_DEVICE_ID);
+    List<Configuration> configurations = PreviewBatchRenderer.createConfigurations(configuration, RenderPreviewMode.SCREENS);
+    PreviewBatchRenderer renderer = createRenderer(file);
+
+    for (int i = 0; i < 2; i++) {
+      PreviewBatchRenderer.Stats stats =
+        renderer.render(configurations, THUMBNAIL_SIZE, (config, thumbnail, logger) -> {}).get(2, TimeUnit.MINUTES);
+      assertEquals(configurations.size(), stats.getConfigurationCount());
+      assertEquals(0, stats.getFailedCount());
+      assertTrue(stats.getElapsedMs() >= 0);
+      assertTrue(stats.getThroughput() >= 0);
+    }
+  }
+
+  /**
+   * Benchmark of the preview throughput
+   */
+  public void testThroughput() throws Exception {
+    VirtualFile file = myFixture.copyFileToProject("xmlpull/simple.xml", "res/layout/simple.xml");
+    Configuration configuration = getConfiguration(file, DEFAULT_DEVICE_ID);
+    List<Configuration> configurations = PreviewBatchRenderer.createConfigurations(configuration, RenderPreviewMode.SCREENS);
+    PreviewBatchRenderer renderer = createRenderer(file);
+    // Warm up: the first batch loads layoutlib and the framework resources
+    renderer.render(configurations, THUMBNAIL_SIZE, (config, thumbnail, logger) -> {}).get(2, TimeUnit.MINUTES);
+
+    PlatformTestUtil.startPerformanceTest("preview batch of " + configurations.size() + " screens", 20000, () -> {
+      PreviewBatchRenderer.Stats stats =
+        renderer.render(configurations, THUMBNAIL_SIZE, (config, thumbnail, logger) -> {}).get(2, TimeUnit.MINUTES);
+      assertEquals(0, stats.getFailedCount());
+    }).attempts(2).usesAllCPUCores().assertTiming();
+  }
+
+  private PreviewBatchRenderer createRenderer(VirtualFile file) {
+    AndroidFacet facet = AndroidFacet.getInstance(myModule);
+    assertNotNull(facet);
+    XmlFile psiFile = (XmlFile)PsiManager.getInstance(getProject()).findFile(file);
+    assertNotNull(psiFile);
+    return new PreviewBatchRenderer(facet, psiFile);
+  }
+}
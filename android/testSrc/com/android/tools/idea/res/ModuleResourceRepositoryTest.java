@@ -21,6 +21,10 @@ import com.android.ide.common.res2.ResourceItem;
 import com.android.ide.common.resources.configuration.FolderConfiguration;
 import com.android.resources.ResourceType;
 import com.android.tools.lint.detector.api.LintUtils;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Sets;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.util.Condition;
@@ -178,6 +182,7 @@ public class ModuleResourceRepositoryTest extends AndroidTestCase {
     assertFalse(resources.hasResourceItem(ResourceType.LAYOUT, "layout2"));
     ResourceItem layout1 = getSingleItem(resources, ResourceType.LAYOUT, "layout1");
     assertItemIsInDir(res2, layout1);
+    int fullMergeCount = resources.getMergeStats().getFullMergeCount();
 
     long generation = resources.getModificationCount();
     WriteCommandAction.runWriteCommandAction(null, new Runnable() {
@@ -203,6 +208,11 @@ public class ModuleResourceRepositoryTest extends AndroidTestCase {
     ResourceItem layout2 = getSingleItem(resources, ResourceType.LAYOUT, "layout2");
     assertItemIsInDir(res2, layout2);
 
+    // Only the renamed layouts were merged again
+    MultiResourceRepository.MergeStats mergeStats = resources.getMergeStats();
+    assertEquals(fullMergeCount, mergeStats.getFullMergeCount());
+    assertTrue(mergeStats.getIncrementalMergeCount() > 0);
+
     // Now rename layout1 to layout2 to hide it again
     generation = resources.getModificationCount();
     WriteCommandAction.runWriteCommandAction(null, new Runnable() {
@@ -371,6 +381,95 @@ public class ModuleResourceRepositoryTest extends AndroidTestCase {
     assertStringIs(resources, "title_layout_changes", "New Layout Changes", false);
   }
 
+  public void testIncrementalMerges() {
+    // Check that merging only the changed names gives the same items as merging everything again, across overlays,
+    // ids defined in several folders and items shadowed by items with the same qualifiers
+    myFixture.copyFileToProject(LAYOUT, "res/layout/layout1.xml");
+    final VirtualFile layoutOverlay = myFixture.copyFileToProject(LAYOUT_OVERLAY, "res2/layout/layout1.xml");
+    VirtualFile layoutIds1 = myFixture.copyFileToProject(LAYOUT_IDS_1, "res2/layout/layout_ids1.xml");
+    final VirtualFile layoutIds2 = myFixture.copyFileToProject(LAYOUT_IDS_2, "res3/layout/layout_ids2.xml");
+    VirtualFile res1 = myFixture.copyFileToProject(VALUES, "res/values/values.xml").getParent().getParent();
+    VirtualFile res2 = myFixture.copyFileToProject(VALUES_OVERLAY1, "res2/values/values.xml").getParent().getParent();
+    VirtualFile values3 = myFixture.copyFileToProject(VALUES_OVERLAY2, "res3/values/nameDoesNotMatter.xml");
+    VirtualFile res3 = values3.getParent().getParent();
+    myFixture.copyFileToProject(VALUES_OVERLAY2_NO, "res3/values-no/values.xml");
+    ModuleResourceRepository resources = ModuleResourceRepository.createForTest(myFacet, Arrays.asList(res1, res2, res3));
+
+    assertSize(2, resources.getResourceItem(ResourceType.ID, "my_id")); // from res2 and res3
+    assertItemIsInDir(res2, getSingleItem(resources, ResourceType.LAYOUT, "layout1"));
+    assertStringIs(resources, "app_name", "Very Different App Name", false); // res3
+    assertSameAsFullMerge(resources);
+    int fullMergeCount = resources.getMergeStats().getFullMergeCount();
+
+    // Edit a value overriding the values of res1 and res2
+    final PsiDocumentManager documentManager = PsiDocumentManager.getInstance(getProject());
+    PsiFile psiValues3 = PsiManager.getInstance(getProject()).findFile(values3);
+    assertNotNull(psiValues3);
+    final Document document = documentManager.getDocument(psiValues3);
+    assertNotNull(document);
+    WriteCommandAction.runWriteCommandAction(null, new Runnable() {
+      @Override
+      public void run() {
+        int offset = document.getText().indexOf("Very Different App Name");
+        document.insertString(offset, "Not ");
+        documentManager.commitDocument(document);
+      }
+    });
+    UIUtil.dispatchAllInvocationEvents();
+    assertStringIs(resources, "app_name", "Not Very Different App Name", false);
+    assertSameAsFullMerge(resources);
+
+    // Rename it, so the shadowed value of res2 shows through again
+    WriteCommandAction.runWriteCommandAction(null, new Runnable() {
+      @Override
+      public void run() {
+        int offset = document.getText().indexOf("app_name");
+        document.insertString(offset, "r");
+        documentManager.commitDocument(document);
+      }
+    });
+    assertTrue(resources.hasResourceItem(ResourceType.STRING, "rapp_name"));
+    assertSameAsFullMerge(resources);
+
+    // Rename one of the duplicate ids
+    PsiFile psiLayoutIds1 = PsiManager.getInstance(getProject()).findFile(layoutIds1);
+    assertNotNull(psiLayoutIds1);
+    final Document layoutDocument = documentManager.getDocument(psiLayoutIds1);
+    assertNotNull(layoutDocument);
+    WriteCommandAction.runWriteCommandAction(null, new Runnable() {
+      @Override
+      public void run() {
+        int offset = layoutDocument.getText().indexOf("my_id");
+        layoutDocument.insertString(offset, "other_");
+        documentManager.commitDocument(layoutDocument);
+      }
+    });
+    UIUtil.dispatchAllInvocationEvents();
+    assertTrue(resources.hasResourceItem(ResourceType.ID, "other_my_id"));
+    assertSameAsFullMerge(resources);
+
+    // Delete the other one, and the layout overlay
+    WriteCommandAction.runWriteCommandAction(null, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          layoutIds2.delete(this);
+          layoutOverlay.rename(this, "layout2.xml");
+        }
+        catch (IOException e) {
+          fail(e.toString());
+        }
+      }
+    });
+    assertFalse(resources.hasResourceItem(ResourceType.ID, "my_id"));
+    assertItemIsInDir(res1, getSingleItem(resources, ResourceType.LAYOUT, "layout1"));
+    assertSameAsFullMerge(resources);
+
+    MultiResourceRepository.MergeStats mergeStats = resources.getMergeStats();
+    assertEquals(fullMergeCount, mergeStats.getFullMergeCount());
+    assertTrue(mergeStats.getIncrementalMergeCount() > 0);
+  }
+
   public void testHasResourcesOfType() {
     // Test hasResourcesOfType merging (which may be optimized to be lighter-weight than map merging).
     VirtualFile res1 = myFixture.copyFileToProject(LAYOUT, "res/layout/layout.xml").getParent().getParent();
@@ -453,6 +552,18 @@ public class ModuleResourceRepositoryTest extends AndroidTestCase {
 
   // Unit test support methods
 
+  /**
+   * Checks that the merged items of every resource type are the ones a full merge of the children gives
+   */
+  private static void assertSameAsFullMerge(MultiResourceRepository resources) {
+    for (ResourceType type : ResourceType.values()) {
+      ListMultimap<String, ResourceItem> expected = ArrayListMultimap.create();
+      resources.merge(Sets.<LocalResourceRepository>newHashSet(), type, HashMultimap.<String, String>create(), expected);
+      ListMultimap<String, ResourceItem> merged = resources.getMap(type, false);
+      assertEquals(type.getName(), expected, merged != null ? merged : ArrayListMultimap.<String, ResourceItem>create());
+    }
+  }
+
   static void assertItemIsInDir(VirtualFile dir, ResourceItem item) {
     ResourceFile resourceFile = item.getSource();
     assertNotNull(resourceFile);
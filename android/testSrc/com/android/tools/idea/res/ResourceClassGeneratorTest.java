@@ -278,6 +278,53 @@ public class ResourceClassGeneratorTest extends AndroidTestCase {
     styleableTestWithAars(generator);
   }
 
+  public void testIncrementalGeneration() throws Exception {
+    final ResourceRepository repository = TestResourceRepository.createRes2(false, new Object[]{
+      "values/strings.xml", "" +
+                            "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+                            "<resources>\n" +
+                            "    <item type=\"id\" name=\"action_bar_refresh\" />\n" +
+                            "    <string name=\"show_all_apps\">All</string>\n" +
+                            "</resources>\n",});
+    LocalResourceRepository resources = new LocalResourceRepository("test") {
+      @NonNull
+      @Override
+      protected Map<ResourceType, ListMultimap<String, ResourceItem>> getMap() {
+        return repository.getItems();
+      }
+
+      @Nullable
+      @Override
+      protected ListMultimap<String, ResourceItem> getMap(ResourceType type, boolean create) {
+        return repository.getItems().get(type);
+      }
+
+      @NotNull
+      @Override
+      protected Set<VirtualFile> computeResourceDirs() {
+        return ImmutableSet.of();
+      }
+    };
+    AppResourceRepository appResources = new AppResourceRepository(myFacet, Collections.singletonList(resources),
+                                                                   Collections.<FileResourceRepository>emptyList());
+    ResourceClassGenerator generator = ResourceClassGenerator.create(appResources);
+
+    byte[] strings = generator.generate("my.test.pkg.R$string");
+    byte[] ids = generator.generate("my.test.pkg.R$id");
+    assertNotNull(strings);
+    assertNotNull(ids);
+    assertSame(strings, generator.generate("my.test.pkg.R$string"));
+    // Each R package gets its own class
+    assertNotSame(strings, generator.generate("other.pkg.R$string"));
+
+    // Only the classes of the modified type are generated again, with the same ids
+    Object showAllApps = generateClass(generator, "my.test.pkg.R$string").getField("show_all_apps").get(null);
+    resources.setModified(ResourceType.STRING);
+    assertNotSame(strings, generator.generate("my.test.pkg.R$string"));
+    assertSame(ids, generator.generate("my.test.pkg.R$id"));
+    assertEquals(showAllApps, generateClass(generator, "my.test.pkg.R$string").getField("show_all_apps").get(null));
+  }
+
   private static void styleableTestWithAars(ResourceClassGenerator generator) throws Exception {
     Class<?> clz = generateClass(generator, "pkg.R$styleable");
     assertNotNull(clz);
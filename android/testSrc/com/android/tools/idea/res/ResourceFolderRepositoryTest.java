@@ -25,6 +25,7 @@ import com.android.resources.Density;
 import com.android.resources.ResourceFolderType;
 import com.android.resources.ResourceType;
 import com.android.tools.idea.databinding.DataBindingUtil;
+import com.google.common.collect.ListMultimap;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.editor.Document;
@@ -1290,6 +1291,11 @@ public class ResourceFolderRepositoryTest extends AndroidTestCase {
     assertNotNull(resourceValue);
     assertEquals("Scrn Slide", resourceValue.getValue());
 
+    // Only the strings changed
+    assertEquals(resources.getModificationCount(), resources.getModificationCount(ResourceType.STRING));
+    assertTrue(resources.getModificationCount(ResourceType.INTEGER) <= generation2);
+    assertTrue(resources.getModificationCount(ResourceType.LAYOUT) <= generation2);
+
     // Shouldn't have done any full file rescans during the above edits
     ensureIncremental();
   }
@@ -3964,6 +3970,74 @@ public class ResourceFolderRepositoryTest extends AndroidTestCase {
     assertTrue(fromBlob.hasResourceItem(ResourceType.STRING, "hello_there"));
   }
 
+  public void testSerializationTouchXmlFileAndLoad() throws Exception {
+    VirtualFile file1 = myFixture.copyFileToProject(STRINGS, "res/values/strings.xml");
+    File file1AsFile = VfsUtilCore.virtualToIoFile(file1);
+    myFixture.copyFileToProject(LAYOUT1, "res/layout/layout.xml");
+    final ResourceFolderRepository resources = createRepository();
+    assertNotNull(resources);
+    resources.saveStateToFile();
+    ResourceFolderRegistry.reset();
+
+    // A file which is rewritten with the same contents (e.g. by a version control operation) is validated by its checksum.
+    if (!file1AsFile.setLastModified(file1AsFile.lastModified() + 2000)) {
+      // Not supported on this platform?
+      return;
+    }
+
+    final ResourceFolderRepository fromBlob = createRepository();
+    assertNotNull(fromBlob);
+    assertTrue(fromBlob.hasFreshFileCache());
+    assertEquals(2, fromBlob.getInitialScanState().numXml);
+    assertEquals(0, fromBlob.getInitialScanState().numXmlReparsed);
+    assertTrue(fromBlob.equalFilesItems(resources));
+  }
+
+  public void testParallelScan() throws Exception {
+    for (int i = 0; i < 8; i++) {
+      myFixture.copyFileToProject(LAYOUT1, "res/layout/layout" + i + ".xml");
+      myFixture.copyFileToProject(LAYOUT_ID_SCAN, "res/layout-land/layout" + i + ".xml");
+      myFixture.copyFileToProject(VALUES1, "res/values-v" + (14 + i) + "/myvalues.xml");
+    }
+    myFixture.copyFileToProject(VALUES_WITH_DUPES, "res/values/values_with_duplicates.xml");
+    myFixture.copyFileToProject(LAYOUT_WITH_DATA_BINDING, "res/layout/layout_with_data_binding.xml");
+    myFixture.copyFileToProject(DRAWABLE, "res/drawable/logo.png");
+
+    int filesPerScanThread = ResourceFolderRepository.ourFilesPerScanThread;
+    try {
+      ResourceFolderRepository.ourFilesPerScanThread = Integer.MAX_VALUE;
+      ResourceFolderRepository serial = createRepository();
+      ResourceFolderRegistry.reset();
+      // Split the files between as many threads as possible
+      ResourceFolderRepository.ourFilesPerScanThread = 1;
+      ResourceFolderRepository parallel = createRepository();
+      assertNotSame(serial, parallel);
+
+      assertEquals(describeItems(serial), describeItems(parallel));
+      assertTrue(parallel.equalFilesItems(serial));
+    }
+    finally {
+      ResourceFolderRepository.ourFilesPerScanThread = filesPerScanThread;
+    }
+  }
+
+  /**
+   * Returns a description of the items of the given repository, in the order they are returned by the repository
+   */
+  @NotNull
+  private static List<String> describeItems(@NotNull ResourceFolderRepository repository) {
+    List<String> descriptions = new ArrayList<>();
+    for (Map.Entry<ResourceType, ListMultimap<String, ResourceItem>> entry : repository.getMap().entrySet()) {
+      for (ResourceItem item : entry.getValue().values()) {
+        ResourceValue value = item.getResourceValue(false);
+        ResourceFile source = item.getSource();
+        descriptions.add(entry.getKey() + "/" + item.getName() + "-" + item.getQualifiers() + " " +
+                         (source != null ? source.getFile().getPath() : null) + " " + (value != null ? value.getValue() : null));
+      }
+    }
+    return descriptions;
+  }
+
   public void testSerializationAddXmlFileAndLoad() throws Exception {
     myFixture.copyFileToProject(STRINGS, "res/values/strings.xml");
     final ResourceFolderRepository resources = createRepository();
@@ -200,6 +200,88 @@ public class ResourceNotificationManagerTest extends AndroidTestCase {
     // TODO: Test that remove and replace editing also works as expected
   }
 
+  public void testDependenciesAndDeferredDelivery() {
+    @Language("XML") String xml = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+                                  "<resources>\n" +
+                                  "    <string name=\"hello\">Hello</string>\n" +
+                                  "</resources>";
+    XmlFile values = (XmlFile)myFixture.addFileToProject("res/values/strings.xml", xml);
+    @SuppressWarnings("ConstantConditions")
+    VirtualFile resourceDir = values.getParent().getParent().getVirtualFile();
+    ResourceNotificationManager manager = ResourceNotificationManager.getInstance(getProject());
+
+    // Listener 1: Doesn't depend on any resources
+    final Ref<Boolean> called1 = new Ref<>(false);
+    ResourceChangeListener listener1 = new ResourceChangeListener() {
+      @Override
+      public void resourcesChanged(@NotNull Set<Reason> reason) {
+        called1.set(true);
+      }
+
+      @Override
+      public Set<ResourceType> getResourceTypeDependencies() {
+        return EnumSet.noneOf(ResourceType.class);
+      }
+    };
+
+    // Listener 2: Depends on all resources, but is only notified while visible
+    final Ref<Boolean> visible2 = new Ref<>(false);
+    final Ref<ResourceNotificationManager.ResourceChange> calledValue2 = new Ref<>();
+    ResourceChangeListener listener2 = new ResourceChangeListener() {
+      @Override
+      public void resourcesChanged(@NotNull Set<Reason> reason) {
+        fail("Expected the change details to be delivered");
+      }
+
+      @Override
+      public void resourcesChanged(@NotNull ResourceNotificationManager.ResourceChange change) {
+        calledValue2.set(change);
+      }
+
+      @Override
+      public boolean isVisible() {
+        return visible2.get();
+      }
+    };
+
+    manager.addListener(listener1, myFacet, null, null);
+    manager.addListener(listener2, myFacet, null, null);
+
+    AndroidResourceUtil.createValueResource(getProject(), resourceDir, "color1", ResourceType.COLOR, "colors.xml",
+                                            Collections.singletonList("values"), "#fa2395");
+    UIUtil.dispatchAllInvocationEvents();
+    assertFalse(called1.get());
+    assertNull(calledValue2.get());
+
+    // The change is delivered once the listener is shown
+    visible2.set(true);
+    manager.listenerShown(listener2);
+    UIUtil.dispatchAllInvocationEvents();
+    assertNotNull(calledValue2.get());
+    assertEquals(EnumSet.of(Reason.RESOURCE_EDIT), calledValue2.get().getReasons());
+    assertTrue(calledValue2.get().getTypes().contains(ResourceType.COLOR));
+
+    // Nothing is left to deliver
+    calledValue2.set(null);
+    manager.listenerShown(listener2);
+    UIUtil.dispatchAllInvocationEvents();
+    assertNull(calledValue2.get());
+    assertFalse(called1.get());
+
+    // Changes held back for a listener are dropped when it's removed
+    visible2.set(false);
+    AndroidResourceUtil.createValueResource(getProject(), resourceDir, "color2", ResourceType.COLOR, "colors.xml",
+                                            Collections.singletonList("values"), "#fa2396");
+    UIUtil.dispatchAllInvocationEvents();
+    assertNull(calledValue2.get());
+    manager.removeListener(listener1, myFacet, null, null);
+    manager.removeListener(listener2, myFacet, null, null);
+    visible2.set(true);
+    manager.listenerShown(listener2);
+    UIUtil.dispatchAllInvocationEvents();
+    assertNull(calledValue2.get());
+  }
+
   private static void ensureCalled(final Ref<Boolean> called1,
                                    final Ref<Set<Reason>> calledValue1,
                                    final Ref<Boolean> called2,
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.inspections.lint;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.roots.ModuleRootModificationUtil;
+import com.intellij.testFramework.fixtures.IdeaProjectTestFixture;
+import com.intellij.testFramework.fixtures.TestFixtureBuilder;
+import org.jetbrains.android.AndroidTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.android.builder.model.AndroidProject.PROJECT_TYPE_APP;
+import static com.android.builder.model.AndroidProject.PROJECT_TYPE_LIBRARY;
+
+public class AndroidLintGlobalInspectionContextTest extends AndroidTestCase {
+  @Override
+  protected void configureAdditionalModules(@NotNull TestFixtureBuilder<IdeaProjectTestFixture> projectBuilder,
+                                            @NotNull List<MyAdditionalModuleData> modules) {
+    // The main app depends on the library, the second app doesn't unless the test adds the dependency
+    addModuleWithAndroidFacet(projectBuilder, modules, "lib", PROJECT_TYPE_LIBRARY);
+    addModuleWithAndroidFacet(projectBuilder, modules, "app2", PROJECT_TYPE_APP, false);
+  }
+
+  public void testAppsSharingLibraryFormOneGroup() {
+    Module lib = myAdditionalModules.get(0);
+    Module app2 = myAdditionalModules.get(1);
+    ModuleRootModificationUtil.addDependency(app2, lib);
+
+    List<List<Module>> partitions = AndroidLintGlobalInspectionContext.partitionModules(Arrays.asList(myModule, app2, lib));
+    assertEquals(Collections.singletonList(Arrays.asList(myModule, app2, lib)), partitions);
+  }
+
+  public void testIndependentAppsFormTwoGroups() {
+    Module lib = myAdditionalModules.get(0);
+    Module app2 = myAdditionalModules.get(1);
+
+    List<List<Module>> partitions = AndroidLintGlobalInspectionContext.partitionModules(Arrays.asList(myModule, app2, lib));
+    assertEquals(Arrays.asList(Arrays.asList(myModule, lib), Collections.singletonList(app2)), partitions);
+  }
+}
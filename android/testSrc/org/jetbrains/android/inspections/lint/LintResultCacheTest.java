@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.inspections.lint;
+
+import com.android.tools.lint.checks.ApiDetector;
+import com.android.tools.lint.checks.CommentDetector;
+import com.android.tools.lint.checks.HardcodedValuesDetector;
+import com.android.tools.lint.checks.WrongIdDetector;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.Scope;
+import com.google.common.collect.ImmutableList;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LintResultCacheTest {
+  private static final List<Issue> ISSUES = Arrays.asList(HardcodedValuesDetector.ISSUE, ApiDetector.UNSUPPORTED);
+
+  private Module myModule;
+  private VirtualFile myFile;
+
+  @Before
+  public void before() {
+    myModule = mock(Module.class);
+    myFile = mock(VirtualFile.class);
+    when(myFile.getPath()).thenReturn("/res/layout/main.xml");
+  }
+
+  private State createState(String content, long projectStamp, long contextStamp) {
+    return new State(myModule, myFile, content, ISSUES, ImmutableList.of(projectStamp), ImmutableList.of(contextStamp));
+  }
+
+  @Test
+  public void testLookups() {
+    LintResultCache cache = new LintResultCache();
+    ProblemData localProblem = new ProblemData(HardcodedValuesDetector.ISSUE, "Hardcoded string", new TextRange(1, 2), null);
+    ProblemData contextProblem = new ProblemData(ApiDetector.UNSUPPORTED, "Call requires API level 21", new TextRange(3, 4), null);
+    assertNull(cache.getProblems(createState("<a/>", 1, 1)));
+
+    cache.put(createState("<a/>", 1, 1), Arrays.asList(localProblem, contextProblem));
+    assertEquals(Arrays.asList(localProblem, contextProblem), cache.getProblems(createState("<a/>", 1, 1)));
+
+    // Content or project changes invalidate everything
+    assertNull(cache.getProblems(createState("<b/>", 1, 1)));
+    assertNull(cache.getFileLocalProblems(createState("<b/>", 1, 1), Scope.RESOURCE_FILE_SCOPE));
+    assertNull(cache.getFileLocalProblems(createState("<a/>", 2, 1), Scope.RESOURCE_FILE_SCOPE));
+
+    // Context changes only invalidate the problems of issues which look beyond the file
+    State contextChanged = createState("<a/>", 1, 2);
+    assertNull(cache.getProblems(contextChanged));
+    assertEquals(Arrays.asList(localProblem), cache.getFileLocalProblems(contextChanged, Scope.RESOURCE_FILE_SCOPE));
+
+    // A different set of issues doesn't match
+    State otherIssues = new State(myModule, myFile, "<a/>", Arrays.asList(HardcodedValuesDetector.ISSUE), ImmutableList.of(1L),
+                                  ImmutableList.of(1L));
+    assertNull(cache.getProblems(otherIssues));
+  }
+
+  @Test
+  public void testOtherFilesReuseFileLocalProblems() {
+    LintResultCache cache = new LintResultCache();
+    VirtualFile otherFile = mock(VirtualFile.class);
+    when(otherFile.getPath()).thenReturn("/res/layout/other.xml");
+    ProblemData localProblem = new ProblemData(HardcodedValuesDetector.ISSUE, "Hardcoded string", new TextRange(1, 2), null);
+    ProblemData otherProblem = new ProblemData(HardcodedValuesDetector.ISSUE, "Hardcoded string", new TextRange(5, 6), null);
+    cache.put(createState("<a/>", 1, 1), Arrays.asList(localProblem));
+    cache.put(new State(myModule, otherFile, "<b/>", ISSUES, ImmutableList.of(1L), ImmutableList.of(1L)), Arrays.asList(otherProblem));
+
+    // Editing main.xml changes its content and the resources of the module
+    assertNull(cache.getFileLocalProblems(createState("<a>text</a>", 1, 2), Scope.RESOURCE_FILE_SCOPE));
+    // The other open file is only checked again for the issues which depend on the resources
+    State otherState = new State(myModule, otherFile, "<b/>", ISSUES, ImmutableList.of(1L), ImmutableList.of(2L));
+    assertNull(cache.getProblems(otherState));
+    assertEquals(Arrays.asList(otherProblem), cache.getFileLocalProblems(otherState, Scope.RESOURCE_FILE_SCOPE));
+  }
+
+  @Test
+  public void testIsFileLocal() {
+    assertTrue(LintResultCache.isFileLocal(HardcodedValuesDetector.ISSUE, Scope.RESOURCE_FILE_SCOPE));
+    assertFalse(LintResultCache.isFileLocal(HardcodedValuesDetector.ISSUE, Scope.JAVA_FILE_SCOPE));
+    assertFalse(LintResultCache.isFileLocal(ApiDetector.UNSUPPORTED, Scope.RESOURCE_FILE_SCOPE));
+    // Only looks at resource files, but resolves ids defined in other files
+    assertFalse(LintResultCache.isFileLocal(WrongIdDetector.UNKNOWN_ID, Scope.RESOURCE_FILE_SCOPE));
+    assertTrue(LintResultCache.isFileLocal(CommentDetector.STOP_SHIP, Scope.JAVA_FILE_SCOPE));
+  }
+}
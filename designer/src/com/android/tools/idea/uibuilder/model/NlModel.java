@@ -137,11 +137,36 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
   private LintAnnotationsModel myLintAnnotationsModel;
   private final long myId;
   private boolean myActive;
+  /**
+   * Whether this model is registered with the {@link ResourceNotificationManager}. It stays registered while inactive, reporting itself
+   * as not {@linkplain #isVisible() visible}, so the manager holds back the changes until {@link #activate()}.
+   */
+  private boolean myResourceListenerRegistered;
   private ResourceVersion myRenderedVersion;
   private final ModelVersion myModelVersion = new ModelVersion();
   private AndroidPreviewProgressIndicator myCurrentIndicator;
   private static final Object PROGRESS_LOCK = new Object();
   private RenderTask myRenderTask;
+  private final RenderScheduler myRenderScheduler = new RenderScheduler();
+  /**
+   * Generation of the update which last inflated the layout, see {@link RenderScheduler}.
+   */
+  private volatile long myInflatedGeneration;
+  /**
+   * Tag structure of the layout when it was last inflated, see {@link #getTagStructure(XmlFile)}.
+   */
+  @GuardedBy("RENDERING_LOCK")
+  private long myInflatedStructure = NO_STRUCTURE;
+  /**
+   * Render from the {@link RenderResultCache} shown until the layout is rendered for the first time, if any.
+   */
+  @GuardedBy("RENDERING_LOCK")
+  private RenderResult myCachedRenderResult;
+  /**
+   * {@link RenderResultCache#computeStamp Stamps} of the layout as last inflated, and of the current render result if it can be cached.
+   */
+  private volatile List<Long> myInflatedCacheStamp;
+  private volatile List<Long> myRenderedCacheStamp;
   private final NlLayoutType myType;
   private long myConfigurationModificationCount;
 
@@ -188,14 +213,26 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
 
       myConfiguration.addListener(myConfigurationListener);
       ResourceNotificationManager manager = ResourceNotificationManager.getInstance(getProject());
-      ResourceVersion version = manager.addListener(this, myFacet, null, null);
+      ResourceVersion version;
+      if (myResourceListenerRegistered) {
+        version = manager.getCurrentVersion(myFacet, null, null);
+        manager.listenerShown(this);
+      }
+      else {
+        version = manager.addListener(this, myFacet, null, null);
+        myResourceListenerRegistered = true;
+      }
 
-      // If the resources have changed or the configuration has been modified, request a model update
-      if (!version.equals(myRenderedVersion) || (myConfiguration.getModificationCount() != myConfigurationModificationCount)) {
+      // If the resources have changed, the configuration has been modified or an update was cancelled while inactive, request a
+      // model update
+      boolean cancelledUpdate = myRenderScheduler.takeCancelledUpdate();
+      if (!version.equals(myRenderedVersion) || (myConfiguration.getModificationCount() != myConfigurationModificationCount) ||
+          cancelledUpdate) {
         String theme = myConfiguration.getTheme();
         if (theme != null && !theme.startsWith(ANDROID_STYLE_RESOURCE_PREFIX) && !myProjectResourceRepository.hasResourceItem(theme)) {
           myConfiguration.setTheme(myConfiguration.getConfigurationManager().computePreferredTheme(myConfiguration));
         }
+        myRenderScheduler.requestUpdate(false);
         requestModelUpdate();
         myModelVersion.myResourceVersion.incrementAndGet();
       }
@@ -207,9 +244,9 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
    */
   public void deactivate() {
     if (myActive) {
+      cacheRender();
       getRenderingQueue().cancelAllUpdates();
-      ResourceNotificationManager manager = ResourceNotificationManager.getInstance(getProject());
-      manager.removeListener(this, myFacet, null, null);
+      myRenderScheduler.cancelPendingUpdates();
       myConfigurationModificationCount = myConfiguration.getModificationCount();
       myConfiguration.removeListener(myConfigurationListener);
       myActive = false;
@@ -330,9 +367,11 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
    * Synchronously inflates the model and updates the view hierarchy
    *
    * @param force forces the model to be re-inflated even if a previous version was already inflated
+   * @param attributeEdit whether the changes since the last inflation may only have modified attribute values, in which case the
+   *                      current render task is kept if the tag structure didn't change
    * @returns whether the model was inflated in this call or not
    */
-  private boolean inflate(boolean force) {
+  private boolean inflate(boolean force, boolean attributeEdit) {
     Configuration configuration = myConfiguration;
     if (configuration == null) {
       return false;
@@ -346,6 +385,10 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
     XmlFile file = getFile();
     LayoutPullParserFactory.saveFileIfNecessary(file);
 
+    // Walking the tags is only worth it when the render task may be kept, checked again below. Otherwise the structure of this
+    // inflation is unknown, and the next attribute edit gets a new render task too.
+    RenderTask currentTask = myRenderTask;
+    long structure = attributeEdit && currentTask != null && !currentTask.getLogger().hasProblems() ? getTagStructure(file) : NO_STRUCTURE;
     RenderResult result = null;
     synchronized (RENDERING_LOCK) {
       if (myRenderTask != null && !force) {
@@ -357,13 +400,24 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
       // external changes
       myRenderedVersion = resourceNotificationManager.getCurrentVersion(myFacet, file, myConfiguration);
 
-      RenderService renderService = RenderService.get(myFacet);
-      RenderLogger logger = renderService.createLogger();
-      if (myRenderTask != null) {
-        myRenderTask.dispose();
+      // Views read their attributes when inflated, so attribute edits still need a new inflation. But the class loader, R classes and
+      // include context of the render task remain valid, unless the task reported problems the edit may have fixed.
+      boolean reuseTask = attributeEdit && myRenderTask != null && structure != NO_STRUCTURE && structure == myInflatedStructure &&
+                          !myRenderTask.getLogger().hasProblems();
+      if (!reuseTask) {
+        RenderService renderService = RenderService.get(myFacet);
+        RenderLogger logger = renderService.createLogger();
+        if (myRenderTask != null) {
+          myRenderTask.dispose();
+        }
+        myRenderTask = renderService.createTask(file, configuration, logger, mySurface);
+        if (myRenderTask != null) {
+          // The layout being edited is what the user is waiting for, subclasses may lower the priority in setupRenderTask.
+          myRenderTask.setPriority(RenderService.Priority.HIGH);
+        }
+        setupRenderTask(myRenderTask);
       }
-      myRenderTask = renderService.createTask(file, configuration, logger, mySurface);
-      setupRenderTask(myRenderTask);
+      myInflatedStructure = structure;
       if (myRenderTask != null) {
         if (!isRenderViewPort()) {
           myRenderTask.useDesignMode(file);
@@ -380,18 +434,51 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
       }
 
       updateHierarchy(result);
-      myRenderResultLock.writeLock().lock();
-      try {
-        myRenderResult = result;
-      }
-      finally {
-        myRenderResultLock.writeLock().unlock();
+      // Keep showing the cached render, rather than the image-less result of the inflation, until the layout is rendered
+      if (myCachedRenderResult == null || result == null || !result.getRenderResult().isSuccess()) {
+        myCachedRenderResult = null;
+        myRenderResultLock.writeLock().lock();
+        try {
+          myRenderResult = result;
+        }
+        finally {
+          myRenderResultLock.writeLock().unlock();
+        }
       }
 
       return myRenderTask != null;
     }
   }
 
+  /**
+   * {@link #myInflatedStructure} of an inflation whose tag structure wasn't computed.
+   */
+  private static final long NO_STRUCTURE = Long.MIN_VALUE;
+
+  /**
+   * Returns a hash of the tag names and nesting of the layout, and of the layout it's rendered within, which are the parts of the file
+   * a render task depends on beyond attribute values.
+   */
+  private static long getTagStructure(@NotNull XmlFile file) {
+    return ApplicationManager.getApplication().runReadAction((Computable<Long>)() -> {
+      XmlTag rootTag = file.getRootTag();
+      if (rootTag == null) {
+        return 0L;
+      }
+      long structure = getTagStructure(rootTag, Objects.hashCode(rootTag.getAttributeValue(IncludeReference.ATTR_RENDER_IN, TOOLS_URI)));
+      return structure != NO_STRUCTURE ? structure : structure + 1;
+    });
+  }
+
+  private static long getTagStructure(@NotNull XmlTag tag, long hash) {
+    hash = 31 * hash + tag.getName().hashCode();
+    for (XmlTag subTag : tag.getSubTags()) {
+      hash = getTagStructure(subTag, hash);
+    }
+    // End of the children, so moving a tag out of its parent changes the hash
+    return 31 * hash + 1;
+  }
+
   @NotNull
   Set<String> getPendingIds() {
     return myPendingIds;
@@ -425,10 +512,77 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
    * {@link ModelListener#modelChanged(NlModel)}.
    */
   protected void updateModel() {
-    inflate(true);
+    RenderScheduler.Request request = myRenderScheduler.startUpdate();
+    if (myRenderScheduler.dropSupersededUpdate(request)) {
+      // The layout was edited again before this update inflated it; the queued update will inflate the latest contents
+      return;
+    }
+    // Tests expect every render to come from layoutlib
+    List<Long> cacheStamp = myConfiguration != null && !ApplicationManager.getApplication().isUnitTestMode()
+                            ? RenderResultCache.computeStamp(myFacet, getFile(), myConfiguration)
+                            : null;
+    if (cacheStamp != null && getRenderResult() == null) {
+      String cacheKey = RenderResultCache.computeKey(myFacet, getFile(), myConfiguration);
+      if (cacheKey != null) {
+        showCachedRender(cacheKey);
+      }
+    }
+    inflate(true, request.isAttributeEdit());
+    myInflatedGeneration = request.getGeneration();
+    myInflatedCacheStamp = cacheStamp;
+    if (myRenderScheduler.skipSupersededUpdate(request.getGeneration())) {
+      // The layout was edited again while it was inflated. The listeners will render once the next update, already queued, is done.
+      return;
+    }
     notifyListenersModelUpdateComplete();
   }
 
+  /**
+   * Shows the render of the layout from the {@link RenderResultCache}, if any, while the layout is inflated and rendered for the first
+   * time.
+   */
+  private void showCachedRender(@NotNull String cacheKey) {
+    RenderResult result = RenderResultCache.getInstance().get(cacheKey, getFile(), myFacet.getModule());
+    if (result == null) {
+      return;
+    }
+    synchronized (RENDERING_LOCK) {
+      if (getRenderResult() != null) {
+        return;
+      }
+      updateHierarchy(result);
+      myCachedRenderResult = result;
+      myRenderResultLock.writeLock().lock();
+      try {
+        myRenderResult = result;
+      }
+      finally {
+        myRenderResultLock.writeLock().unlock();
+      }
+    }
+    notifyListenersRenderComplete();
+  }
+
+  /**
+   * Stores the current render in the {@link RenderResultCache}, so the layout shows up right away when it's opened again.
+   */
+  private void cacheRender() {
+    RenderResult result = getRenderResult();
+    List<Long> cacheStamp = myRenderedCacheStamp;
+    if (result == null || cacheStamp == null || myFacet.isDisposed()) {
+      return;
+    }
+    // The layout, its includes or the resources may have been edited since it was rendered
+    if (!cacheStamp.equals(RenderResultCache.computeStamp(myFacet, getFile(), myConfiguration))) {
+      return;
+    }
+    String cacheKey = RenderResultCache.computeKey(myFacet, getFile(), myConfiguration);
+    if (cacheKey == null) {
+      return;
+    }
+    ApplicationManager.getApplication().runReadAction(() -> RenderResultCache.getInstance().put(cacheKey, result));
+  }
+
   private void checkStructure() {
     if (CHECK_MODEL_INTEGRITY) {
       ApplicationManager.getApplication().runReadAction(() -> {
@@ -530,6 +684,12 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
    * <b>Do not call this method from the dispatch thread!</b>
    */
   public void render() {
+    if (myRenderTask != null && myRenderScheduler.hasPendingUpdate()) {
+      // The layout will be inflated again and rendered by the listeners, a render now would be stale when done
+      myRenderScheduler.skipped(myInflatedGeneration);
+      return;
+    }
+
     if (myConfigurationModificationCount != myConfiguration.getModificationCount()) {
       // usage tracking (we only pay attention to individual changes where only one item is affected since those are likely to be triggered
       // by the user
@@ -554,7 +714,7 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
     ChangeType changeType = myModificationTrigger;
     myModificationTrigger = null;
     long renderStartTimeMs = System.currentTimeMillis();
-    boolean inflated = inflate(false);
+    boolean inflated = inflate(false, false);
 
     synchronized (RENDERING_LOCK) {
       if (myRenderTask != null) {
@@ -563,6 +723,9 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
         if (!inflated) {
           updateHierarchy(result);
         }
+        myCachedRenderResult = null;
+        // A layout inflated by this call may have changed since the stamp was computed
+        myRenderedCacheStamp = !inflated && result != null && result.getRenderResult().isSuccess() ? myInflatedCacheStamp : null;
         myRenderResultLock.writeLock().lock();
         try {
           myRenderResult = result;
@@ -579,6 +742,7 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
         } finally {
           myRenderResultLock.readLock().unlock();
         }
+        myRenderScheduler.rendered(myInflatedGeneration);
       }
     }
 
@@ -598,7 +762,6 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
         if (myFacet.isDisposed()) {
           return;
         }
-
         render();
       }
 
@@ -1852,6 +2015,10 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
   @Override
   public void dispose() {
     deactivate(); // ensure listeners are unregistered if necessary
+    if (myResourceListenerRegistered) {
+      ResourceNotificationManager.getInstance(getProject()).removeListener(this, myFacet, null, null);
+      myResourceListenerRegistered = false;
+    }
 
     synchronized (myListeners) {
       myListeners.clear();
@@ -1907,6 +2074,11 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
     }
   }
 
+  @Override
+  public boolean isVisible() {
+    return myActive;
+  }
+
   // ---- Implements ModificationTracker ----
 
   public enum ChangeType {
@@ -1978,9 +2150,27 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
     }
     myModelVersion.increase(reason);
     myModificationTrigger = reason;
+    myRenderScheduler.requestUpdate(isAttributeEdit(reason));
     requestModelUpdate();
   }
 
+  /**
+   * Returns whether a change of the given type may only modify attribute values, and not the resources or configuration the layout is
+   * rendered with. {@link ChangeType#EDIT} is any change to the layout file itself, typically typing in an attribute value; edits which
+   * also change its tags are told apart by {@link #inflate(boolean, boolean)}, which compares the {@linkplain #getTagStructure(XmlFile)
+   * tag structure}.
+   */
+  private static boolean isAttributeEdit(@NotNull ChangeType reason) {
+    switch (reason) {
+      case EDIT:
+      case RESIZE_END:
+      case RESIZE_COMMIT:
+        return true;
+      default:
+        return false;
+    }
+  }
+
   /**
    * Updates the saved values that are used to log user changes to the configuration toolbar.
    */
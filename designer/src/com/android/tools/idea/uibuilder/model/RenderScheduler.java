@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.model;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the model updates requested for a {@link NlModel}, so work done for an update which has already been superseded by a
+ * newer one can be dropped, and measures the time between an edit and the render showing it.
+ *
+ * Every requested update gets a new generation. When an update starts, it takes all the requests made so far; a render started for an
+ * older generation than the last requested one is stale by the time it completes.
+ *
+ * An update which is superseded before it inflates is dropped, handing its requests over to the newer update (see
+ * {@link #dropSupersededUpdate(Request)}). Work already in progress is not interrupted: an update superseded while it inflates only
+ * skips notifying its listeners, and only while the newer update is still going to run. Once pending updates are cancelled, e.g. when
+ * the model is deactivated, the update in progress notifies its listeners, and {@link #takeCancelledUpdate()} tells the model to update
+ * again when it is activated.
+ */
+final class RenderScheduler {
+  private static final Logger LOG = Logger.getInstance(RenderScheduler.class);
+
+  private long myRequestedGeneration;
+  private long myStartedGeneration;
+  /**
+   * The last generation whose update was cancelled before it started, see {@link #cancelPendingUpdates()}.
+   */
+  private long myCancelledGeneration;
+  private boolean myHasCancelledUpdate;
+  /**
+   * Whether every update requested since the last one started only changed attribute values, see {@link #requestUpdate(boolean)}.
+   */
+  private boolean myPendingAttributeEdit = true;
+  /**
+   * {@link System#nanoTime()} of the oldest request which hasn't been rendered yet, only valid if {@link #myHasUnrenderedRequest}.
+   */
+  private long myUnrenderedSinceNanos;
+  private boolean myHasUnrenderedRequest;
+
+  private long mySkippedCount;
+  private long myRenderedCount;
+  private long myMaxTimeToPixelsMs;
+
+  /**
+   * Requests a model update.
+   *
+   * @param attributeEdit whether the change may only have modified attribute values, in which case the render task of the model can be
+   *                      kept if the tag structure of the layout didn't change
+   * @return the generation of the update
+   */
+  synchronized long requestUpdate(boolean attributeEdit) {
+    if (!myHasUnrenderedRequest) {
+      myHasUnrenderedRequest = true;
+      myUnrenderedSinceNanos = System.nanoTime();
+    }
+    myPendingAttributeEdit &= attributeEdit;
+    return ++myRequestedGeneration;
+  }
+
+  /**
+   * Starts a model update, taking all the requests made so far.
+   */
+  @NotNull
+  synchronized Request startUpdate() {
+    // An update started without being requested, e.g. synchronously in tests, can't rely on what changed
+    Request request = new Request(myRequestedGeneration, myStartedGeneration < myRequestedGeneration && myPendingAttributeEdit);
+    myStartedGeneration = myRequestedGeneration;
+    myPendingAttributeEdit = true;
+    myHasCancelledUpdate = false;
+    return request;
+  }
+
+  /**
+   * Drops the requests which haven't started, e.g. when their queued updates are cancelled.
+   */
+  synchronized void cancelPendingUpdates() {
+    if (myStartedGeneration < myRequestedGeneration) {
+      myHasCancelledUpdate = true;
+      myCancelledGeneration = myRequestedGeneration;
+    }
+    myStartedGeneration = myRequestedGeneration;
+    myPendingAttributeEdit = true;
+    myHasUnrenderedRequest = false;
+  }
+
+  /**
+   * Returns whether an update has been requested but hasn't started yet.
+   */
+  synchronized boolean hasPendingUpdate() {
+    return myStartedGeneration < myRequestedGeneration;
+  }
+
+  /**
+   * Returns whether a newer update was requested after the update of the given generation.
+   */
+  synchronized boolean isSuperseded(long generation) {
+    return generation < myRequestedGeneration;
+  }
+
+  /**
+   * Returns whether the update of the given generation can skip notifying its listeners, because a newer update was requested and
+   * hasn't been cancelled, so the newer update will notify them. Records the skip if so.
+   */
+  synchronized boolean skipSupersededUpdate(long generation) {
+    if (!isSuperseded(generation) || myCancelledGeneration == myRequestedGeneration) {
+      return false;
+    }
+    skipped(generation);
+    return true;
+  }
+
+  /**
+   * Returns whether the update of the given request can be dropped before it inflates, because a newer update was requested and hasn't
+   * been cancelled. If so, the newer update takes over the requests of the dropped one, and the skip is recorded.
+   */
+  synchronized boolean dropSupersededUpdate(@NotNull Request request) {
+    if (!skipSupersededUpdate(request.getGeneration())) {
+      return false;
+    }
+    myPendingAttributeEdit &= request.isAttributeEdit();
+    return true;
+  }
+
+  /**
+   * Returns whether updates were cancelled before they started since the last update started, and clears that state. If so, the
+   * model may not show its latest contents and should be updated again.
+   */
+  synchronized boolean takeCancelledUpdate() {
+    boolean cancelled = myHasCancelledUpdate;
+    myHasCancelledUpdate = false;
+    return cancelled;
+  }
+
+  /**
+   * Records that the work for the update of the given generation, or a render request, was dropped because a newer update is coming.
+   */
+  synchronized void skipped(long generation) {
+    mySkippedCount++;
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(String.format("Skipped stale render of generation %d, %d requested", generation, myRequestedGeneration));
+    }
+  }
+
+  /**
+   * Records that the model was rendered as inflated by the update of the given generation. If no newer update was requested, the edits
+   * made since the last render are now visible.
+   */
+  synchronized void rendered(long generation) {
+    if (!myHasUnrenderedRequest || isSuperseded(generation)) {
+      return;
+    }
+    myHasUnrenderedRequest = false;
+    myRenderedCount++;
+    long timeToPixelsMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - myUnrenderedSinceNanos);
+    myMaxTimeToPixelsMs = Math.max(myMaxTimeToPixelsMs, timeToPixelsMs);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(String.format("Generation %d rendered %d ms after the edit (max %d ms), %d stale renders skipped so far", generation,
+                              timeToPixelsMs, myMaxTimeToPixelsMs, mySkippedCount));
+    }
+  }
+
+  /**
+   * Returns the longest time between an edit and the render showing it so far, 0 if no edit has been rendered yet.
+   */
+  synchronized long getMaxTimeToPixelsMs() {
+    return myMaxTimeToPixelsMs;
+  }
+
+  synchronized long getRenderedCount() {
+    return myRenderedCount;
+  }
+
+  synchronized long getSkippedCount() {
+    return mySkippedCount;
+  }
+
+  static final class Request {
+    private final long myGeneration;
+    private final boolean myAttributeEdit;
+
+    private Request(long generation, boolean attributeEdit) {
+      myGeneration = generation;
+      myAttributeEdit = attributeEdit;
+    }
+
+    long getGeneration() {
+      return myGeneration;
+    }
+
+    /**
+     * Returns whether all the requests taken by the update may only have modified attribute values.
+     */
+    boolean isAttributeEdit() {
+      return myAttributeEdit;
+    }
+  }
+}
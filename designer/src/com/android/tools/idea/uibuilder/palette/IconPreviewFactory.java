@@ -127,6 +127,10 @@ public class IconPreviewFactory implements Disposable {
       RenderService renderService = RenderService.get(facet);
       RenderLogger logger = renderService.createLogger();
       myRenderTask = renderService.createTask(null, configuration, logger, null);
+      if (myRenderTask != null) {
+        // Palette previews are rendered in the background, after the layouts being edited.
+        myRenderTask.setPriority(RenderService.Priority.LOW);
+      }
     }
 
     return myRenderTask;
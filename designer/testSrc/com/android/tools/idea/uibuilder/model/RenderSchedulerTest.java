@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.model;
+
+import junit.framework.TestCase;
+
+public class RenderSchedulerTest extends TestCase {
+  public void testSupersededUpdates() {
+    RenderScheduler scheduler = new RenderScheduler();
+    scheduler.requestUpdate(true);
+    RenderScheduler.Request first = scheduler.startUpdate();
+    assertFalse(scheduler.hasPendingUpdate());
+    assertFalse(scheduler.isSuperseded(first.getGeneration()));
+
+    // Edited again while the first update runs
+    scheduler.requestUpdate(true);
+    assertTrue(scheduler.hasPendingUpdate());
+    assertTrue(scheduler.isSuperseded(first.getGeneration()));
+
+    // The stale render doesn't count as showing the edits
+    scheduler.rendered(first.getGeneration());
+    assertEquals(0, scheduler.getRenderedCount());
+
+    RenderScheduler.Request second = scheduler.startUpdate();
+    assertFalse(scheduler.isSuperseded(second.getGeneration()));
+    scheduler.rendered(second.getGeneration());
+    assertEquals(1, scheduler.getRenderedCount());
+    assertTrue(scheduler.getMaxTimeToPixelsMs() >= 0);
+
+    // Rendering again without edits isn't an edit shown
+    scheduler.rendered(second.getGeneration());
+    assertEquals(1, scheduler.getRenderedCount());
+  }
+
+  public void testAttributeEdits() {
+    RenderScheduler scheduler = new RenderScheduler();
+    // Updates which weren't requested can't tell what changed
+    assertFalse(scheduler.startUpdate().isAttributeEdit());
+
+    scheduler.requestUpdate(true);
+    scheduler.requestUpdate(true);
+    assertTrue(scheduler.startUpdate().isAttributeEdit());
+
+    // Any other change merged in the same update needs a new render task
+    scheduler.requestUpdate(true);
+    scheduler.requestUpdate(false);
+    scheduler.requestUpdate(true);
+    assertFalse(scheduler.startUpdate().isAttributeEdit());
+
+    scheduler.requestUpdate(true);
+    assertTrue(scheduler.startUpdate().isAttributeEdit());
+  }
+
+  public void testDroppedUpdateHandsOverItsRequests() {
+    RenderScheduler scheduler = new RenderScheduler();
+    scheduler.requestUpdate(false);
+    RenderScheduler.Request first = scheduler.startUpdate();
+    assertFalse(scheduler.dropSupersededUpdate(first));
+
+    scheduler.requestUpdate(false);
+    RenderScheduler.Request second = scheduler.startUpdate();
+    // Typed again before the second update inflated: it's dropped, and the newer update still needs a new render task
+    scheduler.requestUpdate(true);
+    assertTrue(scheduler.dropSupersededUpdate(second));
+    assertEquals(1, scheduler.getSkippedCount());
+    assertFalse(scheduler.startUpdate().isAttributeEdit());
+
+    scheduler.requestUpdate(true);
+    assertTrue(scheduler.startUpdate().isAttributeEdit());
+  }
+
+  public void testCancelledUpdates() {
+    RenderScheduler scheduler = new RenderScheduler();
+    scheduler.requestUpdate(false);
+    assertTrue(scheduler.hasPendingUpdate());
+    scheduler.cancelPendingUpdates();
+    assertFalse(scheduler.hasPendingUpdate());
+
+    scheduler.requestUpdate(true);
+    assertTrue(scheduler.startUpdate().isAttributeEdit());
+  }
+
+  public void testSupersededUpdateNotifiesWhenNewerUpdateIsCancelled() {
+    RenderScheduler scheduler = new RenderScheduler();
+    scheduler.requestUpdate(false);
+    RenderScheduler.Request first = scheduler.startUpdate();
+
+    // Edited while the first update runs, the queued update will notify the listeners
+    scheduler.requestUpdate(false);
+    assertTrue(scheduler.skipSupersededUpdate(first.getGeneration()));
+    assertEquals(1, scheduler.getSkippedCount());
+
+    // The queued update is cancelled, e.g. because the editor was hidden. The model has to update again when activated.
+    scheduler.cancelPendingUpdates();
+    assertTrue(scheduler.takeCancelledUpdate());
+    assertFalse(scheduler.takeCancelledUpdate());
+
+    // When the cancel happens before the superseded update completes, that update notifies its listeners itself
+    scheduler.requestUpdate(false);
+    RenderScheduler.Request third = scheduler.startUpdate();
+    scheduler.requestUpdate(false);
+    scheduler.cancelPendingUpdates();
+    assertFalse(scheduler.skipSupersededUpdate(third.getGeneration()));
+
+    // An update started after the cancel shows the latest contents
+    scheduler.requestUpdate(false);
+    scheduler.startUpdate();
+    assertFalse(scheduler.takeCancelledUpdate());
+  }
+}
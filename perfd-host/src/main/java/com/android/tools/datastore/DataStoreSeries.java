@@ -51,4 +51,19 @@ public class DataStoreSeries<E> implements DataSeries<E> {
   public ImmutableList<SeriesData<E>> getDataForXRange(@NotNull Range xRange) {
     return mStore.getSeriesData(mType, xRange, mTarget);
   }
+
+  @NotNull
+  protected SeriesDataStore getStore() {
+    return mStore;
+  }
+
+  @NotNull
+  protected SeriesDataType getType() {
+    return mType;
+  }
+
+  @Nullable
+  protected Object getTarget() {
+    return mTarget;
+  }
 }
@@ -37,9 +37,15 @@ import java.util.concurrent.RunnableFuture;
 public class DataStoreService {
   private static final Logger LOG = Logger.getInstance(DataStoreService.class.getCanonicalName());
   private static final int MAX_MESSAGE_SIZE = 512 * 1024 * 1024 - 1;
+  /**
+   * When set, each poller runs its own fixed-period poll loop instead of sharing the multiplexed, adaptive one.
+   */
+  private static final boolean USE_PER_SERVICE_POLLING = Boolean.getBoolean("studio.profiler.datastore.perServicePolling");
   private ManagedChannel myChannel;
   private ServerBuilder myServerBuilder;
   private List<ServicePassThrough> myServices = new ArrayList<>();
+  private List<RunnableFuture<Void>> myRunners = new ArrayList<>();
+  @Nullable private MultiplexedPollingCallback myMultiplexedCallback;
   private LegacyAllocationTracker myLegacyAllocationTracker;
 
   public DataStoreService(String name) {
@@ -80,13 +86,27 @@ public class DataStoreService {
    * This function connects all the services registered in the datastore to the device.
    */
   private void connectServices() {
+    MultiplexedPollingCallback multiplexedCallback = new MultiplexedPollingCallback();
     for (ServicePassThrough service : myServices) {
       // Tell service how to connect to device RPC to start polling.
       service.connectService(myChannel);
-      RunnableFuture<Void> runner = service.getRunner();
-      if (runner != null) {
-        ApplicationManager.getApplication().executeOnPooledThread(runner);
+      if (!USE_PER_SERVICE_POLLING && service instanceof PollRunner.PollingCallback) {
+        multiplexedCallback.addCallback((PollRunner.PollingCallback)service);
       }
+      else {
+        startRunner(service.getRunner());
+      }
+    }
+    if (!multiplexedCallback.isEmpty()) {
+      myMultiplexedCallback = multiplexedCallback;
+      startRunner(multiplexedCallback.createRunner());
+    }
+  }
+
+  private void startRunner(@Nullable RunnableFuture<Void> runner) {
+    if (runner != null) {
+      myRunners.add(runner);
+      ApplicationManager.getApplication().executeOnPooledThread(runner);
     }
   }
 
@@ -113,12 +133,32 @@ public class DataStoreService {
    */
   public void disconnect() {
     // TODO: Shutdown service connections.
+    if (!myRunners.isEmpty()) {
+      logPollerMetrics();
+    }
+    myRunners.forEach(runner -> runner.cancel(true));
+    myRunners.clear();
+    myMultiplexedCallback = null;
     if (myChannel != null) {
       myChannel.shutdown();
     }
     myChannel = null;
   }
 
+  private void logPollerMetrics() {
+    for (ServicePassThrough service : myServices) {
+      if (service instanceof PollRunner.PollingCallback) {
+        String summary = ((PollRunner.PollingCallback)service).getMetricsSummary();
+        if (!summary.isEmpty()) {
+          LOG.info(summary);
+        }
+      }
+    }
+    if (myMultiplexedCallback != null) {
+      LOG.info(myMultiplexedCallback.getMetricsSummary());
+    }
+  }
+
   /**
    * Since older releases of Android and uninstrumented apps will not have JVMTI allocation tracking, we therefore need to support the older
    * JDWP allocation tracking functionality.
@@ -15,6 +15,8 @@
  */
 package com.android.tools.datastore;
 
+import com.android.tools.adtui.model.LongSampleConsumer;
+import com.android.tools.adtui.model.MinMaxPyramid;
 import com.android.tools.adtui.model.SeriesData;
 import gnu.trove.TLongArrayList;
 import org.jetbrains.annotations.NotNull;
@@ -30,9 +32,13 @@ public class LongDataAdapter implements DataAdapter<Long> {
   @NotNull
   private final TLongArrayList myValues;
 
+  @NotNull
+  private final MinMaxPyramid myPyramid;
+
   public LongDataAdapter(@NotNull TLongArrayList timestampData, @NotNull TLongArrayList trafficData) {
     myTimestampData = timestampData;
     myValues = trafficData;
+    myPyramid = new MinMaxPyramid(timestampData, trafficData);
   }
 
   @Override
@@ -45,10 +51,27 @@ public class LongDataAdapter implements DataAdapter<Long> {
     return new SeriesData<>(myTimestampData.get(index), myValues.get(index));
   }
 
+  /**
+   * Passes the samples in [fromIndex, toIndex) to the consumer without boxing them.
+   */
+  public void read(int fromIndex, int toIndex, @NotNull LongSampleConsumer consumer) {
+    for (int i = fromIndex; i < toIndex; i++) {
+      consumer.accept(myTimestampData.get(i), myValues.get(i));
+    }
+  }
+
+  /**
+   * Like {@link #read(int, int, LongSampleConsumer)}, but reduces the samples to the minimum and maximum of at least resolution buckets.
+   */
+  public void read(int fromIndex, int toIndex, int resolution, @NotNull LongSampleConsumer consumer) {
+    myPyramid.read(fromIndex, toIndex, resolution, consumer);
+  }
+
   @Override
   public void reset() {
     myTimestampData.clear();
     myValues.clear();
+    myPyramid.reset();
   }
 
   @Override
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore;
+
+import com.android.tools.adtui.model.BulkLongDataSeries;
+import com.android.tools.adtui.model.LongSampleConsumer;
+import com.android.tools.adtui.model.Range;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link DataStoreSeries} for long-valued types, which charts can read in bulk through {@link SeriesDataStore#readLongRange}.
+ */
+public class LongDataStoreSeries extends DataStoreSeries<Long> implements BulkLongDataSeries {
+  public LongDataStoreSeries(@NotNull SeriesDataStore store, @NotNull SeriesDataType type, @Nullable Object target) {
+    super(store, type, target);
+  }
+
+  public LongDataStoreSeries(@NotNull SeriesDataStore store, @NotNull SeriesDataType type) {
+    this(store, type, null);
+  }
+
+  @Override
+  public void readRange(@NotNull Range xRange, @NotNull LongSampleConsumer consumer) {
+    getStore().readLongRange(getType(), xRange, getTarget(), consumer);
+  }
+
+  @Override
+  public void readRange(@NotNull Range xRange, int resolution, @NotNull LongSampleConsumer consumer) {
+    getStore().readLongRange(getType(), xRange, getTarget(), resolution, consumer);
+  }
+}
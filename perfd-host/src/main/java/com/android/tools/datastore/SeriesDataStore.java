@@ -15,6 +15,7 @@
  */
 package com.android.tools.datastore;
 
+import com.android.tools.adtui.model.LongSampleConsumer;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.datastore.profilerclient.DeviceProfilerService;
@@ -64,6 +65,26 @@ public interface SeriesDataStore {
    */
   <T> SeriesData<T> getDataAt(SeriesDataType type, int index, Object target);
 
+  /**
+   * Passes the samples of a long-valued type within a range to the consumer. By default this goes through {@link SeriesDataList};
+   * implementations can override it to read primitive data in bulk.
+   */
+  default void readLongRange(SeriesDataType type, Range range, Object target, LongSampleConsumer consumer) {
+    SeriesDataList<Long> list = getSeriesData(type, range, target);
+    for (int i = 0; i < list.size(); i++) {
+      SeriesData<Long> data = list.get(i);
+      consumer.accept(data.x, data.value);
+    }
+  }
+
+  /**
+   * Like {@link #readLongRange(SeriesDataType, Range, Object, LongSampleConsumer)}, but implementations may reduce the samples to the
+   * minimum and maximum of at least resolution buckets.
+   */
+  default void readLongRange(SeriesDataType type, Range range, Object target, int resolution, LongSampleConsumer consumer) {
+    readLongRange(type, range, target, consumer);
+  }
+
   /**
    * Returns the closest index to the time value.
    */
@@ -15,6 +15,7 @@
  */
 package com.android.tools.datastore;
 
+import com.android.tools.adtui.model.LongSampleConsumer;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.datastore.profilerclient.DeviceProfilerService;
@@ -99,6 +100,23 @@ public final class SeriesDataStoreImpl implements SeriesDataStore {
     return new SeriesDataList<>(range, this, type, target);
   }
 
+  @Override
+  public void readLongRange(SeriesDataType type, Range range, @Nullable Object target, LongSampleConsumer consumer) {
+    readLongRange(type, range, target, 0, consumer);
+  }
+
+  @Override
+  public void readLongRange(SeriesDataType type, Range range, @Nullable Object target, int resolution, LongSampleConsumer consumer) {
+    DataAdapter<?> adapter = getAdapter(type, target);
+    if (!(adapter instanceof LongDataAdapter)) {
+      SeriesDataStore.super.readLongRange(type, range, target, consumer);
+      return;
+    }
+    int fromIndex = adapter.getClosestTimeIndex((long)range.getMin(), true);
+    int toIndex = adapter.getClosestTimeIndex((long)range.getMax(), false);
+    ((LongDataAdapter)adapter).read(fromIndex, toIndex, resolution, consumer);
+  }
+
   //TODO change the register API to
   // registerAdapter(SeriesDataType<T> DataAdapter<T>) to ensure type safety.
   @Override
@@ -16,6 +16,8 @@
 package com.android.tools.datastore.poller;
 
 import com.android.tools.datastore.ServicePassThrough;
+import com.android.tools.datastore.store.ProtoSampleCodec;
+import com.android.tools.datastore.store.SpillingSampleStore;
 import com.android.tools.profiler.proto.CpuProfiler;
 import com.android.tools.profiler.proto.CpuServiceGrpc;
 import com.android.tools.profiler.proto.Profiler;
@@ -45,12 +47,20 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
    */
   private ProfilerServiceGrpc.ProfilerServiceBlockingStub myProfilerService;
 
-  //TODO Pull this into a storage container that can read/write this to disk
-  protected final List<CpuProfiler.CpuProfilerData> myData = new ArrayList<>();
+  /**
+   * Written by the poll thread and read by query handlers without locking.
+   */
+  protected final SpillingSampleStore<CpuProfiler.CpuProfilerData> myData =
+    new SpillingSampleStore<>(data -> data.getBasicInfo().getEndTimestamp(),
+                              new ProtoSampleCodec<>(CpuProfiler.CpuProfilerData.parser()));
   protected final Map<Integer, CpuProfiler.GetThreadsResponse.Thread.Builder> myThreads = new TreeMap<>();
   protected final Map<Integer, TraceData> myTraces = new HashMap<>();
 
+  /**
+   * Guards the thread activities, which are updated in place.
+   */
   private final Object myLock = new Object();
+  private final LockContentionMetrics myLockMetrics = new LockContentionMetrics("CPU");
 
   private int myProcessId = -1;
 
@@ -76,17 +86,22 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
   }
 
   @Override
-  public void poll() throws StatusRuntimeException {
+  public boolean poll() throws StatusRuntimeException {
     CpuProfiler.CpuDataRequest.Builder dataRequestBuilder = CpuProfiler.CpuDataRequest.newBuilder()
       .setAppId(myProcessId)
       .setStartTimestamp(myDataRequestStartTimestampNs)
       .setEndTimestamp(Long.MAX_VALUE);
     CpuProfiler.CpuDataResponse response = myPollingService.getData(dataRequestBuilder.build());
 
+    for (CpuProfiler.CpuProfilerData data : response.getDataList()) {
+      myDataRequestStartTimestampNs = data.getBasicInfo().getEndTimestamp();
+      myData.add(data);
+    }
+
+    long lockRequestNs = System.nanoTime();
     synchronized (myLock) {
+      myLockMetrics.recordAcquired(lockRequestNs);
       for (CpuProfiler.CpuProfilerData data : response.getDataList()) {
-        myDataRequestStartTimestampNs = data.getBasicInfo().getEndTimestamp();
-        myData.add(data);
         if (data.getDataCase() == CpuProfiler.CpuProfilerData.DataCase.THREAD_ACTIVITIES) {
           CpuProfiler.ThreadActivities activities = data.getThreadActivities();
           if (activities != null) {
@@ -107,6 +122,7 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
         }
       }
     }
+    return response.getDataCount() > 0;
   }
 
   @Override
@@ -121,15 +137,7 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
     long startTime = request.getStartTimestamp();
     long endTime = request.getEndTimestamp();
 
-    //TODO: Optimize so we do not need to loop all the data every request, ideally binary search to start time and loop till end.
-    synchronized (myLock) {
-      for (CpuProfiler.CpuProfilerData data : myData) {
-        long current = data.getBasicInfo().getEndTimestamp();
-        if (current > startTime && current <= endTime) {
-          response.addData(data);
-        }
-      }
-    }
+    myData.getRange(startTime, endTime, response::addData);
     observer.onNext(response.build());
     observer.onCompleted();
   }
@@ -141,17 +149,19 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
     long from = request.getStartTimestamp();
     long to = request.getEndTimestamp();
 
-    for (CpuProfiler.GetThreadsResponse.Thread.Builder builder : myThreads.values()) {
-      int count = builder.getActivitiesCount();
-      if (count > 0) {
-        // If they overlap
-        CpuProfiler.GetThreadsResponse.ThreadActivity first = builder.getActivities(0);
-        CpuProfiler.GetThreadsResponse.ThreadActivity last = builder.getActivities(count - 1);
-        boolean include = first.getTimestamp() <= to && from <= last.getTimestamp();
-        // If still alive.
-        include = include || (last.getTimestamp() < from && last.getNewState() != CpuProfiler.GetThreadsResponse.State.DEAD);
-        if (include) {
-          response.addThreads(builder);
+    synchronized (myLock) {
+      for (CpuProfiler.GetThreadsResponse.Thread.Builder builder : myThreads.values()) {
+        int count = builder.getActivitiesCount();
+        if (count > 0) {
+          // If they overlap
+          CpuProfiler.GetThreadsResponse.ThreadActivity first = builder.getActivities(0);
+          CpuProfiler.GetThreadsResponse.ThreadActivity last = builder.getActivities(count - 1);
+          boolean include = first.getTimestamp() <= to && from <= last.getTimestamp();
+          // If still alive.
+          include = include || (last.getTimestamp() < from && last.getNewState() != CpuProfiler.GetThreadsResponse.State.DEAD);
+          if (include) {
+            response.addThreads(builder);
+          }
         }
       }
     }
@@ -176,9 +186,9 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
   @Override
   public void startMonitoringApp(CpuProfiler.CpuStartRequest request, StreamObserver<CpuProfiler.CpuStartResponse> observer) {
     myProcessId = request.getAppId();
+    myData.clear();
     synchronized (myLock) {
       myThreads.clear();
-      myData.clear();
     }
     observer.onNext(myPollingService.startMonitoringApp(request));
     observer.onCompleted();
@@ -227,6 +237,12 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
     observer.onCompleted();
   }
 
+  @NotNull
+  @Override
+  public String getMetricsSummary() {
+    return myLockMetrics + "; cpu data: " + myData.getMetrics();
+  }
+
   private long getCurrentDeviceTimeNs() {
    return myProfilerService.getTimes(Profiler.TimesRequest.getDefaultInstance()).getTimestampNs();
   }
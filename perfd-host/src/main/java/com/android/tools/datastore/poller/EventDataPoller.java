@@ -22,6 +22,7 @@ import io.grpc.ManagedChannel;
 import io.grpc.ServerServiceDefinition;
 import io.grpc.StatusRuntimeException;
 import io.grpc.stub.StreamObserver;
+import org.jetbrains.annotations.NotNull;
 
 import java.util.Comparator;
 import java.util.HashMap;
@@ -45,13 +46,15 @@ public class EventDataPoller extends EventServiceGrpc.EventServiceImplBase imple
   private Map<Long, EventProfiler.SystemData> mySystemMap = new HashMap<>();
   private Object myActivityLock = new Object();
   private Object mySystemDataLock = new Object();
+  private final LockContentionMetrics myActivityLockMetrics = new LockContentionMetrics("Event activity");
+  private final LockContentionMetrics mySystemLockMetrics = new LockContentionMetrics("Event system");
 
   public EventDataPoller() {
 
   }
 
   @Override
-  public void poll() throws StatusRuntimeException {
+  public boolean poll() throws StatusRuntimeException {
     EventProfiler.EventDataRequest.Builder dataRequestBuilder = EventProfiler.EventDataRequest.newBuilder()
       .setAppId(myProcessId)
       .setStartTimestamp(myDataRequestStartTimestampNs)
@@ -59,7 +62,9 @@ public class EventDataPoller extends EventServiceGrpc.EventServiceImplBase imple
 
     // Query for and cache activity data that has changed since our last polling.
     EventProfiler.ActivityDataResponse activityResponse = myEventPollingService.getActivityData(dataRequestBuilder.build());
+    long lockRequestNs = System.nanoTime();
     synchronized (myActivityLock) {
+      myActivityLockMetrics.recordAcquired(lockRequestNs);
       for (EventProfiler.ActivityData data : activityResponse.getDataList()) {
         long id = data.getHash();
         if (myActivityDataMap.containsKey(id)) {
@@ -91,12 +96,21 @@ public class EventDataPoller extends EventServiceGrpc.EventServiceImplBase imple
     // Poll for system event data. If we have a duplicate event then we replace it with the incomming one.
     // we replace the event as the event information may have changed, eg now it has an uptime where previously it didn't
     EventProfiler.SystemDataResponse systemResponse = myEventPollingService.getSystemData(dataRequestBuilder.build());
+    lockRequestNs = System.nanoTime();
     synchronized (mySystemDataLock) {
+      mySystemLockMetrics.recordAcquired(lockRequestNs);
       for (EventProfiler.SystemData data : systemResponse.getDataList()) {
         long id = data.getEventId();
         mySystemMap.put(id, data);
       }
     }
+    return activityResponse.getDataCount() > 0 || systemResponse.getDataCount() > 0;
+  }
+
+  @NotNull
+  @Override
+  public String getMetricsSummary() {
+    return myActivityLockMetrics + "; " + mySystemLockMetrics;
   }
 
   @Override
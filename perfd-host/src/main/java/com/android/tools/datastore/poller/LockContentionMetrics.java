@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks how long the poll thread of a poller waits to acquire the locks it shares with gRPC query handlers.
+ */
+public final class LockContentionMetrics {
+  @NotNull private final String myName;
+  private final LongAdder myAcquireCount = new LongAdder();
+  private final LongAdder myWaitNs = new LongAdder();
+  private final AtomicLong myMaxWaitNs = new AtomicLong();
+
+  public LockContentionMetrics(@NotNull String name) {
+    myName = name;
+  }
+
+  /**
+   * Records a lock acquisition that was requested at requestTimeNs (as returned by {@link System#nanoTime()}) and just succeeded.
+   */
+  public void recordAcquired(long requestTimeNs) {
+    long waitNs = System.nanoTime() - requestTimeNs;
+    myAcquireCount.increment();
+    myWaitNs.add(waitNs);
+    myMaxWaitNs.accumulateAndGet(waitNs, Math::max);
+  }
+
+  public long getAcquireCount() {
+    return myAcquireCount.sum();
+  }
+
+  public long getTotalWaitNs() {
+    return myWaitNs.sum();
+  }
+
+  public long getMaxWaitNs() {
+    return myMaxWaitNs.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s poll lock: acquired=%d, totalWaitMs=%d, maxWaitMs=%d", myName, getAcquireCount(),
+                         TimeUnit.NANOSECONDS.toMillis(getTotalWaitNs()), TimeUnit.NANOSECONDS.toMillis(getMaxWaitNs()));
+  }
+}
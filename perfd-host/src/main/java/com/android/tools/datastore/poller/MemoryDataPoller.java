@@ -19,6 +19,8 @@ import com.android.tools.adtui.model.DurationData;
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.LegacyAllocationTrackingService;
 import com.android.tools.datastore.ServicePassThrough;
+import com.android.tools.datastore.store.ProtoSampleCodec;
+import com.android.tools.datastore.store.SpillingSampleStore;
 import com.android.tools.profiler.proto.MemoryProfiler.*;
 import com.android.tools.profiler.proto.MemoryProfiler.MemoryData.AllocationEvent;
 import com.android.tools.profiler.proto.MemoryProfiler.MemoryData.AllocationsInfo;
@@ -45,11 +47,14 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
 
   private MemoryServiceGrpc.MemoryServiceBlockingStub myPollingService;
 
-  //TODO: Pull this into a storage container that can read/write this to disk
   //TODO: Rename MemoryData to MemoryProfilerData for consistency
-  //TODO: Do these needs to be synchronized?
-  protected final List<MemorySample> myMemoryData = new ArrayList<>();
-  protected final List<VmStatsSample> myStatsData = new ArrayList<>();
+  // The periodic samples are kept in stores that spill older data to disk and are read without locking. Allocation events are not
+  // guaranteed to arrive in timestamp order (the legacy tracker reports them in batches) and the remaining data is sparse, so those
+  // stay on the heap, guarded by myUpdatingDataLock.
+  protected final SpillingSampleStore<MemorySample> myMemoryData =
+    new SpillingSampleStore<>(MemorySample::getTimestamp, new ProtoSampleCodec<>(MemorySample.parser()));
+  protected final SpillingSampleStore<VmStatsSample> myStatsData =
+    new SpillingSampleStore<>(VmStatsSample::getTimestamp, new ProtoSampleCodec<>(VmStatsSample.parser()));
   protected final List<HeapDumpSample> myHeapData = new ArrayList<>();
   protected final List<AllocationEvent> myAllocationEvents = new ArrayList<>();
   protected final List<AllocationsInfo> myAllocationsInfos = new ArrayList<>();
@@ -58,6 +63,7 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
 
   private final Object myUpdatingDataLock = new Object();
   private final Object myUpdatingAllocationsLock = new Object();
+  private final LockContentionMetrics myLockMetrics = new LockContentionMetrics("Memory");
 
   private HeapDumpSample myPendingHeapDumpSample = null;
 
@@ -84,9 +90,9 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
 
   @Override
   public void startMonitoringApp(MemoryStartRequest request, StreamObserver<MemoryStartResponse> observer) {
+    myMemoryData.clear();
+    myStatsData.clear();
     synchronized (myUpdatingDataLock) {
-      myMemoryData.clear();
-      myStatsData.clear();
       myHeapData.clear();
     }
     myProcessId = request.getAppId();
@@ -193,11 +199,9 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
     long startTime = request.getStartTime();
     long endTime = request.getEndTime();
 
-    //TODO: Optimize so we do not need to loop over all the data every request, ideally binary search to start time and loop till end.
+    myMemoryData.getRange(startTime, endTime, response::addMemSamples);
+    myStatsData.getRange(startTime, endTime, response::addVmStatsSamples);
     synchronized (myUpdatingDataLock) {
-      myMemoryData.stream().filter(obj -> obj.getTimestamp() > startTime && obj.getTimestamp() <= endTime).forEach(response::addMemSamples);
-      myStatsData.stream().filter(obj -> obj.getTimestamp() > startTime && obj.getTimestamp() <= endTime)
-        .forEach(response::addVmStatsSamples);
       myHeapData.stream().filter(obj -> (obj.myInfo.getStartTime() > startTime && obj.myInfo.getStartTime() <= endTime) ||
                                         (obj.myInfo.getEndTime() > startTime && obj.myInfo.getEndTime() <= endTime))
         .forEach(obj -> response.addHeapDumpInfos(obj.myInfo));
@@ -212,16 +216,19 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
   }
 
   @Override
-  public void poll() {
+  public boolean poll() {
     MemoryRequest.Builder dataRequestBuilder = MemoryRequest.newBuilder()
       .setAppId(myProcessId)
       .setStartTime(myDataRequestStartTimestampNs)
       .setEndTime(Long.MAX_VALUE);
     MemoryData response = myPollingService.getData(dataRequestBuilder.build());
 
+    myMemoryData.addAll(response.getMemSamplesList());
+    myStatsData.addAll(response.getVmStatsSamplesList());
+
+    long lockRequestNs = System.nanoTime();
     synchronized (myUpdatingDataLock) {
-      myMemoryData.addAll(response.getMemSamplesList());
-      myStatsData.addAll(response.getVmStatsSamplesList());
+      myLockMetrics.recordAcquired(lockRequestNs);
       myAllocationEvents.addAll(response.getAllocationEventsList());
 
       if (response.getAllocationsInfoCount() > 0) {
@@ -286,6 +293,14 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
     if (response.getEndTimestamp() > myDataRequestStartTimestampNs) {
       myDataRequestStartTimestampNs = response.getEndTimestamp();
     }
+    return response.getMemSamplesCount() > 0 || response.getVmStatsSamplesCount() > 0 || response.getAllocationEventsCount() > 0 ||
+           response.getAllocationsInfoCount() > 0 || response.getHeapDumpInfosCount() > 0;
+  }
+
+  @NotNull
+  @Override
+  public String getMetricsSummary() {
+    return myLockMetrics + "; memory samples: " + myMemoryData.getMetrics() + "; vm stats: " + myStatsData.getMetrics();
   }
 
   private static int compareTimes(long left, long right) {
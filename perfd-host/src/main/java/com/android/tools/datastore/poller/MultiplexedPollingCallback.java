@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import com.android.annotations.VisibleForTesting;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
+import io.grpc.StatusRuntimeException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Schedules the pollers of a device from a single {@link PollRunner} tick instead of each running its own loop.
+ *
+ * Every service keeps its own adaptive period and is polled on a bounded executor, so a slow service (e.g. a network poll that
+ * fetches large payloads) doesn't delay the samples of the others. Each service has at most one poll in flight: if a service is
+ * still busy when it is due again, the tick is skipped and counted rather than queued, so polls never pile up behind a slow
+ * device or a busy host. A gRPC failure in one service does not prevent the others from being polled.
+ */
+public class MultiplexedPollingCallback implements PollRunner.PollingCallback {
+  /**
+   * Period used by a service while it is receiving data, and the period of the tick that dispatches the due services.
+   */
+  public static final long MIN_POLLING_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  /**
+   * Period a service backs off to while it has no new data, e.g. when no app is being profiled.
+   */
+  public static final long MAX_POLLING_DELAY_NS = TimeUnit.SECONDS.toNanos(1);
+
+  private static Logger getLog() { return Logger.getInstance(MultiplexedPollingCallback.class); }
+
+  @NotNull private final List<ServiceSchedule> mySchedules = new ArrayList<>();
+  @NotNull private final LongSupplier myClock;
+  private Executor myExecutor;
+
+  public MultiplexedPollingCallback() {
+    this(null, System::nanoTime);
+  }
+
+  /**
+   * @param executor the executor to run the polls on, or null to use a pooled executor with one thread per service
+   */
+  @VisibleForTesting
+  MultiplexedPollingCallback(Executor executor, @NotNull LongSupplier clock) {
+    myExecutor = executor;
+    myClock = clock;
+  }
+
+  public void addCallback(@NotNull PollRunner.PollingCallback callback) {
+    mySchedules.add(new ServiceSchedule(callback));
+  }
+
+  public boolean isEmpty() {
+    return mySchedules.isEmpty();
+  }
+
+  /**
+   * Dispatches every service that is due and not already being polled. The polls themselves run on the executor.
+   *
+   * @return false, the {@link PollRunner} of the tick ignores the result
+   */
+  @Override
+  public boolean poll() {
+    if (myExecutor == null) {
+      myExecutor = new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, mySchedules.size());
+    }
+    long nowNs = myClock.getAsLong();
+    for (ServiceSchedule schedule : mySchedules) {
+      if (nowNs - schedule.myNextPollNs < 0) {
+        continue;
+      }
+      if (!schedule.myInFlight.compareAndSet(false, true)) {
+        schedule.mySkippedCount.increment();
+        continue;
+      }
+      myExecutor.execute(schedule::poll);
+    }
+    return false;
+  }
+
+  @NotNull
+  @Override
+  public String getMetricsSummary() {
+    StringBuilder summary = new StringBuilder("Multiplexed polls skipped while busy:");
+    for (ServiceSchedule schedule : mySchedules) {
+      summary.append(' ').append(schedule.myCallback.getClass().getSimpleName()).append('=').append(schedule.getSkippedCount());
+    }
+    return summary.toString();
+  }
+
+  /**
+   * Returns how many times the given service was due while its previous poll was still running.
+   */
+  @VisibleForTesting
+  long getSkippedCount(@NotNull PollRunner.PollingCallback callback) {
+    for (ServiceSchedule schedule : mySchedules) {
+      if (schedule.myCallback == callback) {
+        return schedule.getSkippedCount();
+      }
+    }
+    return 0;
+  }
+
+  @NotNull
+  public PollRunner createRunner() {
+    return new PollRunner(this, MIN_POLLING_DELAY_NS);
+  }
+
+  private final class ServiceSchedule {
+    @NotNull final PollRunner.PollingCallback myCallback;
+    @NotNull final AtomicBoolean myInFlight = new AtomicBoolean();
+    @NotNull final LongAdder mySkippedCount = new LongAdder();
+    /**
+     * Written by the poll that just finished, before it clears {@link #myInFlight}, and read by the tick after it.
+     */
+    volatile long myNextPollNs;
+    private long myPeriodNs = MIN_POLLING_DELAY_NS;
+
+    ServiceSchedule(@NotNull PollRunner.PollingCallback callback) {
+      myCallback = callback;
+      myNextPollNs = myClock.getAsLong();
+    }
+
+    void poll() {
+      long startNs = myClock.getAsLong();
+      boolean hasNewData = false;
+      try {
+        hasNewData = myCallback.poll();
+      }
+      catch (StatusRuntimeException e) {
+        getLog().debug("Error polling " + myCallback.getClass().getSimpleName(), e);
+      }
+      finally {
+        myPeriodNs = hasNewData ? MIN_POLLING_DELAY_NS : Math.min(myPeriodNs * 2, MAX_POLLING_DELAY_NS);
+        myNextPollNs = startNs + myPeriodNs;
+        myInFlight.set(false);
+      }
+    }
+
+    long getSkippedCount() {
+      return mySkippedCount.sum();
+    }
+  }
+}
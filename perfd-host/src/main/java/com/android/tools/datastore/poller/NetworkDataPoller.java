@@ -16,6 +16,8 @@
 package com.android.tools.datastore.poller;
 
 import com.android.tools.datastore.ServicePassThrough;
+import com.android.tools.datastore.store.ProtoSampleCodec;
+import com.android.tools.datastore.store.SpillingSampleStore;
 import com.android.tools.profiler.proto.NetworkProfiler;
 import com.android.tools.profiler.proto.NetworkServiceGrpc;
 import io.grpc.ManagedChannel;
@@ -38,8 +40,15 @@ public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase
   private int myProcessId = -1;
 
   private final Object myLock = new Object();
-  @GuardedBy("myLock") private final List<NetworkProfiler.NetworkProfilerData> myData = new ArrayList<>();
   @GuardedBy("myLock") private final Map<Long, ConnectionData> myConnectionData = new LinkedHashMap<>();
+  private final LockContentionMetrics myLockMetrics = new LockContentionMetrics("Network");
+
+  /**
+   * Written by the poll thread and read by query handlers without locking.
+   */
+  private final SpillingSampleStore<NetworkProfiler.NetworkProfilerData> myData =
+    new SpillingSampleStore<>(data -> data.getBasicInfo().getEndTimestamp(),
+                              new ProtoSampleCodec<>(NetworkProfiler.NetworkProfilerData.parser()));
 
   public NetworkDataPoller() {
   }
@@ -63,42 +72,28 @@ public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase
   public void getData(NetworkProfiler.NetworkDataRequest request, StreamObserver<NetworkProfiler.NetworkDataResponse> responseObserver) {
     NetworkProfiler.NetworkDataResponse.Builder response = NetworkProfiler.NetworkDataResponse.newBuilder();
 
-    //TODO: Optimize so we do not need to loop all the data every request, ideally binary search to start time and loop till end.
-    synchronized (myLock) {
-      if (myData.size() == 0) {
-        responseObserver.onNext(response.build());
-        responseObserver.onCompleted();
-        return;
-      }
-
-      long startTime = request.getStartTimestamp();
-      long endTime = request.getEndTimestamp();
-
-      for (NetworkProfiler.NetworkProfilerData data : myData) {
-        long current = data.getBasicInfo().getEndTimestamp();
-        if (current > startTime && current <= endTime) {
-          if ((request.getType() == NetworkProfiler.NetworkDataRequest.Type.ALL) ||
-              (request.getType() == NetworkProfiler.NetworkDataRequest.Type.SPEED &&
-               data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.SPEED_DATA) ||
-              (request.getType() == NetworkProfiler.NetworkDataRequest.Type.CONNECTIONS &&
-               data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.CONNECTION_DATA) ||
-              (request.getType() == NetworkProfiler.NetworkDataRequest.Type.CONNECTIVITY &&
-               data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.CONNECTIVITY_DATA)) {
-            response.addData(data);
-          }
-        }
+    NetworkProfiler.NetworkDataRequest.Type type = request.getType();
+    myData.getRange(request.getStartTimestamp(), request.getEndTimestamp(), data -> {
+      if ((type == NetworkProfiler.NetworkDataRequest.Type.ALL) ||
+          (type == NetworkProfiler.NetworkDataRequest.Type.SPEED &&
+           data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.SPEED_DATA) ||
+          (type == NetworkProfiler.NetworkDataRequest.Type.CONNECTIONS &&
+           data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.CONNECTION_DATA) ||
+          (type == NetworkProfiler.NetworkDataRequest.Type.CONNECTIVITY &&
+           data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.CONNECTIVITY_DATA)) {
+        response.addData(data);
       }
-      responseObserver.onNext(response.build());
-      responseObserver.onCompleted();
-    }
+    });
+    responseObserver.onNext(response.build());
+    responseObserver.onCompleted();
   }
 
   @Override
   public void startMonitoringApp(NetworkProfiler.NetworkStartRequest request,
                                  StreamObserver<NetworkProfiler.NetworkStartResponse> responseObserver) {
 
+    myData.clear();
     synchronized (myLock) {
-      myData.clear();
       myConnectionData.clear();
     }
 
@@ -176,9 +171,9 @@ public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase
   }
 
   @Override
-  public void poll() {
+  public boolean poll() {
     if (myProcessId == -1) {
-      return;
+      return false;
     }
     NetworkProfiler.NetworkDataRequest.Builder dataRequestBuilder = NetworkProfiler.NetworkDataRequest.newBuilder()
       .setAppId(myProcessId)
@@ -186,40 +181,58 @@ public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase
       .setEndTimestamp(Long.MAX_VALUE);
     NetworkProfiler.NetworkDataResponse response = myPollingService.getData(dataRequestBuilder.build());
 
-    synchronized (myLock) {
-      for (NetworkProfiler.NetworkProfilerData data : response.getDataList()) {
-        myDataRequestStartTimestampNs = data.getBasicInfo().getEndTimestamp();
-        myData.add(data);
-      }
-      pollHttpRange();
+    for (NetworkProfiler.NetworkProfilerData data : response.getDataList()) {
+      myDataRequestStartTimestampNs = data.getBasicInfo().getEndTimestamp();
+      myData.add(data);
     }
+    return pollHttpRange() || response.getDataCount() > 0;
+  }
+
+  @NotNull
+  @Override
+  public String getMetricsSummary() {
+    return myLockMetrics + "; network data: " + myData.getMetrics();
   }
 
-  private void pollHttpRange() {
+  /**
+   * @return true if any connection was added or updated.
+   */
+  private boolean pollHttpRange() {
     NetworkProfiler.HttpRangeRequest.Builder requestBuilder = NetworkProfiler.HttpRangeRequest.newBuilder()
       .setAppId(myProcessId)
       .setStartTimestamp(myHttpRangeRequestStartTimeNs)
       .setEndTimestamp(Long.MAX_VALUE);
     NetworkProfiler.HttpRangeResponse response = myPollingService.getHttpRange(requestBuilder.build());
 
+    // Connections are registered under the lock, but their details are fetched afterwards so that query handlers
+    // are not blocked behind the device round trips.
+    List<NetworkProfiler.HttpConnectionData> newConnections = new ArrayList<>();
+    long lockRequestNs = System.nanoTime();
     synchronized (myLock) {
+      myLockMetrics.recordAcquired(lockRequestNs);
       for (NetworkProfiler.HttpConnectionData data : response.getDataList()) {
         myHttpRangeRequestStartTimeNs = Math.max(myHttpRangeRequestStartTimeNs, data.getStartTimestamp() + 1);
         myHttpRangeRequestStartTimeNs = Math.max(myHttpRangeRequestStartTimeNs, data.getEndTimestamp() + 1);
 
         if (!myConnectionData.containsKey(data.getConnId())) {
           myConnectionData.put(data.getConnId(), new ConnectionData(data));
-          pollHttpDetails(data.getConnId(), NetworkProfiler.HttpDetailsRequest.Type.REQUEST);
+          newConnections.add(data);
         } else {
           myConnectionData.get(data.getConnId()).myCommonData = data;
         }
+      }
+    }
 
-        if (data.getEndTimestamp() != 0) {
-          pollHttpDetails(data.getConnId(), NetworkProfiler.HttpDetailsRequest.Type.RESPONSE);
-          pollHttpDetails(data.getConnId(), NetworkProfiler.HttpDetailsRequest.Type.RESPONSE_BODY);
-        }
+    for (NetworkProfiler.HttpConnectionData data : newConnections) {
+      pollHttpDetails(data.getConnId(), NetworkProfiler.HttpDetailsRequest.Type.REQUEST);
+    }
+    for (NetworkProfiler.HttpConnectionData data : response.getDataList()) {
+      if (data.getEndTimestamp() != 0) {
+        pollHttpDetails(data.getConnId(), NetworkProfiler.HttpDetailsRequest.Type.RESPONSE);
+        pollHttpDetails(data.getConnId(), NetworkProfiler.HttpDetailsRequest.Type.RESPONSE_BODY);
       }
     }
+    return response.getDataCount() > 0;
   }
 
   private void pollHttpDetails(long connectionId, NetworkProfiler.HttpDetailsRequest.Type type) {
@@ -229,8 +242,14 @@ public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase
       .build();
     NetworkProfiler.HttpDetailsResponse response = myPollingService.getHttpDetails(request);
 
+    long lockRequestNs = System.nanoTime();
     synchronized (myLock) {
+      myLockMetrics.recordAcquired(lockRequestNs);
       ConnectionData data = myConnectionData.get(connectionId);
+      if (data == null) {
+        // The connections were cleared by a new monitoring session while the details were in flight.
+        return;
+      }
       switch (type) {
         case REQUEST:
           data.myRequest = response.getRequest();
@@ -18,14 +18,27 @@ package com.android.tools.datastore.poller;
 import com.intellij.openapi.diagnostic.Logger;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
+import org.jetbrains.annotations.NotNull;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.TimeUnit;
 
 public class PollRunner implements RunnableFuture<Void> {
-  interface PollingCallback {
-    void poll();
+  public interface PollingCallback {
+    /**
+     * @return true if the poll received new data. {@link MultiplexedPollingCallback} uses this to back off services which have nothing
+     * to fetch; a {@link PollRunner} polls at a fixed period and ignores it.
+     */
+    boolean poll();
+
+    /**
+     * @return a human readable summary of the poller's contention metrics, or an empty string if it doesn't track any.
+     */
+    @NotNull
+    default String getMetricsSummary() {
+      return "";
+    }
   }
 
   public static final long POLLING_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(250);
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.store;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A growable array of longs stored in fixed size chunks, so growing never copies the values. One thread writes values and then
+ * publishes them through a volatile size kept by the owner. Other threads may read any index below a size they observed.
+ */
+final class LongChunks {
+  static final int CHUNK_BITS = 10;
+  static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  @NotNull private volatile long[][] myChunks = new long[16][];
+
+  void set(int index, long value) {
+    int chunk = index >>> CHUNK_BITS;
+    long[][] chunks = myChunks;
+    if (chunk >= chunks.length) {
+      long[][] grown = new long[Math.max(chunks.length * 2, chunk + 1)][];
+      System.arraycopy(chunks, 0, grown, 0, chunks.length);
+      chunks = grown;
+      myChunks = grown;
+    }
+    if (chunks[chunk] == null) {
+      chunks[chunk] = new long[CHUNK_SIZE];
+    }
+    chunks[chunk][index & CHUNK_MASK] = value;
+  }
+
+  long get(int index) {
+    return myChunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+  }
+
+  /**
+   * Returns the first index in [0, size) whose value is strictly greater than the given value, or size if there is none. The values
+   * must be sorted.
+   */
+  int firstIndexAfter(int size, long value) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (get(mid) <= value) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.store;
+
+import com.google.protobuf3jarjar.MessageLite;
+import com.google.protobuf3jarjar.Parser;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * {@link SampleCodec} for samples that are protobuf messages, which is the case for all data cached by the datastore pollers.
+ */
+public final class ProtoSampleCodec<T extends MessageLite> implements SampleCodec<T> {
+  @NotNull private final Parser<T> myParser;
+
+  public ProtoSampleCodec(@NotNull Parser<T> parser) {
+    myParser = parser;
+  }
+
+  @NotNull
+  @Override
+  public byte[] encode(@NotNull T sample) {
+    return sample.toByteArray();
+  }
+
+  @NotNull
+  @Override
+  public T decode(@NotNull byte[] bytes) throws IOException {
+    return myParser.parseFrom(bytes);
+  }
+}
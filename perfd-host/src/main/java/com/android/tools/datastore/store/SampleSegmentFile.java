@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.store;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An append-only file of length-prefixed records. Records are written through the file channel and read back through a read-only
+ * memory mapping of the file, which is extended lazily when a record past the currently mapped region is requested.
+ *
+ * Only one thread may append, but records whose offsets have been handed out can be read from any thread at the same time.
+ */
+final class SampleSegmentFile implements Closeable {
+  private static final int LENGTH_PREFIX_BYTES = Integer.BYTES;
+
+  @NotNull private final File myFile;
+  @NotNull private final RandomAccessFile myRandomAccessFile;
+  @NotNull private final FileChannel myChannel;
+  private final int myCapacity;
+
+  private int mySize;
+  private volatile MappedByteBuffer myMappedBuffer;
+
+  SampleSegmentFile(int capacity) throws IOException {
+    myFile = FileUtil.createTempFile("perfd-host-samples", ".seg", true);
+    myRandomAccessFile = new RandomAccessFile(myFile, "rw");
+    myChannel = myRandomAccessFile.getChannel();
+    myCapacity = capacity;
+  }
+
+  @NotNull
+  File getFile() {
+    return myFile;
+  }
+
+  /**
+   * Returns whether a record of the given length still fits in this segment.
+   */
+  boolean canAppend(int length) {
+    return (long)mySize + LENGTH_PREFIX_BYTES + length <= myCapacity;
+  }
+
+  /**
+   * Appends a record and returns its offset in the segment.
+   */
+  int append(@NotNull byte[] bytes) throws IOException {
+    assert canAppend(bytes.length);
+    int offset = mySize;
+    ByteBuffer buffer = ByteBuffer.allocate(LENGTH_PREFIX_BYTES + bytes.length);
+    buffer.putInt(bytes.length).put(bytes).flip();
+    while (buffer.hasRemaining()) {
+      myChannel.write(buffer, offset + buffer.position());
+    }
+    mySize += buffer.limit();
+    return offset;
+  }
+
+  /**
+   * Returns the record that was appended at the given offset.
+   */
+  @NotNull
+  byte[] read(int offset) throws IOException {
+    MappedByteBuffer mappedBuffer = myMappedBuffer;
+    if (mappedBuffer == null || offset + LENGTH_PREFIX_BYTES > mappedBuffer.capacity()) {
+      mappedBuffer = remap();
+    }
+    int length = mappedBuffer.getInt(offset);
+    if ((long)offset + LENGTH_PREFIX_BYTES + length > mappedBuffer.capacity()) {
+      // The mapping was taken while the body of the record was still being written.
+      mappedBuffer = remap();
+    }
+    ByteBuffer record = mappedBuffer.duplicate();
+    record.position(offset + LENGTH_PREFIX_BYTES);
+    byte[] bytes = new byte[length];
+    record.get(bytes);
+    return bytes;
+  }
+
+  /**
+   * Maps the whole file as currently written. Records are appended before their offsets are handed out to readers, so the new mapping
+   * covers any record which can be requested.
+   */
+  @NotNull
+  private MappedByteBuffer remap() throws IOException {
+    MappedByteBuffer mappedBuffer = myChannel.map(FileChannel.MapMode.READ_ONLY, 0, myChannel.size());
+    myMappedBuffer = mappedBuffer;
+    return mappedBuffer;
+  }
+
+  @Override
+  public void close() throws IOException {
+    myMappedBuffer = null;
+    try {
+      myRandomAccessFile.close();
+    }
+    finally {
+      FileUtil.delete(myFile);
+    }
+  }
+}
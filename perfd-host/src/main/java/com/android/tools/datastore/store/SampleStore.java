@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.store;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Consumer;
+
+/**
+ * Storage for samples that arrive (mostly) in timestamp order, e.g. the data cached by the datastore pollers.
+ * A store has a single writer thread, which calls {@link #add}, and any number of reader threads that may query it at the same time
+ * without further locking.
+ */
+public interface SampleStore<T> {
+
+  /**
+   * Appends a sample to the store. Must only be called from the writer thread. Samples are kept in arrival order, a sample that arrives
+   * late is returned by queries for the latest timestamp seen when it arrived rather than for its own timestamp.
+   */
+  void add(@NotNull T sample);
+
+  default void addAll(@NotNull Iterable<? extends T> samples) {
+    for (T sample : samples) {
+      add(sample);
+    }
+  }
+
+  /**
+   * Passes every sample whose timestamp is in the range (startExclusive, endInclusive] to the consumer, in timestamp order.
+   */
+  void getRange(long startExclusive, long endInclusive, @NotNull Consumer<? super T> consumer);
+
+  /**
+   * Returns the total number of samples in the store.
+   */
+  int size();
+
+  /**
+   * Removes all samples from the store.
+   */
+  void clear();
+}
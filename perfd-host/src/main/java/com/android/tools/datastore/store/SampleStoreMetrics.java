@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.store;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for the traffic on a {@link SpillingSampleStore}, to confirm that concurrent range queries don't hold up the writer.
+ */
+public final class SampleStoreMetrics {
+  private final LongAdder myAppendCount = new LongAdder();
+  private final LongAdder myReadCount = new LongAdder();
+  private final LongAdder myReadNs = new LongAdder();
+  private final AtomicLong myMaxReadNs = new AtomicLong();
+  private final LongAdder mySpilledReadCount = new LongAdder();
+
+  void recordAppend() {
+    myAppendCount.increment();
+  }
+
+  void recordRead(long durationNs) {
+    myReadCount.increment();
+    myReadNs.add(durationNs);
+    myMaxReadNs.accumulateAndGet(durationNs, Math::max);
+  }
+
+  void recordSpilledRead() {
+    mySpilledReadCount.increment();
+  }
+
+  public long getAppendCount() {
+    return myAppendCount.sum();
+  }
+
+  public long getReadCount() {
+    return myReadCount.sum();
+  }
+
+  /**
+   * Returns the number of samples that readers had to fetch from disk because they were spilled while the read was in progress.
+   */
+  public long getSpilledReadCount() {
+    return mySpilledReadCount.sum();
+  }
+
+  @Override
+  public String toString() {
+    long reads = getReadCount();
+    return String.format("appends=%d, reads=%d, avgReadUs=%d, maxReadUs=%d, spilledReads=%d", getAppendCount(), reads,
+                         reads == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(myReadNs.sum() / reads),
+                         TimeUnit.NANOSECONDS.toMicros(myMaxReadNs.get()), getSpilledReadCount());
+  }
+}
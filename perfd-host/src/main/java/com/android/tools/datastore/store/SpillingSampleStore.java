@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.store;
+
+import com.android.annotations.VisibleForTesting;
+import com.intellij.openapi.diagnostic.Logger;
+import net.jcip.annotations.GuardedBy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * A {@link SampleStore} that keeps a bounded window of the most recent samples on the heap and spills older samples to append-only,
+ * memory-mapped segment files. A timestamp index of all samples is kept in primitive arrays so range queries over old data only
+ * decode the records inside the requested range.
+ *
+ * The store supports a single writer thread (calling {@link #add}) concurrently with any number of reader threads, without locking.
+ * Samples are appended to chunked arrays and published by a volatile size, readers work on the prefix they observed. {@link #clear()}
+ * swaps in a fresh, empty state and closes the old one, so it may also be called from a reader thread. Samples the writer adds to the
+ * old state while it is being cleared are dropped, segment creation and closing share a lock so no segment file outlives a clear.
+ *
+ * Samples are expected in timestamp order. The index stores the running maximum of the timestamps, so a sample that arrives late is
+ * still returned, but by queries for the time it arrived at rather than the time it carries.
+ *
+ * If a segment file cannot be created or written, the store logs the failure and keeps the samples in memory instead.
+ */
+public class SpillingSampleStore<T> implements SampleStore<T> {
+  public static final int DEFAULT_HOT_WINDOW_SIZE = 4096;
+
+  private static final int DEFAULT_SEGMENT_CAPACITY_BYTES = 64 * 1024 * 1024;
+
+  private static Logger getLogger() { return Logger.getInstance(SpillingSampleStore.class); }
+
+  @NotNull private final ToLongFunction<T> myTimestampFunction;
+  @NotNull private final SampleCodec<T> myCodec;
+  private final int myHotWindowSize;
+  private final int mySegmentCapacity;
+  @NotNull private final SampleStoreMetrics myMetrics = new SampleStoreMetrics();
+
+  @NotNull private volatile State<T> myState = new State<>();
+
+  public SpillingSampleStore(@NotNull ToLongFunction<T> timestampFunction, @NotNull SampleCodec<T> codec) {
+    this(timestampFunction, codec, DEFAULT_HOT_WINDOW_SIZE);
+  }
+
+  public SpillingSampleStore(@NotNull ToLongFunction<T> timestampFunction, @NotNull SampleCodec<T> codec, int hotWindowSize) {
+    this(timestampFunction, codec, hotWindowSize, DEFAULT_SEGMENT_CAPACITY_BYTES);
+  }
+
+  @VisibleForTesting
+  SpillingSampleStore(@NotNull ToLongFunction<T> timestampFunction, @NotNull SampleCodec<T> codec, int hotWindowSize, int segmentCapacity) {
+    assert hotWindowSize > 1;
+    myTimestampFunction = timestampFunction;
+    myCodec = codec;
+    myHotWindowSize = hotWindowSize;
+    mySegmentCapacity = segmentCapacity;
+  }
+
+  @Override
+  public void add(@NotNull T sample) {
+    State<T> state = myState;
+    int index = state.mySize;
+    long timestamp = myTimestampFunction.applyAsLong(sample);
+    if (index > 0) {
+      timestamp = Math.max(timestamp, state.myTimestamps.get(index - 1));
+    }
+    state.myTimestamps.set(index, timestamp);
+    state.setSample(index, sample);
+    // Publishes the sample to the readers.
+    state.mySize = index + 1;
+    myMetrics.recordAppend();
+
+    if (!state.mySpillFailed && state.mySize - state.mySpilledCount > myHotWindowSize) {
+      spill(state, state.mySize - state.mySpilledCount - myHotWindowSize / 2);
+    }
+  }
+
+  @Override
+  public void getRange(long startExclusive, long endInclusive, @NotNull Consumer<? super T> consumer) {
+    long startNs = System.nanoTime();
+    State<T> state = myState;
+    int size = state.mySize;
+    try {
+      for (int i = state.myTimestamps.firstIndexAfter(size, startExclusive); i < size && state.myTimestamps.get(i) <= endInclusive; i++) {
+        T sample = state.getSample(i);
+        if (sample == null) {
+          // The sample was spilled (and dropped from the heap) since we started reading, its location is published by now.
+          myMetrics.recordSpilledRead();
+          long location = state.myLocations.get(i);
+          sample = myCodec.decode(state.mySegments.get((int)(location >>> 32)).read((int)location));
+        }
+        consumer.accept(sample);
+      }
+    }
+    catch (IOException e) {
+      getLogger().warn("Unable to read spilled samples", e);
+    }
+    myMetrics.recordRead(System.nanoTime() - startNs);
+  }
+
+  @Override
+  public int size() {
+    return myState.mySize;
+  }
+
+  @Override
+  public void clear() {
+    State<T> previous = myState;
+    myState = new State<>();
+    previous.close();
+  }
+
+  @NotNull
+  public SampleStoreMetrics getMetrics() {
+    return myMetrics;
+  }
+
+  /**
+   * Returns the segment files the store currently spills to.
+   */
+  @VisibleForTesting
+  @NotNull
+  List<File> getSegmentFiles() {
+    List<File> files = new ArrayList<>();
+    for (SampleSegmentFile segment : myState.mySegments) {
+      files.add(segment.getFile());
+    }
+    return files;
+  }
+
+  /**
+   * Writes the oldest count in-memory samples to disk and drops them from the heap. Called on the writer thread only.
+   */
+  private void spill(@NotNull State<T> state, int count) {
+    int spilledCount = state.mySpilledCount;
+    int end = spilledCount + count;
+    try {
+      for (int i = spilledCount; i < end; i++) {
+        byte[] bytes = myCodec.encode(state.getSample(i));
+        SampleSegmentFile segment = state.mySegments.isEmpty() ? null : state.mySegments.get(state.mySegments.size() - 1);
+        if (segment == null || !segment.canAppend(bytes.length)) {
+          segment = state.addSegment(Math.max(mySegmentCapacity, bytes.length + Integer.BYTES));
+          if (segment == null) {
+            // The store was cleared while we were spilling, nobody reads this state anymore.
+            return;
+          }
+        }
+        state.myLocations.set(i, ((long)(state.mySegments.size() - 1) << 32) | segment.append(bytes));
+        spilledCount = i + 1;
+      }
+    }
+    catch (IOException e) {
+      if (!state.isClosed()) {
+        getLogger().warn("Unable to spill samples to disk, keeping them in memory", e);
+      }
+      state.mySpillFailed = true;
+    }
+    finally {
+      // Publish the locations before dropping the samples from the heap.
+      state.mySpilledCount = spilledCount;
+      state.dropSamplesBefore(spilledCount);
+    }
+  }
+
+  private static final class State<T> {
+    @NotNull final LongChunks myTimestamps = new LongChunks();
+    /**
+     * Location of each spilled sample, encoded as (segment index << 32 | offset in segment).
+     */
+    @NotNull final LongChunks myLocations = new LongChunks();
+    @NotNull final List<SampleSegmentFile> mySegments = new CopyOnWriteArrayList<>();
+    /**
+     * Chunks of in-memory samples. Chunks whose samples have all been spilled are set to null.
+     */
+    @NotNull volatile AtomicReferenceArray<Object[]> mySampleChunks = new AtomicReferenceArray<>(16);
+
+    volatile int mySize;
+    volatile int mySpilledCount;
+    boolean mySpillFailed;
+
+    @NotNull private final Object mySegmentLock = new Object();
+    @GuardedBy("mySegmentLock") private boolean myClosed;
+
+    void setSample(int index, @NotNull T sample) {
+      int chunk = index >>> LongChunks.CHUNK_BITS;
+      AtomicReferenceArray<Object[]> chunks = mySampleChunks;
+      if (chunk >= chunks.length()) {
+        AtomicReferenceArray<Object[]> grown = new AtomicReferenceArray<>(Math.max(chunks.length() * 2, chunk + 1));
+        for (int i = 0; i < chunks.length(); i++) {
+          grown.set(i, chunks.get(i));
+        }
+        chunks = grown;
+        mySampleChunks = grown;
+      }
+      Object[] samples = chunks.get(chunk);
+      if (samples == null) {
+        samples = new Object[LongChunks.CHUNK_SIZE];
+        chunks.set(chunk, samples);
+      }
+      samples[index & LongChunks.CHUNK_MASK] = sample;
+    }
+
+    /**
+     * Returns the in-memory sample at the index, or null if it was dropped from the heap.
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    T getSample(int index) {
+      Object[] samples = mySampleChunks.get(index >>> LongChunks.CHUNK_BITS);
+      return samples == null ? null : (T)samples[index & LongChunks.CHUNK_MASK];
+    }
+
+    void dropSamplesBefore(int index) {
+      AtomicReferenceArray<Object[]> chunks = mySampleChunks;
+      for (int chunk = 0; chunk < index >>> LongChunks.CHUNK_BITS; chunk++) {
+        chunks.set(chunk, null);
+      }
+    }
+
+    /**
+     * Creates a segment and adds it to the state, or returns null if the state has already been closed. Segment creation and
+     * {@link #close()} are serialized, so a segment that the writer creates while the store is cleared is never left behind on disk.
+     */
+    @Nullable
+    SampleSegmentFile addSegment(int capacity) throws IOException {
+      synchronized (mySegmentLock) {
+        if (myClosed) {
+          return null;
+        }
+        SampleSegmentFile segment = new SampleSegmentFile(capacity);
+        mySegments.add(segment);
+        return segment;
+      }
+    }
+
+    boolean isClosed() {
+      synchronized (mySegmentLock) {
+        return myClosed;
+      }
+    }
+
+    void close() {
+      synchronized (mySegmentLock) {
+        myClosed = true;
+      }
+      for (SampleSegmentFile segment : mySegments) {
+        try {
+          segment.close();
+        }
+        catch (IOException e) {
+          getLogger().warn("Unable to delete sample segment", e);
+        }
+      }
+    }
+  }
+}
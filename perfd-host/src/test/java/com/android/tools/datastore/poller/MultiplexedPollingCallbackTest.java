@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.android.tools.datastore.poller.MultiplexedPollingCallback.MAX_POLLING_DELAY_NS;
+import static com.android.tools.datastore.poller.MultiplexedPollingCallback.MIN_POLLING_DELAY_NS;
+import static org.junit.Assert.*;
+
+public class MultiplexedPollingCallbackTest {
+  /**
+   * Polls submitted to the executor, run by the test in whatever order it needs.
+   */
+  private final List<Runnable> myPendingPolls = new ArrayList<>();
+  private long myTimeNs;
+  private MultiplexedPollingCallback myMultiplexer;
+
+  @Before
+  public void setUp() {
+    myMultiplexer = new MultiplexedPollingCallback(myPendingPolls::add, () -> myTimeNs);
+  }
+
+  @Test
+  public void testSlowServiceDoesNotDelayOthers() {
+    CountingCallback fast = new CountingCallback(true);
+    CountingCallback slow = new CountingCallback(true);
+    myMultiplexer.addCallback(fast);
+    myMultiplexer.addCallback(slow);
+
+    myMultiplexer.poll();
+    assertEquals(2, myPendingPolls.size());
+    Runnable slowPoll = myPendingPolls.remove(1);
+
+    // The slow service's poll never completes, the fast one keeps being polled every tick.
+    for (int i = 0; i < 10; i++) {
+      myPendingPolls.remove(0).run();
+      myTimeNs += MIN_POLLING_DELAY_NS;
+      myMultiplexer.poll();
+      assertEquals(1, myPendingPolls.size());
+    }
+    assertEquals(10, fast.myPollCount);
+    assertEquals(0, slow.myPollCount);
+    // Ticks for the busy service are dropped rather than queued.
+    assertEquals(10, myMultiplexer.getSkippedCount(slow));
+    assertEquals(0, myMultiplexer.getSkippedCount(fast));
+
+    // Once the slow poll finishes the service is scheduled again.
+    slowPoll.run();
+    myPendingPolls.remove(0).run();
+    myTimeNs += MIN_POLLING_DELAY_NS;
+    myMultiplexer.poll();
+    assertEquals(2, myPendingPolls.size());
+  }
+
+  @Test
+  public void testIdleServiceBacksOff() {
+    CountingCallback idle = new CountingCallback(false);
+    CountingCallback busy = new CountingCallback(true);
+    myMultiplexer.addCallback(idle);
+    myMultiplexer.addCallback(busy);
+
+    long endNs = 10 * MAX_POLLING_DELAY_NS;
+    while (myTimeNs < endNs) {
+      myMultiplexer.poll();
+      myPendingPolls.forEach(Runnable::run);
+      myPendingPolls.clear();
+      myTimeNs += MIN_POLLING_DELAY_NS;
+    }
+    assertEquals(endNs / MIN_POLLING_DELAY_NS, busy.myPollCount);
+    assertTrue(idle.myPollCount < 20);
+    assertTrue(idle.myPollCount >= 10);
+  }
+
+  private static class CountingCallback implements PollRunner.PollingCallback {
+    private final boolean myHasNewData;
+    int myPollCount;
+
+    CountingCallback(boolean hasNewData) {
+      myHasNewData = hasNewData;
+    }
+
+    @Override
+    public boolean poll() {
+      myPollCount++;
+      return myHasNewData;
+    }
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.store;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class SpillingSampleStoreTest {
+  /**
+   * Stores a long timestamp per sample, so each record in a segment file takes 12 bytes with its length prefix.
+   */
+  private static final SampleCodec<Long> LONG_CODEC = new SampleCodec<Long>() {
+    @NotNull
+    @Override
+    public byte[] encode(@NotNull Long sample) {
+      return ByteBuffer.allocate(Long.BYTES).putLong(sample).array();
+    }
+
+    @NotNull
+    @Override
+    public Long decode(@NotNull byte[] bytes) {
+      return ByteBuffer.wrap(bytes).getLong();
+    }
+  };
+
+  private SpillingSampleStore<Long> myStore;
+
+  @After
+  public void tearDown() {
+    if (myStore != null) {
+      myStore.clear();
+    }
+  }
+
+  @Test
+  public void testRangeReturnsSamplesInOrder() {
+    myStore = new SpillingSampleStore<>(Long::longValue, LONG_CODEC);
+    for (long i = 1; i <= 100; i++) {
+      myStore.add(i * 10);
+    }
+    assertEquals(100, myStore.size());
+    assertEquals(range(110, 200, 10), getRange(100, 200));
+    assertEquals(range(10, 30, 10), getRange(Long.MIN_VALUE, 30));
+    assertTrue(getRange(1000, 2000).isEmpty());
+    assertTrue(myStore.getSegmentFiles().isEmpty());
+  }
+
+  @Test
+  public void testLateSampleIsReturnedAtArrivalTime() {
+    myStore = new SpillingSampleStore<>(Long::longValue, LONG_CODEC);
+    myStore.add(10L);
+    myStore.add(30L);
+    myStore.add(20L);
+    myStore.add(40L);
+
+    List<Long> samples = getRange(25, 30);
+    assertEquals(2, samples.size());
+    assertEquals(Long.valueOf(30), samples.get(0));
+    assertEquals(Long.valueOf(20), samples.get(1));
+    assertEquals(range(10, 10, 10), getRange(0, 20));
+  }
+
+  @Test
+  public void testRangeAcrossSpilledSegments() {
+    // Ten records per segment and at most 16 samples on the heap, so almost all samples are read back from disk.
+    myStore = new SpillingSampleStore<>(Long::longValue, LONG_CODEC, 16, 120);
+    for (long i = 1; i <= 1000; i++) {
+      myStore.add(i);
+    }
+    assertEquals(1000, myStore.size());
+    assertTrue(myStore.getSegmentFiles().size() > 90);
+
+    assertEquals(range(1, 1000, 1), getRange(0, 1000));
+    assertEquals(range(96, 1000, 1), getRange(95, 1000));
+    assertEquals(range(8, 23, 1), getRange(7, 23));
+    assertEquals(range(995, 1000, 1), getRange(994, Long.MAX_VALUE));
+    assertEquals(1000, myStore.getMetrics().getAppendCount());
+  }
+
+  @Test
+  public void testClearDeletesSegmentFiles() {
+    myStore = new SpillingSampleStore<>(Long::longValue, LONG_CODEC, 16, 120);
+    for (long i = 1; i <= 200; i++) {
+      myStore.add(i);
+    }
+    List<File> segmentFiles = myStore.getSegmentFiles();
+    assertFalse(segmentFiles.isEmpty());
+    for (File file : segmentFiles) {
+      assertTrue(file.exists());
+    }
+
+    myStore.clear();
+    for (File file : segmentFiles) {
+      assertFalse(file.exists());
+    }
+    assertEquals(0, myStore.size());
+    assertTrue(getRange(0, 200).isEmpty());
+    assertTrue(myStore.getSegmentFiles().isEmpty());
+
+    // The store keeps working after a clear.
+    for (long i = 201; i <= 300; i++) {
+      myStore.add(i);
+    }
+    assertEquals(range(201, 300, 1), getRange(0, 300));
+    assertFalse(myStore.getSegmentFiles().isEmpty());
+  }
+
+  @Test
+  public void testConcurrentAppendAndClearLeavesNoSegmentFiles() throws Exception {
+    Set<String> existingSegments = listSegmentFiles();
+    myStore = new SpillingSampleStore<>(Long::longValue, LONG_CODEC, 4, 24);
+    AtomicBoolean done = new AtomicBoolean();
+    Thread writer = new Thread(() -> {
+      for (long i = 0; !done.get(); i++) {
+        myStore.add(i);
+      }
+    });
+    writer.start();
+    try {
+      for (int i = 0; i < 2000; i++) {
+        myStore.clear();
+      }
+    }
+    finally {
+      done.set(true);
+      writer.join();
+    }
+    myStore.clear();
+
+    Set<String> leakedSegments = listSegmentFiles();
+    leakedSegments.removeAll(existingSegments);
+    assertEquals(Collections.emptySet(), leakedSegments);
+  }
+
+  @NotNull
+  private static Set<String> listSegmentFiles() {
+    Set<String> names = new HashSet<>();
+    File[] files = new File(FileUtil.getTempDirectory()).listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.getName().startsWith("perfd-host-samples")) {
+          names.add(file.getName());
+        }
+      }
+    }
+    return names;
+  }
+
+  @NotNull
+  private List<Long> getRange(long startExclusive, long endInclusive) {
+    List<Long> samples = new ArrayList<>();
+    myStore.getRange(startExclusive, endInclusive, samples::add);
+    return samples;
+  }
+
+  @NotNull
+  private static List<Long> range(long first, long last, long step) {
+    List<Long> values = new ArrayList<>();
+    for (long value = first; value <= last; value += step) {
+      values.add(value);
+    }
+    return values;
+  }
+}
@@ -139,6 +139,12 @@ public final class ProfilerScrollbar extends JBScrollBar implements Animatable {
       setValues(viewRelativeMinMs, viewExtentMs, 0, dataExtentMs);
     }
   }
+  @Override
+  public boolean isChanged() {
+    // Swing repaints the scrollbar when its model changes, and the components showing the ranges it modifies report those changes.
+    return false;
+  }
+
 
   @Override
   protected void paintComponent(Graphics g) {
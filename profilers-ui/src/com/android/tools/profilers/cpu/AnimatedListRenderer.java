@@ -15,6 +15,7 @@
  */
 package com.android.tools.profilers.cpu;
 
+import com.android.tools.adtui.Animatable;
 import com.android.tools.adtui.AnimatedComponent;
 import com.android.tools.adtui.Choreographer;
 
@@ -26,7 +27,12 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
 
-public class AnimatedListRenderer<M, T extends AnimatedComponent> implements ListDataListener {
+/**
+ * Creates an {@link AnimatedComponent} for each element of a list, e.g. to render the cells of the list, and registers them with a
+ * {@link Choreographer}. The components are not part of the UI, so the renderer is registered too: it reports a change whenever one of
+ * the components changed, and the {@link Choreographer} then repaints its container, which includes the list.
+ */
+public class AnimatedListRenderer<M, T extends AnimatedComponent> implements ListDataListener, Animatable {
   private final Choreographer myChoreographer;
   private final ArrayList<T> myComponents;
   private final Function<M, T> myCreate;
@@ -43,6 +49,21 @@ public class AnimatedListRenderer<M, T extends AnimatedComponent> implements Lis
     if (size > 0) {
       intervalAdded(new ListDataEvent(list, ListDataEvent.INTERVAL_ADDED, 0, size - 1));
     }
+    choreographer.register(this);
+  }
+
+  @Override
+  public void animate(float frameLength) {
+  }
+
+  @Override
+  public boolean isChanged() {
+    for (T component : myComponents) {
+      if (component.isChanged()) {
+        return true;
+      }
+    }
+    return false;
   }
 
   @Override
@@ -35,6 +35,8 @@ public final class AnimatedPan implements Animatable {
 
   private double myRemainingDeltaUs;
 
+  private boolean myChanged;
+
   /**
    * @param choreographer The {@link Choreographer} instance this object is registered to. This is used for unregistering this object
    *                      when the animation is finished.
@@ -62,6 +64,7 @@ public final class AnimatedPan implements Animatable {
   @Override
   public void animate(float frameLength) {
     if (myRemainingDeltaUs == 0) {
+      myChanged = false;
       myChoreographer.unregister(this);
       return;
     }
@@ -77,6 +80,8 @@ public final class AnimatedPan implements Animatable {
     }
 
     Range viewRange = myTimeline.getViewRange();
+    double oldMin = viewRange.getMin();
+    double oldMax = viewRange.getMax();
     if (deltaUs < 0) {
       // Moving left - clamp to data min and stops further animation.
       double unclampedMin = viewRange.getMin() + deltaUs;
@@ -97,5 +102,11 @@ public final class AnimatedPan implements Animatable {
     }
 
     viewRange.shift(deltaUs);
+    myChanged = viewRange.getMin() != oldMin || viewRange.getMax() != oldMax;
+  }
+
+  @Override
+  public boolean isChanged() {
+    return myChanged;
   }
 }
@@ -29,12 +29,15 @@ public final class AnimatedTimeline implements Animatable {
 
   @NotNull private final ProfilerTimeline myTimeline;
 
+  private boolean myChanged;
+
   public AnimatedTimeline(@NotNull ProfilerTimeline timeline) {
     myTimeline = timeline;
   }
 
   @Override
   public void animate(float frameLength) {
+    myChanged = false;
     if (!myTimeline.isStreaming()) {
       return;
     }
@@ -45,5 +48,11 @@ public final class AnimatedTimeline implements Animatable {
     double viewMaxUs = viewRange.getMax();
     double deltaUs = myTimeline.clampToDataRange(viewMaxUs + frameLengthUs) - viewMaxUs;
     viewRange.shift(deltaUs);
+    myChanged = deltaUs != 0;
+  }
+
+  @Override
+  public boolean isChanged() {
+    return myChanged;
   }
 }
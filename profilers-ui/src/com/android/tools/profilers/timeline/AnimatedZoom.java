@@ -33,6 +33,8 @@ public final class AnimatedZoom implements Animatable {
   @NotNull private final ProfilerTimeline myTimeline;
 
   private double myRemainingDeltaUs;
+
+  private boolean myChanged;
   private double myAnchor;
 
   /**
@@ -67,6 +69,7 @@ public final class AnimatedZoom implements Animatable {
   @Override
   public void animate(float frameLength) {
     if (myRemainingDeltaUs == 0) {
+      myChanged = false;
       myChoreographer.unregister(this);
       return;
     }
@@ -83,9 +86,16 @@ public final class AnimatedZoom implements Animatable {
 
     // Define the total delta around the anchor point and update the timeline.
     Range viewRange = myTimeline.getViewRange();
+    double oldMin = viewRange.getMin();
+    double oldMax = viewRange.getMax();
     double minDeltaUs = deltaUs * myAnchor;
     double maxDeltaUs = deltaUs - minDeltaUs;
-    viewRange.set(myTimeline.clampToDataRange(viewRange.getMin() - minDeltaUs),
-                  myTimeline.clampToDataRange(viewRange.getMax() + maxDeltaUs));
+    viewRange.set(myTimeline.clampToDataRange(oldMin - minDeltaUs), myTimeline.clampToDataRange(oldMax + maxDeltaUs));
+    myChanged = viewRange.getMin() != oldMin || viewRange.getMax() != oldMax;
+  }
+
+  @Override
+  public boolean isChanged() {
+    return myChanged;
   }
 }
@@ -15,17 +15,13 @@
  */
 package com.android.tools.profilers.cpu;
 
-import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.BulkLongDataSeries;
+import com.android.tools.adtui.model.LongSampleConsumer;
 import com.android.tools.adtui.model.Range;
-import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.CpuProfiler;
 import com.android.tools.profiler.proto.CpuServiceGrpc;
-import com.intellij.util.containers.ContainerUtil;
-import com.intellij.util.containers.ImmutableList;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
@@ -33,7 +29,7 @@ import java.util.concurrent.TimeUnit;
 /**
  * This class is responsible for making an RPC call to perfd/datastore and converting the resulting proto into UI data.
  */
-public class CpuThreadCountDataSeries implements DataSeries<Long> {
+public class CpuThreadCountDataSeries implements BulkLongDataSeries {
   @NotNull
   private CpuServiceGrpc.CpuServiceBlockingStub myClient;
 
@@ -45,7 +41,7 @@ public class CpuThreadCountDataSeries implements DataSeries<Long> {
   }
 
   @Override
-  public ImmutableList<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
+  public void readRange(@NotNull Range timeCurrentRangeUs, @NotNull LongSampleConsumer consumer) {
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
     CpuProfiler.GetThreadsRequest.Builder request = CpuProfiler.GetThreadsRequest.newBuilder()
       .setAppId(myProcessId)
@@ -68,13 +64,11 @@ public class CpuThreadCountDataSeries implements DataSeries<Long> {
       }
     }
 
-    List<SeriesData<Long>> data = new ArrayList<>();
     long total = 0;
     for (Map.Entry<Long, Long> entry : count.entrySet()) {
       total += entry.getValue();
-      data.add(new SeriesData<>(TimeUnit.NANOSECONDS.toMicros(entry.getKey()), total));
+      consumer.accept(TimeUnit.NANOSECONDS.toMicros(entry.getKey()), total);
     }
-    data.add(new SeriesData<>((long)timeCurrentRangeUs.getMax(), total));
-    return ContainerUtil.immutableList(data);
+    consumer.accept((long)timeCurrentRangeUs.getMax(), total);
   }
 }
@@ -15,25 +15,20 @@
  */
 package com.android.tools.profilers.cpu;
 
-import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.BulkLongDataSeries;
+import com.android.tools.adtui.model.LongSampleConsumer;
 import com.android.tools.adtui.model.Range;
-import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.CpuProfiler;
 import com.android.tools.profiler.proto.CpuServiceGrpc;
-import com.intellij.util.containers.ContainerUtil;
-import com.intellij.util.containers.ImmutableList;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
  * This class is responsible for making an RPC call to perfd/datastore and converting the resulting proto into UI data.
  */
-public class CpuUsageDataSeries implements DataSeries<Long> {
+public class CpuUsageDataSeries implements BulkLongDataSeries {
   @NotNull
   private CpuServiceGrpc.CpuServiceBlockingStub myClient;
 
@@ -47,8 +42,7 @@ public class CpuUsageDataSeries implements DataSeries<Long> {
   }
 
   @Override
-  public ImmutableList<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
-    List<SeriesData<Long>> seriesData = new ArrayList<>();
+  public void readRange(@NotNull Range timeCurrentRangeUs, @NotNull LongSampleConsumer consumer) {
     // Get an extra padding on each side, to have a smooth rendering at the edges.
     // TODO: Change the CPU API to allow specifying this padding in the request as number of samples.
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
@@ -72,14 +66,13 @@ public class CpuUsageDataSeries implements DataSeries<Long> {
       }
       CpuUsageDataSeries.CpuUsageData usageData = getCpuUsageData(data, lastCpuData);
       if (myOtherProcesses) {
-        seriesData.add(new SeriesData<>(dataTimestamp, (long)usageData.getOtherProcessesUsage()));
+        consumer.accept(dataTimestamp, (long)usageData.getOtherProcessesUsage());
       }
       else {
-        seriesData.add(new SeriesData<>(dataTimestamp, (long)usageData.getAppUsage()));
+        consumer.accept(dataTimestamp, (long)usageData.getAppUsage());
       }
       lastCpuData = data;
     }
-    return ContainerUtil.immutableList(seriesData);
   }
 
   private static CpuUsageDataSeries.CpuUsageData getCpuUsageData(CpuProfiler.CpuProfilerData data, CpuProfiler.CpuProfilerData lastData) {
@@ -15,19 +15,14 @@
  */
 package com.android.tools.profilers.network;
 
-import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.BulkLongDataSeries;
+import com.android.tools.adtui.model.LongSampleConsumer;
 import com.android.tools.adtui.model.Range;
-import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.NetworkProfiler;
 import com.android.tools.profiler.proto.NetworkServiceGrpc;
-import com.intellij.util.containers.ContainerUtil;
-import com.intellij.util.containers.ImmutableList;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -37,7 +32,7 @@ import java.util.concurrent.TimeUnit;
  *
  * TODO: This class needs tests.
  */
-public class NetworkOpenConnectionsDataSeries implements DataSeries<Long> {
+public class NetworkOpenConnectionsDataSeries implements BulkLongDataSeries {
   @NotNull
   private NetworkServiceGrpc.NetworkServiceBlockingStub myClient;
   private final int myProcessId;
@@ -48,9 +43,7 @@ public class NetworkOpenConnectionsDataSeries implements DataSeries<Long> {
   }
 
   @Override
-  public ImmutableList<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
-    List<SeriesData<Long>> seriesData = new ArrayList<>();
-
+  public void readRange(@NotNull Range timeCurrentRangeUs, @NotNull LongSampleConsumer consumer) {
     // TODO: Change the Network API to allow specifying padding in the request as number of samples.
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
     NetworkProfiler.NetworkDataRequest.Builder dataRequestBuilder = NetworkProfiler.NetworkDataRequest.newBuilder()
@@ -62,8 +55,7 @@ public class NetworkOpenConnectionsDataSeries implements DataSeries<Long> {
     for (NetworkProfiler.NetworkProfilerData data : response.getDataList()) {
       long xTimestamp = TimeUnit.NANOSECONDS.toMicros(data.getBasicInfo().getEndTimestamp());
       NetworkProfiler.ConnectionData connectionData = data.getConnectionData();
-      seriesData.add(new SeriesData<>(xTimestamp, (long)connectionData.getConnectionNumber()));
+      consumer.accept(xTimestamp, connectionData.getConnectionNumber());
     }
-    return ContainerUtil.immutableList(seriesData);
   }
 }
@@ -15,19 +15,14 @@
  */
 package com.android.tools.profilers.network;
 
-import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.BulkLongDataSeries;
+import com.android.tools.adtui.model.LongSampleConsumer;
 import com.android.tools.adtui.model.Range;
-import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.NetworkProfiler;
 import com.android.tools.profiler.proto.NetworkServiceGrpc;
-import com.intellij.util.containers.ContainerUtil;
-import com.intellij.util.containers.ImmutableList;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -38,7 +33,7 @@ import java.util.concurrent.TimeUnit;
  *
  * TODO: This class needs tests.
  */
-public class NetworkTrafficDataSeries implements DataSeries<Long> {
+public class NetworkTrafficDataSeries implements BulkLongDataSeries {
   public enum Type {
     BYTES_RECEIVED("Received"),
     BYTES_SENT("Sent");
@@ -67,9 +62,7 @@ public class NetworkTrafficDataSeries implements DataSeries<Long> {
   }
 
   @Override
-  public ImmutableList<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
-    List<SeriesData<Long>> seriesData = new ArrayList<>();
-
+  public void readRange(@NotNull Range timeCurrentRangeUs, @NotNull LongSampleConsumer consumer) {
     // TODO: Change the Network API to allow specifying padding in the request as number of samples.
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
     NetworkProfiler.NetworkDataRequest.Builder dataRequestBuilder = NetworkProfiler.NetworkDataRequest.newBuilder()
@@ -83,15 +76,14 @@ public class NetworkTrafficDataSeries implements DataSeries<Long> {
       NetworkProfiler.SpeedData speedData = data.getSpeedData();
       switch (myType) {
         case BYTES_RECEIVED:
-          seriesData.add(new SeriesData<>(xTimestamp, speedData.getReceived()));
+          consumer.accept(xTimestamp, speedData.getReceived());
           break;
         case BYTES_SENT:
-          seriesData.add(new SeriesData<>(xTimestamp, speedData.getSent()));
+          consumer.accept(xTimestamp, speedData.getSent());
           break;
         default:
           throw new IllegalStateException("Unexpected network traffic data series type: " + myType);
       }
     }
-    return ContainerUtil.immutableList(seriesData);
   }
 }